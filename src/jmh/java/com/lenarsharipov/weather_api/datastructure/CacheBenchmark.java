@@ -0,0 +1,89 @@
+package com.lenarsharipov.weather_api.datastructure;
+
+import com.lenarsharipov.weather_api.datastructure.eviction.EvictionPolicyType;
+import com.lenarsharipov.weather_api.model.WeatherResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Cache#get} and {@link Cache#put} on a full cache. Half of the keys are in the
+ * cache, so reads mix hits and misses and writes keep evicting entries. The nested classes run
+ * the same benchmarks with more threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CacheBenchmark {
+
+    private static final int CAPACITY = 1024;
+    private static final int KEY_MASK = 2 * CAPACITY - 1;
+
+    @Param({"LRU", "W_TINY_LFU"})
+    private EvictionPolicyType evictionPolicy;
+
+    @Param({"1", "16"})
+    private int segments;
+
+    private Cache cache;
+    private String[] keys;
+    private WeatherResponse response;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next = ThreadLocalRandom.current().nextInt();
+
+        int nextIndex() {
+            return next++ & KEY_MASK;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        cache = new Cache(CAPACITY, evictionPolicy, segments);
+        keys = new String[KEY_MASK + 1];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "CITY-" + i;
+        }
+        response = WeatherResponse.builder()
+                .dt(System.currentTimeMillis() / 1000)
+                .name("City")
+                .build();
+        for (int i = 0; i < CAPACITY; i++) {
+            cache.put(keys[i], response);
+        }
+    }
+
+    @Benchmark
+    public WeatherResponse get(Cursor cursor) {
+        return cache.get(keys[cursor.nextIndex()]);
+    }
+
+    @Benchmark
+    public void put(Cursor cursor) {
+        cache.put(keys[cursor.nextIndex()], response);
+    }
+
+    @Threads(4)
+    public static class FourThreads extends CacheBenchmark {
+    }
+
+    @Threads(Threads.MAX)
+    public static class MaxThreads extends CacheBenchmark {
+    }
+}
@@ -0,0 +1,41 @@
+package com.lenarsharipov.weather_api.datastructure;
+
+import com.lenarsharipov.weather_api.model.LocationKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Cache#normalizeLocation} against {@link LocationKey#of}, which returns
+ * a recently created key without normalizing the location again.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NormalizeLocationBenchmark {
+
+    @Param({"London", "  saint petersburg ", "SAINT PETERSBURG"})
+    private String location;
+
+    @Benchmark
+    public String normalizeLocation() {
+        return Cache.normalizeLocation(location);
+    }
+
+    @Benchmark
+    public LocationKey locationKey() {
+        return LocationKey.of(location);
+    }
+}
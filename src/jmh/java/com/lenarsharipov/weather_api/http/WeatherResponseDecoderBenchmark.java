@@ -0,0 +1,67 @@
+package com.lenarsharipov.weather_api.http;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lenarsharipov.weather_api.model.WeatherResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static com.lenarsharipov.weather_api.util.TestObjectUtils.JSON_WEATHER_RESPONSE;
+
+/**
+ * Measures decoding of successful API responses, the work {@link WeatherHttpClient} does on
+ * every status 200 response, from a byte array (async requests) and from a stream (sync requests).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WeatherResponseDecoderBenchmark {
+
+    private static final String JSON_RAIN_RESPONSE = """
+            {"coord":{"lon":-0.1257,"lat":51.5085},"weather":[{"id":500,"main":"Rain","description":"light rain",\
+            "icon":"10d"},{"id":701,"main":"Mist","description":"mist","icon":"50d"}],"base":"stations",\
+            "main":{"temp":282.55,"feels_like":280.08,"temp_min":281.09,"temp_max":284.1,"pressure":1012,\
+            "humidity":87,"sea_level":1012,"grnd_level":1008},"visibility":8000,\
+            "wind":{"speed":4.63,"deg":240,"gust":9.26},"rain":{"1h":0.48},"clouds":{"all":90},\
+            "dt":1740168302,"sys":{"type":2,"id":2075535,"country":"GB","sunrise":1740122312,\
+            "sunset":1740159939},"timezone":0,"id":2643743,"name":"London","cod":200}""";
+
+    @Param({"snow", "rain"})
+    private String payload;
+
+    private WeatherResponseDecoder decoder;
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        decoder = new WeatherResponseDecoder(new ObjectMapper());
+        body = (payload.equals("snow") ? JSON_WEATHER_RESPONSE : JSON_RAIN_RESPONSE)
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public WeatherResponse decodeByteArray() throws IOException {
+        return decoder.decode(body);
+    }
+
+    @Benchmark
+    public WeatherResponse decodeStream() throws IOException {
+        return decoder.decode(new ByteArrayInputStream(body));
+    }
+}
@@ -0,0 +1,106 @@
+package com.lenarsharipov.weather_api.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lenarsharipov.weather_api.exception.HttpException;
+import com.lenarsharipov.weather_api.http.WeatherHttpClient;
+import com.lenarsharipov.weather_api.model.WeatherResponse;
+import com.lenarsharipov.weather_api.service.impl.WeatherServiceOnDemand;
+import com.lenarsharipov.weather_api.settings.Settings;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link AbstractWeatherService#getWeather(String)} with a client that answers at once,
+ * so only the service's own work is measured: cache lookup and freshness check on hits, and
+ * request coalescing and cache insertion on misses.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WeatherServiceBenchmark {
+
+    private static final int KEY_COUNT = 4096;
+
+    private WeatherService hitService;
+    private WeatherService missService;
+    private String[] keys;
+    private int next;
+
+    @Setup
+    public void setUp() throws HttpException {
+        WeatherHttpClient client = new StubWeatherHttpClient();
+        hitService = new WeatherServiceOnDemand("apiKey", client, settings(KEY_COUNT));
+        missService = new WeatherServiceOnDemand("apiKey", client, settings(16));
+        keys = new String[KEY_COUNT];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            keys[i] = "City-" + i;
+            hitService.getWeather(keys[i]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        hitService.shutdown();
+        missService.shutdown();
+    }
+
+    @Benchmark
+    public WeatherResponse hit() throws HttpException {
+        return hitService.getWeather(keys[next++ & (KEY_COUNT - 1)]);
+    }
+
+    @Benchmark
+    public WeatherResponse miss() throws HttpException {
+        return missService.getWeather(keys[next++ & (KEY_COUNT - 1)]);
+    }
+
+    private static Settings settings(int cacheSize) {
+        return Settings.builder()
+                .cache(new Settings.Cache(cacheSize))
+                .build();
+    }
+
+    /**
+     * A client that returns a fresh response without sending a request.
+     */
+    private static final class StubWeatherHttpClient extends WeatherHttpClient {
+
+        private final WeatherResponse response = WeatherResponse.builder()
+                .dt(System.currentTimeMillis() / 1000)
+                .name("City")
+                .build();
+
+        StubWeatherHttpClient() {
+            super(null, new ObjectMapper(), "http://localhost");
+        }
+
+        @Override
+        public WeatherResponse getWeather(String location, String apiKey) {
+            return response;
+        }
+
+        @Override
+        public CompletableFuture<WeatherResponse> getWeatherAsync(String location, String apiKey) {
+            return CompletableFuture.completedFuture(response);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.lenarsharipov.weather_api;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lenarsharipov.weather_api.datastructure.SharedCache;
 import com.lenarsharipov.weather_api.exception.IllegalWeatherServiceFactoryArgsException;
 import com.lenarsharipov.weather_api.exception.ServiceExistsException;
 import com.lenarsharipov.weather_api.exception.ServiceNotFoundException;
@@ -10,7 +11,6 @@ import com.lenarsharipov.weather_api.service.WeatherService;
 import com.lenarsharipov.weather_api.settings.Settings;
 import com.lenarsharipov.weather_api.validation.SettingsValidator;
 
-import java.net.http.HttpClient;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -24,13 +24,16 @@ import java.util.concurrent.ConcurrentHashMap;
  * the same instance.
  * <p>
  * The factory also provides a way to remove a service from the cache.
+ * <p>
+ * Optionally, the services can share a second-level cache (see {@link #configureSharedCache(long)}):
+ * a cache miss of one service is then served from data another service fetched recently.
  */
 public final class WeatherServiceFactory {
 
     private static final String API_URL = "https://api.openweathermap.org/data/2.5/weather";
     private static final Map<String, WeatherService> services = new ConcurrentHashMap<>();
-    private static final WeatherHttpClient httpClient =
-            new WeatherHttpClient(HttpClient.newHttpClient(), new ObjectMapper(), API_URL);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static volatile SharedCache sharedCache = new SharedCache(SharedCache.DEFAULT_SHARED_CACHE_MAX_BYTES);
 
     private WeatherServiceFactory() {
     }
@@ -83,7 +86,36 @@ public final class WeatherServiceFactory {
         }
         SettingsValidator.validate(settings);
         return services.computeIfAbsent(apiKey,
-                key -> apiMode.createWeatherService(key, httpClient, settings));
+                key -> apiMode.createWeatherService(key, createWeatherHttpClient(settings), settings, sharedCache));
+    }
+
+    /**
+     * Sets up the second-level cache shared by the services created after this call.
+     * <p>
+     * Entries are keyed by the canonical location, and every service uses an entry only while it is
+     * fresh by the service's own data freshness period. The cache is bounded by the given memory
+     * budget. Services created before this call keep the cache they were created with.
+     *
+     * @param maxBytes the memory budget of the shared cache, in bytes; 0 turns the shared cache off
+     * @throws IllegalWeatherServiceFactoryArgsException if the budget is negative
+     */
+    public static void configureSharedCache(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalWeatherServiceFactoryArgsException("Shared cache budget cannot be negative");
+        }
+        sharedCache = new SharedCache(maxBytes);
+    }
+
+    /**
+     * Creates a weather HTTP client for one service. Clients share the object mapper, but each one
+     * has its own HTTP client built from the service's transport settings, with its own connections,
+     * and keeps its own latency statistics, rate limit and circuit breaker.
+     *
+     * @param settings the settings for the service
+     * @return the weather HTTP client
+     */
+    private static WeatherHttpClient createWeatherHttpClient(Settings settings) {
+        return new WeatherHttpClient(objectMapper, API_URL, settings);
     }
 
     /**
@@ -0,0 +1,98 @@
+package com.lenarsharipov.weather_api.datastructure;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Maps the spellings of locations to the ids of the cities they resolved to, so every spelling
+ * of a city shares one cache entry keyed by its id.
+ *
+ * <p>Aliases are learned from responses: once a lookup of {@code "london,gb"} returns city
+ * 2643743, later lookups of that spelling read the entry of city 2643743. When the table is
+ * full, the least recently used alias is removed. The table is thread-safe.
+ */
+public class AliasTable {
+
+    public static final Boolean DEFAULT_ALIASING_ENABLED = false;
+    public static final Integer DEFAULT_ALIAS_TABLE_SIZE = 10_000;
+
+    private final Map<String, Integer> aliases;
+    private final int capacity;
+
+    /**
+     * Creates an alias table.
+     *
+     * @param capacity the maximum number of aliases; 0 disables the table
+     */
+    public AliasTable(Integer capacity) {
+        this.capacity = capacity == null
+                ? DEFAULT_ALIAS_TABLE_SIZE
+                : capacity;
+        this.aliases = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > AliasTable.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the id of the city a location resolved to.
+     *
+     * @param normalizedLocation the normalized location
+     * @return the city id, or 0 if the location has no known alias
+     */
+    public int get(String normalizedLocation) {
+        if (capacity == 0) {
+            return 0;
+        }
+        synchronized (aliases) {
+            Integer cityId = aliases.get(normalizedLocation);
+            return cityId == null ? 0 : cityId;
+        }
+    }
+
+    /**
+     * Records that a location resolved to a city.
+     *
+     * @param normalizedLocation the normalized location
+     * @param cityId             the id of the city
+     */
+    public void put(String normalizedLocation, int cityId) {
+        if (capacity == 0) {
+            return;
+        }
+        synchronized (aliases) {
+            aliases.put(normalizedLocation, cityId);
+        }
+    }
+
+    /**
+     * Returns whether the table learns aliases.
+     *
+     * @return false if the table is disabled
+     */
+    public boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    /**
+     * Clears all aliases.
+     */
+    public void clear() {
+        synchronized (aliases) {
+            aliases.clear();
+        }
+    }
+
+    /**
+     * Returns the current number of aliases.
+     *
+     * @return the number of aliases in the table
+     */
+    public int size() {
+        synchronized (aliases) {
+            return aliases.size();
+        }
+    }
+}
@@ -1,8 +1,14 @@
 package com.lenarsharipov.weather_api.datastructure;
 
+import com.lenarsharipov.weather_api.datastructure.eviction.EvictionPolicy;
+import com.lenarsharipov.weather_api.datastructure.eviction.EvictionPolicyType;
+import com.lenarsharipov.weather_api.model.LocationKey;
 import com.lenarsharipov.weather_api.model.WeatherResponse;
 
-import java.util.Comparator;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -10,21 +16,83 @@ import java.util.concurrent.ConcurrentHashMap;
 /**
  * An in-memory cache for storing and retrieving weather data by location.
  *
- * <p>This cache stores a limited number of entries (currently set to 10) and
- * uses a least-recently-used (LRU) strategy to evict entries when the cache
- * is full. The cache is thread-safe.
+ * <p>This cache stores a limited number of entries (10 by default) and evicts
+ * entries according to a pluggable {@link EvictionPolicy} when the cache is full
+ * (least-recently-used by default). The cache is thread-safe.
+ *
+ * <p>Keys are spread across independent {@link CacheSegment segments}, each with
+ * its own share of the cache size, its own lock and its own eviction policy, so
+ * writers to different segments never contend. With a single segment (the default)
+ * the eviction order is exact; with several segments it is exact within a segment.
+ *
+ * <p>Every entry remembers when it was fetched and stays fresh for the cache's time to live
+ * (the data freshness period of the service, 10 minutes by default), regardless of the
+ * observation time of the data. When new data for a location has the same observation time as
+ * the cached data, the station has not reported since, and the new entry stays fresh twice as long
+ * as the previous one, up to {@value #MAX_UNCHANGED_BACKOFF} times the time to live.
+ *
+ * <p>An {@link ExpirationPolicy} can give some locations their own time to live, mark entries
+ * for a refresh ahead of their expiry, and remove entries some time after they are fetched or
+ * last read. Entries due for removal are hidden from reads at once and are reclaimed by a timing
+ * wheel in each segment as the cache is used, or by {@link #cleanUp()}, without scanning the cache.
+ * Without such rules, expired entries stay in the cache until they are replaced or evicted.
  */
 public class Cache {
 
     public static final Integer DEFAULT_CACHE_SIZE = 10;
-    private final Map<String, WeatherResponse> cache = new ConcurrentHashMap<>();
+    public static final EvictionPolicyType DEFAULT_EVICTION_POLICY = EvictionPolicyType.LRU;
+    public static final Integer DEFAULT_CACHE_SEGMENTS = 1;
+    public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofMinutes(10);
+    public static final int MAX_UNCHANGED_BACKOFF = 4;
 
+    private final CacheSegment[] segments;
     private final Integer cacheSize;
+    private final long timeToLiveMillis;
+    private final Map<String, Long> timeToLiveOverrides;
+    private final Map<String, Long> aliasedTimeToLiveOverrides = new ConcurrentHashMap<>();
+    private final ExpirationPolicy expirationPolicy;
 
     public Cache(Integer cacheSize) {
+        this(cacheSize, DEFAULT_EVICTION_POLICY);
+    }
+
+    public Cache(Integer cacheSize, EvictionPolicyType evictionPolicyType) {
+        this(cacheSize, evictionPolicyType, DEFAULT_CACHE_SEGMENTS);
+    }
+
+    public Cache(Integer cacheSize, EvictionPolicyType evictionPolicyType, Integer segmentCount) {
+        this(cacheSize, evictionPolicyType, segmentCount, DEFAULT_TIME_TO_LIVE);
+    }
+
+    public Cache(Integer cacheSize, EvictionPolicyType evictionPolicyType, Integer segmentCount, Duration timeToLive) {
+        this(cacheSize, evictionPolicyType, segmentCount, ExpirationPolicy.ofTimeToLive(timeToLive));
+    }
+
+    public Cache(Integer cacheSize, EvictionPolicyType evictionPolicyType, Integer segmentCount,
+                 ExpirationPolicy expirationPolicy) {
+        this.expirationPolicy = expirationPolicy == null
+                ? ExpirationPolicy.ofTimeToLive(DEFAULT_TIME_TO_LIVE)
+                : expirationPolicy;
+        this.timeToLiveMillis = this.expirationPolicy.timeToLive().toMillis();
+        Map<String, Long> overrides = new HashMap<>();
+        this.expirationPolicy.timeToLiveOverrides().forEach((name, ttl) -> overrides.put(name, ttl.toMillis()));
+        this.timeToLiveOverrides = Map.copyOf(overrides);
         this.cacheSize = cacheSize == null
                 ? DEFAULT_CACHE_SIZE
                 : cacheSize;
+        EvictionPolicyType policyType = evictionPolicyType == null
+                ? DEFAULT_EVICTION_POLICY
+                : evictionPolicyType;
+        int count = segmentCount == null
+                ? DEFAULT_CACHE_SEGMENTS
+                : Math.min(segmentCount, this.cacheSize);
+
+        this.segments = new CacheSegment[count];
+        for (int i = 0; i < count; i++) {
+            int segmentCapacity = this.cacheSize / count + (i < this.cacheSize % count ? 1 : 0);
+            segments[i] = new CacheSegment(segmentCapacity, policyType,
+                    Integer.numberOfTrailingZeros(MAX_UNCHANGED_BACKOFF), this.expirationPolicy);
+        }
     }
 
     /**
@@ -34,32 +102,104 @@ public class Cache {
      * @return the weather response, or null if not found
      */
     public WeatherResponse get(String location) {
-        return cache.get(normalizeLocation(location));
+        return get(LocationKey.of(location));
+    }
+
+    /**
+     * Retrieves the weather response for the specified location key.
+     *
+     * @param key the location key to retrieve weather data for
+     * @return the weather response, or null if not found
+     */
+    public WeatherResponse get(LocationKey key) {
+        CacheEntry entry = getEntry(key);
+        return entry == null ? null : entry.response();
+    }
+
+    /**
+     * Retrieves the cache entry for the specified location key, with its fetch and expiry times.
+     *
+     * @param key the location key to retrieve weather data for
+     * @return the cache entry, or null if not found
+     */
+    public CacheEntry getEntry(LocationKey key) {
+        return segmentFor(key).get(key.name());
+    }
+
+    /**
+     * Retrieves the weather response for the specified location without counting it as a use,
+     * so background reads such as polling do not affect which entries are evicted.
+     *
+     * @param location the location to retrieve weather data for
+     * @return the weather response, or null if not found
+     */
+    public WeatherResponse peek(String location) {
+        return peek(LocationKey.of(location));
+    }
+
+    /**
+     * Retrieves the weather response for the specified location key without counting it as a use.
+     *
+     * @param key the location key to retrieve weather data for
+     * @return the weather response, or null if not found
+     */
+    public WeatherResponse peek(LocationKey key) {
+        CacheEntry entry = peekEntry(key);
+        return entry == null ? null : entry.response();
+    }
+
+    /**
+     * Retrieves the cache entry for the specified location key without counting it as a use.
+     *
+     * @param key the location key to retrieve weather data for
+     * @return the cache entry, or null if not found
+     */
+    public CacheEntry peekEntry(LocationKey key) {
+        return segmentFor(key).peek(key.name());
     }
 
     /**
      * Stores the weather response for the specified location.
-     * If the cache is full, the oldest entry is removed.
+     * If the segment owning the location is full, the entry chosen by its eviction policy
+     * is removed first.
      *
      * @param location the location to store weather data for
      * @param weatherResponse the weather response to store
      */
     public void put(String location, WeatherResponse weatherResponse) {
-        String normalizedKey = normalizeLocation(location);
-        if (isCacheFull() && !cache.containsKey(normalizedKey)) {
-            removeOldestEntry();
-        }
-        cache.put(normalizedKey, weatherResponse);
+        put(LocationKey.of(location), weatherResponse);
     }
 
     /**
-     * Removes the oldest entry from the cache.
+     * Stores the weather response for the specified location key, fetched just now.
+     *
+     * @param key the location key to store weather data for
+     * @param weatherResponse the weather response to store
      */
-    public void removeOldestEntry() {
-        cache.entrySet().stream()
-                .min(Comparator.comparingLong(e -> e.getValue().dt()))
-                .map(Map.Entry::getKey)
-                .ifPresent(cache::remove);
+    public void put(LocationKey key, WeatherResponse weatherResponse) {
+        put(key, weatherResponse, System.currentTimeMillis());
+    }
+
+    /**
+     * Stores the weather response for the specified location key, fetched at the given time, so
+     * data restored from a snapshot stays fresh only as long as it would have in the saved cache.
+     *
+     * @param key the location key to store weather data for
+     * @param weatherResponse the weather response to store
+     * @param fetchedAtMillis when the data was fetched, in epoch milliseconds
+     */
+    public void put(LocationKey key, WeatherResponse weatherResponse, long fetchedAtMillis) {
+        segmentFor(key).put(key.name(), weatherResponse, fetchedAtMillis, timeToLiveMillis(key));
+    }
+
+    /**
+     * Removes the entries that are due for removal under the expiration policy. The cache does this
+     * on its own as it is used; calling this method reclaims the space of an idle cache.
+     */
+    public void cleanUp() {
+        for (CacheSegment segment : segments) {
+            segment.cleanUp();
+        }
     }
 
     /**
@@ -68,14 +208,24 @@ public class Cache {
      * @return a set of locations
      */
     public Set<String> getLocations() {
-        return cache.keySet();
+        if (segments.length == 1) {
+            return Collections.unmodifiableSet(segments[0].keys());
+        }
+        Set<String> locations = new HashSet<>();
+        for (CacheSegment segment : segments) {
+            locations.addAll(segment.keys());
+        }
+        return Collections.unmodifiableSet(locations);
     }
 
     /**
      * Clears all entries from the cache.
      */
     public void clear() {
-        cache.clear();
+        for (CacheSegment segment : segments) {
+            segment.clear();
+        }
+        aliasedTimeToLiveOverrides.clear();
     }
 
     /**
@@ -83,9 +233,10 @@ public class Cache {
      *
      * @param key the location key to normalize
      * @return the normalized location key
+     * @see LocationKey#normalize(String)
      */
-    private String normalizeLocation(String key) {
-        return key.trim().toUpperCase();
+    public static String normalizeLocation(String key) {
+        return LocationKey.normalize(key);
     }
 
     /**
@@ -94,15 +245,91 @@ public class Cache {
      * @return the number of entries in the cache
      */
     public int size() {
-        return cache.size();
+        int size = 0;
+        for (CacheSegment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Returns the maximum number of entries in the cache.
+     *
+     * @return the cache size
+     */
+    public int capacity() {
+        return cacheSize;
+    }
+
+    /**
+     * Returns how long an entry stays fresh after it is fetched, before any backoff.
+     *
+     * @return the time to live in milliseconds
+     */
+    public long timeToLiveMillis() {
+        return timeToLiveMillis;
     }
 
     /**
-     * Checks if the cache is full.
+     * Returns how long an entry for the location stays fresh after it is fetched, before any backoff,
+     * taking the per-location overrides of the expiration policy into account.
      *
-     * @return true if the cache is full, false otherwise
+     * @param key the location key
+     * @return the time to live in milliseconds
      */
-    private boolean isCacheFull() {
-        return cache.size() >= cacheSize;
+    public long timeToLiveMillis(LocationKey key) {
+        if (timeToLiveOverrides.isEmpty()) {
+            return timeToLiveMillis;
+        }
+        Long override = timeToLiveOverrides.get(key.name());
+        return override != null
+                ? override
+                : aliasedTimeToLiveOverrides.getOrDefault(key.name(), timeToLiveMillis);
+    }
+
+    /**
+     * Applies the time to live of a location to the key its data is stored under, such as the
+     * city id a location name resolved to, unless that key has a time to live of its own.
+     *
+     * @param location  the location the data was loaded for
+     * @param storedKey the key the data is stored under
+     */
+    public void aliasTimeToLive(LocationKey location, LocationKey storedKey) {
+        Long override = timeToLiveOverrides.get(location.name());
+        if (override != null && !timeToLiveOverrides.containsKey(storedKey.name())) {
+            aliasedTimeToLiveOverrides.put(storedKey.name(), override);
+        }
+    }
+
+    /**
+     * Returns the rules for freshness, refresh and removal of entries.
+     *
+     * @return the expiration policy
+     */
+    public ExpirationPolicy expirationPolicy() {
+        return expirationPolicy;
+    }
+
+    /**
+     * Returns the number of segments the cache is split into.
+     *
+     * @return the segment count
+     */
+    public int segmentCount() {
+        return segments.length;
+    }
+
+    /**
+     * Returns the segment that owns the key.
+     *
+     * @param key the location key
+     * @return the owning segment
+     */
+    private CacheSegment segmentFor(LocationKey key) {
+        if (segments.length == 1) {
+            return segments[0];
+        }
+        int hash = key.hashCode() * 0x9E3779B9;
+        return segments[Math.floorMod(hash ^ (hash >>> 16), segments.length)];
     }
 }
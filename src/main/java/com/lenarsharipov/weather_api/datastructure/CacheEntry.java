@@ -0,0 +1,56 @@
+package com.lenarsharipov.weather_api.datastructure;
+
+import com.lenarsharipov.weather_api.model.LocationKey;
+import com.lenarsharipov.weather_api.model.WeatherResponse;
+
+/**
+ * Weather data kept in the {@link Cache}, with the time it was fetched, the time it is due for
+ * a refresh and the time it stops being fresh, all in epoch milliseconds.
+ *
+ * <p>Freshness is decided from the fetch time rather than the observation time of the data, so data
+ * from a station that reports late is still served from the cache for the whole freshness period.
+ * {@code unchangedFetches} counts the fetches in a row that returned the same observation time;
+ * the cache extends the freshness of such entries (see {@link Cache#put(LocationKey, WeatherResponse)}).
+ *
+ * @param response         the weather data
+ * @param fetchedAtMillis  when the data was fetched
+ * @param refreshAtMillis  when the data is due for a refresh ahead of its expiry,
+ *                         or {@link Long#MAX_VALUE} if it is not refreshed ahead
+ * @param expiresAtMillis  when the data stops being fresh
+ * @param unchangedFetches the number of fetches in a row that returned the same observation
+ */
+public record CacheEntry(WeatherResponse response,
+                         long fetchedAtMillis,
+                         long refreshAtMillis,
+                         long expiresAtMillis,
+                         int unchangedFetches) {
+
+    /**
+     * Checks whether the data is still fresh.
+     *
+     * @param nowMillis the current time in epoch milliseconds
+     * @return true if the data has not expired yet
+     */
+    public boolean isFresh(long nowMillis) {
+        return nowMillis < expiresAtMillis;
+    }
+
+    /**
+     * Checks whether the data is still fresh but should be fetched again before it expires.
+     *
+     * @param nowMillis the current time in epoch milliseconds
+     * @return true if the data is due for a refresh
+     */
+    public boolean isDueForRefresh(long nowMillis) {
+        return nowMillis >= refreshAtMillis;
+    }
+
+    /**
+     * Returns how long the data stays fresh after it is fetched.
+     *
+     * @return the time to live in milliseconds
+     */
+    public long timeToLiveMillis() {
+        return expiresAtMillis - fetchedAtMillis;
+    }
+}
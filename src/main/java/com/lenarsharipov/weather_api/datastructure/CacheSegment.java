@@ -0,0 +1,224 @@
+package com.lenarsharipov.weather_api.datastructure;
+
+import com.lenarsharipov.weather_api.datastructure.eviction.EvictionPolicy;
+import com.lenarsharipov.weather_api.datastructure.eviction.EvictionPolicyType;
+import com.lenarsharipov.weather_api.model.WeatherResponse;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A shard of the {@link Cache} with its own size budget, lock and eviction policy.
+ *
+ * <p>Reads go straight to a {@link ConcurrentHashMap}. Writes and eviction are
+ * serialized by the segment's lock, so the number of entries never exceeds the
+ * segment's capacity. Reads record their access in the policy only when the lock
+ * is free; under contention some accesses are dropped, which keeps reads from
+ * queueing behind writes.
+ *
+ * <p>Every entry carries its fetch and expiry times. An entry whose new data has the same
+ * observation time as the data it replaces stays fresh twice as long as the previous one, up to
+ * {@code 1 << maxBackoffShift} times the time to live, so stations that stopped reporting are
+ * fetched less and less often.
+ *
+ * <p>If the {@link ExpirationPolicy} removes entries, every entry is kept in a {@link TimerWheel}
+ * at its removal time. Writes, and reads that get the lock, advance the wheel and remove the
+ * entries that are due. An entry that is due but not removed yet is already hidden from reads.
+ * Reads only store their time in the entry; the wheel moves the entry when it reaches the old
+ * removal time.
+ */
+class CacheSegment {
+
+    private final Map<String, Node> entries = new ConcurrentHashMap<>();
+    private final Lock evictionLock = new ReentrantLock();
+    private final EvictionPolicy evictionPolicy;
+    private final int maxBackoffShift;
+    private final long expireAfterWriteMillis;
+    private final long expireAfterAccessMillis;
+    private final long refreshAfterWriteMillis;
+    private final TimerWheel timerWheel;
+
+    CacheSegment(int capacity, EvictionPolicyType evictionPolicyType, int maxBackoffShift,
+                 ExpirationPolicy expirationPolicy) {
+        this.evictionPolicy = evictionPolicyType.createPolicy(capacity);
+        this.maxBackoffShift = maxBackoffShift;
+        this.expireAfterWriteMillis = expirationPolicy.expireAfterWrite().toMillis();
+        this.expireAfterAccessMillis = expirationPolicy.expireAfterAccess().toMillis();
+        this.refreshAfterWriteMillis = expirationPolicy.refreshAfterWrite().toMillis();
+        this.timerWheel = expirationPolicy.removesEntries()
+                ? new TimerWheel(System.currentTimeMillis())
+                : null;
+    }
+
+    CacheEntry get(String key) {
+        Node node = entries.get(key);
+        if (node == null) {
+            return null;
+        }
+        if (timerWheel == null) {
+            if (evictionLock.tryLock()) {
+                try {
+                    evictionPolicy.recordAccess(key);
+                } finally {
+                    evictionLock.unlock();
+                }
+            }
+            return node.entry;
+        }
+        long nowMillis = System.currentTimeMillis();
+        boolean expired = node.deadlineMillis() <= nowMillis;
+        if (!expired && expireAfterAccessMillis > 0) {
+            node.accessedAtMillis = nowMillis;
+        }
+        if (evictionLock.tryLock()) {
+            try {
+                if (!expired) {
+                    evictionPolicy.recordAccess(key);
+                }
+                timerWheel.advance(nowMillis, this::expire);
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+        return expired ? null : node.entry;
+    }
+
+    CacheEntry peek(String key) {
+        Node node = entries.get(key);
+        if (node == null || timerWheel != null && node.deadlineMillis() <= System.currentTimeMillis()) {
+            return null;
+        }
+        return node.entry;
+    }
+
+    void put(String key, WeatherResponse weatherResponse, long fetchedAtMillis, long timeToLiveMillis) {
+        evictionLock.lock();
+        try {
+            long nowMillis = System.currentTimeMillis();
+            if (timerWheel != null) {
+                timerWheel.advance(nowMillis, this::expire);
+            }
+            Node node = entries.get(key);
+            CacheEntry previous = null;
+            if (node != null && timerWheel != null && node.deadlineMillis() <= nowMillis) {
+                node.accessedAtMillis = nowMillis;
+            } else if (node != null) {
+                previous = node.entry;
+            }
+            int unchangedFetches = previous != null && previous.response().dt() == weatherResponse.dt()
+                    ? previous.unchangedFetches() + 1
+                    : 0;
+            int backoffShift = Math.min(unchangedFetches, maxBackoffShift);
+            long expiresAtMillis = fetchedAtMillis + (timeToLiveMillis << backoffShift);
+            long refreshAtMillis = refreshAfterWriteMillis > 0
+                    ? fetchedAtMillis + (refreshAfterWriteMillis << backoffShift)
+                    : Long.MAX_VALUE;
+            CacheEntry entry = new CacheEntry(weatherResponse, fetchedAtMillis, refreshAtMillis, expiresAtMillis,
+                    unchangedFetches);
+            if (node != null) {
+                node.entry = entry;
+                schedule(node, entry);
+                evictionPolicy.recordAccess(key);
+                return;
+            }
+            node = new Node(key, entry, nowMillis);
+            String victim = evictionPolicy.recordInsertion(key);
+            if (victim != null) {
+                Node evicted = entries.remove(victim);
+                if (evicted != null && timerWheel != null) {
+                    timerWheel.deschedule(evicted);
+                }
+            }
+            if (!key.equals(victim)) {
+                entries.put(key, node);
+                schedule(node, entry);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Removes the entries that are due. Called with no other work to do, for example by a
+     * background task, so the lock is awaited.
+     */
+    void cleanUp() {
+        if (timerWheel == null) {
+            return;
+        }
+        evictionLock.lock();
+        try {
+            timerWheel.advance(System.currentTimeMillis(), this::expire);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    Set<String> keys() {
+        return entries.keySet();
+    }
+
+    void clear() {
+        evictionLock.lock();
+        try {
+            entries.clear();
+            evictionPolicy.clear();
+            if (timerWheel != null) {
+                timerWheel.clear();
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Computes when the entry is removed regardless of reads and puts the node in the wheel.
+     * An entry that expires after write is never removed while it is still fresh.
+     */
+    private void schedule(Node node, CacheEntry entry) {
+        if (timerWheel == null) {
+            return;
+        }
+        node.writeDeadlineMillis = expireAfterWriteMillis > 0
+                ? Math.max(entry.expiresAtMillis(), entry.fetchedAtMillis() + expireAfterWriteMillis)
+                : Long.MAX_VALUE;
+        timerWheel.schedule(node);
+    }
+
+    private void expire(TimerWheel.Node expired) {
+        Node node = (Node) expired;
+        if (entries.remove(node.key, node)) {
+            evictionPolicy.recordRemoval(node.key);
+        }
+    }
+
+    /**
+     * A cached entry together with what the timer wheel needs to know about it.
+     */
+    private final class Node extends TimerWheel.Node {
+        private final String key;
+        private volatile CacheEntry entry;
+        private volatile long accessedAtMillis;
+        private volatile long writeDeadlineMillis = Long.MAX_VALUE;
+
+        Node(String key, CacheEntry entry, long accessedAtMillis) {
+            this.key = key;
+            this.entry = entry;
+            this.accessedAtMillis = accessedAtMillis;
+        }
+
+        @Override
+        long deadlineMillis() {
+            return expireAfterAccessMillis > 0
+                    ? Math.min(writeDeadlineMillis, accessedAtMillis + expireAfterAccessMillis)
+                    : writeDeadlineMillis;
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package com.lenarsharipov.weather_api.datastructure;
+
+import com.lenarsharipov.weather_api.model.Clouds;
+import com.lenarsharipov.weather_api.model.Coord;
+import com.lenarsharipov.weather_api.model.LocationKey;
+import com.lenarsharipov.weather_api.model.Main;
+import com.lenarsharipov.weather_api.model.Rain;
+import com.lenarsharipov.weather_api.model.Snow;
+import com.lenarsharipov.weather_api.model.Sys;
+import com.lenarsharipov.weather_api.model.Weather;
+import com.lenarsharipov.weather_api.model.WeatherResponse;
+import com.lenarsharipov.weather_api.model.Wind;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves the contents of a {@link Cache} to a local file and loads them back, so a restarted
+ * service starts with a warm cache.
+ *
+ * <p>Entries are stored in a compact binary format, field by field, with the time every
+ * response was fetched, so restored entries expire when they would have expired in the saved
+ * cache. A snapshot is written to a temporary file first and then moved over the previous one, so a crash while writing never leaves a truncated snapshot behind. Snapshots
+ * are read through a memory-mapped buffer.
+ */
+public final class CacheSnapshot {
+
+    public static final Integer DEFAULT_SNAPSHOT_INTERVAL = 0;
+    public static final TimeUnit DEFAULT_SNAPSHOT_TIME_UNIT = TimeUnit.MINUTES;
+
+    private static final int MAGIC = 0x57534E50;
+    private static final int VERSION = 1;
+
+    private CacheSnapshot() {
+    }
+
+    /**
+     * Writes all entries of the cache to the file, replacing the previous snapshot.
+     *
+     * @param cache the cache to save
+     * @param file  the snapshot file
+     * @return the number of saved entries
+     * @throws IOException if the snapshot cannot be written
+     */
+    public static int write(Cache cache, Path file) throws IOException {
+        List<String> locations = new ArrayList<>();
+        List<CacheEntry> entries = new ArrayList<>();
+        for (String location : cache.getLocations()) {
+            CacheEntry entry = cache.peekEntry(LocationKey.ofName(location));
+            if (entry != null) {
+                locations.add(location);
+                entries.add(entry);
+            }
+        }
+
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path tempFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(locations.size());
+                for (int i = 0; i < locations.size(); i++) {
+                    writeString(out, locations.get(i));
+                    out.writeLong(entries.get(i).fetchedAtMillis());
+                    writeResponse(out, entries.get(i).response());
+                }
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        return locations.size();
+    }
+
+    /**
+     * Loads the entries of a snapshot into the cache. Does nothing if the file does not exist.
+     *
+     * @param file  the snapshot file
+     * @param cache the cache to fill
+     * @return the number of loaded entries
+     * @throws IOException if the file cannot be read or is not a valid snapshot
+     */
+    public static int read(Path file, Cache cache) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Not a cache snapshot: " + file);
+            }
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                String location = readString(buffer);
+                long fetchedAtMillis = buffer.getLong();
+                WeatherResponse response = readResponse(buffer);
+                cache.put(LocationKey.ofName(location), response, fetchedAtMillis);
+            }
+            return count;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated cache snapshot: " + file, e);
+        }
+    }
+
+    /**
+     * Encodes a weather response in the snapshot format, without a header.
+     *
+     * @param response the weather response
+     * @return the encoded response
+     */
+    static byte[] encode(WeatherResponse response) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeResponse(out, response);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a weather response written by {@link #encode(WeatherResponse)}.
+     *
+     * @param buffer the buffer positioned at the encoded response
+     * @return the weather response
+     * @throws BufferUnderflowException if the buffer ends before the response does
+     */
+    static WeatherResponse decode(ByteBuffer buffer) {
+        return readResponse(buffer);
+    }
+
+    private static void writeResponse(DataOutputStream out, WeatherResponse response) throws IOException {
+        Coord coord = response.coord();
+        out.writeBoolean(coord != null);
+        if (coord != null) {
+            out.writeDouble(coord.lon());
+            out.writeDouble(coord.lat());
+        }
+
+        List<Weather> weather = response.weather();
+        out.writeInt(weather == null ? -1 : weather.size());
+        if (weather != null) {
+            for (Weather condition : weather) {
+                out.writeLong(condition.id());
+                writeString(out, condition.main());
+                writeString(out, condition.description());
+                writeString(out, condition.icon());
+            }
+        }
+
+        writeString(out, response.base());
+
+        Main main = response.main();
+        out.writeBoolean(main != null);
+        if (main != null) {
+            out.writeDouble(main.temp());
+            out.writeDouble(main.feelsLike());
+            out.writeInt(main.pressure());
+            out.writeInt(main.humidity());
+            out.writeDouble(main.tempMin());
+            out.writeDouble(main.temp_max());
+            out.writeInt(main.seaLevel());
+            out.writeInt(main.groundLevel());
+        }
+
+        out.writeInt(response.visibility());
+
+        Wind wind = response.wind();
+        out.writeBoolean(wind != null);
+        if (wind != null) {
+            out.writeDouble(wind.speed());
+            out.writeInt(wind.deg());
+            out.writeDouble(wind.gust());
+        }
+
+        Clouds clouds = response.clouds();
+        out.writeBoolean(clouds != null);
+        if (clouds != null) {
+            out.writeInt(clouds.all());
+        }
+
+        Rain rain = response.rain();
+        out.writeBoolean(rain != null);
+        if (rain != null) {
+            out.writeDouble(rain.oneHour());
+        }
+
+        Snow snow = response.snow();
+        out.writeBoolean(snow != null);
+        if (snow != null) {
+            out.writeDouble(snow.oneHour());
+        }
+
+        out.writeLong(response.dt());
+
+        Sys sys = response.sys();
+        out.writeBoolean(sys != null);
+        if (sys != null) {
+            out.writeLong(sys.id());
+            out.writeInt(sys.type());
+            writeString(out, sys.message());
+            writeString(out, sys.country());
+            out.writeLong(sys.sunrise());
+            out.writeLong(sys.sunset());
+        }
+
+        out.writeInt(response.timezone());
+        out.writeInt(response.id());
+        writeString(out, response.name());
+        out.writeInt(response.cod());
+    }
+
+    private static WeatherResponse readResponse(ByteBuffer buffer) {
+        WeatherResponse.Builder builder = WeatherResponse.builder();
+
+        if (readBoolean(buffer)) {
+            builder.coord(new Coord(buffer.getDouble(), buffer.getDouble()));
+        }
+
+        int weatherCount = buffer.getInt();
+        if (weatherCount >= 0) {
+            List<Weather> weather = new ArrayList<>(weatherCount);
+            for (int i = 0; i < weatherCount; i++) {
+                weather.add(new Weather(buffer.getLong(), readString(buffer), readString(buffer), readString(buffer)));
+            }
+            builder.weather(weather);
+        }
+
+        builder.base(readString(buffer));
+
+        if (readBoolean(buffer)) {
+            builder.main(Main.builder()
+                    .temp(buffer.getDouble())
+                    .feelsLike(buffer.getDouble())
+                    .pressure(buffer.getInt())
+                    .humidity(buffer.getInt())
+                    .tempMin(buffer.getDouble())
+                    .tempMax(buffer.getDouble())
+                    .seaLevel(buffer.getInt())
+                    .groundLevel(buffer.getInt())
+                    .build());
+        }
+
+        builder.visibility(buffer.getInt());
+
+        if (readBoolean(buffer)) {
+            builder.wind(new Wind(buffer.getDouble(), buffer.getInt(), buffer.getDouble()));
+        }
+        if (readBoolean(buffer)) {
+            builder.clouds(new Clouds(buffer.getInt()));
+        }
+        if (readBoolean(buffer)) {
+            builder.rain(new Rain(buffer.getDouble()));
+        }
+        if (readBoolean(buffer)) {
+            builder.snow(new Snow(buffer.getDouble()));
+        }
+
+        builder.dt(buffer.getLong());
+
+        if (readBoolean(buffer)) {
+            builder.sys(Sys.builder()
+                    .id(buffer.getLong())
+                    .type(buffer.getInt())
+                    .message(readString(buffer))
+                    .country(readString(buffer))
+                    .sunrise(buffer.getLong())
+                    .sunset(buffer.getLong())
+                    .build());
+        }
+
+        return builder.timezone(buffer.getInt())
+                .id(buffer.getInt())
+                .name(readString(buffer))
+                .cod(buffer.getInt())
+                .build();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static boolean readBoolean(ByteBuffer buffer) {
+        return buffer.get() != 0;
+    }
+}
@@ -0,0 +1,57 @@
+package com.lenarsharipov.weather_api.datastructure;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storage for cached weather data outside the service's own {@link Cache}, for example in a
+ * key-value store shared by several JVMs.
+ *
+ * <p>Entries are keyed by the canonical location ({@link com.lenarsharipov.weather_api.model.LocationKey#name()}).
+ * A store only keeps data and the time it was fetched: services check the fetch time of every entry
+ * against their own data freshness period. Reads and writes come in batches, so a store that talks to a remote
+ * process can send a whole batch in one round trip. Implementations must be thread-safe.
+ */
+public interface CacheStore {
+
+    /**
+     * Returns the stored weather data for the specified locations.
+     *
+     * @param names the canonical locations to look up
+     * @return the stored data by canonical location; locations that are not stored are missing
+     * @throws IOException if the store cannot be reached
+     */
+    Map<String, FetchedWeather> getAll(Collection<String> names) throws IOException;
+
+    /**
+     * Stores weather data for several locations, replacing the stored data.
+     *
+     * @param entries the weather data by canonical location
+     * @throws IOException if the store cannot be reached
+     */
+    void putAll(Map<String, FetchedWeather> entries) throws IOException;
+
+    /**
+     * Returns the stored weather data for a location.
+     *
+     * @param name the canonical location to look up
+     * @return the stored data, or null if the location is not stored
+     * @throws IOException if the store cannot be reached
+     */
+    default FetchedWeather get(String name) throws IOException {
+        return getAll(List.of(name)).get(name);
+    }
+
+    /**
+     * Stores weather data for a location, replacing the stored data.
+     *
+     * @param name    the canonical location
+     * @param weather the weather data
+     * @throws IOException if the store cannot be reached
+     */
+    default void put(String name, FetchedWeather weather) throws IOException {
+        putAll(Map.of(name, weather));
+    }
+}
@@ -0,0 +1,71 @@
+package com.lenarsharipov.weather_api.datastructure;
+
+import com.lenarsharipov.weather_api.model.LocationKey;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * When the entries of a {@link Cache} stop being fresh, are refreshed and are removed.
+ *
+ * <ul>
+ *   <li>{@code timeToLive} — how long an entry stays fresh after it is fetched;</li>
+ *   <li>{@code expireAfterWrite} — removes an entry this long after it is fetched, but never
+ *   while it is still fresh;</li>
+ *   <li>{@code expireAfterAccess} — removes an entry that has not been read for this long;</li>
+ *   <li>{@code refreshAfterWrite} — marks a fresh entry for a refresh this long after it is fetched,
+ *   so the service can fetch new data before the entry expires;</li>
+ *   <li>{@code timeToLiveOverrides} — a time to live per location, for example a shorter one for
+ *   regions with severe weather.</li>
+ * </ul>
+ * A zero duration disables the rule.
+ *
+ * @param timeToLive          how long an entry stays fresh
+ * @param expireAfterWrite    how long after its fetch an entry is removed, or zero
+ * @param expireAfterAccess   how long after its last read an entry is removed, or zero
+ * @param refreshAfterWrite   how long after its fetch an entry is due for a refresh, or zero
+ * @param timeToLiveOverrides the time to live by location name or {@link LocationKey#name()}
+ *                            of a city id key
+ */
+public record ExpirationPolicy(Duration timeToLive,
+                               Duration expireAfterWrite,
+                               Duration expireAfterAccess,
+                               Duration refreshAfterWrite,
+                               Map<String, Duration> timeToLiveOverrides) {
+
+    public static final Duration DEFAULT_EXPIRE_AFTER_WRITE = Duration.ZERO;
+    public static final Duration DEFAULT_EXPIRE_AFTER_ACCESS = Duration.ZERO;
+    public static final Duration DEFAULT_REFRESH_AFTER_WRITE = Duration.ZERO;
+
+    public ExpirationPolicy {
+        timeToLive = timeToLive == null ? Cache.DEFAULT_TIME_TO_LIVE : timeToLive;
+        expireAfterWrite = expireAfterWrite == null ? DEFAULT_EXPIRE_AFTER_WRITE : expireAfterWrite;
+        expireAfterAccess = expireAfterAccess == null ? DEFAULT_EXPIRE_AFTER_ACCESS : expireAfterAccess;
+        refreshAfterWrite = refreshAfterWrite == null ? DEFAULT_REFRESH_AFTER_WRITE : refreshAfterWrite;
+        Map<String, Duration> overrides = new HashMap<>();
+        if (timeToLiveOverrides != null) {
+            timeToLiveOverrides.forEach((location, ttl) -> overrides.put(LocationKey.ofName(location).name(), ttl));
+        }
+        timeToLiveOverrides = Map.copyOf(overrides);
+    }
+
+    /**
+     * Returns a policy that only keeps entries fresh for the given time, with no other rules.
+     *
+     * @param timeToLive how long an entry stays fresh
+     * @return the expiration policy
+     */
+    public static ExpirationPolicy ofTimeToLive(Duration timeToLive) {
+        return new ExpirationPolicy(timeToLive, null, null, null, null);
+    }
+
+    /**
+     * Checks whether entries are ever removed because of their age.
+     *
+     * @return true if entries expire after write or after access
+     */
+    public boolean removesEntries() {
+        return expireAfterWrite.isPositive() || expireAfterAccess.isPositive();
+    }
+}
@@ -0,0 +1,27 @@
+package com.lenarsharipov.weather_api.datastructure;
+
+import com.lenarsharipov.weather_api.model.WeatherResponse;
+
+/**
+ * Weather data kept outside the {@link Cache}, in the {@link SharedCache}, the {@link GeoCache} or a
+ * {@link CacheStore}, with the time it was fetched in epoch milliseconds.
+ *
+ * <p>Like a {@link CacheEntry}, the data is fresh for a time to live after it is fetched, whatever
+ * its observation time.
+ *
+ * @param response        the weather data
+ * @param fetchedAtMillis when the data was fetched
+ */
+public record FetchedWeather(WeatherResponse response, long fetchedAtMillis) {
+
+    /**
+     * Checks whether the data is still fresh.
+     *
+     * @param nowMillis        the current time in epoch milliseconds
+     * @param timeToLiveMillis how long data stays fresh after it is fetched
+     * @return true if the data was fetched less than the time to live ago
+     */
+    public boolean isFresh(long nowMillis, long timeToLiveMillis) {
+        return nowMillis - fetchedAtMillis < timeToLiveMillis;
+    }
+}
@@ -0,0 +1,225 @@
+package com.lenarsharipov.weather_api.datastructure;
+
+import com.lenarsharipov.weather_api.model.Coord;
+import com.lenarsharipov.weather_api.model.WeatherResponse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * An in-memory cache of weather data by geographic position, so a lookup by coordinates can be
+ * answered with data for a point nearby.
+ *
+ * <p>Entries are indexed in a grid of cells about half the search radius wide: rows of equal
+ * latitude height, each split into as many columns as fit its circumference, so cells keep
+ * their width towards the poles. A lookup examines only the cells around the requested point
+ * and returns the nearest usable entry within the radius, measured along the Earth's surface.
+ * Every entry keeps the time its data was fetched, so callers can judge its freshness.
+ * When the cache is full, the oldest entry is removed. The cache is thread-safe.
+ */
+public class GeoCache {
+
+    public static final Integer DEFAULT_PROXIMITY_RADIUS = 2000;
+    public static final Integer DEFAULT_PROXIMITY_CACHE_SIZE = 1000;
+
+    private static final double EARTH_RADIUS_METERS = 6_371_008.8;
+    private static final double METERS_PER_DEGREE = Math.PI * EARTH_RADIUS_METERS / 180;
+    private static final int SEARCH_CELLS = 2;
+
+    private final Map<Coord, FetchedWeather> entries = new LinkedHashMap<>();
+    private final Map<Long, List<Coord>> cells = new HashMap<>();
+    private final int capacity;
+    private final double radiusMeters;
+    private final double cellDegrees;
+    private final int rows;
+
+    /**
+     * Creates a geo cache.
+     *
+     * @param capacity     the maximum number of entries; 0 disables the cache
+     * @param radiusMeters the distance within which an entry may answer a lookup, in meters
+     */
+    public GeoCache(Integer capacity, Integer radiusMeters) {
+        this.capacity = capacity == null
+                ? DEFAULT_PROXIMITY_CACHE_SIZE
+                : capacity;
+        this.radiusMeters = radiusMeters == null
+                ? DEFAULT_PROXIMITY_RADIUS
+                : radiusMeters;
+        this.rows = (int) Math.ceil(180 / (this.radiusMeters / SEARCH_CELLS / METERS_PER_DEGREE));
+        this.cellDegrees = 180.0 / rows;
+    }
+
+    /**
+     * Returns the weather data of the nearest usable entry within the radius of a point.
+     *
+     * @param lat    the latitude of the point
+     * @param lon    the longitude of the point
+     * @param usable decides whether an entry may be returned, for example whether it is fresh
+     * @return the weather data, or null if no usable entry is within the radius
+     */
+    public WeatherResponse get(double lat, double lon, Predicate<FetchedWeather> usable) {
+        if (capacity == 0) {
+            return null;
+        }
+        int row = rowOf(lat);
+        WeatherResponse nearest = null;
+        double nearestDistance = radiusMeters;
+        synchronized (this) {
+            for (int r = Math.max(0, row - SEARCH_CELLS); r <= Math.min(rows - 1, row + SEARCH_CELLS); r++) {
+                int columns = columnsOf(r);
+                int column = columnOf(lon, columns);
+                boolean wholeRow = columns <= 2 * SEARCH_CELLS + 1;
+                int first = wholeRow ? 0 : column - SEARCH_CELLS;
+                int last = wholeRow ? columns - 1 : column + SEARCH_CELLS;
+                for (int c = first; c <= last; c++) {
+                    List<Coord> points = cells.get(cellKey(r, Math.floorMod(c, columns)));
+                    if (points == null) {
+                        continue;
+                    }
+                    for (Coord point : points) {
+                        double distance = distanceMeters(lat, lon, point.lat(), point.lon());
+                        FetchedWeather weather = entries.get(point);
+                        if (distance <= nearestDistance && usable.test(weather)) {
+                            nearest = weather.response();
+                            nearestDistance = distance;
+                        }
+                    }
+                }
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Stores weather data fetched just now at the position it reports in {@link WeatherResponse#coord()}.
+     * Data without a position is ignored.
+     *
+     * @param response the weather data to store
+     */
+    public void put(WeatherResponse response) {
+        put(response, System.currentTimeMillis());
+    }
+
+    /**
+     * Stores the weather data at the position it reports in {@link WeatherResponse#coord()}.
+     * Data without a position is ignored.
+     *
+     * @param response        the weather data to store
+     * @param fetchedAtMillis when the data was fetched, in epoch milliseconds
+     */
+    public void put(WeatherResponse response, long fetchedAtMillis) {
+        if (response.coord() != null) {
+            put(response.coord().lat(), response.coord().lon(), response, fetchedAtMillis);
+        }
+    }
+
+    /**
+     * Stores the weather data at a point, replacing the data stored at the same point.
+     * If the cache is full, the oldest entry is removed first.
+     *
+     * @param lat             the latitude of the point
+     * @param lon             the longitude of the point
+     * @param response        the weather data to store
+     * @param fetchedAtMillis when the data was fetched, in epoch milliseconds
+     */
+    public synchronized void put(double lat, double lon, WeatherResponse response, long fetchedAtMillis) {
+        if (capacity == 0) {
+            return;
+        }
+        Coord point = new Coord(lon, lat);
+        if (entries.remove(point) == null) {
+            cells.computeIfAbsent(cellKeyOf(point), key -> new ArrayList<>(1)).add(point);
+        }
+        entries.put(point, new FetchedWeather(response, fetchedAtMillis));
+        if (entries.size() > capacity) {
+            Iterator<Coord> eldest = entries.keySet().iterator();
+            removeFromCell(eldest.next());
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Clears all entries from the cache.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        cells.clear();
+    }
+
+    /**
+     * Returns the current number of entries.
+     *
+     * @return the number of entries in the cache
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns a key that is shared by points in the same grid cell, so concurrent lookups
+     * of nearby points can share a request.
+     *
+     * @param lat the latitude of the point
+     * @param lon the longitude of the point
+     * @return the cell key
+     */
+    public long cellKeyOf(double lat, double lon) {
+        int row = rowOf(lat);
+        return cellKey(row, columnOf(lon, columnsOf(row)));
+    }
+
+    /**
+     * Returns the great-circle distance between two points.
+     *
+     * @return the distance in meters
+     */
+    static double distanceMeters(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private void removeFromCell(Coord point) {
+        long key = cellKeyOf(point);
+        List<Coord> points = cells.get(key);
+        points.remove(point);
+        if (points.isEmpty()) {
+            cells.remove(key);
+        }
+    }
+
+    private long cellKeyOf(Coord point) {
+        return cellKeyOf(point.lat(), point.lon());
+    }
+
+    private int rowOf(double lat) {
+        return Math.min(rows - 1, Math.max(0, (int) Math.floor((lat + 90) / cellDegrees)));
+    }
+
+    /**
+     * Returns the number of columns of a row, so that each column is at least one cell wide
+     * everywhere in the row, including its edge nearest to the pole.
+     */
+    private int columnsOf(int row) {
+        double poleward = Math.max(Math.abs(row * cellDegrees - 90), Math.abs((row + 1) * cellDegrees - 90));
+        double circumference = 360 * Math.cos(Math.toRadians(Math.min(90, poleward)));
+        return Math.max(1, (int) Math.floor(circumference / cellDegrees));
+    }
+
+    private static int columnOf(double lon, int columns) {
+        return Math.floorMod((int) Math.floor((lon + 180) / 360 * columns), columns);
+    }
+
+    private static long cellKey(int row, int column) {
+        return (long) row << 32 | column;
+    }
+}
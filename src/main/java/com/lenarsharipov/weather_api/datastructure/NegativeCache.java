@@ -0,0 +1,144 @@
+package com.lenarsharipov.weather_api.datastructure;
+
+import com.lenarsharipov.weather_api.exception.HttpException;
+import com.lenarsharipov.weather_api.model.LocationKey;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An in-memory cache of failed lookups, so repeated requests for an unknown location
+ * fail without a round trip to the external API.
+ *
+ * <p>Only permanent failures are stored: responses with status 400 (bad request) or
+ * 404 (city not found). Each entry expires after the configured time to live. When the
+ * cache is full, the oldest entry is removed. The cache is separate from {@link Cache},
+ * so failed lookups never take space from weather data. The cache is thread-safe.
+ */
+public class NegativeCache {
+
+    public static final Integer DEFAULT_NEGATIVE_CACHE_SIZE = 1000;
+    public static final Duration DEFAULT_NEGATIVE_CACHE_TTL = Duration.ofSeconds(60);
+
+    private final Map<String, Failure> entries;
+    private final int capacity;
+    private final long ttlNanos;
+
+    private record Failure(String message, int statusCode, long expiresAtNanos) {
+    }
+
+    /**
+     * Creates a negative cache.
+     *
+     * @param capacity the maximum number of entries; 0 disables the cache
+     * @param ttl      the time to live of an entry
+     */
+    public NegativeCache(Integer capacity, Duration ttl) {
+        this.capacity = capacity == null
+                ? DEFAULT_NEGATIVE_CACHE_SIZE
+                : capacity;
+        this.ttlNanos = (ttl == null
+                ? DEFAULT_NEGATIVE_CACHE_TTL
+                : ttl).toNanos();
+        this.entries = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Failure> eldest) {
+                return size() > NegativeCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Checks whether a failure is permanent and may be stored in the negative cache.
+     *
+     * @param exception the failure of a lookup
+     * @return true if the failure has status 400 or 404
+     */
+    public static boolean isCacheable(HttpException exception) {
+        return exception.getStatusCode() == 400 || exception.getStatusCode() == 404;
+    }
+
+    /**
+     * Returns the stored failure for the specified location as a new exception.
+     *
+     * @param location the location to look up
+     * @return the failure, or null if the location is not stored or its entry has expired
+     */
+    public HttpException get(String location) {
+        return get(LocationKey.of(location));
+    }
+
+    /**
+     * Returns the stored failure for the specified location key as a new exception.
+     *
+     * @param key the location key to look up
+     * @return the failure, or null if the location is not stored or its entry has expired
+     */
+    public HttpException get(LocationKey key) {
+        if (capacity == 0) {
+            return null;
+        }
+        String normalizedKey = key.name();
+        Failure failure;
+        synchronized (entries) {
+            failure = entries.get(normalizedKey);
+            if (failure != null && failure.expiresAtNanos() - System.nanoTime() <= 0) {
+                entries.remove(normalizedKey);
+                return null;
+            }
+        }
+        return failure == null
+                ? null
+                : new HttpException(failure.message(), failure.statusCode());
+    }
+
+    /**
+     * Stores the failure for the specified location if it is permanent.
+     * Other failures are ignored.
+     *
+     * @param location  the location the lookup failed for
+     * @param exception the failure of the lookup
+     */
+    public void put(String location, HttpException exception) {
+        put(LocationKey.of(location), exception);
+    }
+
+    /**
+     * Stores the failure for the specified location key if it is permanent.
+     *
+     * @param key       the location key the lookup failed for
+     * @param exception the failure of the lookup
+     */
+    public void put(LocationKey key, HttpException exception) {
+        if (capacity == 0 || !isCacheable(exception)) {
+            return;
+        }
+        String normalizedKey = key.name();
+        Failure failure = new Failure(exception.getMessage(), exception.getStatusCode(), System.nanoTime() + ttlNanos);
+        synchronized (entries) {
+            entries.remove(normalizedKey);
+            entries.put(normalizedKey, failure);
+        }
+    }
+
+    /**
+     * Clears all entries from the cache.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Returns the current number of entries, including expired entries not yet removed.
+     *
+     * @return the number of entries in the cache
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.lenarsharipov.weather_api.datastructure;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link CacheStore} in a key-value store that speaks the Redis protocol (RESP), such as Redis
+ * or Valkey, so several JVMs can share one warm cache.
+ *
+ * <p>A batch read is a single {@code MGET}; a batch write sends one {@code SET} per entry, all
+ * written before the replies are read (pipelining), so every batch takes one round trip. Values
+ * are a format byte, the fetch time and the data in the compact binary format of {@link CacheSnapshot};
+ * values in an unknown format are treated as missing. Keys get a prefix, and entries can be given a time
+ * to live so the store drops data nobody refreshes.
+ *
+ * <p>The store keeps one connection, opened on first use. Requests are sent one batch at a time;
+ * after an error the connection is closed and the next request opens a new one. The store is
+ * thread-safe; it guards the connection with a lock rather than a monitor, so virtual threads
+ * waiting for a reply do not pin their carrier threads. It is not closed by the services that use it.
+ */
+public class RespCacheStore implements CacheStore, Closeable {
+
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(2);
+    public static final Duration DEFAULT_TTL = Duration.ZERO;
+    public static final String DEFAULT_KEY_PREFIX = "weather:";
+
+    private static final byte FORMAT = 1;
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] MGET = "MGET".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SET = "SET".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PX = "PX".getBytes(StandardCharsets.US_ASCII);
+
+    private final String host;
+    private final int port;
+    private final int timeoutMillis;
+    private final byte[] ttlMillis;
+    private final String keyPrefix;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private Socket socket;
+    private InputStream in;
+    private OutputStream out;
+
+    /**
+     * Creates a store with the default timeout and key prefix, whose entries never expire.
+     *
+     * @param host the host of the key-value store
+     * @param port the port of the key-value store
+     */
+    public RespCacheStore(String host, int port) {
+        this(host, port, DEFAULT_TIMEOUT, DEFAULT_TTL, DEFAULT_KEY_PREFIX);
+    }
+
+    /**
+     * Creates a store.
+     *
+     * @param host      the host of the key-value store
+     * @param port      the port of the key-value store
+     * @param timeout   the timeout of connecting and of waiting for a reply
+     * @param ttl       the time to live of written entries; zero keeps them until the store evicts them
+     * @param keyPrefix the prefix of every key
+     */
+    public RespCacheStore(String host, int port, Duration timeout, Duration ttl, String keyPrefix) {
+        this.host = host;
+        this.port = port;
+        this.timeoutMillis = (int) timeout.toMillis();
+        this.ttlMillis = ttl.isZero() ? null : Long.toString(ttl.toMillis()).getBytes(StandardCharsets.US_ASCII);
+        this.keyPrefix = keyPrefix;
+    }
+
+    @Override
+    public Map<String, FetchedWeather> getAll(Collection<String> names) throws IOException {
+        List<String> distinctNames = new ArrayList<>(new LinkedHashSet<>(names));
+        if (distinctNames.isEmpty()) {
+            return Map.of();
+        }
+        byte[][] command = new byte[distinctNames.size() + 1][];
+        command[0] = MGET;
+        for (int i = 0; i < distinctNames.size(); i++) {
+            command[i + 1] = key(distinctNames.get(i));
+        }
+        Object reply = execute(List.<byte[][]>of(command)).get(0);
+        if (!(reply instanceof List<?> values) || values.size() != distinctNames.size()) {
+            throw new IOException("Unexpected reply to MGET");
+        }
+
+        Map<String, FetchedWeather> found = new HashMap<>();
+        for (int i = 0; i < values.size(); i++) {
+            if (values.get(i) instanceof byte[] value) {
+                FetchedWeather weather = decode(value);
+                if (weather != null) {
+                    found.put(distinctNames.get(i), weather);
+                }
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public void putAll(Map<String, FetchedWeather> entries) throws IOException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        List<byte[][]> commands = new ArrayList<>(entries.size());
+        for (Map.Entry<String, FetchedWeather> entry : entries.entrySet()) {
+            byte[] key = key(entry.getKey());
+            byte[] value = encode(entry.getValue());
+            commands.add(ttlMillis == null
+                    ? new byte[][]{SET, key, value}
+                    : new byte[][]{SET, key, value, PX, ttlMillis});
+        }
+        execute(commands);
+    }
+
+    /**
+     * Closes the connection to the key-value store.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            disconnect();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sends the commands in one write and reads their replies. An error reply fails the batch
+     * after all replies are read, so the connection stays usable.
+     */
+    private List<Object> execute(List<byte[][]> commands) throws IOException {
+        List<Object> replies = new ArrayList<>(commands.size());
+        lock.lock();
+        try {
+            connect();
+            for (byte[][] command : commands) {
+                writeCommand(command);
+            }
+            out.flush();
+            for (int i = 0; i < commands.size(); i++) {
+                replies.add(readReply());
+            }
+        } catch (IOException | RuntimeException e) {
+            disconnect();
+            throw e;
+        } finally {
+            lock.unlock();
+        }
+        for (Object reply : replies) {
+            if (reply instanceof RespError error) {
+                throw new IOException("Key-value store error: " + error.message());
+            }
+        }
+        return replies;
+    }
+
+    private void connect() throws IOException {
+        if (socket != null) {
+            return;
+        }
+        Socket newSocket = new Socket();
+        try {
+            newSocket.connect(new InetSocketAddress(host, port), timeoutMillis);
+            newSocket.setSoTimeout(timeoutMillis);
+            newSocket.setTcpNoDelay(true);
+        } catch (IOException e) {
+            newSocket.close();
+            throw e;
+        }
+        socket = newSocket;
+        in = new BufferedInputStream(newSocket.getInputStream());
+        out = new BufferedOutputStream(newSocket.getOutputStream());
+    }
+
+    private void disconnect() {
+        if (socket == null) {
+            return;
+        }
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // the connection is dropped anyway
+        }
+        socket = null;
+        in = null;
+        out = null;
+    }
+
+    private void writeCommand(byte[][] command) throws IOException {
+        out.write('*');
+        out.write(Integer.toString(command.length).getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+        for (byte[] argument : command) {
+            out.write('$');
+            out.write(Integer.toString(argument.length).getBytes(StandardCharsets.US_ASCII));
+            out.write(CRLF);
+            out.write(argument);
+            out.write(CRLF);
+        }
+    }
+
+    /**
+     * Reads one reply: a String for a simple string, a Long for an integer, a byte array or null
+     * for a bulk string, a List or null for an array, and a {@link RespError} for an error.
+     */
+    private Object readReply() throws IOException {
+        int type = in.read();
+        String line = readLine();
+        switch (type) {
+            case '+':
+                return line;
+            case '-':
+                return new RespError(line);
+            case ':':
+                return Long.parseLong(line);
+            case '$': {
+                int length = Integer.parseInt(line);
+                if (length < 0) {
+                    return null;
+                }
+                byte[] value = in.readNBytes(length);
+                if (value.length < length || in.read() != '\r' || in.read() != '\n') {
+                    throw new EOFException("Truncated reply from the key-value store");
+                }
+                return value;
+            }
+            case '*': {
+                int count = Integer.parseInt(line);
+                if (count < 0) {
+                    return null;
+                }
+                List<Object> elements = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    elements.add(readReply());
+                }
+                return elements;
+            }
+            case -1:
+                throw new EOFException("Connection to the key-value store closed");
+            default:
+                throw new IOException("Unexpected reply type from the key-value store: " + (char) type);
+        }
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\r') {
+            if (b == -1) {
+                throw new EOFException("Connection to the key-value store closed");
+            }
+            line.append((char) b);
+        }
+        if (in.read() != '\n') {
+            throw new IOException("Malformed reply from the key-value store");
+        }
+        return line.toString();
+    }
+
+    private byte[] key(String name) {
+        return (keyPrefix + name).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] encode(FetchedWeather weather) {
+        byte[] encoded = CacheSnapshot.encode(weather.response());
+        return ByteBuffer.allocate(1 + Long.BYTES + encoded.length)
+                .put(FORMAT)
+                .putLong(weather.fetchedAtMillis())
+                .put(encoded)
+                .array();
+    }
+
+    private static FetchedWeather decode(byte[] value) {
+        if (value.length == 0 || value[0] != FORMAT) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(value, 1, value.length - 1);
+            long fetchedAtMillis = buffer.getLong();
+            return new FetchedWeather(CacheSnapshot.decode(buffer), fetchedAtMillis);
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    private record RespError(String message) {
+    }
+}
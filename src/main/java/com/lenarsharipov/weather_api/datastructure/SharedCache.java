@@ -0,0 +1,186 @@
+package com.lenarsharipov.weather_api.datastructure;
+
+import com.lenarsharipov.weather_api.model.LocationKey;
+import com.lenarsharipov.weather_api.model.Weather;
+import com.lenarsharipov.weather_api.model.WeatherResponse;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A second-level cache shared by several weather services, so data fetched by one service can
+ * serve a cache miss of another.
+ *
+ * <p>Entries are keyed by the canonical location ({@link LocationKey#name()}) and keep the newest
+ * observation of a location together with the time it was fetched. The cache does not decide
+ * freshness: every service checks the fetch time against its own data freshness period before
+ * using an entry.
+ * The cache is bounded by a memory budget, using an estimate of the size of every entry; when the
+ * budget is exceeded, the least recently used entries are removed. The cache is thread-safe.
+ */
+public class SharedCache {
+
+    public static final Long DEFAULT_SHARED_CACHE_MAX_BYTES = 0L;
+
+    private static final int ENTRY_OVERHEAD_BYTES = 512;
+    private static final int STRING_OVERHEAD_BYTES = 48;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxBytes;
+    private long usedBytes;
+
+    private record Entry(FetchedWeather weather, long bytes) {
+    }
+
+    /**
+     * Creates a shared cache.
+     *
+     * @param maxBytes the memory budget, in bytes; 0 disables the cache
+     */
+    public SharedCache(Long maxBytes) {
+        this.maxBytes = maxBytes == null
+                ? DEFAULT_SHARED_CACHE_MAX_BYTES
+                : maxBytes;
+    }
+
+    /**
+     * Returns the newest weather data stored for a location, whatever its age.
+     *
+     * @param key the location key to look up
+     * @return the weather data, or null if the location is not stored
+     */
+    public WeatherResponse get(LocationKey key) {
+        FetchedWeather weather = getEntry(key);
+        return weather == null ? null : weather.response();
+    }
+
+    /**
+     * Returns the newest weather data stored for a location with the time it was fetched.
+     *
+     * @param key the location key to look up
+     * @return the weather data and its fetch time, or null if the location is not stored
+     */
+    public FetchedWeather getEntry(LocationKey key) {
+        if (maxBytes == 0) {
+            return null;
+        }
+        synchronized (entries) {
+            Entry entry = entries.get(key.name());
+            return entry == null ? null : entry.weather();
+        }
+    }
+
+    /**
+     * Stores weather data fetched just now for a location unless the stored data is newer.
+     *
+     * @param key      the location key
+     * @param response the weather data
+     */
+    public void put(LocationKey key, WeatherResponse response) {
+        put(key, response, System.currentTimeMillis());
+    }
+
+    /**
+     * Stores weather data for a location unless the stored data is newer: it has a later observation,
+     * or the same observation fetched later. Entries that do not fit into the memory budget on their
+     * own are not stored.
+     *
+     * @param key             the location key
+     * @param response        the weather data
+     * @param fetchedAtMillis when the data was fetched, in epoch milliseconds
+     */
+    public void put(LocationKey key, WeatherResponse response, long fetchedAtMillis) {
+        if (maxBytes == 0) {
+            return;
+        }
+        long bytes = sizeOf(key.name(), response);
+        if (bytes > maxBytes) {
+            return;
+        }
+        synchronized (entries) {
+            Entry existing = entries.get(key.name());
+            if (existing != null) {
+                WeatherResponse existingResponse = existing.weather().response();
+                if (existingResponse.dt() > response.dt()
+                        || existingResponse.dt() == response.dt()
+                        && existing.weather().fetchedAtMillis() > fetchedAtMillis) {
+                    return;
+                }
+                usedBytes -= existing.bytes();
+            }
+            entries.put(key.name(), new Entry(new FetchedWeather(response, fetchedAtMillis), bytes));
+            usedBytes += bytes;
+            Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            while (usedBytes > maxBytes) {
+                usedBytes -= eldest.next().getValue().bytes();
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Checks whether the cache stores anything.
+     *
+     * @return false if the cache was created with a memory budget of 0
+     */
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * Returns the estimated memory used by the stored entries.
+     *
+     * @return the estimated size of all entries, in bytes
+     */
+    public long usedBytes() {
+        synchronized (entries) {
+            return usedBytes;
+        }
+    }
+
+    /**
+     * Returns the number of stored locations.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            usedBytes = 0;
+        }
+    }
+
+    /**
+     * Estimates the memory taken by an entry: a fixed amount for the response objects plus the
+     * size of its strings.
+     */
+    static long sizeOf(String name, WeatherResponse response) {
+        long bytes = ENTRY_OVERHEAD_BYTES + sizeOf(name) + sizeOf(response.name()) + sizeOf(response.base());
+        if (response.sys() != null) {
+            bytes += sizeOf(response.sys().country()) + sizeOf(response.sys().message());
+        }
+        List<Weather> weather = response.weather();
+        if (weather != null) {
+            for (Weather condition : weather) {
+                bytes += STRING_OVERHEAD_BYTES
+                        + sizeOf(condition.main()) + sizeOf(condition.description()) + sizeOf(condition.icon());
+            }
+        }
+        return bytes;
+    }
+
+    private static long sizeOf(String value) {
+        return value == null ? 0 : STRING_OVERHEAD_BYTES + 2L * value.length();
+    }
+}
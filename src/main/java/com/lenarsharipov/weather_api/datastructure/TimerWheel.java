@@ -0,0 +1,191 @@
+package com.lenarsharipov.weather_api.datastructure;
+
+import java.util.function.Consumer;
+
+/**
+ * A hierarchical timing wheel that finds the nodes whose deadline has passed without scanning
+ * all of them.
+ *
+ * <p>The wheel has several levels of buckets; each level covers a coarser span of time than the one
+ * below it (about a second, a minute, an hour, most of a day and a few days per bucket). A node is
+ * kept in the bucket of the finest level whose range still covers its deadline. When the wheel
+ * advances, it visits only the buckets whose time has passed: nodes that are due are expired,
+ * the others cascade down to a finer level. Scheduling, descheduling and expiring a node take
+ * constant time, and advancing takes amortized constant time per node.
+ *
+ * <p>A node's deadline is read again when its bucket is visited, so a deadline that moved later,
+ * for example after a read of an entry that expires after access, only costs a cascade.
+ * The wheel is not thread-safe: its owner must serialize calls to it.
+ */
+final class TimerWheel {
+
+    private static final int[] BUCKETS = {64, 64, 32, 4, 1};
+    private static final long[] SPANS = {
+            1L << 10, // 1.02 seconds
+            1L << 16, // 1.09 minutes
+            1L << 22, // 1.17 hours
+            1L << 26, // 18.6 hours
+            1L << 28, // 3.1 days
+            1L << 28,
+    };
+    private static final int[] SHIFT = {10, 16, 22, 26, 28};
+
+    private final Node[][] wheel = new Node[BUCKETS.length][];
+    private long nowMillis;
+
+    /**
+     * Creates an empty wheel.
+     *
+     * @param nowMillis the current time in epoch milliseconds
+     */
+    TimerWheel(long nowMillis) {
+        this.nowMillis = nowMillis;
+        for (int i = 0; i < BUCKETS.length; i++) {
+            wheel[i] = new Node[BUCKETS[i]];
+            for (int j = 0; j < BUCKETS[i]; j++) {
+                wheel[i][j] = new Sentinel();
+            }
+        }
+    }
+
+    /**
+     * Adds a node at its current deadline, or moves it there if it is already scheduled.
+     * A node whose deadline has passed expires at the next advance.
+     *
+     * @param node the node to schedule
+     */
+    void schedule(Node node) {
+        deschedule(node);
+        Node sentinel = findBucket(Math.max(node.deadlineMillis(), nowMillis));
+        node.prev = sentinel.prev;
+        node.next = sentinel;
+        sentinel.prev.next = node;
+        sentinel.prev = node;
+    }
+
+    /**
+     * Removes a node from the wheel. Does nothing if the node is not scheduled.
+     *
+     * @param node the node to remove
+     */
+    void deschedule(Node node) {
+        if (node.next == null) {
+            return;
+        }
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = null;
+        node.next = null;
+    }
+
+    /**
+     * Advances the wheel to the current time and passes every node whose deadline has passed
+     * to the consumer, after removing it from the wheel.
+     *
+     * @param currentTimeMillis the current time in epoch milliseconds
+     * @param expired           receives the expired nodes
+     */
+    void advance(long currentTimeMillis, Consumer<Node> expired) {
+        long previousTimeMillis = nowMillis;
+        if (currentTimeMillis <= previousTimeMillis) {
+            return;
+        }
+        nowMillis = currentTimeMillis;
+        for (int i = 0; i < SHIFT.length; i++) {
+            long previousTicks = previousTimeMillis >>> SHIFT[i];
+            long delta = (currentTimeMillis >>> SHIFT[i]) - previousTicks;
+            if (delta <= 0) {
+                break;
+            }
+            expire(i, previousTicks, delta, expired);
+        }
+    }
+
+    /**
+     * Removes every node from the wheel.
+     */
+    void clear() {
+        for (Node[] buckets : wheel) {
+            for (Node sentinel : buckets) {
+                Node node = sentinel.next;
+                while (node != sentinel) {
+                    Node next = node.next;
+                    node.prev = null;
+                    node.next = null;
+                    node = next;
+                }
+                sentinel.prev = sentinel;
+                sentinel.next = sentinel;
+            }
+        }
+    }
+
+    /**
+     * Visits the buckets of a level whose time has passed since the previous advance.
+     */
+    private void expire(int level, long previousTicks, long delta, Consumer<Node> expired) {
+        Node[] buckets = wheel[level];
+        int mask = buckets.length - 1;
+        int steps = (int) Math.min(1 + delta, buckets.length);
+        int start = (int) (previousTicks & mask);
+        for (int i = start; i < start + steps; i++) {
+            Node sentinel = buckets[i & mask];
+            Node node = sentinel.next;
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+            while (node != sentinel) {
+                Node next = node.next;
+                node.prev = null;
+                node.next = null;
+                if (node.deadlineMillis() <= nowMillis) {
+                    expired.accept(node);
+                } else {
+                    schedule(node);
+                }
+                node = next;
+            }
+        }
+    }
+
+    /**
+     * Returns the sentinel of the bucket that covers the deadline.
+     */
+    private Node findBucket(long deadlineMillis) {
+        long duration = deadlineMillis - nowMillis;
+        int last = wheel.length - 1;
+        for (int i = 0; i < last; i++) {
+            if (duration < SPANS[i + 1]) {
+                long ticks = deadlineMillis >>> SHIFT[i];
+                return wheel[i][(int) (ticks & (wheel[i].length - 1))];
+            }
+        }
+        return wheel[last][0];
+    }
+
+    /**
+     * An element of the wheel. Subclasses tell when they are due.
+     */
+    abstract static class Node {
+        private Node prev;
+        private Node next;
+
+        /**
+         * Returns when the node is due.
+         *
+         * @return the deadline in epoch milliseconds
+         */
+        abstract long deadlineMillis();
+    }
+
+    private static final class Sentinel extends Node {
+        Sentinel() {
+            super.prev = this;
+            super.next = this;
+        }
+
+        @Override
+        long deadlineMillis() {
+            return Long.MAX_VALUE;
+        }
+    }
+}
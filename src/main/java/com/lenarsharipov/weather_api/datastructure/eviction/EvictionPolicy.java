@@ -0,0 +1,40 @@
+package com.lenarsharipov.weather_api.datastructure.eviction;
+
+/**
+ * Decides which entry leaves a bounded cache when a new one arrives.
+ * <p>
+ * A policy only tracks keys; the cache owns the values. Every operation runs in constant time.
+ * Implementations are not thread-safe: the owning cache must serialize calls to a policy.
+ */
+public interface EvictionPolicy {
+
+    /**
+     * Records a read or an update of a key that is already in the cache.
+     *
+     * @param key the accessed key
+     */
+    void recordAccess(String key);
+
+    /**
+     * Records the insertion of a key that is not yet in the cache.
+     * <p>
+     * If the cache would exceed its capacity, the policy selects a victim and stops tracking it.
+     * The victim may be the inserted key itself, which means the policy refused to admit it.
+     *
+     * @param key the inserted key
+     * @return the key to evict, or null if there is still room
+     */
+    String recordInsertion(String key);
+
+    /**
+     * Records the removal of a key from the cache.
+     *
+     * @param key the removed key
+     */
+    void recordRemoval(String key);
+
+    /**
+     * Forgets all tracked keys.
+     */
+    void clear();
+}
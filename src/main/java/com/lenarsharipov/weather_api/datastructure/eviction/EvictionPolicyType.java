@@ -0,0 +1,43 @@
+package com.lenarsharipov.weather_api.datastructure.eviction;
+
+import java.util.function.IntFunction;
+
+/**
+ * Represents the eviction policy of the cache.
+ * The policy determines which entry is removed when the cache is full.
+ */
+public enum EvictionPolicyType {
+
+    /**
+     * Least-recently-used.
+     * Evicts the entry that was read or written the longest time ago.
+     */
+    LRU(LruPolicy::new),
+
+    /**
+     * Window TinyLFU.
+     * New entries pass through a small LRU window and then have to beat the main region's
+     * victim on estimated access frequency to be admitted, so a burst of one-off lookups
+     * cannot flush frequently used entries out of the cache.
+     */
+    W_TINY_LFU(WTinyLfuPolicy::new);
+
+    private final IntFunction<EvictionPolicy> policyFactory;
+
+    /**
+     * @param policyFactory the factory that creates the policy for a given capacity
+     */
+    EvictionPolicyType(IntFunction<EvictionPolicy> policyFactory) {
+        this.policyFactory = policyFactory;
+    }
+
+    /**
+     * Creates a new instance of the policy.
+     *
+     * @param capacity the maximum number of entries in the cache
+     * @return the created policy
+     */
+    public EvictionPolicy createPolicy(int capacity) {
+        return policyFactory.apply(capacity);
+    }
+}
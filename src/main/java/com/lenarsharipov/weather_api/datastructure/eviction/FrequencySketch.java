@@ -0,0 +1,97 @@
+package com.lenarsharipov.weather_api.datastructure.eviction;
+
+import java.util.Arrays;
+
+/**
+ * A count-min sketch that estimates how often a key has been seen.
+ * <p>
+ * Counters are 4 bits wide and packed sixteen to a {@code long}, with four counters per key.
+ * When the number of recorded occurrences reaches ten times the table size, all counters are halved
+ * so that old popularity fades and the sketch follows the current workload.
+ */
+class FrequencySketch {
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = {0x97CB3127, 0xB6BC4A63, 0x2F2D7FC9, 0xE3B3C5A9};
+
+    private final long[] table;
+    private final int counterMask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int capacity) {
+        int counters = Integer.highestOneBit(Math.max(16, capacity * 4 - 1)) << 1;
+        this.table = new long[counters >>> 4];
+        this.counterMask = counters - 1;
+        this.sampleSize = 10 * counters;
+    }
+
+    /**
+     * Returns the estimated number of occurrences of the key, at most 15.
+     *
+     * @param key the key to look up
+     * @return the estimated frequency
+     */
+    int frequency(String key) {
+        int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < SEEDS.length; i++) {
+            frequency = Math.min(frequency, counter(indexOf(hash, i)));
+        }
+        return frequency;
+    }
+
+    /**
+     * Records an occurrence of the key.
+     *
+     * @param key the key to record
+     */
+    void increment(String key) {
+        int hash = spread(key.hashCode());
+        for (int i = 0; i < SEEDS.length; i++) {
+            incrementAt(indexOf(hash, i));
+        }
+        if (++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Forgets all recorded occurrences.
+     */
+    void clear() {
+        Arrays.fill(table, 0L);
+        additions = 0;
+    }
+
+    private int indexOf(int hash, int i) {
+        int h = (hash + SEEDS[i]) * SEEDS[i];
+        return (h ^ (h >>> 16)) & counterMask;
+    }
+
+    private int counter(int index) {
+        int offset = (index & 15) << 2;
+        return (int) ((table[index >>> 4] >>> offset) & 0xFL);
+    }
+
+    private void incrementAt(int index) {
+        int slot = index >>> 4;
+        int offset = (index & 15) << 2;
+        if (((table[slot] >>> offset) & 0xFL) < MAX_COUNT) {
+            table[slot] += 1L << offset;
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions >>>= 1;
+    }
+
+    private static int spread(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 15);
+    }
+}
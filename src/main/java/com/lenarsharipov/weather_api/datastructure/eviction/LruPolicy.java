@@ -0,0 +1,48 @@
+package com.lenarsharipov.weather_api.datastructure.eviction;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * A least-recently-used eviction policy.
+ * <p>
+ * Keys are kept in access order; the least recently used key is the first one in the set.
+ */
+public class LruPolicy implements EvictionPolicy {
+
+    private final int capacity;
+    private final LinkedHashSet<String> order = new LinkedHashSet<>();
+
+    public LruPolicy(int capacity) {
+        this.capacity = capacity;
+    }
+
+    @Override
+    public void recordAccess(String key) {
+        if (order.remove(key)) {
+            order.add(key);
+        }
+    }
+
+    @Override
+    public String recordInsertion(String key) {
+        order.add(key);
+        if (order.size() <= capacity) {
+            return null;
+        }
+        Iterator<String> iterator = order.iterator();
+        String victim = iterator.next();
+        iterator.remove();
+        return victim;
+    }
+
+    @Override
+    public void recordRemoval(String key) {
+        order.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        order.clear();
+    }
+}
@@ -0,0 +1,99 @@
+package com.lenarsharipov.weather_api.datastructure.eviction;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * A Window TinyLFU eviction policy.
+ * <p>
+ * The cache is split into a small admission window (1% of the capacity) and a main region.
+ * The main region is a segmented LRU: entries start in the probation segment and are promoted
+ * to the protected segment (80% of the main region) when they are accessed again.
+ * <p>
+ * A new key always enters the window. When the window overflows, its oldest key becomes a
+ * candidate for the main region and competes with the probation segment's least recently used
+ * key; the one with the lower estimated frequency, according to a {@link FrequencySketch},
+ * is evicted.
+ */
+public class WTinyLfuPolicy implements EvictionPolicy {
+
+    private final int windowCapacity;
+    private final int mainCapacity;
+    private final int protectedCapacity;
+
+    private final LinkedHashSet<String> window = new LinkedHashSet<>();
+    private final LinkedHashSet<String> probation = new LinkedHashSet<>();
+    private final LinkedHashSet<String> protectedSegment = new LinkedHashSet<>();
+    private final FrequencySketch sketch;
+
+    public WTinyLfuPolicy(int capacity) {
+        this.windowCapacity = Math.max(1, capacity / 100);
+        this.mainCapacity = capacity - windowCapacity;
+        this.protectedCapacity = (int) (mainCapacity * 0.8);
+        this.sketch = new FrequencySketch(capacity);
+    }
+
+    @Override
+    public void recordAccess(String key) {
+        sketch.increment(key);
+        if (window.remove(key)) {
+            window.add(key);
+        } else if (probation.remove(key)) {
+            protectedSegment.add(key);
+            if (protectedSegment.size() > protectedCapacity) {
+                probation.add(removeFirst(protectedSegment));
+            }
+        } else if (protectedSegment.remove(key)) {
+            protectedSegment.add(key);
+        }
+    }
+
+    @Override
+    public String recordInsertion(String key) {
+        sketch.increment(key);
+        window.add(key);
+        if (window.size() <= windowCapacity) {
+            return null;
+        }
+
+        String candidate = removeFirst(window);
+        if (probation.size() + protectedSegment.size() < mainCapacity) {
+            probation.add(candidate);
+            return null;
+        }
+        if (mainCapacity == 0) {
+            return candidate;
+        }
+
+        LinkedHashSet<String> victimSegment = probation.isEmpty() ? protectedSegment : probation;
+        String victim = victimSegment.iterator().next();
+        if (sketch.frequency(candidate) > sketch.frequency(victim)) {
+            victimSegment.remove(victim);
+            probation.add(candidate);
+            return victim;
+        }
+        return candidate;
+    }
+
+    @Override
+    public void recordRemoval(String key) {
+        if (!window.remove(key) && !probation.remove(key)) {
+            protectedSegment.remove(key);
+        }
+    }
+
+    @Override
+    public void clear() {
+        window.clear();
+        probation.clear();
+        protectedSegment.clear();
+        sketch.clear();
+    }
+
+    private static String removeFirst(LinkedHashSet<String> segment) {
+        Iterator<String> iterator = segment.iterator();
+        String first = iterator.next();
+        iterator.remove();
+        return first;
+    }
+}
@@ -0,0 +1,11 @@
+package com.lenarsharipov.weather_api.exception;
+
+/**
+ * An exception that is thrown without sending a request while the circuit breaker
+ * considers the external API unhealthy.
+ */
+public class CircuitBreakerOpenException extends HttpException {
+    public CircuitBreakerOpenException() {
+        super("Circuit breaker is open, the weather API is unavailable", 503);
+    }
+}
@@ -0,0 +1,111 @@
+package com.lenarsharipov.weather_api.http;
+
+import java.time.Duration;
+
+/**
+ * A circuit breaker that stops requests to the external API while it is failing.
+ * <p>
+ * The breaker is {@link State#CLOSED} while requests succeed. After {@code failureThreshold}
+ * consecutive failures it opens, and every request fails at once without being sent. When
+ * {@code openDuration} has passed, the breaker lets a single probe request through
+ * ({@link State#HALF_OPEN}); if the probe succeeds the breaker closes, otherwise it opens again.
+ * A failure threshold of zero disables the breaker. The breaker is thread-safe.
+ */
+public class CircuitBreaker {
+
+    public static final Integer DEFAULT_FAILURE_THRESHOLD = 0;
+    public static final Duration DEFAULT_OPEN_DURATION = Duration.ofSeconds(30);
+
+    /**
+     * The state of a circuit breaker.
+     */
+    public enum State {
+        /** Requests are sent. */
+        CLOSED,
+        /** Requests fail without being sent. */
+        OPEN,
+        /** A probe request is allowed to find out whether the external API has recovered. */
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openDurationNanos;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAtNanos;
+    private boolean probeInFlight;
+
+    public CircuitBreaker(int failureThreshold, Duration openDuration) {
+        this.failureThreshold = failureThreshold;
+        this.openDurationNanos = openDuration.toNanos();
+    }
+
+    /**
+     * Checks whether a request may be sent now. In the half-open state only one caller is
+     * allowed through at a time; it must report the outcome with {@link #onSuccess()} or
+     * {@link #onFailure(long)}, or give the permit back with {@link #release()} if it sends nothing.
+     *
+     * @param nowNanos the current {@link System#nanoTime()} reading
+     * @return true if the request may be sent
+     */
+    public synchronized boolean tryAcquire(long nowNanos) {
+        if (failureThreshold == 0 || state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.OPEN && nowNanos - openedAtNanos >= openDurationNanos) {
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+        }
+        if (state == State.HALF_OPEN && !probeInFlight) {
+            probeInFlight = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records a request that reached a healthy external API, closing the breaker.
+     */
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        probeInFlight = false;
+        state = State.CLOSED;
+    }
+
+    /**
+     * Gives back a permit that was not used because the request was never sent, so the next
+     * caller can probe the external API in the half-open state.
+     */
+    public synchronized void release() {
+        probeInFlight = false;
+    }
+
+    /**
+     * Records a failed request. Opens the breaker after too many consecutive failures,
+     * or at once if the failed request was the half-open probe.
+     *
+     * @param nowNanos the current {@link System#nanoTime()} reading
+     */
+    public synchronized void onFailure(long nowNanos) {
+        if (failureThreshold == 0) {
+            return;
+        }
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAtNanos = nowNanos;
+            probeInFlight = false;
+        }
+    }
+
+    /**
+     * Returns the current state. An open breaker whose open duration has passed is reported
+     * as open until the next request probes the external API.
+     *
+     * @return the breaker state
+     */
+    public synchronized State getState() {
+        return state;
+    }
+}
@@ -0,0 +1,106 @@
+package com.lenarsharipov.weather_api.http;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Limits the number of requests a client has in flight at the same time, and with it the number
+ * of connections it opens to the external API.
+ * <p>
+ * A request that finds no free slot waits in line: synchronous callers block, asynchronous
+ * callers get a future that completes when a slot is handed over to them, so no thread waits.
+ * Slots are handed over in arrival order. A limit of 0 means no limit.
+ */
+final class RequestLimiter {
+
+    private static final CompletableFuture<Void> ACQUIRED = CompletableFuture.completedFuture(null);
+
+    private final int maxConcurrentRequests;
+    private final Deque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+    private int inFlight;
+
+    RequestLimiter(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    /**
+     * Takes a slot, waiting for one to be released if all of them are taken.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    void acquire() throws InterruptedException {
+        CompletableFuture<Void> slot = acquireAsync();
+        try {
+            slot.get();
+        } catch (InterruptedException e) {
+            if (!slot.cancel(false)) {
+                release();
+            }
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Takes a slot without blocking.
+     *
+     * @return a future that completes once the slot is taken
+     */
+    CompletableFuture<Void> acquireAsync() {
+        if (maxConcurrentRequests == 0) {
+            return ACQUIRED;
+        }
+        synchronized (this) {
+            if (inFlight < maxConcurrentRequests) {
+                inFlight++;
+                return ACQUIRED;
+            }
+            CompletableFuture<Void> waiter = new CompletableFuture<>();
+            waiters.add(waiter);
+            return waiter;
+        }
+    }
+
+    /**
+     * Releases a slot, handing it over to the first waiting request if there is one.
+     */
+    void release() {
+        if (maxConcurrentRequests == 0) {
+            return;
+        }
+        CompletableFuture<Void> next;
+        synchronized (this) {
+            do {
+                next = waiters.poll();
+                if (next == null) {
+                    inFlight--;
+                    return;
+                }
+            } while (next.isDone());
+        }
+        if (!next.complete(null)) {
+            release();
+        }
+    }
+
+    /**
+     * Returns the number of taken slots.
+     *
+     * @return the number of requests in flight
+     */
+    synchronized int inFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Returns the number of requests waiting for a slot.
+     *
+     * @return the number of waiting requests
+     */
+    synchronized int waiting() {
+        return waiters.size();
+    }
+}
@@ -0,0 +1,74 @@
+package com.lenarsharipov.weather_api.http;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket that spaces the requests sent with one API key.
+ * <p>
+ * The bucket holds up to {@code burst} tokens and refills at {@code requestsPerMinute}. A caller
+ * reserves a token before sending a request and is told how long to wait for it; reservations
+ * may drive the balance below zero, so queued callers are given consecutive slots instead of
+ * all retrying at once. After a 429 response the bucket can be paused until the time given by
+ * the server's {@code Retry-After} header. A bucket with a rate of zero never limits the rate
+ * and only honours pauses.
+ */
+class TokenBucket {
+
+    private final int burst;
+    private final double nanosPerToken;
+
+    private double tokens;
+    private long lastRefillNanos;
+    private long pausedUntilNanos;
+
+    TokenBucket(int requestsPerMinute, int burst, long nowNanos) {
+        this.burst = burst;
+        this.nanosPerToken = requestsPerMinute > 0
+                ? (double) TimeUnit.MINUTES.toNanos(1) / requestsPerMinute
+                : 0;
+        this.tokens = burst;
+        this.lastRefillNanos = nowNanos;
+        this.pausedUntilNanos = nowNanos;
+    }
+
+    /**
+     * Reserves a token if it becomes available within the maximum wait.
+     *
+     * @param nowNanos     the current {@link System#nanoTime()} reading
+     * @param maxWaitNanos the longest the caller is willing to wait
+     * @return how long the caller must wait before sending, in nanoseconds,
+     * or -1 if no token is available in time; nothing is reserved in that case
+     */
+    synchronized long reserve(long nowNanos, long maxWaitNanos) {
+        long pauseNanos = Math.max(0, pausedUntilNanos - nowNanos);
+        if (nanosPerToken == 0) {
+            return pauseNanos <= maxWaitNanos ? pauseNanos : -1;
+        }
+        refill(nowNanos);
+        long tokenWaitNanos = tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) * nanosPerToken);
+        long waitNanos = Math.max(pauseNanos, tokenWaitNanos);
+        if (waitNanos > maxWaitNanos) {
+            return -1;
+        }
+        tokens -= 1;
+        return waitNanos;
+    }
+
+    /**
+     * Stops handing out tokens without a wait until the given time.
+     *
+     * @param nowNanos   the current {@link System#nanoTime()} reading
+     * @param pauseNanos how long to pause, in nanoseconds
+     */
+    synchronized void pause(long nowNanos, long pauseNanos) {
+        pausedUntilNanos = Math.max(pausedUntilNanos, nowNanos + pauseNanos);
+    }
+
+    private void refill(long nowNanos) {
+        long elapsedNanos = nowNanos - lastRefillNanos;
+        if (elapsedNanos > 0) {
+            tokens = Math.min(burst, tokens + elapsedNanos / nanosPerToken);
+            lastRefillNanos = nowNanos;
+        }
+    }
+}
@@ -2,108 +2,853 @@ package com.lenarsharipov.weather_api.http;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lenarsharipov.weather_api.exception.CircuitBreakerOpenException;
 import com.lenarsharipov.weather_api.exception.HttpException;
+import com.lenarsharipov.weather_api.metrics.LatencyHistogram;
+import com.lenarsharipov.weather_api.metrics.LatencySnapshot;
+import com.lenarsharipov.weather_api.model.LocationKey;
 import com.lenarsharipov.weather_api.model.WeatherResponse;
+import com.lenarsharipov.weather_api.settings.Settings;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
 import java.net.URI;
-import java.net.URLEncoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
 
+/**
+ * Sends weather requests to the external API and decodes the responses.
+ * <p>
+ * Requests are spaced by a token bucket per API key (see {@link Settings.RateLimit}): a caller
+ * that would exceed the rate waits for its turn, up to a bounded time, instead of sending a
+ * request that would be rejected. A 429 response with a {@code Retry-After} header pauses all
+ * requests with the same API key until the given time.
+ * <p>
+ * Requests that fail with a network error or a 5xx response are retried with exponential backoff
+ * and jitter (see {@link Settings.Retry}). A {@link CircuitBreaker} (see {@link Settings.CircuitBreaker})
+ * makes requests fail at once while the external API keeps failing.
+ * <p>
+ * Every request has a timeout, and the number of requests in flight at the same time can be
+ * limited (see {@link Settings.Http}). An {@link HttpClient} built by this client from the
+ * settings, with its virtual-thread executor, is closed by {@link #close()}; a caller-supplied
+ * HTTP client or executor is left to the caller.
+ * <p>
+ * Up to {@link #MAX_GROUP_SIZE} cities can be fetched by id in one request to the multi-city
+ * group endpoint (see {@link #getWeatherGroup(List, String)}).
+ */
 public class WeatherHttpClient {
 
+    public static final Integer DEFAULT_RATE_LIMIT_REQUESTS_PER_MINUTE = 0;
+    public static final Integer DEFAULT_RATE_LIMIT_BURST = 10;
+    public static final Duration DEFAULT_RATE_LIMIT_MAX_WAIT = Duration.ofSeconds(5);
+    public static final Integer DEFAULT_RETRY_MAX_ATTEMPTS = 1;
+    public static final Duration DEFAULT_RETRY_INITIAL_BACKOFF = Duration.ofMillis(100);
+    public static final Duration DEFAULT_RETRY_MAX_BACKOFF = Duration.ofSeconds(2);
+    public static final HttpClient.Version DEFAULT_HTTP_VERSION = HttpClient.Version.HTTP_2;
+    public static final Duration DEFAULT_HTTP_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    public static final Duration DEFAULT_HTTP_REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    public static final Boolean DEFAULT_HTTP_VIRTUAL_THREADS = false;
+    public static final Integer DEFAULT_HTTP_MAX_CONCURRENT_REQUESTS = 0;
+    public static final int MAX_GROUP_SIZE = 20;
+
     private static final String ACCEPT_HEADER = "Accept";
     private static final String APPLICATION_JSON = "application/json";
+    private static final String RETRY_AFTER_HEADER = "Retry-After";
+    private static final int TOO_MANY_REQUESTS = 429;
 
     private final HttpClient httpClient;
-    private final ObjectMapper objectMapper;
+    private final boolean ownsHttpClient;
+    private final ExecutorService ownedExecutor;
+    private final WeatherResponseDecoder decoder;
     private final String apiUrl;
+    private final String groupUrl;
+    private final LatencyHistogram roundTripLatency = new LatencyHistogram();
+    private final LatencyHistogram decodeLatency = new LatencyHistogram();
+    private final Map<String, TokenBucket> rateLimiters = new ConcurrentHashMap<>();
+    private final Map<String, String> urlSuffixes = new ConcurrentHashMap<>();
+    private final int requestsPerMinute;
+    private final int burst;
+    private final long maxWaitNanos;
+    private final int maxAttempts;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+    private final CircuitBreaker circuitBreaker;
+    private final Duration requestTimeout;
+    private final RequestLimiter requestLimiter;
 
     public WeatherHttpClient(HttpClient httpClient,
                              ObjectMapper objectMapper,
                              String apiUrl) {
-        this.httpClient = httpClient;
-        this.objectMapper = objectMapper;
+        this(httpClient, objectMapper, apiUrl, Settings.builder().build());
+    }
+
+    public WeatherHttpClient(HttpClient httpClient,
+                             ObjectMapper objectMapper,
+                             String apiUrl,
+                             Settings settings) {
+        this(httpClient, null, objectMapper, apiUrl, settings);
+    }
+
+    /**
+     * Creates a client with its own HTTP client built from the transport settings
+     * (see {@link Settings.Http}), which is closed by {@link #close()}.
+     *
+     * @param objectMapper the object mapper for decoding responses
+     * @param apiUrl       the URL of the current weather endpoint
+     * @param settings     the settings
+     */
+    public WeatherHttpClient(ObjectMapper objectMapper, String apiUrl, Settings settings) {
+        this(null, newExecutor(settings.http()), objectMapper, apiUrl, settings);
+    }
+
+    private WeatherHttpClient(HttpClient httpClient,
+                              ExecutorService ownedExecutor,
+                              ObjectMapper objectMapper,
+                              String apiUrl,
+                              Settings settings) {
+        this.ownsHttpClient = httpClient == null;
+        this.ownedExecutor = ownedExecutor;
+        this.httpClient = ownsHttpClient ? newHttpClient(settings.http(), ownedExecutor) : httpClient;
+        this.decoder = new WeatherResponseDecoder(objectMapper);
         this.apiUrl = apiUrl;
+        this.groupUrl = apiUrl.substring(0, apiUrl.lastIndexOf('/') + 1) + "group";
+
+        Settings.RateLimit rateLimit = settings.rateLimit();
+        this.requestsPerMinute = rateLimit.requestsPerMinute() == null
+                ? DEFAULT_RATE_LIMIT_REQUESTS_PER_MINUTE
+                : rateLimit.requestsPerMinute();
+        this.burst = rateLimit.burst() == null
+                ? DEFAULT_RATE_LIMIT_BURST
+                : rateLimit.burst();
+        this.maxWaitNanos = (rateLimit.maxWait() == null
+                ? DEFAULT_RATE_LIMIT_MAX_WAIT
+                : rateLimit.maxWait()).toNanos();
+
+        Settings.Retry retry = settings.retry();
+        this.maxAttempts = retry.maxAttempts() == null
+                ? DEFAULT_RETRY_MAX_ATTEMPTS
+                : retry.maxAttempts();
+        this.initialBackoffNanos = (retry.initialBackoff() == null
+                ? DEFAULT_RETRY_INITIAL_BACKOFF
+                : retry.initialBackoff()).toNanos();
+        this.maxBackoffNanos = (retry.maxBackoff() == null
+                ? DEFAULT_RETRY_MAX_BACKOFF
+                : retry.maxBackoff()).toNanos();
+
+        Settings.CircuitBreaker circuitBreakerSettings = settings.circuitBreaker();
+        this.circuitBreaker = new CircuitBreaker(circuitBreakerSettings.failureThreshold() == null
+                ? CircuitBreaker.DEFAULT_FAILURE_THRESHOLD
+                : circuitBreakerSettings.failureThreshold(),
+                circuitBreakerSettings.openDuration() == null
+                        ? CircuitBreaker.DEFAULT_OPEN_DURATION
+                        : circuitBreakerSettings.openDuration());
+
+        Settings.Http http = settings.http();
+        this.requestTimeout = http.requestTimeout() == null
+                ? DEFAULT_HTTP_REQUEST_TIMEOUT
+                : http.requestTimeout();
+        this.requestLimiter = new RequestLimiter(http.maxConcurrentRequests() == null
+                ? DEFAULT_HTTP_MAX_CONCURRENT_REQUESTS
+                : http.maxConcurrentRequests());
+    }
+
+    /**
+     * Creates the executor that belongs to this client: a virtual-thread executor when virtual
+     * threads are enabled and no executor is supplied, otherwise none.
+     */
+    private static ExecutorService newExecutor(Settings.Http http) {
+        return http.executor() == null && Boolean.TRUE.equals(http.virtualThreads())
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : null;
+    }
+
+    private static HttpClient newHttpClient(Settings.Http http, ExecutorService ownedExecutor) {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(http.version() == null ? DEFAULT_HTTP_VERSION : http.version())
+                .connectTimeout(http.connectTimeout() == null ? DEFAULT_HTTP_CONNECT_TIMEOUT : http.connectTimeout());
+        if (http.executor() != null) {
+            builder.executor(http.executor());
+        } else if (ownedExecutor != null) {
+            builder.executor(ownedExecutor);
+        }
+        return builder.build();
     }
 
     /**
      * Fetches weather data for the specified location using the provided API key.
+     * <p>
+     * Network errors and 5xx responses are retried with exponential backoff and jitter, up to the
+     * configured number of attempts.
      *
      * @param location the city name or location to fetch weather data for
      * @param apiKey   the API key for authentication
      * @return the weather response
-     * @throws HttpException if an error occurs during the request or response parsing
+     * @throws HttpException if an error occurs during the request or response parsing,
+     *                       or if the rate limit does not allow a request within the maximum wait
+     * @throws CircuitBreakerOpenException if the circuit breaker is open
      */
     public WeatherResponse getWeather(String location,
                                       String apiKey) throws HttpException {
-        HttpRequest request = buildGetRequest(location, apiKey);
-        HttpResponse<String> response = sendRequest(request);
-        return parseResponse(response);
+        return getWeather(LocationKey.of(location), apiKey);
+    }
+
+    /**
+     * Fetches weather data for the specified location key using the provided API key.
+     * The request built for the key is kept on the key and reused by the next call.
+     *
+     * @param key    the location key to fetch weather data for
+     * @param apiKey the API key for authentication
+     * @return the weather response
+     * @throws HttpException if an error occurs during the request or response parsing,
+     *                       or if the rate limit does not allow a request within the maximum wait
+     * @throws CircuitBreakerOpenException if the circuit breaker is open
+     */
+    public WeatherResponse getWeather(LocationKey key,
+                                      String apiKey) throws HttpException {
+        return send(buildGetRequest(key, apiKey), apiKey, decoder::decode);
+    }
+
+    /**
+     * Fetches weather data for the city with the specified id using the provided API key.
+     *
+     * @param cityId the id of the city, as returned in {@link WeatherResponse#id()}
+     * @param apiKey the API key for authentication
+     * @return the weather response
+     * @throws HttpException if an error occurs during the request or response parsing,
+     *                       or if the rate limit does not allow a request within the maximum wait
+     * @throws CircuitBreakerOpenException if the circuit breaker is open
+     * @throws IllegalArgumentException    if the city id is not positive
+     */
+    public WeatherResponse getWeatherById(int cityId,
+                                          String apiKey) throws HttpException {
+        return getWeather(LocationKey.ofCityId(cityId), apiKey);
+    }
+
+    /**
+     * Fetches weather data for the point with the specified coordinates using the provided API key.
+     *
+     * @param lat    the latitude of the point, from -90 to 90
+     * @param lon    the longitude of the point, from -180 to 180
+     * @param apiKey the API key for authentication
+     * @return the weather response
+     * @throws HttpException if an error occurs during the request or response parsing,
+     *                       or if the rate limit does not allow a request within the maximum wait
+     * @throws CircuitBreakerOpenException if the circuit breaker is open
+     */
+    public WeatherResponse getWeather(double lat,
+                                      double lon,
+                                      String apiKey) throws HttpException {
+        return send(buildGetRequest(lat, lon, apiKey), apiKey, decoder::decode);
+    }
+
+    /**
+     * Fetches weather data for up to {@link #MAX_GROUP_SIZE} cities by id in one request to the
+     * multi-city group endpoint. The request goes through the same rate limit, retries and circuit
+     * breaker as a single request. Cities the API does not know are missing from the result.
+     *
+     * @param cityIds the ids of the cities, at most {@link #MAX_GROUP_SIZE}
+     * @param apiKey  the API key for authentication
+     * @return the weather responses, in the order returned by the API
+     * @throws IllegalArgumentException if no ids or more than {@link #MAX_GROUP_SIZE} ids are given
+     * @throws HttpException if an error occurs during the request or response parsing,
+     *                       or if the rate limit does not allow a request within the maximum wait
+     * @throws CircuitBreakerOpenException if the circuit breaker is open
+     */
+    public List<WeatherResponse> getWeatherGroup(List<Integer> cityIds,
+                                                 String apiKey) throws HttpException {
+        if (cityIds.isEmpty() || cityIds.size() > MAX_GROUP_SIZE) {
+            throw new IllegalArgumentException("A group request takes 1 to " + MAX_GROUP_SIZE
+                    + " city ids, got " + cityIds.size());
+        }
+        return send(buildGroupRequest(cityIds, apiKey), apiKey, decoder::decodeList);
+    }
+
+    /**
+     * Sends a request, retrying it while attempts are left, and parses the response.
+     *
+     * @param request     the HTTP request to send
+     * @param apiKey      the API key the request is sent with
+     * @param bodyDecoder decodes the body of a successful response
+     * @return the decoded response
+     * @throws HttpException if the last attempt fails or the response is an error
+     */
+    private <T> T send(HttpRequest request, String apiKey, BodyDecoder<T> bodyDecoder) throws HttpException {
+        for (int attempt = 1; ; attempt++) {
+            acquireCircuit();
+            try {
+                awaitPermit(apiKey);
+                acquireRequestSlot();
+            } catch (HttpException e) {
+                circuitBreaker.release();
+                throw e;
+            }
+            T response = sendAttempt(request, apiKey, bodyDecoder, attempt < maxAttempts);
+            if (response != null) {
+                return response;
+            }
+            sleep(backoffNanos(attempt));
+        }
+    }
+
+    /**
+     * Sends one attempt of a request and parses the response. The caller holds a circuit breaker
+     * permit and a request slot; the slot is released here, and the permit is either reported
+     * with the outcome or, if the thread is interrupted, given back.
+     *
+     * @param request     the HTTP request to send
+     * @param apiKey      the API key the request is sent with
+     * @param bodyDecoder decodes the body of a successful response
+     * @param canRetry    whether a network error or a 5xx response may be retried
+     * @return the decoded response, or null if the attempt failed and should be retried
+     * @throws HttpException if the attempt failed and cannot be retried, the response is an error,
+     *                       or the thread is interrupted
+     */
+    private <T> T sendAttempt(HttpRequest request,
+                              String apiKey,
+                              BodyDecoder<T> bodyDecoder,
+                              boolean canRetry) throws HttpException {
+        try {
+            HttpResponse<InputStream> response;
+            try {
+                response = sendRequest(request);
+            } catch (HttpException | RuntimeException e) {
+                if (e instanceof RuntimeException || Thread.currentThread().isInterrupted()) {
+                    circuitBreaker.release();
+                    throw e;
+                }
+                circuitBreaker.onFailure(System.nanoTime());
+                if (!canRetry) {
+                    throw e;
+                }
+                return null;
+            }
+
+            if (isServerError(response.statusCode())) {
+                circuitBreaker.onFailure(System.nanoTime());
+                if (canRetry) {
+                    discard(response.body());
+                    return null;
+                }
+            } else {
+                circuitBreaker.onSuccess();
+            }
+            if (response.statusCode() == TOO_MANY_REQUESTS) {
+                pauseOnRetryAfter(apiKey, response);
+            }
+            try (InputStream body = response.body()) {
+                return parseResponse(response.statusCode(), body, bodyDecoder);
+            } catch (IOException e) {
+                throw new HttpException("Network error: " + e.getMessage(), 0);
+            }
+        } finally {
+            requestLimiter.release();
+        }
+    }
+
+    /**
+     * Fetches weather data for the specified location without blocking the calling thread.
+     * <p>
+     * The request is sent with {@link HttpClient#sendAsync}, so no thread is parked while
+     * waiting for the response. The returned future completes exceptionally with a
+     * {@link CompletionException} wrapping an {@link HttpException} if the request fails.
+     * When the rate limit or a retry backoff makes the request wait, it is sent later by a timer;
+     * no thread waits.
+     *
+     * @param location the city name or location to fetch weather data for
+     * @param apiKey   the API key for authentication
+     * @return a future that completes with the weather response
+     */
+    public CompletableFuture<WeatherResponse> getWeatherAsync(String location,
+                                                              String apiKey) {
+        return getWeatherAsync(LocationKey.of(location), apiKey);
+    }
+
+    /**
+     * Fetches weather data for the specified location key without blocking the calling thread.
+     *
+     * @param key    the location key to fetch weather data for
+     * @param apiKey the API key for authentication
+     * @return a future that completes with the weather response
+     * @see #getWeatherAsync(String, String)
+     */
+    public CompletableFuture<WeatherResponse> getWeatherAsync(LocationKey key,
+                                                              String apiKey) {
+        return sendAsync(buildGetRequest(key, apiKey), apiKey);
+    }
+
+    /**
+     * Fetches weather data for the city with the specified id without blocking the calling thread.
+     *
+     * @param cityId the id of the city, as returned in {@link WeatherResponse#id()}
+     * @param apiKey the API key for authentication
+     * @return a future that completes with the weather response
+     * @throws IllegalArgumentException if the city id is not positive
+     * @see #getWeatherAsync(String, String)
+     */
+    public CompletableFuture<WeatherResponse> getWeatherByIdAsync(int cityId,
+                                                                  String apiKey) {
+        return getWeatherAsync(LocationKey.ofCityId(cityId), apiKey);
+    }
+
+    /**
+     * Fetches weather data for the point with the specified coordinates without blocking
+     * the calling thread.
+     *
+     * @param lat    the latitude of the point, from -90 to 90
+     * @param lon    the longitude of the point, from -180 to 180
+     * @param apiKey the API key for authentication
+     * @return a future that completes with the weather response
+     * @see #getWeatherAsync(String, String)
+     */
+    public CompletableFuture<WeatherResponse> getWeatherAsync(double lat,
+                                                              double lon,
+                                                              String apiKey) {
+        return sendAsync(buildGetRequest(lat, lon, apiKey), apiKey);
+    }
+
+    /**
+     * Sends a request asynchronously, retrying it while attempts are left, and parses the response.
+     *
+     * @param request the HTTP request to send
+     * @param apiKey  the API key the request is sent with
+     * @return a future that completes with the weather response
+     */
+    private CompletableFuture<WeatherResponse> sendAsync(HttpRequest request, String apiKey) {
+        return sendWithRetryAsync(request, apiKey, 1)
+                .thenApply(response -> {
+                    if (response.statusCode() == TOO_MANY_REQUESTS) {
+                        pauseOnRetryAfter(apiKey, response);
+                    }
+                    try {
+                        return parseResponse(response.statusCode(), response.body());
+                    } catch (HttpException e) {
+                        throw new CompletionException(e);
+                    }
+                });
+    }
+
+    /**
+     * Closes the HTTP client and the executor this client built, cancelling requests in flight.
+     * A caller-supplied HTTP client or executor is not closed.
+     */
+    public void close() {
+        if (ownsHttpClient) {
+            httpClient.shutdownNow();
+        }
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the state of the circuit breaker that guards requests to the external API.
+     *
+     * @return the circuit breaker state
+     */
+    public CircuitBreaker.State getCircuitBreakerState() {
+        return circuitBreaker.getState();
+    }
+
+    /**
+     * Returns the latency of requests sent by this client, from sending a request until its
+     * response arrives. For synchronous requests the response arrives with its headers and
+     * the body is read while it is decoded.
+     *
+     * @return the round trip latency percentiles
+     */
+    public LatencySnapshot getRoundTripLatency() {
+        return roundTripLatency.snapshot();
+    }
+
+    /**
+     * Returns the latency of decoding successful responses.
+     *
+     * @return the decode latency percentiles
+     */
+    public LatencySnapshot getDecodeLatency() {
+        return decodeLatency.snapshot();
+    }
+
+    /**
+     * Waits until the rate limit of the API key allows a request.
+     *
+     * @param apiKey the API key the request is sent with
+     * @throws HttpException if no request is allowed within the maximum wait,
+     *                       or if the thread is interrupted while waiting
+     */
+    private void awaitPermit(String apiKey) throws HttpException {
+        sleep(reservePermit(apiKey));
+    }
+
+    /**
+     * Reserves a request slot in the rate limit of the API key.
+     *
+     * @param apiKey the API key the request is sent with
+     * @return how long to wait before sending the request, in nanoseconds
+     * @throws HttpException if no request is allowed within the maximum wait
+     */
+    private long reservePermit(String apiKey) throws HttpException {
+        long waitNanos = rateLimiterFor(apiKey).reserve(System.nanoTime(), maxWaitNanos);
+        if (waitNanos < 0) {
+            throw new HttpException("Rate limit exceeded: no request allowed within "
+                    + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos) + " ms", TOO_MANY_REQUESTS);
+        }
+        return waitNanos;
+    }
+
+    /**
+     * Pauses requests with the API key for the time given by the {@code Retry-After} header
+     * of a 429 response, if the header is present.
+     *
+     * @param apiKey   the API key the request was sent with
+     * @param response the 429 response
+     */
+    private void pauseOnRetryAfter(String apiKey, HttpResponse<?> response) {
+        parseRetryAfter(response.headers().firstValue(RETRY_AFTER_HEADER))
+                .ifPresent(delay -> rateLimiterFor(apiKey).pause(System.nanoTime(), delay.toNanos()));
+    }
+
+    private TokenBucket rateLimiterFor(String apiKey) {
+        return rateLimiters.computeIfAbsent(apiKey,
+                key -> new TokenBucket(requestsPerMinute, burst, System.nanoTime()));
+    }
+
+    /**
+     * Parses a {@code Retry-After} header, given either as a number of seconds or as an HTTP date.
+     *
+     * @param header the header value, if present
+     * @return the delay, or empty if the header is missing or invalid
+     */
+    static Optional<Duration> parseRetryAfter(Optional<String> header) {
+        if (header.isEmpty()) {
+            return Optional.empty();
+        }
+        String value = header.get().trim();
+        try {
+            return Optional.of(Duration.ofSeconds(Math.max(0, Long.parseLong(value))));
+        } catch (NumberFormatException ignored) {
+            // not a number of seconds, try an HTTP date
+        }
+        try {
+            ZonedDateTime retryAt = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+            Duration delay = Duration.between(ZonedDateTime.now(retryAt.getZone()), retryAt);
+            return Optional.of(delay.isNegative() ? Duration.ZERO : delay);
+        } catch (DateTimeParseException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Sends an HTTP request asynchronously, waiting for the rate limit and a free request slot
+     * first, and retries it after a backoff if it fails with a network error or a 5xx response.
+     *
+     * @param request the HTTP request to send
+     * @param apiKey  the API key the request is sent with
+     * @param attempt the number of this attempt, starting with 1
+     * @return a future that completes with the last HTTP response, or exceptionally with an
+     * {@link HttpException} wrapped in a {@link CompletionException}
+     */
+    private CompletableFuture<HttpResponse<byte[]>> sendWithRetryAsync(HttpRequest request,
+                                                                      String apiKey,
+                                                                      int attempt) {
+        long waitNanos;
+        try {
+            acquireCircuit();
+        } catch (HttpException e) {
+            return CompletableFuture.failedFuture(new CompletionException(e));
+        }
+        try {
+            waitNanos = reservePermit(apiKey);
+        } catch (HttpException e) {
+            circuitBreaker.release();
+            return CompletableFuture.failedFuture(new CompletionException(e));
+        }
+        CompletableFuture<Void> slot = waitNanos == 0
+                ? requestLimiter.acquireAsync()
+                : delay(waitNanos).thenCompose(ignored -> requestLimiter.acquireAsync());
+        CompletableFuture<HttpResponse<byte[]>> sent = slot.thenCompose(ignored -> sendRequestAsync(request)
+                .whenComplete((response, throwable) -> requestLimiter.release()));
+        return sent.handle((response, throwable) -> {
+            if (throwable == null && !isServerError(response.statusCode())) {
+                circuitBreaker.onSuccess();
+                return CompletableFuture.completedFuture(response);
+            }
+            circuitBreaker.onFailure(System.nanoTime());
+            if (attempt >= maxAttempts) {
+                return throwable == null
+                        ? CompletableFuture.completedFuture(response)
+                        : CompletableFuture.<HttpResponse<byte[]>>failedFuture(throwable);
+            }
+            return delay(backoffNanos(attempt))
+                    .thenCompose(ignored -> sendWithRetryAsync(request, apiKey, attempt + 1));
+        }).thenCompose(Function.identity());
+    }
+
+    /**
+     * Checks that the circuit breaker lets a request through.
+     *
+     * @throws CircuitBreakerOpenException if the circuit breaker is open
+     */
+    private void acquireCircuit() throws CircuitBreakerOpenException {
+        if (!circuitBreaker.tryAcquire(System.nanoTime())) {
+            throw new CircuitBreakerOpenException();
+        }
+    }
+
+    /**
+     * Waits for a free request slot.
+     *
+     * @throws HttpException if the thread is interrupted while waiting
+     */
+    private void acquireRequestSlot() throws HttpException {
+        try {
+            requestLimiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HttpException("Interrupted while waiting to send a request", 0);
+        }
+    }
+
+    /**
+     * Returns the backoff before the next attempt: a random delay between zero and the
+     * exponential backoff for the attempt, capped by the maximum backoff.
+     *
+     * @param attempt the number of the failed attempt, starting with 1
+     * @return the backoff in nanoseconds
+     */
+    private long backoffNanos(int attempt) {
+        int shift = Math.min(attempt - 1, Long.SIZE - 2);
+        long capNanos = initialBackoffNanos > maxBackoffNanos >> shift
+                ? maxBackoffNanos
+                : initialBackoffNanos << shift;
+        return ThreadLocalRandom.current().nextLong(Math.min(capNanos, Long.MAX_VALUE - 1) + 1);
+    }
+
+    private static boolean isServerError(int statusCode) {
+        return statusCode >= 500;
     }
 
     /**
-     * Sends an HTTP request and returns the response.
+     * Parks the calling thread for the given time.
+     *
+     * @param nanos the time to wait, in nanoseconds
+     * @throws HttpException if the thread is interrupted while waiting
+     */
+    private static void sleep(long nanos) throws HttpException {
+        long deadline = System.nanoTime() + nanos;
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new HttpException("Interrupted while waiting to send a request", 0);
+            }
+        }
+    }
+
+    private static CompletableFuture<Void> delay(long nanos) {
+        return CompletableFuture.runAsync(() -> {
+        }, CompletableFuture.delayedExecutor(nanos, TimeUnit.NANOSECONDS));
+    }
+
+    private static void discard(InputStream body) {
+        try (body) {
+            body.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException ignored) {
+            // the connection is not reused
+        }
+    }
+
+    /**
+     * Sends an HTTP request and returns the response with its body as a byte stream.
      *
      * @param request the HTTP request to send
      * @return the HTTP response
-     * @throws HttpException if a network error occurs
+     * @throws HttpException if a network error occurs, or the thread is interrupted, in which
+     *                       case its interrupt status is kept
      */
-    private HttpResponse<String> sendRequest(HttpRequest request) throws HttpException {
+    private HttpResponse<InputStream> sendRequest(HttpRequest request) throws HttpException {
+        long startNanos = System.nanoTime();
         try {
-            return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-        } catch (IOException | InterruptedException e) {
+            return httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (IOException e) {
             throw new HttpException("Network error: " + e.getMessage(), 0);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HttpException("Interrupted while waiting for a response", 0);
+        } finally {
+            roundTripLatency.recordSince(startNanos);
         }
     }
 
     /**
-     * Parses the HTTP response into a WeatherResponse object.
+     * Sends an HTTP request asynchronously. The body is collected as raw bytes, so reading it
+     * never blocks the thread that completes the future.
      *
-     * @param response the HTTP response to parse
-     * @return the parsed WeatherResponse
+     * @param request the HTTP request to send
+     * @return a future that completes with the HTTP response, or exceptionally with an
+     * {@link HttpException} wrapped in a {@link CompletionException} if a network error occurs
+     */
+    private CompletableFuture<HttpResponse<byte[]>> sendRequestAsync(HttpRequest request) {
+        long startNanos = System.nanoTime();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .whenComplete((response, throwable) -> roundTripLatency.recordSince(startNanos))
+                .exceptionally(throwable -> {
+                    Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                            ? throwable.getCause()
+                            : throwable;
+                    throw new CompletionException(
+                            new HttpException("Network error: " + cause.getMessage(), 0));
+                });
+    }
+
+    /**
+     * Parses the HTTP response body stream with the given decoder.
+     *
+     * @param statusCode  the HTTP status code
+     * @param body        the response body
+     * @param bodyDecoder decodes the body of a successful response
+     * @return the decoded response
      * @throws HttpException if the response cannot be parsed or contains an error
+     * @throws IOException   if the body cannot be read
      */
-    private WeatherResponse parseResponse(HttpResponse<String> response) throws HttpException {
-        if (response.statusCode() == 200) {
+    private <T> T parseResponse(int statusCode,
+                                InputStream body,
+                                BodyDecoder<T> bodyDecoder) throws HttpException, IOException {
+        if (statusCode == 200) {
+            long startNanos = System.nanoTime();
             try {
-                return objectMapper.readValue(response.body(), WeatherResponse.class);
+                T response = bodyDecoder.decode(body);
+                decodeLatency.recordSince(startNanos);
+                return response;
             } catch (JsonProcessingException e) {
                 throw new HttpException("Failed to parse weather data", 500);
             }
         } else {
-            throw new HttpException("API error: " + response.body(), response.statusCode());
+            String errorBody = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+            throw new HttpException("API error: " + errorBody, statusCode);
         }
     }
 
     /**
-     * Builds an HTTP GET request for the specified location and API key.
+     * Parses the HTTP response body bytes into a WeatherResponse object.
      *
-     * @param location the city name or location
-     * @param apiKey   the API key for authentication
+     * @param statusCode the HTTP status code
+     * @param body       the response body
+     * @return the parsed WeatherResponse
+     * @throws HttpException if the response cannot be parsed or contains an error
+     */
+    private WeatherResponse parseResponse(int statusCode, byte[] body) throws HttpException {
+        if (statusCode == 200) {
+            long startNanos = System.nanoTime();
+            try {
+                WeatherResponse response = decoder.decode(body);
+                decodeLatency.recordSince(startNanos);
+                return response;
+            } catch (IOException e) {
+                throw new HttpException("Failed to parse weather data", 500);
+            }
+        } else {
+            String errorBody = new String(body, StandardCharsets.UTF_8);
+            throw new HttpException("API error: " + errorBody, statusCode);
+        }
+    }
+
+    /**
+     * Returns the HTTP GET request for the specified location key and API key, reusing
+     * the request cached on the key if it was built by this client for the same API key.
+     * The key of a city id is looked up by id, other keys by name.
+     *
+     * @param key    the location key
+     * @param apiKey the API key for authentication
+     * @return the HttpRequest
+     */
+    private HttpRequest buildGetRequest(LocationKey key, String apiKey) {
+        String urlSuffix = urlSuffixes.computeIfAbsent(apiKey, k -> "&appid=" + k);
+        HttpRequest request = key.cachedRequest(urlSuffix);
+        if (request == null) {
+            request = HttpRequest.newBuilder()
+                    .uri(URI.create(key.cityId() > 0
+                            ? apiUrl + "?id=" + key.cityId() + urlSuffix
+                            : apiUrl + "?q=" + key.encodedLocation() + urlSuffix))
+                    .timeout(requestTimeout)
+                    .GET()
+                    .header(ACCEPT_HEADER, APPLICATION_JSON)
+                    .build();
+            key.cacheRequest(urlSuffix, request);
+        }
+        return request;
+    }
+
+    /**
+     * Builds an HTTP GET request to the group endpoint for the specified city ids and API key.
+     *
+     * @param cityIds the ids of the cities
+     * @param apiKey  the API key for authentication
      * @return the constructed HttpRequest
      */
-    private HttpRequest buildGetRequest(String location, String apiKey) {
-        String url = buildUrl(location, apiKey);
+    private HttpRequest buildGroupRequest(List<Integer> cityIds, String apiKey) {
+        StringBuilder url = new StringBuilder(groupUrl).append("?id=");
+        for (int i = 0; i < cityIds.size(); i++) {
+            if (i > 0) {
+                url.append(',');
+            }
+            url.append(cityIds.get(i).intValue());
+        }
+        url.append(urlSuffixes.computeIfAbsent(apiKey, k -> "&appid=" + k));
         return HttpRequest.newBuilder()
-                .uri(URI.create(url))
+                .uri(URI.create(url.toString()))
+                .timeout(requestTimeout)
                 .GET()
                 .header(ACCEPT_HEADER, APPLICATION_JSON)
                 .build();
     }
 
     /**
-     * Builds the URL for the HTTP request.
+     * Builds an HTTP GET request for the specified coordinates and API key.
      *
-     * @param location the city name or location
-     * @param apiKey   the API key for authentication
-     * @return the constructed URL
+     * @param lat    the latitude of the point
+     * @param lon    the longitude of the point
+     * @param apiKey the API key for authentication
+     * @return the constructed HttpRequest
+     */
+    private HttpRequest buildGetRequest(double lat, double lon, String apiKey) {
+        String url = apiUrl + "?lat=" + BigDecimal.valueOf(lat).stripTrailingZeros().toPlainString()
+                + "&lon=" + BigDecimal.valueOf(lon).stripTrailingZeros().toPlainString()
+                + urlSuffixes.computeIfAbsent(apiKey, k -> "&appid=" + k);
+        return HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .timeout(requestTimeout)
+                .GET()
+                .header(ACCEPT_HEADER, APPLICATION_JSON)
+                .build();
+    }
+
+    /**
+     * Decodes the body of a successful response.
      */
-    private String buildUrl(String location, String apiKey) {
-        String encodedLocation = URLEncoder.encode(location, StandardCharsets.UTF_8);
-        return String.format("%s?q=%s&appid=%s", apiUrl, encodedLocation, apiKey);
+    @FunctionalInterface
+    private interface BodyDecoder<T> {
+        T decode(InputStream body) throws IOException;
     }
 }
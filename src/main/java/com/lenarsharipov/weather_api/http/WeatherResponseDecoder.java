@@ -0,0 +1,99 @@
+package com.lenarsharipov.weather_api.http;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadFeature;
+import com.fasterxml.jackson.core.util.JsonRecyclerPools;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.lenarsharipov.weather_api.model.WeatherResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes weather responses straight from the bytes of the HTTP body.
+ * <p>
+ * The body is never turned into a {@link String}: Jackson's UTF-8 streaming parser reads the
+ * bytes directly. Parse buffers are borrowed from a bounded pool shared by all threads, so
+ * callbacks running on any executor thread (or on virtual threads) reuse them instead of
+ * allocating new ones per response. The target type is resolved once, up front.
+ */
+public class WeatherResponseDecoder {
+
+    private final JsonFactory jsonFactory;
+    private final ObjectReader reader;
+
+    public WeatherResponseDecoder(ObjectMapper objectMapper) {
+        this.jsonFactory = JsonFactory.builder()
+                .recyclerPool(JsonRecyclerPools.sharedBoundedPool())
+                .disable(StreamReadFeature.AUTO_CLOSE_SOURCE)
+                .build();
+        this.reader = objectMapper.readerFor(WeatherResponse.class);
+    }
+
+    /**
+     * Decodes a weather response from a byte stream. The stream is not closed.
+     *
+     * @param body the response body
+     * @return the decoded weather response
+     * @throws IOException if the body cannot be read or is not a valid weather response;
+     *                     invalid JSON is reported as a {@link com.fasterxml.jackson.core.JsonProcessingException}
+     */
+    public WeatherResponse decode(InputStream body) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            return reader.readValue(parser);
+        }
+    }
+
+    /**
+     * Decodes a weather response from a byte array.
+     *
+     * @param body the response body
+     * @return the decoded weather response
+     * @throws IOException if the body is not a valid weather response
+     */
+    public WeatherResponse decode(byte[] body) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            return reader.readValue(parser);
+        }
+    }
+
+    /**
+     * Decodes the weather responses of a multi-city response ({@code {"cnt": .., "list": [..]}})
+     * from a byte stream. The list is read element by element, so the body is never held as a
+     * tree; fields other than {@code list} are skipped. The stream is not closed.
+     *
+     * @param body the response body
+     * @return the decoded weather responses, in the order of the list
+     * @throws IOException if the body cannot be read or is not a valid multi-city response;
+     *                     invalid JSON is reported as a {@link com.fasterxml.jackson.core.JsonProcessingException}
+     */
+    public List<WeatherResponse> decodeList(InputStream body) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected a JSON object");
+            }
+            List<WeatherResponse> responses = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("list".equals(field) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        responses.add(reader.readValue(parser));
+                    }
+                    if (parser.currentToken() != JsonToken.END_ARRAY) {
+                        throw new JsonParseException(parser, "Expected a list of weather objects");
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return responses;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.lenarsharipov.weather_api.metrics;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies in nanoseconds.
+ * <p>
+ * Buckets are log-linear, as in HdrHistogram: every power of two is split into 32 equal
+ * sub-buckets, so each recorded value is kept with a relative error below about 3%, from
+ * nanoseconds to hours, in a fixed array of counters. Recording is a single atomic increment
+ * (plus a compare-and-set when a new maximum is seen) and never allocates, so it can be called
+ * on every request from any number of threads.
+ * <p>
+ * Snapshots are taken without stopping writers, so a value recorded while a snapshot is taken
+ * may or may not be part of it.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = Long.SIZE - SUB_BUCKET_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT * SUB_BUCKET_COUNT);
+    private final AtomicLong maxValue = new AtomicLong();
+
+    /**
+     * Records one latency. Negative values are recorded as zero.
+     *
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(value));
+        long max = maxValue.get();
+        while (value > max && !maxValue.compareAndSet(max, value)) {
+            max = maxValue.get();
+        }
+    }
+
+    /**
+     * Records the time elapsed since the given {@link System#nanoTime()} reading.
+     *
+     * @param startNanos the {@link System#nanoTime()} reading taken when the operation started
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Returns the number of recorded values and the 50th, 90th, 99th and 99.9th percentiles.
+     * Each percentile is reported as the upper bound of the bucket it falls into, capped by
+     * the maximum recorded value.
+     *
+     * @return the latency snapshot
+     */
+    public LatencySnapshot snapshot() {
+        long[] snapshot = new long[counts.length()];
+        long total = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return LatencySnapshot.EMPTY;
+        }
+        long max = maxValue.get();
+        return new LatencySnapshot(total,
+                percentile(snapshot, total, 0.5, max),
+                percentile(snapshot, total, 0.9, max),
+                percentile(snapshot, total, 0.99, max),
+                percentile(snapshot, total, 0.999, max),
+                Duration.ofNanos(max));
+    }
+
+    private static Duration percentile(long[] snapshot, long total, double quantile, long max) {
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Duration.ofNanos(Math.min(highestValueAt(i), max));
+            }
+        }
+        return Duration.ofNanos(max);
+    }
+
+    /**
+     * Returns the counter index for a value. Values below 32 get a counter each; larger values
+     * share a counter with the values that have the same highest six bits.
+     */
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int bucket = exponent - SUB_BUCKET_BITS + 1;
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return bucket * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * Returns the largest value that maps to the counter index.
+     */
+    static long highestValueAt(int index) {
+        int bucket = index / SUB_BUCKET_COUNT;
+        int subBucket = index % SUB_BUCKET_COUNT;
+        if (bucket == 0) {
+            return subBucket;
+        }
+        int shift = bucket - 1;
+        long lowest = ((long) (SUB_BUCKET_COUNT + subBucket)) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,28 @@
+package com.lenarsharipov.weather_api.metrics;
+
+import java.time.Duration;
+
+/**
+ * Percentiles of the latencies recorded by a {@link LatencyHistogram}.
+ *
+ * @param count the number of recorded values
+ * @param p50   the median latency
+ * @param p90   the 90th percentile
+ * @param p99   the 99th percentile
+ * @param p999  the 99.9th percentile
+ * @param max   the largest recorded latency
+ */
+public record LatencySnapshot(
+        long count,
+        Duration p50,
+        Duration p90,
+        Duration p99,
+        Duration p999,
+        Duration max
+) {
+    /**
+     * A snapshot of a histogram with no recorded values.
+     */
+    public static final LatencySnapshot EMPTY =
+            new LatencySnapshot(0, Duration.ZERO, Duration.ZERO, Duration.ZERO, Duration.ZERO, Duration.ZERO);
+}
@@ -0,0 +1,17 @@
+package com.lenarsharipov.weather_api.metrics;
+
+/**
+ * Latency percentiles of a weather service, by stage.
+ *
+ * @param cacheHit      {@code getWeather} calls answered from the cache
+ * @param cacheMiss     {@code getWeather} calls that waited for a request, including failed ones
+ * @param httpRoundTrip requests to the external API, from sending until the response arrives
+ * @param jsonDecode    decoding of successful responses
+ */
+public record LatencyStats(
+        LatencySnapshot cacheHit,
+        LatencySnapshot cacheMiss,
+        LatencySnapshot httpRoundTrip,
+        LatencySnapshot jsonDecode
+) {
+}
@@ -1,11 +1,12 @@
 package com.lenarsharipov.weather_api.mode;
 
+import com.lenarsharipov.weather_api.datastructure.SharedCache;
 import com.lenarsharipov.weather_api.http.WeatherHttpClient;
 import com.lenarsharipov.weather_api.service.WeatherService;
 import com.lenarsharipov.weather_api.service.impl.WeatherServiceOnDemand;
 import com.lenarsharipov.weather_api.service.impl.WeatherServicePolling;
 import com.lenarsharipov.weather_api.settings.Settings;
-import com.lenarsharipov.weather_api.utils.TriFunction;
+import com.lenarsharipov.weather_api.utils.QuadFunction;
 
 /**
  * Represents the mode of the API.
@@ -24,7 +25,8 @@ public enum ApiMode {
      * Polling mode.
      * In this mode, the API will fetch data from the external source at a regular interval.
      */
-    POLLING(WeatherServicePolling::new),
+    POLLING((apiKey, httpClient, settings, sharedCache) ->
+            new WeatherServicePolling(apiKey, httpClient, settings, sharedCache).start()),
 
     /**
      * On-demand mode.
@@ -32,12 +34,12 @@ public enum ApiMode {
      */
     ON_DEMAND(WeatherServiceOnDemand::new);
 
-    private final TriFunction<String, WeatherHttpClient, Settings, WeatherService> serviceFactory;
+    private final QuadFunction<String, WeatherHttpClient, Settings, SharedCache, WeatherService> serviceFactory;
 
     /**
      * @param serviceFactory the factory that creates the service instance
      */
-    ApiMode(TriFunction<String, WeatherHttpClient, Settings, WeatherService> serviceFactory) {
+    ApiMode(QuadFunction<String, WeatherHttpClient, Settings, SharedCache, WeatherService> serviceFactory) {
         this.serviceFactory = serviceFactory;
     }
 
@@ -52,6 +54,22 @@ public enum ApiMode {
     public WeatherService createWeatherService(String apiKey,
                                                WeatherHttpClient httpClient,
                                                Settings settings) {
-        return serviceFactory.apply(apiKey, httpClient, settings);
+        return createWeatherService(apiKey, httpClient, settings, new SharedCache(0L));
+    }
+
+    /**
+     * Creates a new instance of the service that shares a second-level cache with other services.
+     *
+     * @param apiKey      the API key to use
+     * @param httpClient  the HTTP client to use
+     * @param settings    the settings to use
+     * @param sharedCache the cache shared with other services
+     * @return the created service instance
+     */
+    public WeatherService createWeatherService(String apiKey,
+                                               WeatherHttpClient httpClient,
+                                               Settings settings,
+                                               SharedCache sharedCache) {
+        return serviceFactory.apply(apiKey, httpClient, settings, sharedCache);
     }
 }
\ No newline at end of file
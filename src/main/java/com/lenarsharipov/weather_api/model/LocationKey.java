@@ -0,0 +1,211 @@
+package com.lenarsharipov.weather_api.model;
+
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * A location prepared for lookups: the location as passed by the caller, its normalized name,
+ * a precomputed hash and the URL-encoded form used in requests.
+ * <p>
+ * Two keys are equal if their normalized names are equal, so {@code "London"} and
+ * {@code " LONDON "} address the same cache entry. Normalization trims the location and
+ * converts it to upper case with {@link Locale#ROOT}, so it does not depend on the default
+ * locale of the host.
+ * <p>
+ * A city can also be addressed by its id, as returned in {@link WeatherResponse#id()}, with a key
+ * from {@link #ofCityId(int)}. A location passed to {@link #of(String)} is always a name, whatever
+ * it looks like. The name of a city id key, {@code "id:2643743"} for city 2643743, contains lower
+ * case letters, so it never equals a normalized location name; {@link #ofName(String)} turns
+ * either kind of name back into its key.
+ * <p>
+ * {@link #of(String)} keeps recently created keys in a small fixed-size table, so a caller
+ * that asks for the same locations again gets the same keys back without normalizing or
+ * encoding them again. A key also remembers the last request built for it, so repeated
+ * misses for a location reuse the request instead of building a new one.
+ */
+public final class LocationKey {
+
+    private static final int INTERNED_SIZE = 4096;
+    private static final String CITY_ID_PREFIX = "id:";
+
+    /**
+     * Recently created keys by the hash of the location as passed. Reads and writes race,
+     * which is harmless: keys are immutable apart from the request cache, and a lost write
+     * only means that a key is created again.
+     */
+    private static final LocationKey[] interned = new LocationKey[INTERNED_SIZE];
+
+    private final String location;
+    private final String name;
+    private final int hash;
+    private final String encodedLocation;
+    private final int cityId;
+    private volatile CachedRequest cachedRequest;
+
+    private LocationKey(String location, String name, int cityId) {
+        this.location = location;
+        this.name = name;
+        this.hash = name.hashCode();
+        this.encodedLocation = URLEncoder.encode(location, StandardCharsets.UTF_8);
+        this.cityId = cityId;
+    }
+
+    /**
+     * Returns the key for the location, reusing a recently created one if possible.
+     *
+     * @param location the location as passed by the caller
+     * @return the location key
+     */
+    public static LocationKey of(String location) {
+        int slot = location.hashCode() & (INTERNED_SIZE - 1);
+        LocationKey key = interned[slot];
+        if (key == null || key.cityId != 0 || !key.location.equals(location)) {
+            key = new LocationKey(location, normalize(location), 0);
+            interned[slot] = key;
+        }
+        return key;
+    }
+
+    /**
+     * Returns the key of the city with the given id, reusing a recently created one if possible.
+     *
+     * @param cityId the city id, as returned in {@link WeatherResponse#id()}
+     * @return the location key
+     * @throws IllegalArgumentException if the city id is not positive
+     */
+    public static LocationKey ofCityId(int cityId) {
+        if (cityId <= 0) {
+            throw new IllegalArgumentException("City id must be positive: " + cityId);
+        }
+        int slot = cityId & (INTERNED_SIZE - 1);
+        LocationKey key = interned[slot];
+        if (key == null || key.cityId != cityId) {
+            String name = CITY_ID_PREFIX + cityId;
+            key = new LocationKey(name, name, cityId);
+            interned[slot] = key;
+        }
+        return key;
+    }
+
+    /**
+     * Returns the key with the given name, as returned by {@link #name()}: the key of a city id
+     * for the name of a city id key, otherwise the key of the location name.
+     *
+     * @param name the name of the key
+     * @return the location key
+     */
+    public static LocationKey ofName(String name) {
+        int cityId = parseCityId(name);
+        return cityId > 0 ? ofCityId(cityId) : of(name);
+    }
+
+    /**
+     * Normalizes a location by trimming it and converting it to upper case.
+     *
+     * @param location the location to normalize
+     * @return the normalized location
+     */
+    public static String normalize(String location) {
+        return location.trim().toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns the location as passed by the caller that created this key.
+     *
+     * @return the location
+     */
+    public String location() {
+        return location;
+    }
+
+    /**
+     * Returns the normalized location.
+     *
+     * @return the normalized name
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Returns the id of the city this key addresses.
+     *
+     * @return the city id, or 0 if the key is a location name, see {@link #ofCityId(int)}
+     */
+    public int cityId() {
+        return cityId;
+    }
+
+    /**
+     * Returns the location encoded for a URL query.
+     *
+     * @return the encoded location
+     */
+    public String encodedLocation() {
+        return encodedLocation;
+    }
+
+    /**
+     * Returns the request last cached for this key by the given owner.
+     *
+     * @param owner identifies the request template, compared by identity
+     * @return the cached request, or null if the last request was cached by another owner
+     */
+    public HttpRequest cachedRequest(Object owner) {
+        CachedRequest cached = cachedRequest;
+        return cached != null && cached.owner() == owner
+                ? cached.request()
+                : null;
+    }
+
+    /**
+     * Caches a request built for this key, replacing the previous one.
+     *
+     * @param owner   identifies the request template the request was built from
+     * @param request the request
+     */
+    public void cacheRequest(Object owner, HttpRequest request) {
+        cachedRequest = new CachedRequest(owner, request);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        return o instanceof LocationKey other
+                && hash == other.hash
+                && name.equals(other.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    private static int parseCityId(String name) {
+        int prefixLength = CITY_ID_PREFIX.length();
+        if (name.length() <= prefixLength || name.length() > prefixLength + 10 || !name.startsWith(CITY_ID_PREFIX)) {
+            return 0;
+        }
+        long cityId = 0;
+        for (int i = prefixLength; i < name.length(); i++) {
+            char digit = name.charAt(i);
+            if (digit < '0' || digit > '9') {
+                return 0;
+            }
+            cityId = cityId * 10 + (digit - '0');
+        }
+        return cityId <= Integer.MAX_VALUE ? (int) cityId : 0;
+    }
+
+    private record CachedRequest(Object owner, HttpRequest request) {
+    }
+}
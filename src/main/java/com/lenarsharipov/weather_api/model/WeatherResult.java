@@ -0,0 +1,27 @@
+package com.lenarsharipov.weather_api.model;
+
+/**
+ * The outcome of a lookup for one location in a bulk request:
+ * either the weather response or the error that prevented it.
+ *
+ * @param location the location as passed by the caller
+ * @param response the weather data, or null if the lookup failed
+ * @param error    the error, or null if the lookup succeeded
+ */
+public record WeatherResult(
+        String location,
+        WeatherResponse response,
+        Exception error
+) {
+    public static WeatherResult success(String location, WeatherResponse response) {
+        return new WeatherResult(location, response, null);
+    }
+
+    public static WeatherResult failure(String location, Exception error) {
+        return new WeatherResult(location, null, error);
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
@@ -1,13 +1,53 @@
 package com.lenarsharipov.weather_api.service;
 
+import com.lenarsharipov.weather_api.datastructure.AliasTable;
 import com.lenarsharipov.weather_api.datastructure.Cache;
+import com.lenarsharipov.weather_api.datastructure.CacheEntry;
+import com.lenarsharipov.weather_api.datastructure.CacheSnapshot;
+import com.lenarsharipov.weather_api.datastructure.ExpirationPolicy;
+import com.lenarsharipov.weather_api.datastructure.FetchedWeather;
+import com.lenarsharipov.weather_api.datastructure.GeoCache;
+import com.lenarsharipov.weather_api.datastructure.CacheStore;
+import com.lenarsharipov.weather_api.datastructure.NegativeCache;
+import com.lenarsharipov.weather_api.datastructure.SharedCache;
 import com.lenarsharipov.weather_api.exception.HttpException;
 import com.lenarsharipov.weather_api.exception.ServiceShutDownException;
+import com.lenarsharipov.weather_api.http.CircuitBreaker;
 import com.lenarsharipov.weather_api.http.WeatherHttpClient;
+import com.lenarsharipov.weather_api.metrics.LatencyHistogram;
+import com.lenarsharipov.weather_api.metrics.LatencyStats;
+import com.lenarsharipov.weather_api.model.LocationKey;
 import com.lenarsharipov.weather_api.model.WeatherResponse;
+import com.lenarsharipov.weather_api.model.WeatherResult;
 import com.lenarsharipov.weather_api.settings.Settings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 /**
  * Abstract base class for weather services providing common functionality.
@@ -15,11 +55,32 @@ import java.util.concurrent.atomic.AtomicBoolean;
  */
 public abstract class AbstractWeatherService implements WeatherService {
 
+    private static final Logger logger = LoggerFactory.getLogger(AbstractWeatherService.class);
+
     protected final AtomicBoolean isActive = new AtomicBoolean(true);
-    protected final Integer dataFreshnessPeriod;
+    protected final long dataFreshnessMillis;
+    protected final Integer bulkMaxConcurrency;
+    protected final boolean staleWhileRevalidate;
+    protected final long maxStalenessMillis;
     protected final String apiKey;
     protected final WeatherHttpClient httpClient;
     protected final Cache cache;
+    protected final NegativeCache negativeCache;
+    protected final GeoCache geoCache;
+    protected final AliasTable aliasTable;
+    protected final SharedCache sharedCache;
+    protected final CacheStore cacheStore;
+    private final ExecutorService storeExecutor;
+    private final Map<String, FetchedWeather> pendingStoreWrites = new ConcurrentHashMap<>();
+    private final AtomicBoolean storeWriting = new AtomicBoolean(false);
+    private final InFlightRequests inFlightRequests = new InFlightRequests();
+    private final Subscriptions subscriptions;
+    private final LatencyHistogram cacheHitLatency = new LatencyHistogram();
+    private final LatencyHistogram cacheMissLatency = new LatencyHistogram();
+    private final Path snapshotFile;
+    private final ScheduledExecutorService snapshotScheduler;
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+    private boolean snapshotClosed;
 
     /**
      * Initializes the weather service with the provided API key, HTTP client, and settings.
@@ -31,25 +92,95 @@ public abstract class AbstractWeatherService implements WeatherService {
     public AbstractWeatherService(String apiKey,
                                   WeatherHttpClient httpClient,
                                   Settings settings) {
+        this(apiKey, httpClient, settings, new SharedCache(0L));
+    }
+
+    /**
+     * Initializes the weather service with the provided API key, HTTP client, settings and
+     * a second-level cache shared with other services.
+     *
+     * @param apiKey       the API key for the weather service
+     * @param httpClient   the HTTP client for API communication
+     * @param settings     the settings for the service configuration
+     * @param sharedCache  the cache shared with other services; it is not cleared on shutdown
+     */
+    public AbstractWeatherService(String apiKey,
+                                  WeatherHttpClient httpClient,
+                                  Settings settings,
+                                  SharedCache sharedCache) {
         this.apiKey = apiKey;
+        this.sharedCache = sharedCache;
+        this.cacheStore = settings.remoteCache().store();
+        this.storeExecutor = cacheStore == null ? null : Executors.newVirtualThreadPerTaskExecutor();
         this.httpClient = httpClient;
-        this.cache = new Cache(settings.cache().size());
-        this.dataFreshnessPeriod = settings.dataFreshnessPeriod() == null
+        TimeUnit dataFreshnessUnit = settings.dataFreshnessUnit() == null
+                ? DEFAULT_DATA_FRESHNESS_UNIT
+                : settings.dataFreshnessUnit();
+        this.dataFreshnessMillis = dataFreshnessUnit.toMillis(settings.dataFreshnessPeriod() == null
                 ? DEFAULT_DATA_FRESHNESS_PERIOD
-                : settings.dataFreshnessPeriod();
+                : settings.dataFreshnessPeriod());
+        this.maxStalenessMillis = (settings.staleWhileRevalidate().maxStaleness() == null
+                ? DEFAULT_MAX_STALENESS
+                : settings.staleWhileRevalidate().maxStaleness()).toMillis();
+        this.cache = new Cache(settings.cache().size(),
+                settings.cache().evictionPolicy(),
+                settings.cache().segments(),
+                new ExpirationPolicy(Duration.ofMillis(dataFreshnessMillis),
+                        settings.expiration().expireAfterWrite(),
+                        settings.expiration().expireAfterAccess(),
+                        settings.expiration().refreshAfterWrite(),
+                        settings.expiration().timeToLive()));
+        this.negativeCache = new NegativeCache(settings.negativeCache().size(),
+                settings.negativeCache().ttl());
+        this.geoCache = new GeoCache(settings.proximity().size(),
+                settings.proximity().radius());
+        boolean aliasingEnabled = settings.aliasing().enabled() == null
+                ? AliasTable.DEFAULT_ALIASING_ENABLED
+                : settings.aliasing().enabled();
+        this.aliasTable = new AliasTable(aliasingEnabled ? settings.aliasing().size() : Integer.valueOf(0));
+        this.bulkMaxConcurrency = settings.bulk().maxConcurrency() == null
+                ? DEFAULT_BULK_MAX_CONCURRENCY
+                : settings.bulk().maxConcurrency();
+        this.staleWhileRevalidate = settings.staleWhileRevalidate().enabled() == null
+                ? DEFAULT_STALE_WHILE_REVALIDATE
+                : settings.staleWhileRevalidate().enabled();
+        this.subscriptions = new Subscriptions(settings.subscriptions().bufferSize() == null
+                ? DEFAULT_SUBSCRIPTION_BUFFER_SIZE
+                : settings.subscriptions().bufferSize());
+
+        this.snapshotFile = settings.snapshot().file();
+        this.snapshotScheduler = startSnapshots(settings.snapshot());
     }
 
     /**
-     * Shuts down the weather service, clearing the cache and marking it as inactive.
+     * Shuts down the weather service, clearing the cache, closing its HTTP client and marking it
+     * as inactive. If a snapshot file is configured, the cache is saved to it first. Subscriptions
+     * are completed.
      */
     @Override
     public void shutdown() {
-        this.isActive.set(false);
+        if (!this.isActive.getAndSet(false)) {
+            return;
+        }
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdown();
+        }
+        if (storeExecutor != null) {
+            storeExecutor.shutdown();
+        }
+        saveSnapshot(true);
         this.cache.clear();
+        this.negativeCache.clear();
+        this.geoCache.clear();
+        this.aliasTable.clear();
+        this.subscriptions.completeAll();
+        this.httpClient.close();
     }
 
     /**
      * Retrieves weather data for the specified location. Uses cache if data is fresh.
+     * With stale-while-revalidate enabled, stale data that is not older than {@code maxStaleness}
+     * is returned as well, and refreshed in the background.
      *
      * @param location the location for which to fetch weather data
      * @return the weather data
@@ -57,17 +188,817 @@ public abstract class AbstractWeatherService implements WeatherService {
      */
     @Override
     public WeatherResponse getWeather(String location) throws HttpException {
+        return getWeather(LocationKey.of(location));
+    }
+
+    /**
+     * Retrieves weather data for the specified location key. Uses cache if data is fresh.
+     *
+     * @param key the location key for which to fetch weather data
+     * @return the weather data
+     * @throws HttpException if an error occurs during data retrieval
+     */
+    @Override
+    public WeatherResponse getWeather(LocationKey key) throws HttpException {
         if (!isActive.get()) {
             throw new ServiceShutDownException();
         }
 
-        WeatherResponse weatherResponse = cache.get(location);
-        if (weatherResponse != null && isDataFresh(weatherResponse.dt(), dataFreshnessPeriod)) {
+        long startNanos = System.nanoTime();
+        LocationKey resolvedKey = resolve(key);
+        WeatherResponse weatherResponse = getFromCache(resolvedKey);
+        if (weatherResponse != null) {
+            cacheHitLatency.recordSince(startNanos);
             return weatherResponse;
         }
-        weatherResponse = fetchWeather(location);
-        cache.put(location, weatherResponse);
-        return weatherResponse;
+        try {
+            return loadWeather(resolvedKey);
+        } finally {
+            cacheMissLatency.recordSince(startNanos);
+        }
+    }
+
+    /**
+     * Retrieves weather data for the specified location asynchronously. Uses cache if data is fresh,
+     * in which case the returned future is already completed.
+     *
+     * @param location the location for which to fetch weather data
+     * @return a future that completes with the weather data
+     */
+    @Override
+    public CompletableFuture<WeatherResponse> getWeatherAsync(String location) {
+        return getWeatherAsync(LocationKey.of(location));
+    }
+
+    /**
+     * Retrieves weather data for the specified location key asynchronously. Uses cache if data
+     * is fresh, in which case the returned future is already completed.
+     *
+     * @param key the location key for which to fetch weather data
+     * @return a future that completes with the weather data
+     */
+    @Override
+    public CompletableFuture<WeatherResponse> getWeatherAsync(LocationKey key) {
+        if (!isActive.get()) {
+            return CompletableFuture.failedFuture(new ServiceShutDownException());
+        }
+
+        long startNanos = System.nanoTime();
+        LocationKey resolvedKey = resolve(key);
+        WeatherResponse weatherResponse = getFromCache(resolvedKey);
+        if (weatherResponse != null) {
+            cacheHitLatency.recordSince(startNanos);
+            return CompletableFuture.completedFuture(weatherResponse);
+        }
+        return loadWeatherAsync(resolvedKey)
+                .whenComplete((response, throwable) -> cacheMissLatency.recordSince(startNanos));
+    }
+
+    /**
+     * Retrieves weather data for the city with the specified id. Uses cache if data is fresh.
+     *
+     * @param cityId the city id
+     * @return the weather data
+     * @throws HttpException if an error occurs during data retrieval
+     */
+    @Override
+    public WeatherResponse getWeatherById(int cityId) throws HttpException {
+        return getWeather(LocationKey.ofCityId(cityId));
+    }
+
+    /**
+     * Retrieves weather data for the city with the specified id asynchronously.
+     *
+     * @param cityId the city id
+     * @return a future that completes with the weather data
+     */
+    @Override
+    public CompletableFuture<WeatherResponse> getWeatherByIdAsync(int cityId) {
+        return getWeatherAsync(LocationKey.ofCityId(cityId));
+    }
+
+    /**
+     * Retrieves weather data for the point with the specified coordinates. Uses fresh data cached
+     * for a point within the proximity radius, including data loaded by location.
+     *
+     * @param lat the latitude of the point
+     * @param lon the longitude of the point
+     * @return the weather data
+     * @throws HttpException if an error occurs during data retrieval
+     */
+    @Override
+    public WeatherResponse getWeather(double lat, double lon) throws HttpException {
+        if (!isActive.get()) {
+            throw new ServiceShutDownException();
+        }
+        checkCoordinates(lat, lon);
+
+        long startNanos = System.nanoTime();
+        WeatherResponse weatherResponse = geoCache.get(lat, lon, this::isFresh);
+        if (weatherResponse != null) {
+            cacheHitLatency.recordSince(startNanos);
+            return weatherResponse;
+        }
+        try {
+            return loadWeather(lat, lon);
+        } finally {
+            cacheMissLatency.recordSince(startNanos);
+        }
+    }
+
+    /**
+     * Retrieves weather data for the point with the specified coordinates asynchronously.
+     * Uses fresh data cached for a point within the proximity radius, in which case the returned
+     * future is already completed.
+     *
+     * @param lat the latitude of the point
+     * @param lon the longitude of the point
+     * @return a future that completes with the weather data
+     */
+    @Override
+    public CompletableFuture<WeatherResponse> getWeatherAsync(double lat, double lon) {
+        if (!isActive.get()) {
+            return CompletableFuture.failedFuture(new ServiceShutDownException());
+        }
+        checkCoordinates(lat, lon);
+
+        long startNanos = System.nanoTime();
+        WeatherResponse weatherResponse = geoCache.get(lat, lon, this::isFresh);
+        if (weatherResponse != null) {
+            cacheHitLatency.recordSince(startNanos);
+            return CompletableFuture.completedFuture(weatherResponse);
+        }
+        return loadWeatherAsync(lat, lon)
+                .whenComplete((response, throwable) -> cacheMissLatency.recordSince(startNanos));
+    }
+
+    /**
+     * Retrieves weather data for several locations. Fresh cached data is reported first, in one pass,
+     * followed by fresh data found in the cache store with one batch lookup;
+     * the remaining locations are fetched in parallel, with at most {@code bulkMaxConcurrency}
+     * requests in flight at once.
+     * <p>
+     * The consumer is called on the calling thread, once per distinct location, in completion order.
+     *
+     * @param locations      the locations for which to fetch weather data
+     * @param resultConsumer receives the result for each location as soon as it is available
+     */
+    @Override
+    public void getWeather(Collection<String> locations, Consumer<WeatherResult> resultConsumer) {
+        if (!isActive.get()) {
+            throw new ServiceShutDownException();
+        }
+
+        List<LocationKey> misses = new ArrayList<>();
+        for (String location : new LinkedHashSet<>(locations)) {
+            LocationKey key = LocationKey.of(location);
+            WeatherResponse weatherResponse = getFromCache(resolve(key));
+            if (weatherResponse != null) {
+                resultConsumer.accept(WeatherResult.success(location, weatherResponse));
+            } else {
+                misses.add(key);
+            }
+        }
+
+        misses = loadFromStore(misses, resultConsumer);
+
+        BlockingQueue<WeatherResult> completed = new LinkedBlockingQueue<>();
+        Semaphore permits = new Semaphore(bulkMaxConcurrency);
+        int delivered = 0;
+        for (LocationKey key : misses) {
+            while (!permits.tryAcquire()) {
+                resultConsumer.accept(takeUninterruptibly(completed));
+                delivered++;
+            }
+            try {
+                loadWeatherAsync(resolve(key), false).whenComplete((response, throwable) -> {
+                    permits.release();
+                    completed.add(throwable == null
+                            ? WeatherResult.success(key.location(), response)
+                            : WeatherResult.failure(key.location(), unwrap(throwable)));
+                });
+            } catch (RuntimeException e) {
+                permits.release();
+                completed.add(WeatherResult.failure(key.location(), e));
+            }
+        }
+        for (; delivered < misses.size(); delivered++) {
+            resultConsumer.accept(takeUninterruptibly(completed));
+        }
+    }
+
+    /**
+     * Subscribes to weather updates for the specified location. The subscriber is registered
+     * before the first lookup, so it also receives an update loaded while the lookup is running.
+     * Once the lookup has resolved the location, the subscription follows the key its data is
+     * stored under.
+     *
+     * @param location   the location for which to receive weather updates
+     * @param subscriber the subscriber that receives the updates
+     */
+    @Override
+    public void subscribe(String location, Flow.Subscriber<? super WeatherResponse> subscriber) {
+        if (!isActive.get()) {
+            throw new ServiceShutDownException();
+        }
+
+        LocationKey key = LocationKey.of(location);
+        Subscriptions.Subscription subscription = subscriptions.subscribe(resolve(key).name(), subscriber);
+        getWeatherAsync(key).whenComplete((response, throwable) -> {
+            if (throwable != null) {
+                subscription.fail(unwrap(throwable));
+                return;
+            }
+            String name = resolve(key).name();
+            subscription.moveTo(name);
+            subscriptions.publish(name, response);
+        });
+    }
+
+    /**
+     * Returns latency percentiles of this service. Cache hit and miss latencies cover
+     * {@link #getWeather(String)} and {@link #getWeatherAsync(String)} calls; round trip and
+     * decode latencies come from the HTTP client.
+     *
+     * @return the latency statistics
+     */
+    @Override
+    public LatencyStats getLatencyStats() {
+        return new LatencyStats(cacheHitLatency.snapshot(),
+                cacheMissLatency.snapshot(),
+                httpClient.getRoundTripLatency(),
+                httpClient.getDecodeLatency());
+    }
+
+    /**
+     * Returns the state of the HTTP client's circuit breaker.
+     *
+     * @return the circuit breaker state
+     */
+    @Override
+    public CircuitBreaker.State getCircuitBreakerState() {
+        return httpClient.getCircuitBreakerState();
+    }
+
+    /**
+     * Fetches weather data for the specified location and stores it in the cache.
+     * <p>
+     * Concurrent loads of the same location are coalesced: only one request is sent
+     * to the external source, and every caller receives its result or its exception.
+     * The caller that sends the request first checks the cache again, so a caller that missed
+     * the cache just before another load stored fresh data uses that data instead of a request.
+     * A location that recently failed with a permanent error (see {@link NegativeCache})
+     * fails again at once, without a request. With a cache store, fresh data another JVM
+     * stored for the location is used instead of a request if it is newer than the cached data.
+     *
+     * @param key the location key to fetch weather data for
+     * @return the weather data
+     * @throws HttpException if an error occurs during data retrieval
+     */
+    protected WeatherResponse loadWeather(LocationKey key) throws HttpException {
+        return loadWeather(key, true);
+    }
+
+    /**
+     * Fetches weather data for the specified location and stores it in the cache, even if the
+     * cached data is still fresh, for example to refresh it ahead of its expiry. Concurrent loads
+     * are coalesced in the same way as by {@link #loadWeather(LocationKey)}.
+     *
+     * @param key the location key to fetch weather data for
+     * @return the weather data
+     * @throws HttpException if an error occurs during data retrieval
+     */
+    protected WeatherResponse refreshWeather(LocationKey key) throws HttpException {
+        return loadWeather(key, false);
+    }
+
+    private WeatherResponse loadWeather(LocationKey key, boolean useFreshData) throws HttpException {
+        HttpException knownFailure = negativeCache.get(key);
+        if (knownFailure != null) {
+            throw knownFailure;
+        }
+        return inFlightRequests.execute(key.name(), () -> {
+            WeatherResponse cachedResponse = useFreshData ? peekFresh(key) : null;
+            if (cachedResponse != null) {
+                return cachedResponse;
+            }
+            WeatherResponse storedResponse = loadFromStore(key);
+            if (storedResponse != null) {
+                return storedResponse;
+            }
+            WeatherResponse response;
+            try {
+                response = key.cityId() > 0 ? fetchWeatherById(key.cityId()) : fetchWeather(key.location());
+            } catch (HttpException e) {
+                negativeCache.put(key, e);
+                throw e;
+            }
+            onWeatherLoaded(store(key, response), response);
+            return response;
+        });
+    }
+
+    /**
+     * Fetches weather data for the point with the specified coordinates and stores it in the
+     * proximity cache at that point. Concurrent loads of nearby points share a single request.
+     *
+     * @param lat the latitude of the point
+     * @param lon the longitude of the point
+     * @return the weather data
+     * @throws HttpException if an error occurs during data retrieval
+     */
+    protected WeatherResponse loadWeather(double lat, double lon) throws HttpException {
+        return inFlightRequests.execute(coordinatesKey(lat, lon), () -> {
+            WeatherResponse response = fetchWeather(lat, lon);
+            geoCache.put(lat, lon, response, System.currentTimeMillis());
+            return response;
+        });
+    }
+
+    /**
+     * Fetches weather data for the point with the specified coordinates asynchronously and stores
+     * it in the proximity cache at that point. Concurrent loads of nearby points share a single request.
+     *
+     * @param lat the latitude of the point
+     * @param lon the longitude of the point
+     * @return a future that completes with the weather data
+     */
+    protected CompletableFuture<WeatherResponse> loadWeatherAsync(double lat, double lon) {
+        return inFlightRequests.executeAsync(coordinatesKey(lat, lon),
+                () -> fetchWeatherAsync(lat, lon)
+                        .thenApply(response -> {
+                            geoCache.put(lat, lon, response, System.currentTimeMillis());
+                            return response;
+                        }));
+    }
+
+    /**
+     * Fetches weather data for the specified location asynchronously and stores it in the cache.
+     * Concurrent loads of the same location share a single request, including loads started
+     * by {@link #loadWeather(LocationKey)}. As there, the cache is checked again before the request,
+     * and fresh data in the cache store is used instead of a request; the store is read on a
+     * virtual thread, so the calling thread is never blocked.
+     *
+     * @param key the location key to fetch weather data for
+     * @return a future that completes with the weather data
+     */
+    protected CompletableFuture<WeatherResponse> loadWeatherAsync(LocationKey key) {
+        return loadWeatherAsync(key, true);
+    }
+
+    private CompletableFuture<WeatherResponse> loadWeatherAsync(LocationKey key, boolean lookUpStore) {
+        HttpException knownFailure = negativeCache.get(key);
+        if (knownFailure != null) {
+            return CompletableFuture.failedFuture(knownFailure);
+        }
+        return inFlightRequests.executeAsync(key.name(), () -> {
+            WeatherResponse cachedResponse = peekFresh(key);
+            if (cachedResponse != null) {
+                return CompletableFuture.completedFuture(cachedResponse);
+            }
+            if (cacheStore == null || !lookUpStore) {
+                return fetchAndStoreAsync(key);
+            }
+            return CompletableFuture.supplyAsync(() -> loadFromStore(key), storeExecutor)
+                    .thenCompose(storedResponse -> storedResponse != null
+                            ? CompletableFuture.completedFuture(storedResponse)
+                            : fetchAndStoreAsync(key));
+        });
+    }
+
+    private CompletableFuture<WeatherResponse> fetchAndStoreAsync(LocationKey key) {
+        CompletableFuture<WeatherResponse> future = key.cityId() > 0
+                ? fetchWeatherByIdAsync(key.cityId())
+                : fetchWeatherAsync(key.location());
+        return future
+                .whenComplete((response, throwable) -> {
+                    if (throwable != null && unwrap(throwable) instanceof HttpException httpException) {
+                        negativeCache.put(key, httpException);
+                    }
+                })
+                .thenApply(response -> {
+                    onWeatherLoaded(store(key, response), response);
+                    return response;
+                });
+    }
+
+    /**
+     * Returns cached data for a location that a load can return instead of a request: data that
+     * is fresh and not due for a refresh. Does not count as a use of the entry.
+     */
+    private WeatherResponse peekFresh(LocationKey key) {
+        long nowMillis = System.currentTimeMillis();
+        CacheEntry entry = cache.peekEntry(key);
+        return entry != null && entry.isFresh(nowMillis) && !entry.isDueForRefresh(nowMillis)
+                ? entry.response()
+                : null;
+    }
+
+    /**
+     * Loads several locations with one request, such as a request to the multi-city group endpoint,
+     * sharing it with concurrent loads of the same locations as {@link #loadWeather(LocationKey)} does.
+     * Locations whose load is already in flight are left to that load and not passed to the fetcher;
+     * a load of one of the other locations that starts meanwhile waits for this request.
+     *
+     * @param keys    the location keys to load
+     * @param fetcher fetches and stores the data of the locations it is given, for example with
+     *                {@link #storeWeather(LocationKey, WeatherResponse)}, and returns it by location
+     *                key, leaving out locations it got no data for
+     * @return the data by location key, for the locations this request loaded
+     * @throws HttpException if the request fails
+     */
+    protected Map<LocationKey, WeatherResponse> loadWeatherGroup(
+            List<LocationKey> keys,
+            GroupFetcher fetcher) throws HttpException {
+        Map<String, LocationKey> keysByName = new LinkedHashMap<>();
+        keys.forEach(key -> keysByName.put(key.name(), key));
+        Map<LocationKey, WeatherResponse> loaded = new LinkedHashMap<>();
+        inFlightRequests.executeAll(List.copyOf(keysByName.keySet()), names -> {
+            Map<LocationKey, WeatherResponse> responses = fetcher.fetch(names.stream().map(keysByName::get).toList());
+            loaded.putAll(responses);
+            Map<String, WeatherResponse> responsesByName = new HashMap<>();
+            responses.forEach((key, response) -> responsesByName.put(key.name(), response));
+            return responsesByName;
+        });
+        return loaded;
+    }
+
+    /**
+     * A fetch of several locations in one request, performed by {@link #loadWeatherGroup}.
+     */
+    @FunctionalInterface
+    protected interface GroupFetcher {
+        Map<LocationKey, WeatherResponse> fetch(List<LocationKey> keys) throws HttpException;
+    }
+
+    /**
+     * Stores weather data for a location that was fetched outside {@link #loadWeather(LocationKey)},
+     * for example as part of a multi-city request, in the same way as a load does.
+     *
+     * @param key      the location key the data was fetched for
+     * @param response the fetched weather data
+     */
+    protected void storeWeather(LocationKey key, WeatherResponse response) {
+        onWeatherLoaded(store(key, response), response);
+    }
+
+    /**
+     * Stores fetched weather data in the cache, the shared cache and the proximity cache, and
+     * offers it to the subscribers of the location. The data is written to the cache store in the
+     * background (see {@link #writeToStore}). With aliasing enabled,
+     * data for a location name is stored under the id of the city it resolved to, and the name
+     * becomes an alias of the city.
+     *
+     * @param key      the location key of the load
+     * @param response the fetched weather data
+     * @return the key the data is stored under
+     */
+    private LocationKey store(LocationKey key, WeatherResponse response) {
+        LocationKey storedKey = key;
+        if (aliasTable.isEnabled() && key.cityId() == 0 && response.id() > 0) {
+            storedKey = LocationKey.ofCityId(response.id());
+            aliasTable.put(key.name(), response.id());
+            cache.aliasTimeToLive(key, storedKey);
+        }
+        long fetchedAtMillis = System.currentTimeMillis();
+        cache.put(storedKey, response, fetchedAtMillis);
+        sharedCache.put(storedKey, response, fetchedAtMillis);
+        geoCache.put(response, fetchedAtMillis);
+        subscriptions.publish(storedKey.name(), response);
+        if (!storedKey.equals(key)) {
+            subscriptions.publish(key.name(), response);
+        }
+        if (cacheStore != null) {
+            writeToStore(storedKey.name(), new FetchedWeather(response, fetchedAtMillis));
+        }
+        return storedKey;
+    }
+
+    /**
+     * Queues weather data to be written to the cache store on a virtual thread, so a slow or
+     * unreachable store never holds up a load. Writes that pile up while one is running are sent
+     * together as one batch, keeping only the latest data of each location.
+     */
+    private void writeToStore(String name, FetchedWeather weather) {
+        pendingStoreWrites.merge(name, weather, (queued, fetched) ->
+                fetched.fetchedAtMillis() >= queued.fetchedAtMillis() ? fetched : queued);
+        if (storeWriting.compareAndSet(false, true)) {
+            try {
+                storeExecutor.execute(this::flushStoreWrites);
+            } catch (RejectedExecutionException e) {
+                storeWriting.set(false);
+                logger.debug("Cache store write of location {} dropped, the service is shut down", name);
+            }
+        }
+    }
+
+    private void flushStoreWrites() {
+        do {
+            while (!pendingStoreWrites.isEmpty()) {
+                Map<String, FetchedWeather> batch = new HashMap<>();
+                for (String name : pendingStoreWrites.keySet()) {
+                    FetchedWeather weather = pendingStoreWrites.remove(name);
+                    if (weather != null) {
+                        batch.put(name, weather);
+                    }
+                }
+                try {
+                    cacheStore.putAll(batch);
+                } catch (IOException | RuntimeException e) {
+                    logger.warn("Failed to write {} locations to the cache store: {}", batch.size(), e.getMessage());
+                }
+            }
+            storeWriting.set(false);
+        } while (!pendingStoreWrites.isEmpty() && storeWriting.compareAndSet(false, true));
+    }
+
+    /**
+     * Returns fresh data for a location from the cache store if it is newer than the cached data,
+     * after copying it into the cache. A store that cannot be reached counts as a miss.
+     *
+     * @param key the location key to look up
+     * @return the stored weather data, or null if the store has no usable data
+     */
+    private WeatherResponse loadFromStore(LocationKey key) {
+        if (cacheStore == null) {
+            return null;
+        }
+        try {
+            FetchedWeather storedWeather = cacheStore.get(key.name());
+            return keepIfUsable(key, storedWeather) ? storedWeather.response() : null;
+        } catch (IOException e) {
+            logger.warn("Failed to read location {} from the cache store: {}", key.location(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Looks up several locations in the cache store with one batch read and reports the usable ones.
+     *
+     * @param keys           the location keys to look up
+     * @param resultConsumer receives the result for each location found
+     * @return the keys of the locations that were not found
+     */
+    private List<LocationKey> loadFromStore(List<LocationKey> keys, Consumer<WeatherResult> resultConsumer) {
+        if (cacheStore == null || keys.isEmpty()) {
+            return keys;
+        }
+        Map<String, FetchedWeather> storedWeather;
+        try {
+            storedWeather = cacheStore.getAll(keys.stream().map(key -> resolve(key).name()).toList());
+        } catch (IOException e) {
+            logger.warn("Failed to read {} locations from the cache store: {}", keys.size(), e.getMessage());
+            return keys;
+        }
+        List<LocationKey> misses = new ArrayList<>();
+        for (LocationKey key : keys) {
+            LocationKey resolvedKey = resolve(key);
+            FetchedWeather weather = storedWeather.get(resolvedKey.name());
+            if (keepIfUsable(resolvedKey, weather)) {
+                resultConsumer.accept(WeatherResult.success(key.location(), weather.response()));
+            } else {
+                misses.add(key);
+            }
+        }
+        return misses;
+    }
+
+    /**
+     * Copies data from the cache store into the cache if it is fresh and newer than the cached data,
+     * keeping the time it was fetched.
+     */
+    private boolean keepIfUsable(LocationKey key, FetchedWeather storedWeather) {
+        if (storedWeather == null || !isFresh(key, storedWeather, System.currentTimeMillis())) {
+            return false;
+        }
+        if (!isNewer(storedWeather, cache.peekEntry(key))) {
+            return false;
+        }
+        WeatherResponse storedResponse = storedWeather.response();
+        cache.put(key, storedResponse, storedWeather.fetchedAtMillis());
+        sharedCache.put(key, storedResponse, storedWeather.fetchedAtMillis());
+        geoCache.put(storedResponse, storedWeather.fetchedAtMillis());
+        subscriptions.publish(key.name(), storedResponse);
+        onWeatherLoaded(key, storedResponse);
+        return true;
+    }
+
+    /**
+     * Returns the key of the city a location name is an alias of, or the key itself if the
+     * name has no known alias.
+     */
+    private LocationKey resolve(LocationKey key) {
+        if (key.cityId() > 0) {
+            return key;
+        }
+        int cityId = aliasTable.get(key.name());
+        return cityId > 0 ? LocationKey.ofCityId(cityId) : key;
+    }
+
+    /**
+     * Checks whether anyone is subscribed to updates of a location.
+     *
+     * @param key the key the data of the location is stored under
+     * @return true if the location has subscribers
+     */
+    protected boolean hasSubscribers(LocationKey key) {
+        return subscriptions.hasSubscribers(key.name());
+    }
+
+    /**
+     * Called after fresh weather data for a location has been fetched and stored in the cache.
+     * Does nothing by default.
+     *
+     * @param key      the key the data is stored under
+     * @param response the stored weather data
+     */
+    protected void onWeatherLoaded(LocationKey key, WeatherResponse response) {
+    }
+
+    /**
+     * Returns the cached weather data for the specified location if it can be served.
+     * <p>
+     * Data is fresh until its cache entry expires, which depends on when it was fetched, not on
+     * when it was observed (see {@link Cache}). Fresh data is always served; if it is due for a refresh
+     * ahead of its expiry ({@code refreshAfterWrite}), a background refresh is started. If the cache has no
+     * fresh data, newer data fetched by another service is taken from the shared cache, if it was
+     * fetched recently enough to be fresh, and copied into this service's cache with its fetch time. With stale-while-revalidate
+     * enabled, stale data fetched no longer than {@code maxStaleness} ago is served too, and a
+     * background refresh is started for it. Concurrent refreshes of the same location share a
+     * single request. The check does not allocate.
+     *
+     * @param key the location key to look up
+     * @return the cached weather data, or null if it is missing or too old to be served
+     */
+    protected WeatherResponse getFromCache(LocationKey key) {
+        long nowMillis = System.currentTimeMillis();
+        CacheEntry entry = cache.getEntry(key);
+        if (entry != null && entry.isFresh(nowMillis)) {
+            if (entry.isDueForRefresh(nowMillis)) {
+                revalidate(key);
+            }
+            return entry.response();
+        }
+        FetchedWeather sharedWeather = sharedCache.getEntry(key);
+        if (sharedWeather != null && isFresh(key, sharedWeather, nowMillis) && isNewer(sharedWeather, entry)) {
+            WeatherResponse sharedResponse = sharedWeather.response();
+            cache.put(key, sharedResponse, sharedWeather.fetchedAtMillis());
+            subscriptions.publish(key.name(), sharedResponse);
+            onWeatherLoaded(key, sharedResponse);
+            return sharedResponse;
+        }
+        if (entry == null) {
+            return null;
+        }
+        if (staleWhileRevalidate && nowMillis - entry.fetchedAtMillis() < maxStalenessMillis) {
+            revalidate(key);
+            return entry.response();
+        }
+        return null;
+    }
+
+    /**
+     * Refreshes the cached data for the specified location in the background. A failed refresh
+     * is logged; the cached data stays in the cache and the next read tries again.
+     */
+    private void revalidate(LocationKey key) {
+        loadWeatherAsync(key).whenComplete((response, throwable) -> {
+            if (throwable != null) {
+                logger.warn("Background refresh of location {} failed: {}",
+                        key.location(), unwrap(throwable).getMessage());
+            }
+        });
+    }
+
+    /**
+     * Loads the snapshot into the cache, if a snapshot file is configured, and starts saving
+     * the cache periodically if an interval is set.
+     *
+     * @return the scheduler that saves snapshots, or null if the cache is saved only on shutdown
+     */
+    private ScheduledExecutorService startSnapshots(Settings.Snapshot snapshot) {
+        if (snapshot.file() == null) {
+            return null;
+        }
+        try {
+            int restored = CacheSnapshot.read(snapshot.file(), cache);
+            logger.info("Restored {} cached locations from {}", restored, snapshot.file());
+        } catch (IOException e) {
+            logger.warn("Failed to restore cache snapshot from {}: {}", snapshot.file(), e.getMessage());
+        }
+
+        int interval = snapshot.interval() == null
+                ? CacheSnapshot.DEFAULT_SNAPSHOT_INTERVAL
+                : snapshot.interval();
+        if (interval <= 0) {
+            return null;
+        }
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("weather-cache-snapshot").daemon().factory());
+        scheduler.scheduleWithFixedDelay(() -> saveSnapshot(false), interval, interval, snapshot.unit() == null
+                ? CacheSnapshot.DEFAULT_SNAPSHOT_TIME_UNIT
+                : snapshot.unit());
+        return scheduler;
+    }
+
+    /**
+     * Saves the cache to the snapshot file, if one is configured. A failure is logged. Saves run
+     * one at a time, and none runs after the last one, made on shutdown, so a periodic save still
+     * running when the service shuts down can neither overlap the last save nor overwrite it.
+     *
+     * @param last whether this is the last save, made on shutdown
+     */
+    private void saveSnapshot(boolean last) {
+        if (snapshotFile == null) {
+            return;
+        }
+        snapshotLock.lock();
+        try {
+            if (snapshotClosed) {
+                return;
+            }
+            snapshotClosed = last;
+            int saved = CacheSnapshot.write(cache, snapshotFile);
+            logger.debug("Saved {} cached locations to {}", saved, snapshotFile);
+        } catch (IOException e) {
+            logger.warn("Failed to save cache snapshot to {}: {}", snapshotFile, e.getMessage());
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    /**
+     * Waits for the next completed result. An interrupt does not abandon the requests already
+     * in flight; the interrupt status is restored once the result is taken.
+     */
+    private static WeatherResult takeUninterruptibly(BlockingQueue<WeatherResult> completed) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return completed.take();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Checks whether data from the proximity cache is fresh, judging by when it was fetched.
+     */
+    private boolean isFresh(FetchedWeather weather) {
+        return weather.isFresh(System.currentTimeMillis(), dataFreshnessMillis);
+    }
+
+    /**
+     * Checks whether data for a location kept outside the cache, in the shared cache or the cache
+     * store, is fresh under the time to live the cache would give the location.
+     */
+    private boolean isFresh(LocationKey key, FetchedWeather weather, long nowMillis) {
+        return weather.isFresh(nowMillis, cache.timeToLiveMillis(key));
+    }
+
+    /**
+     * Checks whether data has a later observation than a cache entry, or the same observation
+     * fetched later.
+     */
+    private static boolean isNewer(FetchedWeather weather, CacheEntry entry) {
+        if (entry == null) {
+            return true;
+        }
+        long dt = weather.response().dt();
+        long cachedDt = entry.response().dt();
+        return dt > cachedDt || dt == cachedDt && weather.fetchedAtMillis() > entry.fetchedAtMillis();
+    }
+
+    /**
+     * Returns the in-flight key of a lookup by coordinates. Lookups of points in the same grid
+     * cell of the proximity cache share it. The key starts with {@code @}, so it does not clash with
+     * the names of locations.
+     */
+    private String coordinatesKey(double lat, double lon) {
+        return "@" + geoCache.cellKeyOf(lat, lon);
+    }
+
+    private static void checkCoordinates(double lat, double lon) {
+        if (!(lat >= -90 && lat <= 90 && lon >= -180 && lon <= 180)) {
+            throw new IllegalArgumentException(
+                    String.format("Coordinates out of range: lat=%s, lon=%s", lat, lon));
+        }
+    }
+
+    private static Exception unwrap(Throwable throwable) {
+        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                ? throwable.getCause()
+                : throwable;
+        return cause instanceof Exception exception
+                ? exception
+                : new CompletionException(cause);
     }
 
     /**
@@ -78,4 +1009,51 @@ public abstract class AbstractWeatherService implements WeatherService {
      * @throws HttpException if an error occurs during data retrieval
      */
     protected abstract WeatherResponse fetchWeather(String location) throws HttpException;
+
+    /**
+     * Fetches weather data for the specified location from the external source
+     * without blocking the calling thread.
+     *
+     * @param location the location to fetch weather data for
+     * @return a future that completes with the weather data
+     */
+    protected abstract CompletableFuture<WeatherResponse> fetchWeatherAsync(String location);
+
+    /**
+     * Fetches weather data for the city with the specified id from the external source.
+     *
+     * @param cityId the id of the city
+     * @return the weather data
+     * @throws HttpException if an error occurs during data retrieval
+     */
+    protected abstract WeatherResponse fetchWeatherById(int cityId) throws HttpException;
+
+    /**
+     * Fetches weather data for the city with the specified id from the external source
+     * without blocking the calling thread.
+     *
+     * @param cityId the id of the city
+     * @return a future that completes with the weather data
+     */
+    protected abstract CompletableFuture<WeatherResponse> fetchWeatherByIdAsync(int cityId);
+
+    /**
+     * Fetches weather data for the point with the specified coordinates from the external source.
+     *
+     * @param lat the latitude of the point
+     * @param lon the longitude of the point
+     * @return the weather data
+     * @throws HttpException if an error occurs during data retrieval
+     */
+    protected abstract WeatherResponse fetchWeather(double lat, double lon) throws HttpException;
+
+    /**
+     * Fetches weather data for the point with the specified coordinates from the external source
+     * without blocking the calling thread.
+     *
+     * @param lat the latitude of the point
+     * @param lon the longitude of the point
+     * @return a future that completes with the weather data
+     */
+    protected abstract CompletableFuture<WeatherResponse> fetchWeatherAsync(double lat, double lon);
 }
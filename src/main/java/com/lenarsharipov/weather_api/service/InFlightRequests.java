@@ -0,0 +1,176 @@
+package com.lenarsharipov.weather_api.service;
+
+import com.lenarsharipov.weather_api.exception.HttpException;
+import com.lenarsharipov.weather_api.model.WeatherResponse;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent fetches of the same location into a single request.
+ * <p>
+ * The first caller for a key becomes the leader and performs the fetch; every caller that
+ * arrives while the fetch is in flight waits for the leader and receives the same result
+ * or the same exception. Once the fetch completes, the key is released and the next caller
+ * starts a new fetch.
+ */
+final class InFlightRequests {
+
+    private final Map<String, CompletableFuture<WeatherResponse>> requests = new ConcurrentHashMap<>();
+
+    /**
+     * A fetch performed by the leader on its own thread.
+     */
+    @FunctionalInterface
+    interface Fetcher {
+        WeatherResponse fetch() throws HttpException;
+    }
+
+    /**
+     * Runs the fetcher on the calling thread, or waits for the fetch already in flight for the key.
+     *
+     * @param key     the normalized location key
+     * @param fetcher the fetch to perform if no request is in flight
+     * @return the weather response shared by all concurrent callers
+     * @throws HttpException if the shared fetch fails
+     */
+    WeatherResponse execute(String key, Fetcher fetcher) throws HttpException {
+        CompletableFuture<WeatherResponse> call = new CompletableFuture<>();
+        CompletableFuture<WeatherResponse> existing = requests.putIfAbsent(key, call);
+        if (existing != null) {
+            return await(existing);
+        }
+        try {
+            WeatherResponse response = fetcher.fetch();
+            call.complete(response);
+            return response;
+        } catch (Throwable e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            requests.remove(key, call);
+        }
+    }
+
+    /**
+     * A fetch of several keys in one request, performed by the leader on its own thread.
+     */
+    @FunctionalInterface
+    interface GroupFetcher {
+        Map<String, WeatherResponse> fetch(List<String> keys) throws HttpException;
+    }
+
+    /**
+     * Runs one fetch for several keys on the calling thread. Keys that already have a fetch in
+     * flight are left to it and not passed to the fetcher; callers of the other keys that arrive
+     * meanwhile wait for this fetch, and fail if it returns no response for their key.
+     *
+     * @param keys    the normalized location keys
+     * @param fetcher the fetch to perform for the keys that have no request in flight
+     * @return the responses by key, for the keys this fetch performed; empty if every key was in flight
+     * @throws HttpException if the fetch fails
+     */
+    Map<String, WeatherResponse> executeAll(List<String> keys, GroupFetcher fetcher) throws HttpException {
+        Map<String, CompletableFuture<WeatherResponse>> calls = new LinkedHashMap<>();
+        for (String key : keys) {
+            CompletableFuture<WeatherResponse> call = new CompletableFuture<>();
+            if (requests.putIfAbsent(key, call) == null) {
+                calls.put(key, call);
+            }
+        }
+        if (calls.isEmpty()) {
+            return Map.of();
+        }
+        try {
+            Map<String, WeatherResponse> responses = fetcher.fetch(List.copyOf(calls.keySet()));
+            calls.forEach((key, call) -> {
+                WeatherResponse response = responses.get(key);
+                if (response != null) {
+                    call.complete(response);
+                } else {
+                    call.completeExceptionally(new HttpException("No data for " + key + " in the group response", 0));
+                }
+            });
+            return responses;
+        } catch (Throwable e) {
+            calls.values().forEach(call -> call.completeExceptionally(e));
+            throw e;
+        } finally {
+            calls.forEach(requests::remove);
+        }
+    }
+
+    /**
+     * Starts the asynchronous fetch, or joins the fetch already in flight for the key.
+     * <p>
+     * The returned future completes exceptionally with a {@link CompletionException} wrapping
+     * the cause of the failure, in the same way as {@link CompletableFuture#join()}.
+     *
+     * @param key     the normalized location key
+     * @param fetcher starts the fetch if no request is in flight
+     * @return a future that completes with the weather response shared by all concurrent callers
+     */
+    CompletableFuture<WeatherResponse> executeAsync(String key,
+                                                    Supplier<CompletableFuture<WeatherResponse>> fetcher) {
+        CompletableFuture<WeatherResponse> call = new CompletableFuture<>();
+        CompletableFuture<WeatherResponse> existing = requests.putIfAbsent(key, call);
+        if (existing != null) {
+            return existing.copy();
+        }
+        try {
+            fetcher.get().whenComplete((response, throwable) -> {
+                try {
+                    if (throwable != null) {
+                        call.completeExceptionally(unwrap(throwable));
+                    } else {
+                        call.complete(response);
+                    }
+                } finally {
+                    requests.remove(key, call);
+                }
+            });
+        } catch (Throwable e) {
+            call.completeExceptionally(e);
+            requests.remove(key, call);
+        }
+        return call.copy();
+    }
+
+    /**
+     * Returns the number of fetches currently in flight.
+     *
+     * @return the number of in-flight fetches
+     */
+    int size() {
+        return requests.size();
+    }
+
+    private static WeatherResponse await(CompletableFuture<WeatherResponse> call) throws HttpException {
+        try {
+            return call.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof HttpException httpException) {
+                throw httpException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null
+                ? throwable.getCause()
+                : throwable;
+    }
+}
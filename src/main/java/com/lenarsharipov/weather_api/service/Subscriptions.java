@@ -0,0 +1,311 @@
+package com.lenarsharipov.weather_api.service;
+
+import com.lenarsharipov.weather_api.model.WeatherResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the subscribers of weather updates per location and delivers new observations to them.
+ * <p>
+ * Every subscriber has its own subscription with its own demand and a buffer of at most
+ * {@code bufferSize} updates: when a slow subscriber's buffer is full, its oldest update is
+ * dropped, so it never holds back the others and always gets the latest observation. An update
+ * is delivered to a subscriber only if it is a different observation than the last one offered
+ * to it. Signals to a subscriber are sent one at a time, on virtual threads.
+ */
+final class Subscriptions {
+
+    private static final Logger logger = LoggerFactory.getLogger(Subscriptions.class);
+
+    private final Map<String, Set<Subscription>> subscriptions = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final int bufferSize;
+
+    /**
+     * Creates an empty registry.
+     *
+     * @param bufferSize the maximum number of undelivered updates per subscriber
+     */
+    Subscriptions(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Registers a subscriber for a location and sends it {@code onSubscribe}.
+     *
+     * @param name       the canonical location
+     * @param subscriber the subscriber
+     * @return the subscription of the subscriber
+     */
+    Subscription subscribe(String name, Flow.Subscriber<? super WeatherResponse> subscriber) {
+        Subscription subscription = new Subscription(name, subscriber);
+        add(name, subscription);
+        subscription.signal();
+        return subscription;
+    }
+
+    /**
+     * Offers an observation to every subscriber of a location.
+     *
+     * @param name     the canonical location
+     * @param response the observation
+     */
+    void publish(String name, WeatherResponse response) {
+        Set<Subscription> subscribers = subscriptions.get(name);
+        if (subscribers != null) {
+            subscribers.forEach(subscription -> subscription.offer(response));
+        }
+    }
+
+    /**
+     * Checks whether a location has subscribers.
+     *
+     * @param name the canonical location
+     * @return true if at least one subscription of the location is active
+     */
+    boolean hasSubscribers(String name) {
+        Set<Subscription> subscribers = subscriptions.get(name);
+        return subscribers != null && !subscribers.isEmpty();
+    }
+
+    /**
+     * Returns the number of active subscriptions.
+     *
+     * @return the number of subscriptions
+     */
+    int size() {
+        return subscriptions.values().stream().mapToInt(Set::size).sum();
+    }
+
+    /**
+     * Completes every subscription after delivering the updates it has demand for.
+     */
+    void completeAll() {
+        subscriptions.values().forEach(subscribers -> subscribers.forEach(Subscription::complete));
+        executor.shutdown();
+    }
+
+    private void add(String name, Subscription subscription) {
+        subscriptions.compute(name, (k, subscribers) -> {
+            Set<Subscription> set = subscribers == null ? ConcurrentHashMap.newKeySet() : subscribers;
+            set.add(subscription);
+            return set;
+        });
+    }
+
+    /**
+     * Checks whether two responses describe the same observation: the same time and the same
+     * measured values.
+     */
+    static boolean isSameObservation(WeatherResponse a, WeatherResponse b) {
+        return a.dt() == b.dt()
+                && a.visibility() == b.visibility()
+                && Objects.equals(a.main(), b.main())
+                && Objects.equals(a.wind(), b.wind())
+                && Objects.equals(a.clouds(), b.clouds())
+                && Objects.equals(a.rain(), b.rain())
+                && Objects.equals(a.snow(), b.snow())
+                && Objects.equals(a.weather(), b.weather());
+    }
+
+    /**
+     * The subscription of one subscriber to one location.
+     */
+    final class Subscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super WeatherResponse> subscriber;
+        private final ArrayDeque<WeatherResponse> buffer = new ArrayDeque<>();
+        private final AtomicInteger pendingSignals = new AtomicInteger();
+        private volatile String name;
+
+        // guarded by this
+        private WeatherResponse lastOffered;
+        private long demand;
+        private boolean subscribed;
+        private boolean completed;
+        private boolean terminated;
+        private Throwable failure;
+
+        private Subscription(String name, Flow.Subscriber<? super WeatherResponse> subscriber) {
+            this.name = name;
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            synchronized (this) {
+                if (terminated) {
+                    return;
+                }
+                if (n <= 0) {
+                    failure = new IllegalArgumentException("Requested " + n + " updates, must be positive");
+                } else {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                terminated = true;
+                buffer.clear();
+            }
+            remove();
+        }
+
+        /**
+         * Moves the subscription to another canonical location, for example the city id a
+         * location name resolved to.
+         *
+         * @param newName the canonical location to receive updates of
+         */
+        void moveTo(String newName) {
+            if (newName.equals(name)) {
+                return;
+            }
+            remove();
+            name = newName;
+            synchronized (this) {
+                if (terminated) {
+                    return;
+                }
+            }
+            add(newName, this);
+        }
+
+        /**
+         * Ends the subscription with an error.
+         *
+         * @param throwable the error to signal
+         */
+        void fail(Throwable throwable) {
+            synchronized (this) {
+                if (terminated || failure != null) {
+                    return;
+                }
+                failure = throwable;
+            }
+            signal();
+        }
+
+        private void offer(WeatherResponse response) {
+            synchronized (this) {
+                if (terminated || completed || lastOffered != null && isSameObservation(lastOffered, response)) {
+                    return;
+                }
+                lastOffered = response;
+                if (buffer.size() == bufferSize) {
+                    buffer.pollFirst();
+                }
+                buffer.addLast(response);
+            }
+            signal();
+        }
+
+        private void complete() {
+            synchronized (this) {
+                completed = true;
+            }
+            signal();
+        }
+
+        /**
+         * Schedules delivery, unless a delivery is already running; that delivery then runs once more.
+         */
+        private void signal() {
+            if (pendingSignals.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this::deliver);
+                } catch (RuntimeException e) {
+                    pendingSignals.set(0);
+                }
+            }
+        }
+
+        private void deliver() {
+            do {
+                deliverPending();
+            } while (pendingSignals.decrementAndGet() != 0);
+        }
+
+        private void deliverPending() {
+            boolean first;
+            synchronized (this) {
+                first = !subscribed;
+                subscribed = true;
+            }
+            if (first && !invoke(() -> subscriber.onSubscribe(this))) {
+                return;
+            }
+            while (true) {
+                WeatherResponse next;
+                Throwable error;
+                boolean done;
+                synchronized (this) {
+                    if (terminated) {
+                        return;
+                    }
+                    error = failure;
+                    next = error == null && demand > 0 ? buffer.pollFirst() : null;
+                    done = error == null && next == null && completed;
+                    if (next != null) {
+                        demand--;
+                    } else if (error != null || done) {
+                        terminated = true;
+                        buffer.clear();
+                    } else {
+                        return;
+                    }
+                }
+                if (error != null) {
+                    remove();
+                    invoke(() -> subscriber.onError(error));
+                    return;
+                }
+                if (done) {
+                    remove();
+                    invoke(subscriber::onComplete);
+                    return;
+                }
+                if (!invoke(() -> subscriber.onNext(next))) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Calls the subscriber; a subscriber that throws is cancelled.
+         *
+         * @return false if the subscriber threw
+         */
+        private boolean invoke(Runnable signal) {
+            try {
+                signal.run();
+                return true;
+            } catch (RuntimeException e) {
+                logger.warn("Subscriber of location {} failed and was cancelled: {}", name, e.getMessage());
+                cancel();
+                return false;
+            }
+        }
+
+        private void remove() {
+            subscriptions.computeIfPresent(name, (k, subscribers) -> {
+                subscribers.remove(this);
+                return subscribers.isEmpty() ? null : subscribers;
+            });
+        }
+    }
+}
@@ -2,10 +2,21 @@ package com.lenarsharipov.weather_api.service;
 
 import com.lenarsharipov.weather_api.exception.HttpException;
 import com.lenarsharipov.weather_api.exception.ServiceShutDownException;
+import com.lenarsharipov.weather_api.http.CircuitBreaker;
+import com.lenarsharipov.weather_api.metrics.LatencyStats;
+import com.lenarsharipov.weather_api.model.LocationKey;
 import com.lenarsharipov.weather_api.model.WeatherResponse;
+import com.lenarsharipov.weather_api.model.WeatherResult;
 
 import java.time.Duration;
-import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Represents a service that provides access to current weather information.
@@ -21,6 +32,11 @@ import java.time.Instant;
 public interface WeatherService extends Stoppable {
 
     Integer DEFAULT_DATA_FRESHNESS_PERIOD = 10;
+    TimeUnit DEFAULT_DATA_FRESHNESS_UNIT = TimeUnit.MINUTES;
+    Integer DEFAULT_BULK_MAX_CONCURRENCY = 10;
+    Boolean DEFAULT_STALE_WHILE_REVALIDATE = false;
+    Duration DEFAULT_MAX_STALENESS = Duration.ofHours(1);
+    Integer DEFAULT_SUBSCRIPTION_BUFFER_SIZE = 16;
 
     /**
      * Retrieves weather data for the specified location.
@@ -35,13 +51,164 @@ public interface WeatherService extends Stoppable {
     WeatherResponse getWeather(String location) throws HttpException;
 
     /**
-     * Checks if the provided weather data is fresh (i.e., was received in the last 10 minutes).
+     * Retrieves weather data for the specified location key.
+     * Works like {@link #getWeather(String)}, but skips normalizing the location, so callers
+     * that look up the same locations repeatedly can prepare their keys once.
      *
-     * @param dt the time when the weather data was received
+     * @param key the location key for which to fetch weather data
+     * @return the weather data
+     * @throws HttpException            if an error occurs while making the request to the external API
+     * @throws ServiceShutDownException if the service is shut down
+     */
+    WeatherResponse getWeather(LocationKey key) throws HttpException;
+
+    /**
+     * Retrieves weather data for the specified location without blocking the calling thread.
+     * If the data is already in the cache and is fresh, the returned future is already completed.
+     * Otherwise, the data is fetched asynchronously from the external API and cached.
+     * <p>
+     * The future completes exceptionally with an {@link HttpException} if the request to the
+     * external API fails, or with a {@link ServiceShutDownException} if the service is shut down.
+     *
+     * @param location the location for which to fetch weather data
+     * @return a future that completes with the weather data
+     */
+    CompletableFuture<WeatherResponse> getWeatherAsync(String location);
+
+    /**
+     * Retrieves weather data for the specified location key without blocking the calling thread.
+     * Works like {@link #getWeatherAsync(String)}, but skips normalizing the location.
+     *
+     * @param key the location key for which to fetch weather data
+     * @return a future that completes with the weather data
+     */
+    CompletableFuture<WeatherResponse> getWeatherAsync(LocationKey key);
+
+    /**
+     * Retrieves weather data for the city with the specified id, as returned in
+     * {@link WeatherResponse#id()}. With aliasing enabled, every spelling of a location that
+     * resolved to the city shares this entry.
+     *
+     * @param cityId the city id
+     * @return the weather data
+     * @throws HttpException            if an error occurs while making the request to the external API
+     * @throws IllegalArgumentException if the city id is not positive
+     * @throws ServiceShutDownException if the service is shut down
+     */
+    WeatherResponse getWeatherById(int cityId) throws HttpException;
+
+    /**
+     * Retrieves weather data for the city with the specified id without blocking the calling thread.
+     * Works like {@link #getWeatherById(int)}.
+     *
+     * @param cityId the city id
+     * @return a future that completes with the weather data
+     * @throws IllegalArgumentException if the city id is not positive
+     */
+    CompletableFuture<WeatherResponse> getWeatherByIdAsync(int cityId);
+
+    /**
+     * Retrieves weather data for the point with the specified coordinates.
+     * Fresh data cached for a point within the proximity radius is returned without a request;
+     * otherwise the data is fetched from the external API and cached for the point.
+     *
+     * @param lat the latitude of the point, from -90 to 90
+     * @param lon the longitude of the point, from -180 to 180
+     * @return the weather data
+     * @throws HttpException            if an error occurs while making the request to the external API
+     * @throws IllegalArgumentException if the coordinates are out of range
+     * @throws ServiceShutDownException if the service is shut down
+     */
+    WeatherResponse getWeather(double lat, double lon) throws HttpException;
+
+    /**
+     * Retrieves weather data for the point with the specified coordinates without blocking
+     * the calling thread. Works like {@link #getWeather(double, double)}.
+     *
+     * @param lat the latitude of the point, from -90 to 90
+     * @param lon the longitude of the point, from -180 to 180
+     * @return a future that completes with the weather data
+     * @throws IllegalArgumentException if the coordinates are out of range
+     */
+    CompletableFuture<WeatherResponse> getWeatherAsync(double lat, double lon);
+
+    /**
+     * Retrieves weather data for several locations and reports each result as soon as it is available.
+     * Locations with fresh data in the cache are reported first; the others are fetched from the
+     * external API in parallel, with a bounded number of requests in flight.
+     * <p>
+     * The method returns once every distinct location has been reported. A failed lookup is reported
+     * as a {@link WeatherResult} with an error and does not affect the other locations.
+     *
+     * @param locations      the locations for which to fetch weather data
+     * @param resultConsumer receives the result for each location, in completion order
+     * @throws ServiceShutDownException if the service is shut down
+     */
+    void getWeather(Collection<String> locations, Consumer<WeatherResult> resultConsumer);
+
+    /**
+     * Retrieves weather data for several locations.
+     * Works like {@link #getWeather(Collection, Consumer)}, but waits for all results.
+     *
+     * @param locations the locations for which to fetch weather data
+     * @return the result for each distinct location, in the order of the passed collection
+     * @throws ServiceShutDownException if the service is shut down
+     */
+    default Map<String, WeatherResult> getWeather(Collection<String> locations) {
+        Map<String, WeatherResult> results = new HashMap<>();
+        getWeather(locations, result -> results.put(result.location(), result));
+
+        Map<String, WeatherResult> orderedResults = new LinkedHashMap<>();
+        for (String location : locations) {
+            orderedResults.put(location, results.get(location));
+        }
+        return orderedResults;
+    }
+
+    /**
+     * Subscribes to weather updates for the specified location.
+     * The subscriber first receives the current weather data, looked up like
+     * {@link #getWeatherAsync(String)}, and then every new observation the service loads for the
+     * location; a response describing the same observation as the previous one is not delivered again.
+     * A polling service keeps refreshing subscribed locations even when they are evicted from the cache.
+     * <p>
+     * Updates are delivered as the subscriber requests them. Updates it has not requested yet are
+     * buffered up to the configured buffer size; when the buffer is full, the oldest update is
+     * dropped. A failed first lookup is signalled with {@code onError}; shutting the service down
+     * completes the subscription.
+     *
+     * @param location   the location for which to receive weather updates
+     * @param subscriber the subscriber that receives the updates
+     * @throws ServiceShutDownException if the service is shut down
+     */
+    void subscribe(String location, Flow.Subscriber<? super WeatherResponse> subscriber);
+
+    /**
+     * Returns latency percentiles of this service: {@code getWeather} calls answered from the cache,
+     * calls that waited for a request, request round trips and response decoding.
+     *
+     * @return the latency statistics
+     */
+    LatencyStats getLatencyStats();
+
+    /**
+     * Returns the state of the circuit breaker that guards requests to the external API.
+     * While it is open, lookups that need a request fail at once with a
+     * {@link com.lenarsharipov.weather_api.exception.CircuitBreakerOpenException}.
+     *
+     * @return the circuit breaker state
+     */
+    CircuitBreaker.State getCircuitBreakerState();
+
+    /**
+     * Checks if weather data observed at the given time is less than {@code period} whole minutes old.
+     * Services decide whether cached data is fresh from the time they fetched it, not from this check.
+     *
+     * @param dt     the observation time of the weather data, in epoch seconds
+     * @param period the maximum age in minutes
      * @return true if the data is fresh, false otherwise
      */
     default boolean isDataFresh(long dt, long period) {
-        Instant dataTime = Instant.ofEpochSecond(dt);
-        return Duration.between(dataTime, Instant.now()).toMinutes() < period;
+        return (System.currentTimeMillis() / 1000 - dt) / 60 < period;
     }
 }
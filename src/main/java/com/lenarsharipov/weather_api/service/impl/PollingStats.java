@@ -0,0 +1,21 @@
+package com.lenarsharipov.weather_api.service.impl;
+
+import java.time.Duration;
+
+/**
+ * A snapshot of the polling engine's activity.
+ *
+ * @param completedCycles    the number of polling cycles that have finished
+ * @param skippedCycles      the number of ticks skipped because refreshes were waiting for a request slot
+ * @param lastCycleDuration  how long the last finished cycle took, or {@link Duration#ZERO} if none has finished
+ * @param lastCycleRequests  the number of locations refreshed by the last finished cycle
+ * @param lastCycleFailures  the number of refreshes that failed in the last finished cycle
+ */
+public record PollingStats(
+        long completedCycles,
+        long skippedCycles,
+        Duration lastCycleDuration,
+        int lastCycleRequests,
+        int lastCycleFailures
+) {
+}
@@ -0,0 +1,92 @@
+package com.lenarsharipov.weather_api.service.impl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the next refresh deadline of every polled location in a priority queue.
+ * <p>
+ * Each location has at most one live deadline; scheduling it again replaces the previous one.
+ * Replaced deadlines stay in the queue and are skipped when they reach its head, so every
+ * operation is O(log n). The scheduler is thread-safe.
+ */
+class RefreshScheduler {
+
+    /**
+     * A refresh of a location that is due at the given time.
+     *
+     * @param location  the normalized location
+     * @param dueMillis the refresh deadline, in epoch milliseconds
+     * @param sequence  tells the live deadline of a location apart from the replaced ones
+     */
+    record Deadline(String location, long dueMillis, long sequence) {
+    }
+
+    private final PriorityQueue<Deadline> queue =
+            new PriorityQueue<>(Comparator.comparingLong(Deadline::dueMillis));
+    private final Map<String, Long> liveSequences = new HashMap<>();
+    private long nextSequence;
+
+    /**
+     * Sets the refresh deadline of a location, replacing its previous deadline if any.
+     *
+     * @param location  the normalized location
+     * @param dueMillis the refresh deadline, in epoch milliseconds
+     */
+    synchronized void schedule(String location, long dueMillis) {
+        long sequence = nextSequence++;
+        liveSequences.put(location, sequence);
+        queue.add(new Deadline(location, dueMillis, sequence));
+    }
+
+    /**
+     * Removes and returns every live deadline that falls before the horizon, earliest first.
+     * The returned locations have no deadline until they are scheduled again.
+     *
+     * @param horizonMillis the end of the window, in epoch milliseconds
+     * @return the due deadlines
+     */
+    synchronized List<Deadline> pollDueBefore(long horizonMillis) {
+        List<Deadline> due = new ArrayList<>();
+        while (!queue.isEmpty() && queue.peek().dueMillis() < horizonMillis) {
+            Deadline deadline = queue.poll();
+            Long liveSequence = liveSequences.get(deadline.location());
+            if (liveSequence != null && liveSequence == deadline.sequence()) {
+                liveSequences.remove(deadline.location());
+                due.add(deadline);
+            }
+        }
+        return due;
+    }
+
+    /**
+     * Checks whether a location has a live deadline.
+     *
+     * @param location the normalized location
+     * @return true if a refresh of the location is scheduled
+     */
+    synchronized boolean isScheduled(String location) {
+        return liveSequences.containsKey(location);
+    }
+
+    /**
+     * Returns the number of locations with a live deadline.
+     *
+     * @return the number of scheduled locations
+     */
+    synchronized int size() {
+        return liveSequences.size();
+    }
+
+    /**
+     * Removes all deadlines.
+     */
+    synchronized void clear() {
+        queue.clear();
+        liveSequences.clear();
+    }
+}
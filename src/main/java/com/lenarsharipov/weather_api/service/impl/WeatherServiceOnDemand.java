@@ -1,11 +1,14 @@
 package com.lenarsharipov.weather_api.service.impl;
 
+import com.lenarsharipov.weather_api.datastructure.SharedCache;
 import com.lenarsharipov.weather_api.exception.HttpException;
 import com.lenarsharipov.weather_api.http.WeatherHttpClient;
 import com.lenarsharipov.weather_api.model.WeatherResponse;
 import com.lenarsharipov.weather_api.service.AbstractWeatherService;
 import com.lenarsharipov.weather_api.settings.Settings;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * A weather service that fetches weather data on-demand.
  * This service updates weather data only when explicitly requested.
@@ -25,6 +28,21 @@ public class WeatherServiceOnDemand extends AbstractWeatherService {
         super(apiKey, httpClient, settings);
     }
 
+    /**
+     * Constructs a new WeatherServiceOnDemand instance that shares a second-level cache with other services.
+     *
+     * @param apiKey      the API key for authentication
+     * @param httpClient  the HTTP client used to fetch weather data
+     * @param settings    the service settings
+     * @param sharedCache the cache shared with other services
+     */
+    public WeatherServiceOnDemand(String apiKey,
+                                  WeatherHttpClient httpClient,
+                                  Settings settings,
+                                  SharedCache sharedCache) {
+        super(apiKey, httpClient, settings, sharedCache);
+    }
+
     /**
      * Fetches weather data for the specified location.
      *
@@ -36,4 +54,63 @@ public class WeatherServiceOnDemand extends AbstractWeatherService {
     protected WeatherResponse fetchWeather(String location) throws HttpException {
         return httpClient.getWeather(location, apiKey);
     }
+
+    /**
+     * Fetches weather data for the specified location asynchronously.
+     *
+     * @param location the location to fetch weather data for
+     * @return a future that completes with the weather response
+     */
+    @Override
+    protected CompletableFuture<WeatherResponse> fetchWeatherAsync(String location) {
+        return httpClient.getWeatherAsync(location, apiKey);
+    }
+
+    /**
+     * Fetches weather data for the city with the specified id.
+     *
+     * @param cityId the id of the city
+     * @return the weather response
+     * @throws HttpException if an error occurs during data retrieval
+     */
+    @Override
+    protected WeatherResponse fetchWeatherById(int cityId) throws HttpException {
+        return httpClient.getWeatherById(cityId, apiKey);
+    }
+
+    /**
+     * Fetches weather data for the city with the specified id asynchronously.
+     *
+     * @param cityId the id of the city
+     * @return a future that completes with the weather response
+     */
+    @Override
+    protected CompletableFuture<WeatherResponse> fetchWeatherByIdAsync(int cityId) {
+        return httpClient.getWeatherByIdAsync(cityId, apiKey);
+    }
+
+    /**
+     * Fetches weather data for the point with the specified coordinates.
+     *
+     * @param lat the latitude of the point
+     * @param lon the longitude of the point
+     * @return the weather response
+     * @throws HttpException if an error occurs during data retrieval
+     */
+    @Override
+    protected WeatherResponse fetchWeather(double lat, double lon) throws HttpException {
+        return httpClient.getWeather(lat, lon, apiKey);
+    }
+
+    /**
+     * Fetches weather data for the point with the specified coordinates asynchronously.
+     *
+     * @param lat the latitude of the point
+     * @param lon the longitude of the point
+     * @return a future that completes with the weather response
+     */
+    @Override
+    protected CompletableFuture<WeatherResponse> fetchWeatherAsync(double lat, double lon) {
+        return httpClient.getWeatherAsync(lat, lon, apiKey);
+    }
 }
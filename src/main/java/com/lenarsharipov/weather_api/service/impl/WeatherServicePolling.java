@@ -1,21 +1,65 @@
 package com.lenarsharipov.weather_api.service.impl;
 
+import com.lenarsharipov.weather_api.datastructure.CacheEntry;
+import com.lenarsharipov.weather_api.datastructure.SharedCache;
 import com.lenarsharipov.weather_api.exception.HttpException;
 import com.lenarsharipov.weather_api.http.WeatherHttpClient;
+import com.lenarsharipov.weather_api.model.LocationKey;
 import com.lenarsharipov.weather_api.model.WeatherResponse;
 import com.lenarsharipov.weather_api.service.AbstractWeatherService;
 import com.lenarsharipov.weather_api.settings.Settings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * WeatherServicePolling provides a scheduled weather data update service.
- * It periodically fetches weather data for all cached locations using a polling mechanism.
+ * It keeps the weather data of all cached locations fresh using a polling mechanism.
+ * <p>
+ * Every loaded location gets its own refresh deadline, shortly before its cache entry expires,
+ * kept in a {@link RefreshScheduler}. Each polling tick takes the deadlines that fall within the
+ * next period and starts each refresh at its own deadline, so requests are spread over the period
+ * instead of being sent all at once. Entries expire a freshness period after they are fetched, and
+ * later for stations that have not reported since the previous fetch (see
+ * {@link com.lenarsharipov.weather_api.datastructure.Cache}), so such stations are polled less often.
+ * Locations whose entry expires within the next period are rechecked once in the period after it,
+ * at a random point within it.
+ * <p>
+ * Refreshes run on virtual threads, with at most {@code maxConcurrency} in flight at once. The
+ * scheduler thread never waits for them, and a cycle that still has refreshes to start when the
+ * next tick comes does not hold that tick back. Only when refreshes are queued for a free request
+ * slot, so the external API is not keeping up, is the tick skipped; its deadlines are picked up
+ * by the next one.
+ * <p>
+ * With a {@code groupSize} above 1, locations whose city id is known (a city id key, or a name
+ * whose cached data carries an id) are refreshed in groups with one request to the multi-city
+ * group endpoint; a group starts at the earliest deadline among its locations. Locations without
+ * a known id are still refreshed one by one.
+ * <p>
+ * Locations with subscribers (see {@link #subscribe}) keep being refreshed even after they are
+ * evicted from the cache, and every refresh that brings a new observation is pushed to them.
+ * Other locations stop being refreshed once their entry is evicted or removed by the expiration
+ * policy; refreshes do not count as reads, so with {@code expireAfterAccess} set, locations that
+ * nobody reads are dropped.
+ * <p>
+ * Polling begins once {@link #start()} is called; {@link com.lenarsharipov.weather_api.mode.ApiMode#POLLING}
+ * does this for the services it creates.
  */
 public class WeatherServicePolling extends AbstractWeatherService {
 
@@ -24,11 +68,22 @@ public class WeatherServicePolling extends AbstractWeatherService {
     public static final Integer DEFAULT_POLLING_PERIOD = 5;
     public static final Integer DEFAULT_POLLING_INITIAL_DELAY = 0;
     public static final TimeUnit DEFAULT_POLLING_TIME_UNIT = TimeUnit.SECONDS;
+    public static final Integer DEFAULT_POLLING_MAX_CONCURRENCY = 10;
+    public static final Integer DEFAULT_POLLING_GROUP_SIZE = 1;
 
     private final Integer pollingPeriod;
     private final Integer pollingInitialDelay;
     private final TimeUnit pollingTimeUnit;
+    private final int groupSize;
     private final ScheduledExecutorService scheduler;
+    private final ExecutorService fetchExecutor;
+    private final Semaphore fetchPermits;
+    private final RefreshScheduler refreshScheduler = new RefreshScheduler();
+
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private final AtomicLong completedCycles = new AtomicLong();
+    private final AtomicLong skippedCycles = new AtomicLong();
+    private volatile PollingStats lastCycleStats = new PollingStats(0, 0, Duration.ZERO, 0, 0);
 
     /**
      * Constructs a WeatherServicePolling instance with specified API key, HTTP client, and settings.
@@ -40,7 +95,22 @@ public class WeatherServicePolling extends AbstractWeatherService {
     public WeatherServicePolling(String apiKey,
                                  WeatherHttpClient httpClient,
                                  Settings settings) {
-        super(apiKey, httpClient, settings);
+        this(apiKey, httpClient, settings, new SharedCache(0L));
+    }
+
+    /**
+     * Constructs a WeatherServicePolling instance that shares a second-level cache with other services.
+     *
+     * @param apiKey the API key for fetching weather data
+     * @param httpClient the HTTP client to use for requests
+     * @param settings the settings for polling behavior
+     * @param sharedCache the cache shared with other services
+     */
+    public WeatherServicePolling(String apiKey,
+                                 WeatherHttpClient httpClient,
+                                 Settings settings,
+                                 SharedCache sharedCache) {
+        super(apiKey, httpClient, settings, sharedCache);
         this.pollingPeriod = settings.polling().period() == null
                 ? DEFAULT_POLLING_PERIOD
                 : settings.polling().period();
@@ -50,10 +120,36 @@ public class WeatherServicePolling extends AbstractWeatherService {
         this.pollingTimeUnit = settings.polling().unit() == null
                 ? DEFAULT_POLLING_TIME_UNIT
                 : settings.polling().unit();
+        int maxConcurrency = settings.polling().maxConcurrency() == null
+                ? DEFAULT_POLLING_MAX_CONCURRENCY
+                : settings.polling().maxConcurrency();
+        this.groupSize = settings.polling().groupSize() == null
+                ? DEFAULT_POLLING_GROUP_SIZE
+                : settings.polling().groupSize();
 
         this.scheduler = Executors.newSingleThreadScheduledExecutor();
+        this.fetchExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        this.fetchPermits = new Semaphore(maxConcurrency);
+
+        for (String location : cache.getLocations()) {
+            LocationKey key = LocationKey.ofName(location);
+            WeatherResponse restoredWeather = cache.peek(key);
+            if (restoredWeather != null) {
+                onWeatherLoaded(key, restoredWeather);
+            }
+        }
+    }
 
-        startPolling();
+    /**
+     * Starts polling. Calling it again has no effect.
+     *
+     * @return this service
+     */
+    public WeatherServicePolling start() {
+        if (started.compareAndSet(false, true)) {
+            startPolling();
+        }
+        return this;
     }
 
     /**
@@ -63,6 +159,23 @@ public class WeatherServicePolling extends AbstractWeatherService {
     public void shutdown() {
         super.shutdown();
         scheduler.shutdownNow();
+        fetchExecutor.shutdownNow();
+        refreshScheduler.clear();
+    }
+
+    /**
+     * Returns a snapshot of the polling activity: finished and skipped cycles, and the duration,
+     * request count and failure count of the last finished cycle.
+     *
+     * @return the polling statistics
+     */
+    public PollingStats getPollingStats() {
+        PollingStats last = lastCycleStats;
+        return new PollingStats(completedCycles.get(),
+                skippedCycles.get(),
+                last.lastCycleDuration(),
+                last.lastCycleRequests(),
+                last.lastCycleFailures());
     }
 
     /**
@@ -77,6 +190,86 @@ public class WeatherServicePolling extends AbstractWeatherService {
         return httpClient.getWeather(location, apiKey);
     }
 
+    /**
+     * Fetches weather data for a given location from the external API asynchronously.
+     *
+     * @param location the location for which to fetch weather data
+     * @return a future that completes with the weather data response
+     */
+    @Override
+    protected CompletableFuture<WeatherResponse> fetchWeatherAsync(String location) {
+        return httpClient.getWeatherAsync(location, apiKey);
+    }
+
+    /**
+     * Fetches weather data for the city with the given id from the external API.
+     *
+     * @param cityId the id of the city
+     * @return the weather data response
+     * @throws HttpException if an error occurs during the request
+     */
+    @Override
+    protected WeatherResponse fetchWeatherById(int cityId) throws HttpException {
+        return httpClient.getWeatherById(cityId, apiKey);
+    }
+
+    /**
+     * Fetches weather data for the city with the given id from the external API asynchronously.
+     *
+     * @param cityId the id of the city
+     * @return a future that completes with the weather data response
+     */
+    @Override
+    protected CompletableFuture<WeatherResponse> fetchWeatherByIdAsync(int cityId) {
+        return httpClient.getWeatherByIdAsync(cityId, apiKey);
+    }
+
+    /**
+     * Fetches weather data for the point with the specified coordinates.
+     *
+     * @param lat the latitude of the point
+     * @param lon the longitude of the point
+     * @return the weather response
+     * @throws HttpException if an error occurs during data retrieval
+     */
+    @Override
+    protected WeatherResponse fetchWeather(double lat, double lon) throws HttpException {
+        return httpClient.getWeather(lat, lon, apiKey);
+    }
+
+    /**
+     * Fetches weather data for the point with the specified coordinates asynchronously.
+     *
+     * @param lat the latitude of the point
+     * @param lon the longitude of the point
+     * @return a future that completes with the weather response
+     */
+    @Override
+    protected CompletableFuture<WeatherResponse> fetchWeatherAsync(double lat, double lon) {
+        return httpClient.getWeatherAsync(lat, lon, apiKey);
+    }
+
+    /**
+     * Schedules the next refresh of a loaded location shortly before its cache entry expires.
+     *
+     * @param key      the key the data is stored under
+     * @param response the stored weather data
+     */
+    @Override
+    protected void onWeatherLoaded(LocationKey key, WeatherResponse response) {
+        long nowMillis = System.currentTimeMillis();
+        CacheEntry entry = cache.peekEntry(key);
+        long timeToLiveMillis = entry == null ? cache.timeToLiveMillis(key) : entry.timeToLiveMillis();
+        long dueMillis = entry == null
+                ? nowMillis + timeToLiveMillis - timeToLiveMillis / 10
+                : entry.expiresAtMillis() - timeToLiveMillis / 10;
+        long periodMillis = pollingTimeUnit.toMillis(pollingPeriod);
+        if (dueMillis < nowMillis + periodMillis) {
+            dueMillis = nowMillis + periodMillis + ThreadLocalRandom.current().nextLong(Math.max(1, periodMillis));
+        }
+        refreshScheduler.schedule(key.name(), dueMillis);
+    }
+
     /**
      * Starts the polling mechanism to periodically update weather data.
      */
@@ -84,6 +277,11 @@ public class WeatherServicePolling extends AbstractWeatherService {
         scheduler.scheduleAtFixedRate(() -> {
             if (!isActive.get()) return;
 
+            if (fetchPermits.hasQueuedThreads()) {
+                long skipped = skippedCycles.incrementAndGet();
+                logger.warn("Polling cycle skipped, refreshes are waiting for a request slot ({} skipped so far)", skipped);
+                return;
+            }
             try {
                 updateLocationsWeather();
             } catch (Exception e) {
@@ -94,21 +292,216 @@ public class WeatherServicePolling extends AbstractWeatherService {
     }
 
     /**
-     * Updates the weather data for all cached locations.
+     * Starts a cycle that refreshes every location whose deadline falls within the next period.
+     * Entries that the expiration policy removes are reclaimed first, so their locations are dropped.
+     * Each refresh starts at its own deadline (a group refresh at the deadline of its first location);
+     * overdue refreshes are spaced evenly over the period.
+     * Returns without waiting for the requests; the cycle ends when the last one completes, which
+     * may be after later ticks have started cycles of their own.
      */
     private void updateLocationsWeather() {
-        Set<String> locations = cache.getLocations();
-        for (String location : locations) {
-            try {
-                WeatherResponse cachedWeather = httpClient.getWeather(location, apiKey);
-                if (cachedWeather == null
-                        || !isDataFresh(cachedWeather.dt(), dataFreshnessPeriod)) {
-                    WeatherResponse updatedWeather = httpClient.getWeather(location, apiKey);
-                    cache.put(location, updatedWeather);
+        long startNanos = System.nanoTime();
+        cache.cleanUp();
+        long nowMillis = System.currentTimeMillis();
+        long periodMillis = pollingTimeUnit.toMillis(pollingPeriod);
+        List<Batch> batches = batch(refreshScheduler.pollDueBefore(nowMillis + periodMillis));
+        long overdue = batches.stream()
+                .filter(batch -> batch.dueMillis() <= nowMillis)
+                .count();
+
+        AtomicInteger requests = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        List<CompletableFuture<Void>> refreshes = new ArrayList<>(batches.size());
+        int overdueIndex = 0;
+        for (Batch batch : batches) {
+            long dueMillis = batch.dueMillis();
+            long delayMillis = dueMillis > nowMillis
+                    ? dueMillis - nowMillis
+                    : overdueIndex++ * periodMillis / overdue;
+            CompletableFuture<Void> refresh = new CompletableFuture<>();
+            scheduler.schedule(() -> fetchExecutor.execute(() -> {
+                try {
+                    if (batch.byCityId()) {
+                        refreshGroup(batch.deadlines(), requests, failures);
+                    } else {
+                        refresh(batch.deadlines().get(0).location(), requests, failures);
+                    }
+                } finally {
+                    refresh.complete(null);
                 }
-            } catch (HttpException e) {
-                logger.error("Failed to update location {}: {}", location, e.getMessage());
+            }), delayMillis, TimeUnit.MILLISECONDS);
+            refreshes.add(refresh);
+        }
+
+        CompletableFuture.allOf(refreshes.toArray(CompletableFuture[]::new)).whenComplete((ignored, throwable) ->
+                completeCycle(startNanos, requests.get(), failures.get()));
+    }
+
+    /**
+     * Splits the due deadlines, which come in deadline order, into refreshes. With grouping enabled,
+     * locations whose city id is known are packed into groups of up to {@code groupSize}; every
+     * other location is refreshed on its own. A group keeps going to the group endpoint even if it
+     * holds a single location.
+     */
+    private List<Batch> batch(List<RefreshScheduler.Deadline> dueDeadlines) {
+        List<Batch> batches = new ArrayList<>(dueDeadlines.size());
+        List<RefreshScheduler.Deadline> group = null;
+        for (RefreshScheduler.Deadline deadline : dueDeadlines) {
+            if (groupSize == 1 || cityIdOf(LocationKey.ofName(deadline.location())) == 0) {
+                batches.add(new Batch(List.of(deadline), false));
+                continue;
+            }
+            if (group == null || group.size() == groupSize) {
+                group = new ArrayList<>(groupSize);
+                batches.add(new Batch(group, true));
+            }
+            group.add(deadline);
+        }
+        return batches;
+    }
+
+    /**
+     * Refreshes one location, waiting for a free request slot first. Locations that were evicted
+     * from the cache are dropped; locations that were already refreshed by a caller are skipped.
+     * A failed refresh is retried in the next period.
+     */
+    private void refresh(String location, AtomicInteger requests, AtomicInteger failures) {
+        LocationKey key = LocationKey.ofName(location);
+        if (!needsRefresh(key)) {
+            return;
+        }
+        boolean acquired = false;
+        try {
+            fetchPermits.acquire();
+            acquired = true;
+            requests.incrementAndGet();
+            refreshWeather(key);
+        } catch (HttpException | RuntimeException e) {
+            failures.incrementAndGet();
+            retryNextPeriod(location);
+            logger.error("Failed to update location {}: {}", location, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (acquired) {
+                fetchPermits.release();
+            }
+        }
+    }
+
+    /**
+     * Refreshes a group of locations with one request to the multi-city group endpoint, waiting
+     * for a free request slot first. Locations are dropped or skipped in the same way as by
+     * {@link #refresh}, and a location that is already being loaded is left to that load. Every
+     * response is stored for all locations with its city id; locations missing from the response,
+     * and all locations of a failed request, are retried in the next period.
+     */
+    private void refreshGroup(List<RefreshScheduler.Deadline> group, AtomicInteger requests, AtomicInteger failures) {
+        Map<LocationKey, Integer> cityIds = new LinkedHashMap<>();
+        for (RefreshScheduler.Deadline deadline : group) {
+            LocationKey key = LocationKey.ofName(deadline.location());
+            int cityId = cityIdOf(key);
+            if (cityId > 0 && needsRefresh(key)) {
+                cityIds.put(key, cityId);
+            }
+        }
+        if (cityIds.isEmpty()) {
+            return;
+        }
+        Set<LocationKey> keys = cityIds.keySet();
+        Map<LocationKey, WeatherResponse> refreshed = Map.of();
+        boolean acquired = false;
+        try {
+            fetchPermits.acquire();
+            acquired = true;
+            requests.incrementAndGet();
+            refreshed = loadWeatherGroup(List.copyOf(keys), claimed -> fetchGroup(claimed, cityIds));
+        } catch (HttpException | RuntimeException e) {
+            failures.incrementAndGet();
+            logger.error("Failed to update {} locations: {}", keys.size(), e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            if (acquired) {
+                fetchPermits.release();
             }
         }
+        for (LocationKey key : keys) {
+            if (!refreshed.containsKey(key)) {
+                retryNextPeriod(key.name());
+            }
+        }
+    }
+
+    /**
+     * Fetches the locations with one request to the group endpoint and stores every response for
+     * all locations with its city id.
+     */
+    private Map<LocationKey, WeatherResponse> fetchGroup(List<LocationKey> keys,
+                                                         Map<LocationKey, Integer> cityIds) throws HttpException {
+        Map<Integer, List<LocationKey>> keysByCityId = new LinkedHashMap<>();
+        for (LocationKey key : keys) {
+            keysByCityId.computeIfAbsent(cityIds.get(key), id -> new ArrayList<>(1)).add(key);
+        }
+        Map<LocationKey, WeatherResponse> fetched = new LinkedHashMap<>();
+        for (WeatherResponse response : httpClient.getWeatherGroup(new ArrayList<>(keysByCityId.keySet()), apiKey)) {
+            for (LocationKey key : keysByCityId.getOrDefault(response.id(), List.of())) {
+                storeWeather(key, response);
+                fetched.put(key, response);
+            }
+        }
+        return fetched;
+    }
+
+    /**
+     * Returns whether a location is still cached, or has subscribers, and its data has not been
+     * refreshed since its deadline. A subscribed location that was evicted from the cache is refreshed.
+     */
+    private boolean needsRefresh(LocationKey key) {
+        if (!isActive.get()) {
+            return false;
+        }
+        CacheEntry entry = cache.peekEntry(key);
+        if (entry == null) {
+            return hasSubscribers(key);
+        }
+        return !entry.isFresh(System.currentTimeMillis()) || !refreshScheduler.isScheduled(key.name());
+    }
+
+    /**
+     * Returns the city id of a location: the id of a city id key, otherwise the id in its cached data,
+     * or 0 if it is not known.
+     */
+    private int cityIdOf(LocationKey key) {
+        if (key.cityId() > 0) {
+            return key.cityId();
+        }
+        WeatherResponse cachedWeather = cache.peek(key);
+        return cachedWeather == null ? 0 : Math.max(cachedWeather.id(), 0);
+    }
+
+    private void retryNextPeriod(String location) {
+        long periodMillis = pollingTimeUnit.toMillis(pollingPeriod);
+        refreshScheduler.schedule(location, System.currentTimeMillis() + periodMillis);
+    }
+
+    /**
+     * The locations refreshed together, in deadline order, and whether they are refreshed by city id
+     * through the group endpoint.
+     */
+    private record Batch(List<RefreshScheduler.Deadline> deadlines, boolean byCityId) {
+
+        long dueMillis() {
+            return deadlines.get(0).dueMillis();
+        }
+    }
+
+    private void completeCycle(long startNanos, int requests, int failures) {
+        Duration duration = Duration.ofNanos(System.nanoTime() - startNanos);
+        lastCycleStats = new PollingStats(completedCycles.incrementAndGet(),
+                skippedCycles.get(), duration, requests, failures);
+        logger.debug("Polling cycle finished in {} ms: {} requests, {} failures",
+                duration.toMillis(), requests, failures);
     }
 }
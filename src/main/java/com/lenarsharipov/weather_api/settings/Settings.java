@@ -1,15 +1,62 @@
 package com.lenarsharipov.weather_api.settings;
 
+import com.lenarsharipov.weather_api.datastructure.CacheStore;
+import com.lenarsharipov.weather_api.datastructure.eviction.EvictionPolicyType;
+import com.lenarsharipov.weather_api.model.LocationKey;
+
+import java.net.http.HttpClient;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
+import static com.lenarsharipov.weather_api.datastructure.AliasTable.DEFAULT_ALIASING_ENABLED;
+import static com.lenarsharipov.weather_api.datastructure.AliasTable.DEFAULT_ALIAS_TABLE_SIZE;
+import static com.lenarsharipov.weather_api.datastructure.Cache.DEFAULT_CACHE_SEGMENTS;
+import static com.lenarsharipov.weather_api.datastructure.CacheSnapshot.DEFAULT_SNAPSHOT_INTERVAL;
+import static com.lenarsharipov.weather_api.datastructure.ExpirationPolicy.DEFAULT_EXPIRE_AFTER_ACCESS;
+import static com.lenarsharipov.weather_api.datastructure.ExpirationPolicy.DEFAULT_EXPIRE_AFTER_WRITE;
+import static com.lenarsharipov.weather_api.datastructure.ExpirationPolicy.DEFAULT_REFRESH_AFTER_WRITE;
+import static com.lenarsharipov.weather_api.datastructure.GeoCache.DEFAULT_PROXIMITY_CACHE_SIZE;
+import static com.lenarsharipov.weather_api.datastructure.GeoCache.DEFAULT_PROXIMITY_RADIUS;
+import static com.lenarsharipov.weather_api.datastructure.CacheSnapshot.DEFAULT_SNAPSHOT_TIME_UNIT;
 import static com.lenarsharipov.weather_api.datastructure.Cache.DEFAULT_CACHE_SIZE;
+import static com.lenarsharipov.weather_api.datastructure.Cache.DEFAULT_EVICTION_POLICY;
+import static com.lenarsharipov.weather_api.datastructure.NegativeCache.DEFAULT_NEGATIVE_CACHE_SIZE;
+import static com.lenarsharipov.weather_api.datastructure.NegativeCache.DEFAULT_NEGATIVE_CACHE_TTL;
+import static com.lenarsharipov.weather_api.http.WeatherHttpClient.DEFAULT_HTTP_CONNECT_TIMEOUT;
+import static com.lenarsharipov.weather_api.http.WeatherHttpClient.DEFAULT_HTTP_MAX_CONCURRENT_REQUESTS;
+import static com.lenarsharipov.weather_api.http.WeatherHttpClient.DEFAULT_HTTP_REQUEST_TIMEOUT;
+import static com.lenarsharipov.weather_api.http.WeatherHttpClient.DEFAULT_HTTP_VERSION;
+import static com.lenarsharipov.weather_api.http.WeatherHttpClient.DEFAULT_HTTP_VIRTUAL_THREADS;
+import static com.lenarsharipov.weather_api.http.WeatherHttpClient.DEFAULT_RATE_LIMIT_BURST;
+import static com.lenarsharipov.weather_api.http.WeatherHttpClient.DEFAULT_RATE_LIMIT_MAX_WAIT;
+import static com.lenarsharipov.weather_api.http.WeatherHttpClient.DEFAULT_RATE_LIMIT_REQUESTS_PER_MINUTE;
+import static com.lenarsharipov.weather_api.http.WeatherHttpClient.DEFAULT_RETRY_INITIAL_BACKOFF;
+import static com.lenarsharipov.weather_api.http.WeatherHttpClient.DEFAULT_RETRY_MAX_ATTEMPTS;
+import static com.lenarsharipov.weather_api.http.WeatherHttpClient.DEFAULT_RETRY_MAX_BACKOFF;
+import static com.lenarsharipov.weather_api.http.CircuitBreaker.DEFAULT_FAILURE_THRESHOLD;
+import static com.lenarsharipov.weather_api.http.CircuitBreaker.DEFAULT_OPEN_DURATION;
+import static com.lenarsharipov.weather_api.service.WeatherService.DEFAULT_BULK_MAX_CONCURRENCY;
 import static com.lenarsharipov.weather_api.service.WeatherService.DEFAULT_DATA_FRESHNESS_PERIOD;
+import static com.lenarsharipov.weather_api.service.WeatherService.DEFAULT_DATA_FRESHNESS_UNIT;
+import static com.lenarsharipov.weather_api.service.WeatherService.DEFAULT_MAX_STALENESS;
+import static com.lenarsharipov.weather_api.service.WeatherService.DEFAULT_STALE_WHILE_REVALIDATE;
+import static com.lenarsharipov.weather_api.service.WeatherService.DEFAULT_SUBSCRIPTION_BUFFER_SIZE;
 import static com.lenarsharipov.weather_api.service.impl.WeatherServicePolling.*;
 
 /**
  * A configuration class for the weather API.
  *
- * <p>This class contains settings for the data freshness period, cache size, polling period, initial delay, and time unit.
+ * <p>This class contains settings for the data freshness period and its unit, cache size, polling period, initial delay, and time unit,
+ * for bulk lookups, for serving stale data while it is refreshed, for caching failed lookups,
+ * for saving the cache between restarts, for the request rate limit, retries and circuit breaker,
+ * for the HTTP transport, for lookups by coordinates, for sharing cache entries between
+ * spellings of a city, for a cache store outside the JVM, for push subscriptions, and for the
+ * expiration and refresh of cache entries.
  *
  * <p>Settings can be configured using the {@link Builder}.
  *
@@ -17,9 +64,23 @@ import static com.lenarsharipov.weather_api.service.impl.WeatherServicePolling.*
  */
 public record Settings(
         Integer dataFreshnessPeriod,
+        TimeUnit dataFreshnessUnit,
         Cache cache,
 
-        Polling polling
+        Polling polling,
+        Bulk bulk,
+        StaleWhileRevalidate staleWhileRevalidate,
+        NegativeCache negativeCache,
+        Snapshot snapshot,
+        RateLimit rateLimit,
+        Retry retry,
+        CircuitBreaker circuitBreaker,
+        Http http,
+        Proximity proximity,
+        Aliasing aliasing,
+        RemoteCache remoteCache,
+        Subscriptions subscriptions,
+        Expiration expiration
 ) {
     public static Builder builder() {
         return new Builder();
@@ -27,12 +88,27 @@ public record Settings(
 
     public static class Builder {
         private Integer dataFreshnessPeriod = DEFAULT_DATA_FRESHNESS_PERIOD;
+        private TimeUnit dataFreshnessUnit = DEFAULT_DATA_FRESHNESS_UNIT;
         private Cache cache = Cache.builder().build(); // Используем дефолтный Cache
         private Polling polling = Polling.builder().build(); // Используем дефолтный Polling
+        private Bulk bulk = Bulk.builder().build();
+        private StaleWhileRevalidate staleWhileRevalidate = StaleWhileRevalidate.builder().build();
+        private NegativeCache negativeCache = NegativeCache.builder().build();
+        private Snapshot snapshot = Snapshot.builder().build();
+        private RateLimit rateLimit = RateLimit.builder().build();
+        private Retry retry = Retry.builder().build();
+        private CircuitBreaker circuitBreaker = CircuitBreaker.builder().build();
+        private Http http = Http.builder().build();
+        private Proximity proximity = Proximity.builder().build();
+        private Aliasing aliasing = Aliasing.builder().build();
+        private RemoteCache remoteCache = RemoteCache.builder().build();
+        private Subscriptions subscriptions = Subscriptions.builder().build();
+        private Expiration expiration = Expiration.builder().build();
 
         /**
-         * Sets the data freshness period.
-         * @param dataFreshnessPeriod the data freshness period in seconds.
+         * Sets the data freshness period: how long fetched data is served from the cache before
+         * it is fetched again.
+         * @param dataFreshnessPeriod the data freshness period, in the data freshness unit.
          * @return this builder.
          */
         public Builder dataFreshnessPeriod(Integer dataFreshnessPeriod) {
@@ -40,6 +116,16 @@ public record Settings(
             return this;
         }
 
+        /**
+         * Sets the unit of the data freshness period and of the maximum staleness.
+         * @param dataFreshnessUnit the time unit, minutes by default.
+         * @return this builder.
+         */
+        public Builder dataFreshnessUnit(TimeUnit dataFreshnessUnit) {
+            this.dataFreshnessUnit = dataFreshnessUnit;
+            return this;
+        }
+
         /**
          * Sets the cache size.
          * @param cache the cache size.
@@ -60,16 +146,166 @@ public record Settings(
             return this;
         }
 
+        /**
+         * Sets the bulk lookup settings.
+         * @param bulk the bulk lookup settings.
+         * @return this builder.
+         */
+        public Builder bulk(Bulk bulk) {
+            this.bulk = bulk;
+            return this;
+        }
+
+        /**
+         * Sets the stale-while-revalidate settings.
+         * @param staleWhileRevalidate the stale-while-revalidate settings.
+         * @return this builder.
+         */
+        public Builder staleWhileRevalidate(StaleWhileRevalidate staleWhileRevalidate) {
+            this.staleWhileRevalidate = staleWhileRevalidate;
+            return this;
+        }
+
+        /**
+         * Sets the negative cache settings.
+         * @param negativeCache the negative cache settings.
+         * @return this builder.
+         */
+        public Builder negativeCache(NegativeCache negativeCache) {
+            this.negativeCache = negativeCache;
+            return this;
+        }
+
+        /**
+         * Sets the cache snapshot settings.
+         * @param snapshot the cache snapshot settings.
+         * @return this builder.
+         */
+        public Builder snapshot(Snapshot snapshot) {
+            this.snapshot = snapshot;
+            return this;
+        }
+
+        /**
+         * Sets the rate limit settings.
+         * @param rateLimit the rate limit settings.
+         * @return this builder.
+         */
+        public Builder rateLimit(RateLimit rateLimit) {
+            this.rateLimit = rateLimit;
+            return this;
+        }
+
+        /**
+         * Sets the retry settings.
+         * @param retry the retry settings.
+         * @return this builder.
+         */
+        public Builder retry(Retry retry) {
+            this.retry = retry;
+            return this;
+        }
+
+        /**
+         * Sets the circuit breaker settings.
+         * @param circuitBreaker the circuit breaker settings.
+         * @return this builder.
+         */
+        public Builder circuitBreaker(CircuitBreaker circuitBreaker) {
+            this.circuitBreaker = circuitBreaker;
+            return this;
+        }
+
+        /**
+         * Sets the HTTP transport settings.
+         * @param http the HTTP transport settings.
+         * @return this builder.
+         */
+        public Builder http(Http http) {
+            this.http = http;
+            return this;
+        }
+
+        /**
+         * Sets the settings of lookups by coordinates.
+         * @param proximity the proximity settings.
+         * @return this builder.
+         */
+        public Builder proximity(Proximity proximity) {
+            this.proximity = proximity;
+            return this;
+        }
+
+        /**
+         * Sets the location aliasing settings.
+         * @param aliasing the aliasing settings.
+         * @return this builder.
+         */
+        public Builder aliasing(Aliasing aliasing) {
+            this.aliasing = aliasing;
+            return this;
+        }
+
+        /**
+         * Sets the remote cache settings.
+         * @param remoteCache the remote cache settings.
+         * @return this builder.
+         */
+        public Builder remoteCache(RemoteCache remoteCache) {
+            this.remoteCache = remoteCache;
+            return this;
+        }
+
+        /**
+         * Sets the push subscription settings.
+         * @param subscriptions the push subscription settings.
+         * @return this builder.
+         */
+        public Builder subscriptions(Subscriptions subscriptions) {
+            this.subscriptions = subscriptions;
+            return this;
+        }
+
+        /**
+         * Sets the expiration settings of cache entries.
+         * @param expiration the expiration settings.
+         * @return this builder.
+         */
+        public Builder expiration(Expiration expiration) {
+            this.expiration = expiration;
+            return this;
+        }
+
         /**
          * Builds the settings.
          * @return the settings.
          */
         public Settings build() {
-            return new Settings(dataFreshnessPeriod, cache, polling);
+            return new Settings(dataFreshnessPeriod, dataFreshnessUnit, cache, polling, bulk, staleWhileRevalidate,
+                    negativeCache, snapshot, rateLimit, retry, circuitBreaker, http, proximity, aliasing, remoteCache,
+                    subscriptions, expiration);
         }
     }
 
-    public record Cache(Integer size) {
+    public record Cache(Integer size, EvictionPolicyType evictionPolicy, Integer segments) {
+
+        /**
+         * Creates cache settings with the given size, the default eviction policy and a single segment.
+         * @param size the cache size.
+         */
+        public Cache(Integer size) {
+            this(size, DEFAULT_EVICTION_POLICY);
+        }
+
+        /**
+         * Creates cache settings with the given size and eviction policy and a single segment.
+         * @param size the cache size.
+         * @param evictionPolicy the eviction policy.
+         */
+        public Cache(Integer size, EvictionPolicyType evictionPolicy) {
+            this(size, evictionPolicy, DEFAULT_CACHE_SEGMENTS);
+        }
+
         /**
          * A builder for the cache settings.
          */
@@ -79,6 +315,8 @@ public record Settings(
 
         public static class Builder {
             private Integer size = DEFAULT_CACHE_SIZE;
+            private EvictionPolicyType evictionPolicy = DEFAULT_EVICTION_POLICY;
+            private Integer segments = DEFAULT_CACHE_SEGMENTS;
 
             /**
              * Sets the cache size.
@@ -90,12 +328,34 @@ public record Settings(
                 return this;
             }
 
+            /**
+             * Sets the eviction policy.
+             * @param evictionPolicy the policy that selects the entry to remove when the cache is full.
+             * @return this builder.
+             */
+            public Builder evictionPolicy(EvictionPolicyType evictionPolicy) {
+                this.evictionPolicy = evictionPolicy;
+                return this;
+            }
+
+            /**
+             * Sets the number of segments.
+             * Each segment holds an equal share of the cache size and has its own lock and eviction policy,
+             * so more segments let more threads write to the cache at the same time.
+             * @param segments the number of segments, at most the cache size.
+             * @return this builder.
+             */
+            public Builder segments(Integer segments) {
+                this.segments = segments;
+                return this;
+            }
+
             /**
              * Builds the cache settings.
              * @return the cache settings.
              */
             public Cache build() {
-                return new Cache(size);
+                return new Cache(size, evictionPolicy, segments);
             }
         }
     }
@@ -104,8 +364,31 @@ public record Settings(
 
             Integer initialDelay,
             Integer period,
-            TimeUnit unit
+            TimeUnit unit,
+            Integer maxConcurrency,
+            Integer groupSize
     ) {
+        /**
+         * Creates polling settings with the default maximum number of concurrent requests.
+         * @param initialDelay the initial delay in the given unit.
+         * @param period the polling period in the given unit.
+         * @param unit the time unit for the polling period and initial delay.
+         */
+        public Polling(Integer initialDelay, Integer period, TimeUnit unit) {
+            this(initialDelay, period, unit, DEFAULT_POLLING_MAX_CONCURRENCY);
+        }
+
+        /**
+         * Creates polling settings that refresh every location with its own request.
+         * @param initialDelay the initial delay in the given unit.
+         * @param period the polling period in the given unit.
+         * @param unit the time unit for the polling period and initial delay.
+         * @param maxConcurrency the maximum number of requests in flight.
+         */
+        public Polling(Integer initialDelay, Integer period, TimeUnit unit, Integer maxConcurrency) {
+            this(initialDelay, period, unit, maxConcurrency, DEFAULT_POLLING_GROUP_SIZE);
+        }
+
         public static Builder builder() {
             return new Builder();
         }
@@ -114,6 +397,8 @@ public record Settings(
             private Integer initialDelay = DEFAULT_POLLING_INITIAL_DELAY;
             private Integer period = DEFAULT_POLLING_PERIOD;
             private TimeUnit unit = DEFAULT_POLLING_TIME_UNIT;
+            private Integer maxConcurrency = DEFAULT_POLLING_MAX_CONCURRENCY;
+            private Integer groupSize = DEFAULT_POLLING_GROUP_SIZE;
 
             /**
              * Sets the initial delay.
@@ -145,13 +430,686 @@ public record Settings(
                 return this;
             }
 
+            /**
+             * Sets the maximum number of requests a polling cycle sends at the same time.
+             * @param maxConcurrency the maximum number of requests in flight.
+             * @return this builder.
+             */
+            public Builder maxConcurrency(Integer maxConcurrency) {
+                this.maxConcurrency = maxConcurrency;
+                return this;
+            }
+
+            /**
+             * Sets the maximum number of cities refreshed by one request to the multi-city group endpoint.
+             * Locations whose city id is known are refreshed in groups of up to this size;
+             * 1 refreshes every location with its own request.
+             * @param groupSize the group size, from 1 to {@value com.lenarsharipov.weather_api.http.WeatherHttpClient#MAX_GROUP_SIZE}.
+             * @return this builder.
+             */
+            public Builder groupSize(Integer groupSize) {
+                this.groupSize = groupSize;
+                return this;
+            }
+
             /**
              * Builds the polling settings.
              * @return the polling settings.
              */
             public Polling build() {
-                return new Polling(initialDelay, period, unit);
+                return new Polling(initialDelay, period, unit, maxConcurrency, groupSize);
+            }
+        }
+    }
+
+    public record Bulk(Integer maxConcurrency) {
+        /**
+         * A builder for the bulk lookup settings.
+         */
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        public static class Builder {
+            private Integer maxConcurrency = DEFAULT_BULK_MAX_CONCURRENCY;
+
+            /**
+             * Sets the maximum number of requests a bulk lookup sends at the same time.
+             * @param maxConcurrency the maximum number of requests in flight.
+             * @return this builder.
+             */
+            public Builder maxConcurrency(Integer maxConcurrency) {
+                this.maxConcurrency = maxConcurrency;
+                return this;
+            }
+
+            /**
+             * Builds the bulk lookup settings.
+             * @return the bulk lookup settings.
+             */
+            public Bulk build() {
+                return new Bulk(maxConcurrency);
+            }
+        }
+    }
+
+    public record StaleWhileRevalidate(Boolean enabled, Duration maxStaleness) {
+        /**
+         * A builder for the stale-while-revalidate settings.
+         */
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        public static class Builder {
+            private Boolean enabled = DEFAULT_STALE_WHILE_REVALIDATE;
+            private Duration maxStaleness = DEFAULT_MAX_STALENESS;
+
+            /**
+             * Enables or disables stale-while-revalidate reads.
+             * When enabled, a read of stale cached data returns it at once and refreshes it in the background.
+             * @param enabled true to serve stale data while it is refreshed.
+             * @return this builder.
+             */
+            public Builder enabled(Boolean enabled) {
+                this.enabled = enabled;
+                return this;
+            }
+
+            /**
+             * Sets the maximum age of data that may still be served while it is refreshed.
+             * Older data is not served; the caller waits for the request instead.
+             * @param maxStaleness the maximum time since the data was fetched,
+             * not less than the data freshness period.
+             * @return this builder.
+             */
+            public Builder maxStaleness(Duration maxStaleness) {
+                this.maxStaleness = maxStaleness;
+                return this;
+            }
+
+            /**
+             * Builds the stale-while-revalidate settings.
+             * @return the stale-while-revalidate settings.
+             */
+            public StaleWhileRevalidate build() {
+                return new StaleWhileRevalidate(enabled, maxStaleness);
+            }
+        }
+    }
+
+    public record NegativeCache(Integer size, Duration ttl) {
+        /**
+         * A builder for the negative cache settings.
+         */
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        public static class Builder {
+            private Integer size = DEFAULT_NEGATIVE_CACHE_SIZE;
+            private Duration ttl = DEFAULT_NEGATIVE_CACHE_TTL;
+
+            /**
+             * Sets the maximum number of failed lookups kept in the negative cache.
+             * @param size the negative cache size, or 0 to disable the negative cache.
+             * @return this builder.
+             */
+            public Builder size(Integer size) {
+                this.size = size;
+                return this;
+            }
+
+            /**
+             * Sets how long a failed lookup is remembered.
+             * @param ttl the time to live.
+             * @return this builder.
+             */
+            public Builder ttl(Duration ttl) {
+                this.ttl = ttl;
+                return this;
+            }
+
+            /**
+             * Builds the negative cache settings.
+             * @return the negative cache settings.
+             */
+            public NegativeCache build() {
+                return new NegativeCache(size, ttl);
+            }
+        }
+    }
+
+    public record Snapshot(Path file, Integer interval, TimeUnit unit) {
+        /**
+         * A builder for the cache snapshot settings.
+         */
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        public static class Builder {
+            private Path file;
+            private Integer interval = DEFAULT_SNAPSHOT_INTERVAL;
+            private TimeUnit unit = DEFAULT_SNAPSHOT_TIME_UNIT;
+
+            /**
+             * Sets the snapshot file. The cache is loaded from it when the service starts
+             * and saved to it when the service shuts down.
+             * @param file the snapshot file, or null to disable snapshots.
+             * @return this builder.
+             */
+            public Builder file(Path file) {
+                this.file = file;
+                return this;
+            }
+
+            /**
+             * Sets how often the cache is saved while the service is running.
+             * @param interval the interval in the given unit, or 0 to save only on shutdown.
+             * @return this builder.
+             */
+            public Builder interval(Integer interval) {
+                this.interval = interval;
+                return this;
+            }
+
+            /**
+             * Sets the time unit.
+             * @param unit the time unit for the snapshot interval.
+             * @return this builder.
+             */
+            public Builder unit(TimeUnit unit) {
+                this.unit = unit;
+                return this;
+            }
+
+            /**
+             * Builds the cache snapshot settings.
+             * @return the cache snapshot settings.
+             */
+            public Snapshot build() {
+                return new Snapshot(file, interval, unit);
+            }
+        }
+    }
+
+    public record RateLimit(Integer requestsPerMinute, Integer burst, Duration maxWait) {
+        /**
+         * A builder for the rate limit settings.
+         */
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        public static class Builder {
+            private Integer requestsPerMinute = DEFAULT_RATE_LIMIT_REQUESTS_PER_MINUTE;
+            private Integer burst = DEFAULT_RATE_LIMIT_BURST;
+            private Duration maxWait = DEFAULT_RATE_LIMIT_MAX_WAIT;
+
+            /**
+             * Sets the number of requests per minute allowed for the API key.
+             * @param requestsPerMinute the sustained request rate, or 0 for no limit.
+             * @return this builder.
+             */
+            public Builder requestsPerMinute(Integer requestsPerMinute) {
+                this.requestsPerMinute = requestsPerMinute;
+                return this;
+            }
+
+            /**
+             * Sets the number of requests that may be sent at once after a quiet period.
+             * @param burst the bucket size.
+             * @return this builder.
+             */
+            public Builder burst(Integer burst) {
+                this.burst = burst;
+                return this;
+            }
+
+            /**
+             * Sets how long a request may wait for its turn before it fails.
+             * @param maxWait the maximum wait.
+             * @return this builder.
+             */
+            public Builder maxWait(Duration maxWait) {
+                this.maxWait = maxWait;
+                return this;
+            }
+
+            /**
+             * Builds the rate limit settings.
+             * @return the rate limit settings.
+             */
+            public RateLimit build() {
+                return new RateLimit(requestsPerMinute, burst, maxWait);
+            }
+        }
+    }
+
+    public record Retry(Integer maxAttempts, Duration initialBackoff, Duration maxBackoff) {
+        /**
+         * A builder for the retry settings.
+         */
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        public static class Builder {
+            private Integer maxAttempts = DEFAULT_RETRY_MAX_ATTEMPTS;
+            private Duration initialBackoff = DEFAULT_RETRY_INITIAL_BACKOFF;
+            private Duration maxBackoff = DEFAULT_RETRY_MAX_BACKOFF;
+
+            /**
+             * Sets how many times a request that fails with a network error or a 5xx response is sent.
+             * @param maxAttempts the number of attempts, 1 for no retries.
+             * @return this builder.
+             */
+            public Builder maxAttempts(Integer maxAttempts) {
+                this.maxAttempts = maxAttempts;
+                return this;
+            }
+
+            /**
+             * Sets the backoff before the first retry. It doubles with every retry.
+             * The actual wait is a random time between zero and the backoff.
+             * @param initialBackoff the initial backoff.
+             * @return this builder.
+             */
+            public Builder initialBackoff(Duration initialBackoff) {
+                this.initialBackoff = initialBackoff;
+                return this;
+            }
+
+            /**
+             * Sets the largest backoff between two attempts.
+             * @param maxBackoff the maximum backoff.
+             * @return this builder.
+             */
+            public Builder maxBackoff(Duration maxBackoff) {
+                this.maxBackoff = maxBackoff;
+                return this;
+            }
+
+            /**
+             * Builds the retry settings.
+             * @return the retry settings.
+             */
+            public Retry build() {
+                return new Retry(maxAttempts, initialBackoff, maxBackoff);
+            }
+        }
+    }
+
+    public record CircuitBreaker(Integer failureThreshold, Duration openDuration) {
+        /**
+         * A builder for the circuit breaker settings.
+         */
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        public static class Builder {
+            private Integer failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+            private Duration openDuration = DEFAULT_OPEN_DURATION;
+
+            /**
+             * Sets the number of consecutive failed requests that opens the circuit breaker.
+             * @param failureThreshold the number of failures, or 0 to disable the circuit breaker.
+             * @return this builder.
+             */
+            public Builder failureThreshold(Integer failureThreshold) {
+                this.failureThreshold = failureThreshold;
+                return this;
+            }
+
+            /**
+             * Sets how long the circuit breaker stays open before a probe request is sent.
+             * @param openDuration the open duration.
+             * @return this builder.
+             */
+            public Builder openDuration(Duration openDuration) {
+                this.openDuration = openDuration;
+                return this;
+            }
+
+            /**
+             * Builds the circuit breaker settings.
+             * @return the circuit breaker settings.
+             */
+            public CircuitBreaker build() {
+                return new CircuitBreaker(failureThreshold, openDuration);
+            }
+        }
+    }
+
+    public record Http(HttpClient.Version version,
+                       Duration connectTimeout,
+                       Duration requestTimeout,
+                       Executor executor,
+                       Boolean virtualThreads,
+                       Integer maxConcurrentRequests) {
+        /**
+         * A builder for the HTTP transport settings.
+         */
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        public static class Builder {
+            private HttpClient.Version version = DEFAULT_HTTP_VERSION;
+            private Duration connectTimeout = DEFAULT_HTTP_CONNECT_TIMEOUT;
+            private Duration requestTimeout = DEFAULT_HTTP_REQUEST_TIMEOUT;
+            private Executor executor;
+            private Boolean virtualThreads = DEFAULT_HTTP_VIRTUAL_THREADS;
+            private Integer maxConcurrentRequests = DEFAULT_HTTP_MAX_CONCURRENT_REQUESTS;
+
+            /**
+             * Sets the preferred HTTP protocol version. HTTP/2 falls back to HTTP/1.1
+             * if the server does not support it.
+             * @param version the protocol version.
+             * @return this builder.
+             */
+            public Builder version(HttpClient.Version version) {
+                this.version = version;
+                return this;
+            }
+
+            /**
+             * Sets how long to wait for a connection to be established.
+             * @param connectTimeout the connect timeout.
+             * @return this builder.
+             */
+            public Builder connectTimeout(Duration connectTimeout) {
+                this.connectTimeout = connectTimeout;
+                return this;
+            }
+
+            /**
+             * Sets how long to wait for the response to a request.
+             * @param requestTimeout the request timeout.
+             * @return this builder.
+             */
+            public Builder requestTimeout(Duration requestTimeout) {
+                this.requestTimeout = requestTimeout;
+                return this;
+            }
+
+            /**
+             * Sets the executor that runs the HTTP client's asynchronous tasks.
+             * Takes precedence over {@link #virtualThreads(Boolean)}.
+             * @param executor the executor, or null for the HTTP client's default executor.
+             * @return this builder.
+             */
+            public Builder executor(Executor executor) {
+                this.executor = executor;
+                return this;
+            }
+
+            /**
+             * Sets whether the HTTP client runs its asynchronous tasks on virtual threads
+             * when no executor is set.
+             * @param virtualThreads true to use virtual threads.
+             * @return this builder.
+             */
+            public Builder virtualThreads(Boolean virtualThreads) {
+                this.virtualThreads = virtualThreads;
+                return this;
+            }
+
+            /**
+             * Sets the number of requests that may be in flight at the same time,
+             * which also bounds the number of open connections.
+             * @param maxConcurrentRequests the number of requests, or 0 for no limit.
+             * @return this builder.
+             */
+            public Builder maxConcurrentRequests(Integer maxConcurrentRequests) {
+                this.maxConcurrentRequests = maxConcurrentRequests;
+                return this;
+            }
+
+            /**
+             * Builds the HTTP transport settings.
+             * @return the HTTP transport settings.
+             */
+            public Http build() {
+                return new Http(version, connectTimeout, requestTimeout, executor, virtualThreads,
+                        maxConcurrentRequests);
+            }
+        }
+    }
+
+    public record Proximity(Integer radius, Integer size) {
+        /**
+         * A builder for the proximity settings.
+         */
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        public static class Builder {
+            private Integer radius = DEFAULT_PROXIMITY_RADIUS;
+            private Integer size = DEFAULT_PROXIMITY_CACHE_SIZE;
+
+            /**
+             * Sets the distance within which cached data answers a lookup by coordinates.
+             * @param radius the radius in meters.
+             * @return this builder.
+             */
+            public Builder radius(Integer radius) {
+                this.radius = radius;
+                return this;
+            }
+
+            /**
+             * Sets the maximum number of positions kept for lookups by coordinates.
+             * @param size the number of positions, or 0 to send every lookup to the API.
+             * @return this builder.
+             */
+            public Builder size(Integer size) {
+                this.size = size;
+                return this;
+            }
+
+            /**
+             * Builds the proximity settings.
+             * @return the proximity settings.
+             */
+            public Proximity build() {
+                return new Proximity(radius, size);
+            }
+        }
+    }
+
+    public record Aliasing(Boolean enabled, Integer size) {
+        /**
+         * A builder for the aliasing settings.
+         */
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        public static class Builder {
+            private Boolean enabled = DEFAULT_ALIASING_ENABLED;
+            private Integer size = DEFAULT_ALIAS_TABLE_SIZE;
+
+            /**
+             * Sets whether spellings of a location that resolve to the same city share one cache entry.
+             * @param enabled true to enable aliasing.
+             * @return this builder.
+             */
+            public Builder enabled(Boolean enabled) {
+                this.enabled = enabled;
+                return this;
+            }
+
+            /**
+             * Sets the maximum number of remembered spellings.
+             * @param size the number of aliases.
+             * @return this builder.
+             */
+            public Builder size(Integer size) {
+                this.size = size;
+                return this;
+            }
+
+            /**
+             * Builds the aliasing settings.
+             * @return the aliasing settings.
+             */
+            public Aliasing build() {
+                return new Aliasing(enabled, size);
+            }
+        }
+    }
+
+    public record RemoteCache(CacheStore store) {
+        /**
+         * A builder for the remote cache settings.
+         */
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        public static class Builder {
+            private CacheStore store;
+
+            /**
+             * Sets the store that keeps cached weather data outside the JVM, for example a
+             * {@link com.lenarsharipov.weather_api.datastructure.RespCacheStore}. The store is not
+             * closed when the service shuts down.
+             * @param store the cache store, or null to keep the cache in the JVM only.
+             * @return this builder.
+             */
+            public Builder store(CacheStore store) {
+                this.store = store;
+                return this;
+            }
+
+            /**
+             * Builds the remote cache settings.
+             * @return the remote cache settings.
+             */
+            public RemoteCache build() {
+                return new RemoteCache(store);
+            }
+        }
+    }
+
+    public record Subscriptions(Integer bufferSize) {
+        /**
+         * A builder for the push subscription settings.
+         */
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        public static class Builder {
+            private Integer bufferSize = DEFAULT_SUBSCRIPTION_BUFFER_SIZE;
+
+            /**
+             * Sets the maximum number of updates kept for a subscriber that has not requested them.
+             * When the buffer is full, the oldest update is dropped.
+             * @param bufferSize the buffer size per subscriber.
+             * @return this builder.
+             */
+            public Builder bufferSize(Integer bufferSize) {
+                this.bufferSize = bufferSize;
+                return this;
+            }
+
+            /**
+             * Builds the push subscription settings.
+             * @return the push subscription settings.
+             */
+            public Subscriptions build() {
+                return new Subscriptions(bufferSize);
+            }
+        }
+    }
+
+    public record Expiration(Duration expireAfterWrite,
+                             Duration expireAfterAccess,
+                             Duration refreshAfterWrite,
+                             Map<String, Duration> timeToLive) {
+        /**
+         * A builder for the expiration settings.
+         */
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        public static class Builder {
+            private Duration expireAfterWrite = DEFAULT_EXPIRE_AFTER_WRITE;
+            private Duration expireAfterAccess = DEFAULT_EXPIRE_AFTER_ACCESS;
+            private Duration refreshAfterWrite = DEFAULT_REFRESH_AFTER_WRITE;
+            private final Map<String, Duration> timeToLive = new LinkedHashMap<>();
+
+            /**
+             * Sets how long after it is fetched a cache entry is removed. An entry is never removed
+             * while it is fresh, so this only matters when it is longer than the data freshness period.
+             * @param expireAfterWrite the time after the fetch, or zero to keep entries until they are evicted.
+             * @return this builder.
+             */
+            public Builder expireAfterWrite(Duration expireAfterWrite) {
+                this.expireAfterWrite = expireAfterWrite;
+                return this;
+            }
+
+            /**
+             * Sets how long a cache entry is kept without being read. Refreshes do not count as reads.
+             * @param expireAfterAccess the time after the last read, or zero to keep unread entries.
+             * @return this builder.
+             */
+            public Builder expireAfterAccess(Duration expireAfterAccess) {
+                this.expireAfterAccess = expireAfterAccess;
+                return this;
+            }
+
+            /**
+             * Sets how long after it is fetched a fresh cache entry is refreshed in the background when
+             * it is read, so callers keep getting cached data while it is replaced before it expires.
+             * @param refreshAfterWrite the time after the fetch, shorter than the data freshness period,
+             *                          or zero to refresh entries only after they expire.
+             * @return this builder.
+             */
+            public Builder refreshAfterWrite(Duration refreshAfterWrite) {
+                this.refreshAfterWrite = refreshAfterWrite;
+                return this;
+            }
+
+            /**
+             * Sets how long data for a location stays fresh, instead of the data freshness period,
+             * for example a shorter time for regions with severe weather.
+             * @param location   the location, as it is passed to the service.
+             * @param timeToLive how long the data of the location stays fresh.
+             * @return this builder.
+             */
+            public Builder timeToLive(String location, Duration timeToLive) {
+                this.timeToLive.put(location, timeToLive);
+                return this;
+            }
+
+            /**
+             * Sets how long data for the city with the given id stays fresh, instead of the data
+             * freshness period. Locations that resolve to the city with aliasing share it.
+             * @param cityId     the id of the city, positive.
+             * @param timeToLive how long the data of the city stays fresh.
+             * @return this builder.
+             */
+            public Builder timeToLive(int cityId, Duration timeToLive) {
+                this.timeToLive.put(LocationKey.ofCityId(cityId).name(), timeToLive);
+                return this;
+            }
+
+            /**
+             * Builds the expiration settings.
+             * @return the expiration settings.
+             */
+            public Expiration build() {
+                return new Expiration(expireAfterWrite, expireAfterAccess, refreshAfterWrite,
+                        Collections.unmodifiableMap(new LinkedHashMap<>(timeToLive)));
             }
         }
     }
-}
\ No newline at end of file
+}
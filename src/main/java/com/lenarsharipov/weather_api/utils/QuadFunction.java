@@ -0,0 +1,8 @@
+package com.lenarsharipov.weather_api.utils;
+
+@FunctionalInterface
+public interface QuadFunction<T, U, V, W, R> {
+
+    R apply(T t, U u, V v, W w);
+
+}
@@ -1,5 +1,9 @@
 package com.lenarsharipov.weather_api.utils;
 
+/**
+ * @deprecated services are created through {@link QuadFunction} now; kept for code that uses it.
+ */
+@Deprecated
 @FunctionalInterface
 public interface TriFunction<T, U, V, R> {
 
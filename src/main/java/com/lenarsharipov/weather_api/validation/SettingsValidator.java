@@ -1,6 +1,8 @@
 package com.lenarsharipov.weather_api.validation;
 
 import com.lenarsharipov.weather_api.exception.InvalidSettingsException;
+import com.lenarsharipov.weather_api.http.WeatherHttpClient;
+import com.lenarsharipov.weather_api.service.WeatherService;
 import com.lenarsharipov.weather_api.settings.Settings;
 
 import java.util.Objects;
@@ -25,7 +27,20 @@ public final class SettingsValidator {
      * <li>the settings are not null</li>
      * <li>the data freshness period is positive</li>
      * <li>the cache size is positive</li>
-     * <li>the polling settings are valid (see {@link #isValidPolling(Settings.Polling)}).</li>
+     * <li>the cache eviction policy is set</li>
+     * <li>the cache segment count is positive and not greater than the cache size</li>
+     * <li>the polling settings are valid (see {@link #isValidPolling(Settings.Polling)})</li>
+     * <li>the bulk max concurrency is positive</li>
+     * <li>the stale-while-revalidate flag is set and, when it is enabled, the max staleness
+     * is set and not shorter than the data freshness period</li>
+     * <li>the negative cache size is not negative and its time to live is positive</li>
+     * <li>the snapshot interval is not negative and its unit is set</li>
+     * <li>the rate limit is not negative, its burst is positive and its maximum wait is not negative</li>
+     * <li>the retry attempts are positive, the backoffs are set and not negative, and the maximum
+     * backoff is not shorter than the initial one</li>
+     * <li>the circuit breaker threshold is not negative and its open duration is positive</li>
+     * <li>the subscription buffer size is positive</li>
+     * <li>the expiration settings are valid (see {@link #isValidExpiration(Settings.Expiration, long)}).</li>
      * </ul>
      * If any of the conditions is not met, an exception is thrown.
      *
@@ -50,10 +65,172 @@ public final class SettingsValidator {
                         && cache.size() > 0,
                 "Cache size must be positive");
 
+        validate(settings.cache().evictionPolicy(),
+                "cache.evictionPolicy",
+                Objects::nonNull,
+                "Eviction policy cannot be null");
+
+        validate(settings.cache().segments(),
+                "cache.segments",
+                segments -> segments != null
+                        && segments > 0
+                        && segments <= settings.cache().size(),
+                "Cache segments must be positive and not greater than the cache size");
+
         validate(settings.polling(),
                 "polling",
                 polling -> polling != null && isValidPolling(polling),
                 "Polling settings are invalid");
+
+        validate(settings.bulk(),
+                "bulk",
+                bulk -> bulk != null
+                        && bulk.maxConcurrency() != null
+                        && bulk.maxConcurrency() > 0,
+                "Bulk max concurrency must be positive");
+
+        validate(settings.staleWhileRevalidate(),
+                "staleWhileRevalidate",
+                staleWhileRevalidate -> staleWhileRevalidate != null
+                        && staleWhileRevalidate.enabled() != null,
+                "Stale-while-revalidate flag cannot be null");
+
+        long dataFreshnessMillis = (settings.dataFreshnessUnit() == null
+                ? WeatherService.DEFAULT_DATA_FRESHNESS_UNIT
+                : settings.dataFreshnessUnit()).toMillis(settings.dataFreshnessPeriod());
+        validate(settings.staleWhileRevalidate().maxStaleness(),
+                "staleWhileRevalidate.maxStaleness",
+                maxStaleness -> !settings.staleWhileRevalidate().enabled()
+                        || maxStaleness != null && maxStaleness.toMillis() >= dataFreshnessMillis,
+                "Max staleness cannot be less than the data freshness period");
+
+        validate(settings.negativeCache(),
+                "negativeCache",
+                negativeCache -> negativeCache != null
+                        && negativeCache.size() != null
+                        && negativeCache.size() >= 0
+                        && negativeCache.ttl() != null
+                        && negativeCache.ttl().isPositive(),
+                "Negative cache size must not be negative and its time to live must be positive");
+
+        validate(settings.snapshot(),
+                "snapshot",
+                snapshot -> snapshot != null
+                        && snapshot.interval() != null
+                        && snapshot.interval() >= 0
+                        && snapshot.unit() != null,
+                "Snapshot interval must not be negative and its unit cannot be null");
+
+        validate(settings.rateLimit(),
+                "rateLimit",
+                rateLimit -> rateLimit != null
+                        && rateLimit.requestsPerMinute() != null
+                        && rateLimit.requestsPerMinute() >= 0
+                        && rateLimit.burst() != null
+                        && rateLimit.burst() > 0
+                        && rateLimit.maxWait() != null
+                        && !rateLimit.maxWait().isNegative(),
+                "Rate limit and its maximum wait must not be negative and its burst must be positive");
+
+        validate(settings.retry(),
+                "retry",
+                retry -> retry != null
+                        && retry.maxAttempts() != null
+                        && retry.maxAttempts() > 0
+                        && retry.initialBackoff() != null
+                        && !retry.initialBackoff().isNegative()
+                        && retry.maxBackoff() != null
+                        && retry.maxBackoff().compareTo(retry.initialBackoff()) >= 0,
+                "Retry attempts must be positive, backoffs must not be negative "
+                        + "and the maximum backoff must not be shorter than the initial backoff");
+
+        validate(settings.circuitBreaker(),
+                "circuitBreaker",
+                circuitBreaker -> circuitBreaker != null
+                        && circuitBreaker.failureThreshold() != null
+                        && circuitBreaker.failureThreshold() >= 0
+                        && circuitBreaker.openDuration() != null
+                        && circuitBreaker.openDuration().isPositive(),
+                "Circuit breaker threshold must not be negative and its open duration must be positive");
+
+        validate(settings.http(),
+                "http",
+                http -> http != null
+                        && http.version() != null
+                        && http.connectTimeout() != null
+                        && http.connectTimeout().isPositive()
+                        && http.requestTimeout() != null
+                        && http.requestTimeout().isPositive()
+                        && http.virtualThreads() != null
+                        && http.maxConcurrentRequests() != null
+                        && http.maxConcurrentRequests() >= 0,
+                "HTTP version cannot be null, timeouts must be positive "
+                        + "and the maximum number of concurrent requests must not be negative");
+
+        validate(settings.proximity(),
+                "proximity",
+                proximity -> proximity != null
+                        && proximity.radius() != null
+                        && proximity.radius() > 0
+                        && proximity.size() != null
+                        && proximity.size() >= 0,
+                "Proximity radius must be positive and its size must not be negative");
+
+        validate(settings.aliasing(),
+                "aliasing",
+                aliasing -> aliasing != null
+                        && aliasing.enabled() != null
+                        && (!aliasing.enabled() || aliasing.size() != null && aliasing.size() > 0),
+                "Aliasing flag cannot be null and the alias table size must be positive when enabled");
+        validate(settings.remoteCache(),
+                "remoteCache",
+                Objects::nonNull,
+                "Remote cache settings cannot be null");
+
+        validate(settings.subscriptions(),
+                "subscriptions",
+                subscriptions -> subscriptions != null
+                        && subscriptions.bufferSize() != null
+                        && subscriptions.bufferSize() > 0,
+                "Subscription buffer size must be positive");
+
+        validate(settings.expiration(),
+                "expiration",
+                expiration -> isValidExpiration(expiration, dataFreshnessMillis),
+                "Expiration times must not be negative, refreshAfterWrite must be shorter than "
+                        + "the data freshness period and per-location times to live must be positive");
+    }
+
+    /**
+     * Validates the expiration settings.
+     * <p>
+     * The method checks that:
+     * <ul>
+     * <li>the expiration settings are not null</li>
+     * <li>expireAfterWrite and expireAfterAccess are not null and are not negative</li>
+     * <li>refreshAfterWrite is not null, is not negative and is shorter than the data freshness period</li>
+     * <li>every per-location time to live has a non-blank location and is positive.</li>
+     * </ul>
+     *
+     * @param expiration          the expiration settings to validate
+     * @param dataFreshnessMillis the data freshness period in milliseconds
+     * @return true if the expiration settings are valid, false otherwise
+     */
+    private static boolean isValidExpiration(Settings.Expiration expiration, long dataFreshnessMillis) {
+        return expiration != null
+                && expiration.expireAfterWrite() != null
+                && !expiration.expireAfterWrite().isNegative()
+                && expiration.expireAfterAccess() != null
+                && !expiration.expireAfterAccess().isNegative()
+                && expiration.refreshAfterWrite() != null
+                && !expiration.refreshAfterWrite().isNegative()
+                && expiration.refreshAfterWrite().toMillis() < dataFreshnessMillis
+                && expiration.timeToLive() != null
+                && expiration.timeToLive().entrySet().stream().allMatch(entry ->
+                        entry.getKey() != null
+                                && !entry.getKey().isBlank()
+                                && entry.getValue() != null
+                                && entry.getValue().isPositive());
     }
 
     private static <T> void validate(T value,
@@ -73,6 +250,8 @@ public final class SettingsValidator {
      * <li>the initial delay is not null and is not negative</li>
      * <li>the period is not null and is positive</li>
      * <li>the unit is not null</li>
+     * <li>the max concurrency is not null and is positive</li>
+     * <li>the group size is not null and is from 1 to {@link WeatherHttpClient#MAX_GROUP_SIZE}</li>
      * </ul>
      * If any of the conditions is not met, the method returns false.
      *
@@ -84,6 +263,11 @@ public final class SettingsValidator {
                 && polling.initialDelay() >= 0
                 && polling.period() != null
                 && polling.period() > 0
-                && polling.unit() != null;
+                && polling.unit() != null
+                && polling.maxConcurrency() != null
+                && polling.maxConcurrency() > 0
+                && polling.groupSize() != null
+                && polling.groupSize() >= 1
+                && polling.groupSize() <= WeatherHttpClient.MAX_GROUP_SIZE;
     }
 }
@@ -10,6 +10,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.Duration;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -128,6 +129,102 @@ class WeatherServiceFactoryTest {
             assertThrows(InvalidSettingsException.class,
                     () -> WeatherServiceFactory.getWeatherService(API_KEY, apiMode, invalidSettings));
         }
+
+        @Test
+        @DisplayName("throws InvalidSettingsException if a request timeout is not positive")
+        void shouldThrowInvalidSettingsExceptionWhenRequestTimeoutIsNotPositive() {
+            Settings invalidSettings = Settings.builder()
+                    .http(Settings.Http.builder()
+                            .requestTimeout(Duration.ZERO)
+                            .build())
+                    .build();
+
+            assertThrows(InvalidSettingsException.class,
+                    () -> WeatherServiceFactory.getWeatherService(API_KEY, apiMode, invalidSettings));
+        }
+
+        @Test
+        @DisplayName("throws InvalidSettingsException if stale data may be served for less than the freshness period")
+        void shouldThrowInvalidSettingsExceptionWhenMaxStalenessIsShorterThanFreshness() {
+            Settings invalidSettings = Settings.builder()
+                    .dataFreshnessPeriod(1500)
+                    .dataFreshnessUnit(TimeUnit.MILLISECONDS)
+                    .staleWhileRevalidate(Settings.StaleWhileRevalidate.builder()
+                            .enabled(true)
+                            .maxStaleness(Duration.ofSeconds(1))
+                            .build())
+                    .build();
+
+            assertThrows(InvalidSettingsException.class,
+                    () -> WeatherServiceFactory.getWeatherService(API_KEY, apiMode, invalidSettings));
+        }
+
+        @Test
+        @DisplayName("throws InvalidSettingsException if failed lookups would not be remembered")
+        void shouldThrowInvalidSettingsExceptionWhenNegativeCacheTtlIsNotPositive() {
+            Settings invalidSettings = Settings.builder()
+                    .negativeCache(Settings.NegativeCache.builder()
+                            .ttl(Duration.ZERO)
+                            .build())
+                    .build();
+
+            assertThrows(InvalidSettingsException.class,
+                    () -> WeatherServiceFactory.getWeatherService(API_KEY, apiMode, invalidSettings));
+        }
+
+        @Test
+        @DisplayName("throws InvalidSettingsException if the maximum backoff is shorter than the initial one")
+        void shouldThrowInvalidSettingsExceptionWhenMaxBackoffIsShorterThanInitial() {
+            Settings invalidSettings = Settings.builder()
+                    .retry(Settings.Retry.builder()
+                            .initialBackoff(Duration.ofSeconds(5))
+                            .maxBackoff(Duration.ofSeconds(1))
+                            .build())
+                    .build();
+
+            assertThrows(InvalidSettingsException.class,
+                    () -> WeatherServiceFactory.getWeatherService(API_KEY, apiMode, invalidSettings));
+        }
+
+        @Test
+        @DisplayName("throws InvalidSettingsException if a polling group is larger than the API allows")
+        void shouldThrowInvalidSettingsExceptionWhenGroupSizeIsTooLarge() {
+            Settings invalidSettings = Settings.builder()
+                    .polling(Settings.Polling.builder()
+                            .groupSize(21)
+                            .build())
+                    .build();
+
+            assertThrows(InvalidSettingsException.class,
+                    () -> WeatherServiceFactory.getWeatherService(API_KEY, apiMode, invalidSettings));
+        }
+
+        @Test
+        @DisplayName("throws InvalidSettingsException if the subscription buffer is empty")
+        void shouldThrowInvalidSettingsExceptionWhenSubscriptionBufferIsEmpty() {
+            Settings invalidSettings = Settings.builder()
+                    .subscriptions(Settings.Subscriptions.builder()
+                            .bufferSize(0)
+                            .build())
+                    .build();
+
+            assertThrows(InvalidSettingsException.class,
+                    () -> WeatherServiceFactory.getWeatherService(API_KEY, apiMode, invalidSettings));
+        }
+
+        @Test
+        @DisplayName("throws InvalidSettingsException if entries are refreshed no earlier than they expire")
+        void shouldThrowInvalidSettingsExceptionWhenRefreshIsNotAheadOfExpiry() {
+            Settings invalidSettings = Settings.builder()
+                    .dataFreshnessPeriod(10)
+                    .expiration(Settings.Expiration.builder()
+                            .refreshAfterWrite(Duration.ofMinutes(10))
+                            .build())
+                    .build();
+
+            assertThrows(InvalidSettingsException.class,
+                    () -> WeatherServiceFactory.getWeatherService(API_KEY, apiMode, invalidSettings));
+        }
     }
 
     @Nested
@@ -141,5 +238,12 @@ class WeatherServiceFactoryTest {
             assertThrows(ServiceExistsException.class, () -> WeatherServiceFactory.getWeatherService(API_KEY, apiMode));
             WeatherServiceFactory.removeWeatherService(API_KEY);
         }
+
+        @Test
+        @DisplayName("throws IllegalWeatherServiceFactoryArgsException if the shared cache budget is negative")
+        void shouldThrowIllegalArgsExceptionWhenSharedCacheBudgetIsNegative() {
+            assertThrows(IllegalWeatherServiceFactoryArgsException.class,
+                    () -> WeatherServiceFactory.configureSharedCache(-1));
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,49 @@
+package com.lenarsharipov.weather_api.datastructure;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("Alias Table")
+class AliasTableTest {
+
+    @Test
+    @DisplayName("returns the city a location resolved to")
+    void shouldReturnCityOfLocation() {
+        AliasTable aliasTable = new AliasTable(10);
+
+        aliasTable.put("LONDON", 2643743);
+        aliasTable.put("LONDON,GB", 2643743);
+
+        assertThat(aliasTable.get("LONDON")).isEqualTo(2643743);
+        assertThat(aliasTable.get("LONDON,GB")).isEqualTo(2643743);
+        assertThat(aliasTable.get("PARIS")).isZero();
+    }
+
+    @Test
+    @DisplayName("removes the least recently used alias when full")
+    void shouldRemoveLeastRecentlyUsedAliasWhenFull() {
+        AliasTable aliasTable = new AliasTable(2);
+
+        aliasTable.put("LONDON", 2643743);
+        aliasTable.put("PARIS", 2988507);
+        aliasTable.get("LONDON");
+        aliasTable.put("MOSCOW", 524901);
+
+        assertThat(aliasTable.size()).isEqualTo(2);
+        assertThat(aliasTable.get("LONDON")).isEqualTo(2643743);
+        assertThat(aliasTable.get("PARIS")).isZero();
+    }
+
+    @Test
+    @DisplayName("learns nothing when disabled")
+    void shouldLearnNothingWhenDisabled() {
+        AliasTable aliasTable = new AliasTable(0);
+
+        aliasTable.put("LONDON", 2643743);
+
+        assertThat(aliasTable.isEnabled()).isFalse();
+        assertThat(aliasTable.get("LONDON")).isZero();
+    }
+}
@@ -0,0 +1,116 @@
+package com.lenarsharipov.weather_api.datastructure;
+
+import com.lenarsharipov.weather_api.model.LocationKey;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static com.lenarsharipov.weather_api.util.TestObjectUtils.LOCATION;
+import static com.lenarsharipov.weather_api.util.TestObjectUtils.WEATHER_RESPONSE;
+import static com.lenarsharipov.weather_api.util.TestObjectUtils.createWeatherResponse;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("Cache Snapshot")
+class CacheSnapshotTest {
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    @DisplayName("restores every entry as it was saved")
+    void shouldRestoreSavedEntries() throws IOException {
+        Path file = directory.resolve("cache.snapshot");
+        Cache cache = new Cache(Cache.DEFAULT_CACHE_SIZE);
+        cache.put(LOCATION, WEATHER_RESPONSE);
+        cache.put("Moscow", createWeatherResponse(1740146111));
+
+        int saved = CacheSnapshot.write(cache, file);
+        Cache restoredCache = new Cache(Cache.DEFAULT_CACHE_SIZE);
+        int restored = CacheSnapshot.read(file, restoredCache);
+
+        assertAll(
+                () -> assertEquals(2, saved),
+                () -> assertEquals(2, restored),
+                () -> assertThat(restoredCache.peek(LOCATION)).isEqualTo(WEATHER_RESPONSE),
+                () -> assertThat(restoredCache.peek("Moscow")).isEqualTo(createWeatherResponse(1740146111)),
+                () -> assertThat(restoredCache.peek("Moscow").dt()).isEqualTo(1740146111)
+        );
+    }
+
+    @Test
+    @DisplayName("restores the fetch time of every entry")
+    void shouldRestoreFetchTimes() throws IOException {
+        Path file = directory.resolve("cache.snapshot");
+        Cache cache = new Cache(Cache.DEFAULT_CACHE_SIZE);
+        cache.put(LocationKey.of(LOCATION), createWeatherResponse(1740146111), 1740147000123L);
+
+        CacheSnapshot.write(cache, file);
+        Cache restoredCache = new Cache(Cache.DEFAULT_CACHE_SIZE);
+        CacheSnapshot.read(file, restoredCache);
+
+        CacheEntry entry = restoredCache.peekEntry(LocationKey.of(LOCATION));
+        assertThat(entry.fetchedAtMillis()).isEqualTo(1740147000123L);
+        assertThat(entry.expiresAtMillis()).isEqualTo(cache.peekEntry(LocationKey.of(LOCATION)).expiresAtMillis());
+    }
+
+    @Test
+    @DisplayName("replaces the previous snapshot")
+    void shouldReplacePreviousSnapshot() throws IOException {
+        Path file = directory.resolve("cache.snapshot");
+        Cache cache = new Cache(Cache.DEFAULT_CACHE_SIZE);
+        cache.put(LOCATION, WEATHER_RESPONSE);
+        CacheSnapshot.write(cache, file);
+        cache.clear();
+        cache.put("Moscow", WEATHER_RESPONSE);
+        CacheSnapshot.write(cache, file);
+
+        Cache restoredCache = new Cache(Cache.DEFAULT_CACHE_SIZE);
+        CacheSnapshot.read(file, restoredCache);
+
+        assertThat(restoredCache.getLocations()).containsExactly("MOSCOW");
+        try (var files = Files.list(directory)) {
+            assertThat(files).containsExactly(file);
+        }
+    }
+
+    @Test
+    @DisplayName("restores nothing when there is no snapshot")
+    void shouldRestoreNothingWithoutSnapshot() throws IOException {
+        Cache cache = new Cache(Cache.DEFAULT_CACHE_SIZE);
+
+        int restored = CacheSnapshot.read(directory.resolve("missing.snapshot"), cache);
+
+        assertEquals(0, restored);
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    @DisplayName("rejects a file that is not a snapshot")
+    void shouldRejectInvalidSnapshot() throws IOException {
+        Path file = directory.resolve("cache.snapshot");
+        Files.writeString(file, "not a snapshot");
+
+        assertThrows(IOException.class, () -> CacheSnapshot.read(file, new Cache(Cache.DEFAULT_CACHE_SIZE)));
+    }
+
+    @Test
+    @DisplayName("rejects a truncated snapshot")
+    void shouldRejectTruncatedSnapshot() throws IOException {
+        Path file = directory.resolve("cache.snapshot");
+        Cache cache = new Cache(Cache.DEFAULT_CACHE_SIZE);
+        cache.put(LOCATION, WEATHER_RESPONSE);
+        CacheSnapshot.write(cache, file);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length / 2));
+
+        assertThrows(IOException.class, () -> CacheSnapshot.read(file, new Cache(Cache.DEFAULT_CACHE_SIZE)));
+    }
+}
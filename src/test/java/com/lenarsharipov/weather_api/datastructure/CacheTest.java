@@ -1,11 +1,15 @@
 package com.lenarsharipov.weather_api.datastructure;
 
+import com.lenarsharipov.weather_api.datastructure.eviction.EvictionPolicyType;
+import com.lenarsharipov.weather_api.model.LocationKey;
 import com.lenarsharipov.weather_api.model.WeatherResponse;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -93,6 +97,42 @@ class CacheTest {
             assertThat(cache.size()).isEqualTo(10);
         }
 
+        @Test
+        @DisplayName("removes the least recently used entry when cache is full")
+        void shouldRemoveLeastRecentlyUsedEntryWhenCacheIsFull() {
+            for (int i = 1; i <= 10; i++) {
+                cache.put("city" + i, createWeatherResponse(i));
+            }
+            cache.get("city1");
+
+            cache.put("city11", response1);
+
+            assertAll(
+                    () -> assertThat(cache.get("city1")).isNotNull(),
+                    () -> assertNull(cache.get("city2")),
+                    () -> assertThat(cache.size()).isEqualTo(10)
+            );
+        }
+
+        @Test
+        @DisplayName("keeps frequently used entries with W-TinyLFU policy")
+        void shouldKeepFrequentlyUsedEntriesWithWTinyLfuPolicy() {
+            Cache tinyLfuCache = new Cache(10, EvictionPolicyType.W_TINY_LFU);
+            tinyLfuCache.put("hot", response1);
+            for (int i = 0; i < 5; i++) {
+                tinyLfuCache.get("hot");
+            }
+
+            for (int i = 1; i <= 100; i++) {
+                tinyLfuCache.put("city" + i, createWeatherResponse(i));
+            }
+
+            assertAll(
+                    () -> assertThat(tinyLfuCache.get("hot")).isEqualTo(response1),
+                    () -> assertThat(tinyLfuCache.size()).isEqualTo(10)
+            );
+        }
+
         @Test
         @DisplayName("does not remove entries when cache is not full")
         void shouldNotRemoveEntriesWhenCacheIsNotFull() {
@@ -107,6 +147,213 @@ class CacheTest {
         }
     }
 
+    @Nested
+    @DisplayName("Segmentation Tests")
+    class SegmentationTests {
+
+        @Test
+        @DisplayName("splits the cache size across segments")
+        void shouldSplitCacheSizeAcrossSegments() {
+            Cache segmentedCache = new Cache(64, EvictionPolicyType.LRU, 8);
+            for (int i = 0; i < 1_000; i++) {
+                segmentedCache.put("city" + i, response1);
+            }
+
+            assertAll(
+                    () -> assertThat(segmentedCache.segmentCount()).isEqualTo(8),
+                    () -> assertThat(segmentedCache.size()).isEqualTo(64),
+                    () -> assertThat(segmentedCache.getLocations()).hasSize(64)
+            );
+        }
+
+        @Test
+        @DisplayName("does not create more segments than entries")
+        void shouldNotCreateMoreSegmentsThanEntries() {
+            Cache segmentedCache = new Cache(3, EvictionPolicyType.LRU, 8);
+
+            assertThat(segmentedCache.segmentCount()).isEqualTo(3);
+        }
+
+        @Test
+        @DisplayName("finds entries in their segments")
+        void shouldFindEntriesInTheirSegments() {
+            Cache segmentedCache = new Cache(100, EvictionPolicyType.W_TINY_LFU, 4);
+            segmentedCache.put("  New York  ", response1);
+            segmentedCache.put("los angeles", response2);
+
+            assertAll(
+                    () -> assertThat(segmentedCache.get("NEW YORK")).isEqualTo(response1),
+                    () -> assertThat(segmentedCache.get("LOS ANGELES")).isEqualTo(response2),
+                    () -> assertThat(segmentedCache.getLocations()).containsExactlyInAnyOrder("NEW YORK", "LOS ANGELES")
+            );
+        }
+
+        @Test
+        @DisplayName("never grows past its size under concurrent puts")
+        void shouldNotExceedSizeUnderConcurrentPuts() throws InterruptedException {
+            Cache segmentedCache = new Cache(64, EvictionPolicyType.LRU, 8);
+            int threadCount = 8;
+            ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+
+            for (int i = 0; i < threadCount; i++) {
+                final int index = i;
+                executorService.submit(() -> {
+                    for (int j = 0; j < 1_000; j++) {
+                        segmentedCache.put("city" + index + "-" + j, response1);
+                        segmentedCache.get("city" + index + "-" + (j / 2));
+                    }
+                });
+            }
+
+            executorService.shutdown();
+            assertThat(executorService.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+            assertThat(segmentedCache.size()).isEqualTo(64);
+        }
+    }
+
+    @Nested
+    @DisplayName("Expiration Tests")
+    class ExpirationTests {
+
+        private final LocationKey key = LocationKey.of(LOCATION);
+
+        @Test
+        @DisplayName("keeps an entry fresh for the time to live after it is fetched")
+        void shouldExpireEntryAfterTimeToLive() {
+            Cache expiringCache = new Cache(10, EvictionPolicyType.LRU, 1, Duration.ofSeconds(30));
+
+            expiringCache.put(key, response1, 1_000_000L);
+            CacheEntry entry = expiringCache.getEntry(key);
+
+            assertAll(
+                    () -> assertThat(entry.response()).isEqualTo(response1),
+                    () -> assertThat(entry.fetchedAtMillis()).isEqualTo(1_000_000L),
+                    () -> assertThat(entry.expiresAtMillis()).isEqualTo(1_030_000L),
+                    () -> assertThat(entry.isFresh(1_029_999L)).isTrue(),
+                    () -> assertThat(entry.isFresh(1_030_000L)).isFalse()
+            );
+        }
+
+        @Test
+        @DisplayName("keeps an unchanged observation fresh longer each time, up to the limit")
+        void shouldBackOffUnchangedObservations() {
+            Cache expiringCache = new Cache(10, EvictionPolicyType.LRU, 1, Duration.ofSeconds(10));
+
+            long[] timesToLive = new long[4];
+            for (int i = 0; i < timesToLive.length; i++) {
+                expiringCache.put(key, response1, i * 100_000L);
+                timesToLive[i] = expiringCache.peekEntry(key).timeToLiveMillis();
+            }
+            expiringCache.put(key, response2, 500_000L);
+
+            assertAll(
+                    () -> assertThat(timesToLive).containsExactly(10_000L, 20_000L, 40_000L, 40_000L),
+                    () -> assertThat(expiringCache.peekEntry(key).unchangedFetches()).isZero(),
+                    () -> assertThat(expiringCache.peekEntry(key).timeToLiveMillis()).isEqualTo(10_000L)
+            );
+        }
+
+        @Test
+        @DisplayName("stores data as fetched now by default")
+        void shouldUseCurrentTimeAsFetchTime() {
+            long before = System.currentTimeMillis();
+            cache.put(key, response1);
+
+            assertThat(cache.peekEntry(key).fetchedAtMillis()).isBetween(before, System.currentTimeMillis());
+            assertThat(cache.timeToLiveMillis()).isEqualTo(Cache.DEFAULT_TIME_TO_LIVE.toMillis());
+        }
+    }
+
+    @Nested
+    @DisplayName("Expiration Policy Tests")
+    class ExpirationPolicyTests {
+
+        private final LocationKey key = LocationKey.of(LOCATION);
+
+        @Test
+        @DisplayName("uses the time to live of a location that has its own")
+        void shouldUseTimeToLiveOverride() {
+            Cache expiringCache = new Cache(10, EvictionPolicyType.LRU, 1, new ExpirationPolicy(
+                    Duration.ofMinutes(10), null, null, null, Map.of(" kazan ", Duration.ofMinutes(1))));
+
+            expiringCache.put(LocationKey.of("Kazan"), response1, 1_000_000L);
+            expiringCache.put(key, response1, 1_000_000L);
+
+            assertAll(
+                    () -> assertThat(expiringCache.peekEntry(LocationKey.of("KAZAN")).timeToLiveMillis())
+                            .isEqualTo(60_000L),
+                    () -> assertThat(expiringCache.peekEntry(key).timeToLiveMillis()).isEqualTo(600_000L)
+            );
+        }
+
+        @Test
+        @DisplayName("marks an entry for a refresh ahead of its expiry")
+        void shouldMarkEntryForRefresh() {
+            Cache expiringCache = new Cache(10, EvictionPolicyType.LRU, 1, new ExpirationPolicy(
+                    Duration.ofMinutes(10), null, null, Duration.ofMinutes(8), null));
+
+            expiringCache.put(key, response1, 1_000_000L);
+            CacheEntry entry = expiringCache.peekEntry(key);
+
+            assertAll(
+                    () -> assertThat(entry.refreshAtMillis()).isEqualTo(1_480_000L),
+                    () -> assertThat(entry.isDueForRefresh(1_479_999L)).isFalse(),
+                    () -> assertThat(entry.isDueForRefresh(1_480_000L)).isTrue(),
+                    () -> assertThat(cache.peekEntry(key)).isNull()
+            );
+        }
+
+        @Test
+        @DisplayName("removes an entry after write and frees its place")
+        void shouldRemoveEntryAfterWrite() throws InterruptedException {
+            Cache expiringCache = new Cache(2, EvictionPolicyType.LRU, 1, new ExpirationPolicy(
+                    Duration.ofMillis(50), Duration.ofMillis(100), null, null, null));
+            LocationKey other = LocationKey.of("Kazan");
+            LocationKey third = LocationKey.of("Paris");
+
+            expiringCache.put(key, response1);
+            Thread.sleep(150);
+
+            assertThat(expiringCache.get(key)).isNull();
+            assertThat(awaitSize(expiringCache, 0)).isTrue();
+            expiringCache.put(other, response1);
+            expiringCache.put(third, response2);
+            assertThat(expiringCache.getLocations()).containsExactlyInAnyOrder("KAZAN", "PARIS");
+        }
+
+        @Test
+        @DisplayName("removes entries that are not read and keeps the ones that are")
+        void shouldRemoveEntryAfterAccess() throws InterruptedException {
+            Cache expiringCache = new Cache(10, EvictionPolicyType.LRU, 1, new ExpirationPolicy(
+                    Duration.ofMinutes(10), null, Duration.ofMillis(300), null, null));
+            LocationKey unread = LocationKey.of("Kazan");
+
+            expiringCache.put(key, response1);
+            expiringCache.put(unread, response1);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            for (int i = 0; i < 8 || expiringCache.size() != 1 && System.nanoTime() < deadline; i++) {
+                Thread.sleep(50);
+                assertThat(expiringCache.get(key)).isEqualTo(response1);
+            }
+
+            assertThat(expiringCache.peek(unread)).isNull();
+            assertThat(expiringCache.getLocations()).containsExactly(key.name());
+        }
+
+        /**
+         * Reclaims removed entries until the cache has the given size, for up to five seconds.
+         */
+        private boolean awaitSize(Cache expiringCache, int size) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (expiringCache.size() != size && System.nanoTime() < deadline) {
+                Thread.sleep(20);
+                expiringCache.cleanUp();
+            }
+            return expiringCache.size() == size;
+        }
+    }
+
     @Nested
     @DisplayName("Location Normalization Tests")
     class LocationNormalizationTests {
@@ -149,6 +396,28 @@ class CacheTest {
 
             assertThat(cache.size()).isEqualTo(threadCount);
         }
+
+        @Test
+        @DisplayName("never grows past its size under concurrent puts")
+        void shouldNotExceedSizeUnderConcurrentPuts() throws InterruptedException {
+            int threadCount = 8;
+            ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+
+            for (int i = 0; i < threadCount; i++) {
+                final int index = i;
+                executorService.submit(() -> {
+                    for (int j = 0; j < 1_000; j++) {
+                        cache.put("city" + index + "-" + j, response1);
+                        assertThat(cache.size()).isLessThanOrEqualTo(Cache.DEFAULT_CACHE_SIZE);
+                    }
+                });
+            }
+
+            executorService.shutdown();
+            assertThat(executorService.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+            assertThat(cache.size()).isEqualTo(Cache.DEFAULT_CACHE_SIZE);
+        }
     }
 
     @Nested
@@ -0,0 +1,116 @@
+package com.lenarsharipov.weather_api.datastructure;
+
+import com.lenarsharipov.weather_api.model.Coord;
+import com.lenarsharipov.weather_api.model.WeatherResponse;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+@DisplayName("Geo Cache")
+class GeoCacheTest {
+
+    private static final WeatherResponse LONDON = response("London", 51.5074, -0.1278);
+    private static final WeatherResponse GREENWICH = response("Greenwich", 51.4826, -0.0077);
+
+    private final GeoCache geoCache = new GeoCache(10, 5000);
+
+    @Test
+    @DisplayName("returns the nearest entry within the radius")
+    void shouldReturnNearestEntryWithinRadius() {
+        geoCache.put(LONDON);
+        geoCache.put(GREENWICH);
+
+        assertThat(geoCache.get(51.51, -0.12, response -> true)).isEqualTo(LONDON);
+        assertThat(geoCache.get(51.48, -0.01, response -> true)).isEqualTo(GREENWICH);
+        assertThat(geoCache.get(51.75, -0.34, response -> true)).isNull();
+    }
+
+    @Test
+    @DisplayName("skips entries that are not usable")
+    void shouldSkipEntriesThatAreNotUsable() {
+        geoCache.put(LONDON);
+        geoCache.put(GREENWICH);
+
+        assertThat(geoCache.get(51.495, -0.07, response -> true)).isEqualTo(LONDON);
+        assertThat(geoCache.get(51.495, -0.07, weather -> weather.response() != LONDON)).isEqualTo(GREENWICH);
+    }
+
+    @Test
+    @DisplayName("replaces the entry stored at the same point")
+    void shouldReplaceEntryAtSamePoint() {
+        WeatherResponse updated = response("London", 51.5074, -0.1278);
+
+        geoCache.put(LONDON);
+        geoCache.put(updated);
+
+        assertThat(geoCache.size()).isEqualTo(1);
+        assertThat(geoCache.get(51.5074, -0.1278, response -> true)).isSameAs(updated);
+    }
+
+    @Test
+    @DisplayName("passes the fetch time of an entry to the usability check")
+    void shouldKeepFetchTime() {
+        geoCache.put(LONDON, 1_000L);
+        geoCache.put(GREENWICH, 2_000L);
+
+        assertThat(geoCache.get(51.495, -0.07, weather -> weather.fetchedAtMillis() > 1_000L)).isEqualTo(GREENWICH);
+    }
+
+    @Test
+    @DisplayName("removes the oldest entry when full")
+    void shouldRemoveOldestEntryWhenFull() {
+        GeoCache smallCache = new GeoCache(1, 5000);
+
+        smallCache.put(LONDON);
+        smallCache.put(55.7558, 37.6173, response("Moscow", 55.7558, 37.6173), System.currentTimeMillis());
+
+        assertThat(smallCache.size()).isEqualTo(1);
+        assertThat(smallCache.get(51.5074, -0.1278, response -> true)).isNull();
+    }
+
+    @Test
+    @DisplayName("finds entries across the antimeridian and near the poles")
+    void shouldFindEntriesAcrossAntimeridianAndNearPoles() {
+        WeatherResponse fiji = response("Fiji", -16.5, 179.999);
+        WeatherResponse pole = response("Pole", 89.99, 0);
+        geoCache.put(fiji);
+        geoCache.put(pole);
+
+        assertThat(geoCache.get(-16.5, -179.999, response -> true)).isEqualTo(fiji);
+        assertThat(geoCache.get(89.99, 180, response -> true)).isEqualTo(pole);
+    }
+
+    @Test
+    @DisplayName("ignores data without a position and stores nothing when disabled")
+    void shouldIgnoreDataWithoutPositionAndWhenDisabled() {
+        GeoCache disabled = new GeoCache(0, 5000);
+
+        geoCache.put(WeatherResponse.builder().name("Nowhere").build());
+        disabled.put(LONDON);
+
+        assertThat(geoCache.size()).isZero();
+        assertThat(disabled.get(51.5074, -0.1278, response -> true)).isNull();
+    }
+
+    @Test
+    @DisplayName("shares a cell key between points close to each other")
+    void shouldShareCellKeyBetweenClosePoints() {
+        assertThat(geoCache.cellKeyOf(51.50741, -0.12781)).isEqualTo(geoCache.cellKeyOf(51.50742, -0.12782));
+        assertThat(geoCache.cellKeyOf(51.5074, -0.1278)).isNotEqualTo(geoCache.cellKeyOf(55.7558, 37.6173));
+    }
+
+    @Test
+    @DisplayName("measures distances along the Earth's surface")
+    void shouldMeasureGreatCircleDistance() {
+        assertThat(GeoCache.distanceMeters(51.5074, -0.1278, 48.8566, 2.3522)).isCloseTo(343_500, within(1_000.0));
+    }
+
+    private static WeatherResponse response(String name, double lat, double lon) {
+        return WeatherResponse.builder()
+                .name(name)
+                .coord(new Coord(lon, lat))
+                .build();
+    }
+}
@@ -0,0 +1,82 @@
+package com.lenarsharipov.weather_api.datastructure;
+
+import com.lenarsharipov.weather_api.exception.HttpException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static com.lenarsharipov.weather_api.util.TestObjectUtils.LOCATION;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@DisplayName("Negative Cache")
+class NegativeCacheTest {
+
+    private static final HttpException NOT_FOUND = new HttpException("API error: city not found", 404);
+
+    @Test
+    @DisplayName("stores a not found failure under the normalized location")
+    void shouldStoreNotFoundFailure() {
+        NegativeCache negativeCache = new NegativeCache(10, Duration.ofSeconds(60));
+
+        negativeCache.put(LOCATION, NOT_FOUND);
+        HttpException failure = negativeCache.get("  " + LOCATION.toLowerCase() + " ");
+
+        assertAll(
+                () -> assertThat(failure).isNotNull(),
+                () -> assertThat(failure.getStatusCode()).isEqualTo(404),
+                () -> assertThat(failure.getMessage()).isEqualTo(NOT_FOUND.getMessage())
+        );
+    }
+
+    @Test
+    @DisplayName("ignores failures that are not permanent")
+    void shouldIgnoreTransientFailures() {
+        NegativeCache negativeCache = new NegativeCache(10, Duration.ofSeconds(60));
+
+        negativeCache.put(LOCATION, new HttpException("API error", 500));
+        negativeCache.put("other", new HttpException("API error", 429));
+
+        assertThat(negativeCache.size()).isZero();
+    }
+
+    @Test
+    @DisplayName("forgets a failure after its time to live")
+    void shouldExpireFailure() throws InterruptedException {
+        NegativeCache negativeCache = new NegativeCache(10, Duration.ofMillis(100));
+
+        negativeCache.put(LOCATION, NOT_FOUND);
+        Thread.sleep(150);
+
+        assertNull(negativeCache.get(LOCATION));
+        assertThat(negativeCache.size()).isZero();
+    }
+
+    @Test
+    @DisplayName("removes the oldest failure when full")
+    void shouldRemoveOldestFailureWhenFull() {
+        NegativeCache negativeCache = new NegativeCache(2, Duration.ofSeconds(60));
+
+        negativeCache.put("first", NOT_FOUND);
+        negativeCache.put("second", NOT_FOUND);
+        negativeCache.put("third", NOT_FOUND);
+
+        assertAll(
+                () -> assertNull(negativeCache.get("first")),
+                () -> assertThat(negativeCache.get("third")).isNotNull(),
+                () -> assertThat(negativeCache.size()).isEqualTo(2)
+        );
+    }
+
+    @Test
+    @DisplayName("stores nothing when its size is zero")
+    void shouldStoreNothingWhenDisabled() {
+        NegativeCache negativeCache = new NegativeCache(0, Duration.ofSeconds(60));
+
+        negativeCache.put(LOCATION, NOT_FOUND);
+
+        assertNull(negativeCache.get(LOCATION));
+    }
+}
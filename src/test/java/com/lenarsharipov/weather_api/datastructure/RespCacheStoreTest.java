@@ -0,0 +1,121 @@
+package com.lenarsharipov.weather_api.datastructure;
+
+import com.lenarsharipov.weather_api.model.WeatherResponse;
+import com.lenarsharipov.weather_api.util.RespServerStub;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.lenarsharipov.weather_api.util.TestObjectUtils.WEATHER_RESPONSE;
+import static com.lenarsharipov.weather_api.util.TestObjectUtils.createWeatherResponse;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("RESP Cache Store")
+class RespCacheStoreTest {
+
+    private RespServerStub server;
+    private static final FetchedWeather FETCHED = new FetchedWeather(WEATHER_RESPONSE, 1_740_146_200_000L);
+
+    private RespCacheStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new RespServerStub();
+        store = new RespCacheStore("127.0.0.1", server.port());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        store.close();
+        server.close();
+    }
+
+    @Test
+    @DisplayName("reads back the entries it wrote")
+    void shouldReadBackWrittenEntries() throws IOException {
+        FetchedWeather moscow = new FetchedWeather(createWeatherResponse(1740146111), 1_740_146_300_000L);
+
+        store.putAll(Map.of("SAINT PETERSBURG", FETCHED, "MOSCOW", moscow));
+        Map<String, FetchedWeather> found = store.getAll(List.of("SAINT PETERSBURG", "MOSCOW", "PARIS"));
+
+        assertThat(found).containsOnly(Map.entry("SAINT PETERSBURG", FETCHED), Map.entry("MOSCOW", moscow));
+        assertThat(store.get("PARIS")).isNull();
+    }
+
+    @Test
+    @DisplayName("reads a batch with one MGET and writes it with pipelined SETs under prefixed keys")
+    void shouldSendBatches() throws IOException {
+        RespCacheStore expiringStore = new RespCacheStore("127.0.0.1", server.port(),
+                Duration.ofSeconds(1), Duration.ofMinutes(10), "test:");
+        Map<String, FetchedWeather> entries = new LinkedHashMap<>();
+        entries.put("LONDON", FETCHED);
+        entries.put("PARIS", FETCHED);
+
+        expiringStore.putAll(entries);
+        expiringStore.getAll(List.of("LONDON", "PARIS", "LONDON"));
+        expiringStore.close();
+
+        List<List<String>> commands = server.commands();
+        assertThat(commands).hasSize(3);
+        assertThat(commands.get(0)).startsWith("SET", "test:LONDON").endsWith("PX", "600000");
+        assertThat(commands.get(1)).startsWith("SET", "test:PARIS");
+        assertThat(commands.get(2)).containsExactly("MGET", "test:LONDON", "test:PARIS");
+    }
+
+    @Test
+    @DisplayName("treats values in another format as missing")
+    void shouldIgnoreForeignValues() throws IOException {
+        server.set(RespCacheStore.DEFAULT_KEY_PREFIX + "LONDON", "not weather".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(store.getAll(List.of("LONDON"))).isEmpty();
+    }
+
+    @Test
+    @DisplayName("reports an error reply and keeps the connection usable")
+    void shouldReportErrorReply() throws IOException {
+        store.put("LONDON", FETCHED);
+        server.setReadOnly(true);
+
+        IOException exception = assertThrows(IOException.class,
+                () -> store.putAll(Map.of("PARIS", FETCHED, "MOSCOW", FETCHED)));
+
+        assertThat(exception).hasMessageContaining("READONLY");
+        assertThat(store.get("LONDON")).isEqualTo(FETCHED);
+        assertThat(server.commands()).hasSize(4);
+    }
+
+    @Test
+    @DisplayName("reconnects after the store drops the connection")
+    void shouldReconnectAfterDroppedConnection() throws IOException {
+        store.put("LONDON", FETCHED);
+
+        server.dropConnections();
+
+        assertThrows(IOException.class, () -> store.get("LONDON"));
+        assertThat(store.get("LONDON")).isEqualTo(FETCHED);
+    }
+
+    @Test
+    @DisplayName("fails with an IOException when the store cannot be reached")
+    void shouldFailWhenStoreIsUnreachable() throws IOException {
+        int port;
+        try (ServerSocket closedSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port = closedSocket.getLocalPort();
+        }
+        RespCacheStore unreachable = new RespCacheStore("127.0.0.1", port,
+                Duration.ofMillis(200), Duration.ZERO, RespCacheStore.DEFAULT_KEY_PREFIX);
+
+        assertThrows(IOException.class, () -> unreachable.get("LONDON"));
+    }
+}
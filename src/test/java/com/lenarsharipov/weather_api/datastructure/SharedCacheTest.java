@@ -0,0 +1,68 @@
+package com.lenarsharipov.weather_api.datastructure;
+
+import com.lenarsharipov.weather_api.model.LocationKey;
+import com.lenarsharipov.weather_api.model.WeatherResponse;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static com.lenarsharipov.weather_api.util.TestObjectUtils.createWeatherResponse;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("Shared Cache")
+class SharedCacheTest {
+
+    @Test
+    @DisplayName("returns data stored under any spelling of the canonical location")
+    void shouldReturnDataByCanonicalLocation() {
+        SharedCache sharedCache = new SharedCache(10_000L);
+        WeatherResponse response = createWeatherResponse(100);
+
+        sharedCache.put(LocationKey.of("London"), response);
+
+        assertThat(sharedCache.get(LocationKey.of(" LONDON "))).isEqualTo(response);
+        assertThat(sharedCache.get(LocationKey.of("Paris"))).isNull();
+    }
+
+    @Test
+    @DisplayName("keeps the newest observation of a location")
+    void shouldKeepNewestObservation() {
+        SharedCache sharedCache = new SharedCache(10_000L);
+        WeatherResponse newer = createWeatherResponse(200);
+
+        sharedCache.put(LocationKey.of("London"), newer);
+        sharedCache.put(LocationKey.of("London"), createWeatherResponse(100));
+
+        assertThat(sharedCache.get(LocationKey.of("London"))).isEqualTo(newer);
+        assertThat(sharedCache.size()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("removes the least recently used entries when the memory budget is exceeded")
+    void shouldStayWithinMemoryBudget() {
+        WeatherResponse response = createWeatherResponse(100);
+        long entryBytes = SharedCache.sizeOf("LONDON", response);
+        SharedCache sharedCache = new SharedCache(2 * entryBytes);
+
+        sharedCache.put(LocationKey.of("London"), response);
+        sharedCache.put(LocationKey.of("Moscow"), response);
+        sharedCache.get(LocationKey.of("London"));
+        sharedCache.put(LocationKey.of("Paris"), response);
+
+        assertThat(sharedCache.usedBytes()).isLessThanOrEqualTo(2 * entryBytes);
+        assertThat(sharedCache.get(LocationKey.of("London"))).isEqualTo(response);
+        assertThat(sharedCache.get(LocationKey.of("Moscow"))).isNull();
+        assertThat(sharedCache.get(LocationKey.of("Paris"))).isEqualTo(response);
+    }
+
+    @Test
+    @DisplayName("stores nothing when disabled")
+    void shouldStoreNothingWhenDisabled() {
+        SharedCache sharedCache = new SharedCache(0L);
+
+        sharedCache.put(LocationKey.of("London"), createWeatherResponse(100));
+
+        assertThat(sharedCache.isEnabled()).isFalse();
+        assertThat(sharedCache.get(LocationKey.of("London"))).isNull();
+        assertThat(sharedCache.usedBytes()).isZero();
+    }
+}
@@ -0,0 +1,117 @@
+package com.lenarsharipov.weather_api.datastructure;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("Timer Wheel")
+class TimerWheelTest {
+
+    private static final long START = 1_000_000_000L;
+
+    private final TimerWheel timerWheel = new TimerWheel(START);
+    private final List<TimerWheel.Node> expired = new ArrayList<>();
+
+    @Test
+    @DisplayName("expires a node once its deadline has passed")
+    void shouldExpireNodeAfterDeadline() {
+        TestNode node = new TestNode(START + 5_000);
+        timerWheel.schedule(node);
+
+        timerWheel.advance(START + 3_000, expired::add);
+        assertThat(expired).isEmpty();
+
+        timerWheel.advance(START + 7_000, expired::add);
+        assertThat(expired).containsExactly(node);
+    }
+
+    @Test
+    @DisplayName("expires nodes from every level in deadline order of their buckets")
+    void shouldExpireNodesFromAllLevels() {
+        TestNode second = new TestNode(START + 2_000);
+        TestNode minutes = new TestNode(START + 5 * 60_000);
+        TestNode hours = new TestNode(START + 3 * 3_600_000);
+        TestNode days = new TestNode(START + 2 * 86_400_000);
+        List.of(days, hours, minutes, second).forEach(timerWheel::schedule);
+
+        List<Long> expiredAt = new ArrayList<>();
+        for (long now = START; now <= START + 3 * 86_400_000L; now += 30_000) {
+            long time = now;
+            timerWheel.advance(now, node -> {
+                expired.add(node);
+                expiredAt.add(time);
+                assertThat(node.deadlineMillis()).isLessThanOrEqualTo(time);
+            });
+        }
+
+        assertThat(expired).containsExactly(second, minutes, hours, days);
+        assertThat(expiredAt.get(3) - days.deadlineMillis()).isLessThan(60_000);
+    }
+
+    @Test
+    @DisplayName("does not expire a descheduled node")
+    void shouldNotExpireDescheduledNode() {
+        TestNode node = new TestNode(START + 2_000);
+        timerWheel.schedule(node);
+
+        timerWheel.deschedule(node);
+        timerWheel.deschedule(node);
+        timerWheel.advance(START + 10_000, expired::add);
+
+        assertThat(expired).isEmpty();
+    }
+
+    @Test
+    @DisplayName("moves a node whose deadline was extended instead of expiring it")
+    void shouldRescheduleNodeWithLaterDeadline() {
+        TestNode node = new TestNode(START + 2_000);
+        timerWheel.schedule(node);
+
+        node.deadlineMillis = START + 120_000;
+        timerWheel.advance(START + 10_000, expired::add);
+        assertThat(expired).isEmpty();
+
+        timerWheel.advance(START + 125_000, expired::add);
+        assertThat(expired).containsExactly(node);
+    }
+
+    @Test
+    @DisplayName("expires a node scheduled with a past deadline at the next advance")
+    void shouldExpireOverdueNode() {
+        TestNode node = new TestNode(START - 60_000);
+        timerWheel.schedule(node);
+
+        timerWheel.advance(START + 2_000, expired::add);
+
+        assertThat(expired).containsExactly(node);
+    }
+
+    @Test
+    @DisplayName("removes every node on clear")
+    void shouldClearAllNodes() {
+        timerWheel.schedule(new TestNode(START + 2_000));
+        timerWheel.schedule(new TestNode(START + 3_600_000));
+
+        timerWheel.clear();
+        timerWheel.advance(START + 86_400_000, expired::add);
+
+        assertThat(expired).isEmpty();
+    }
+
+    private static final class TestNode extends TimerWheel.Node {
+        private long deadlineMillis;
+
+        TestNode(long deadlineMillis) {
+            this.deadlineMillis = deadlineMillis;
+        }
+
+        @Override
+        long deadlineMillis() {
+            return deadlineMillis;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.lenarsharipov.weather_api.datastructure.eviction;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+
+@DisplayName("Eviction Policy")
+class EvictionPolicyTest {
+
+    @Nested
+    @DisplayName("LRU Tests")
+    class LruTests {
+
+        @Test
+        @DisplayName("does not evict until capacity is exceeded")
+        void shouldNotEvictUntilCapacityIsExceeded() {
+            EvictionPolicy policy = EvictionPolicyType.LRU.createPolicy(2);
+
+            assertAll(
+                    () -> assertThat(policy.recordInsertion("a")).isNull(),
+                    () -> assertThat(policy.recordInsertion("b")).isNull(),
+                    () -> assertThat(policy.recordInsertion("c")).isEqualTo("a")
+            );
+        }
+
+        @Test
+        @DisplayName("evicts the least recently accessed key")
+        void shouldEvictLeastRecentlyAccessedKey() {
+            EvictionPolicy policy = EvictionPolicyType.LRU.createPolicy(2);
+            policy.recordInsertion("a");
+            policy.recordInsertion("b");
+            policy.recordAccess("a");
+
+            assertThat(policy.recordInsertion("c")).isEqualTo("b");
+        }
+
+        @Test
+        @DisplayName("forgets removed keys")
+        void shouldForgetRemovedKeys() {
+            EvictionPolicy policy = EvictionPolicyType.LRU.createPolicy(2);
+            policy.recordInsertion("a");
+            policy.recordInsertion("b");
+            policy.recordRemoval("a");
+
+            assertThat(policy.recordInsertion("c")).isNull();
+        }
+    }
+
+    @Nested
+    @DisplayName("W-TinyLFU Tests")
+    class WTinyLfuTests {
+
+        @Test
+        @DisplayName("never tracks more keys than its capacity")
+        void shouldNeverTrackMoreKeysThanCapacity() {
+            EvictionPolicy policy = EvictionPolicyType.W_TINY_LFU.createPolicy(100);
+            int tracked = 0;
+            for (int i = 0; i < 1_000; i++) {
+                tracked++;
+                if (policy.recordInsertion("key" + i) != null) {
+                    tracked--;
+                }
+                assertThat(tracked).isLessThanOrEqualTo(100);
+            }
+        }
+
+        @Test
+        @DisplayName("keeps a frequent key during a scan of one-off keys")
+        void shouldKeepFrequentKeyDuringScan() {
+            EvictionPolicy policy = EvictionPolicyType.W_TINY_LFU.createPolicy(100);
+            for (int i = 0; i < 100; i++) {
+                policy.recordInsertion("key" + i);
+            }
+            for (int i = 0; i < 10; i++) {
+                policy.recordAccess("key0");
+            }
+
+            for (int i = 100; i < 10_000; i++) {
+                assertThat(policy.recordInsertion("key" + i)).isNotEqualTo("key0");
+            }
+        }
+
+        @Test
+        @DisplayName("admits a candidate that is used more often than the victim")
+        void shouldAdmitCandidateUsedMoreOftenThanVictim() {
+            EvictionPolicy policy = EvictionPolicyType.W_TINY_LFU.createPolicy(3);
+            policy.recordInsertion("a");
+            policy.recordInsertion("b");
+            policy.recordInsertion("c");
+            for (int i = 0; i < 5; i++) {
+                policy.recordAccess("c");
+            }
+
+            assertThat(policy.recordInsertion("d")).isEqualTo("a");
+        }
+    }
+
+    @Nested
+    @DisplayName("Frequency Sketch Tests")
+    class FrequencySketchTests {
+
+        @Test
+        @DisplayName("estimates frequency and halves it over time")
+        void shouldEstimateFrequencyAndAge() {
+            FrequencySketch sketch = new FrequencySketch(16);
+            for (int i = 0; i < 8; i++) {
+                sketch.increment("key");
+            }
+            assertThat(sketch.frequency("key")).isEqualTo(8);
+
+            for (int i = 0; i < 1_000; i++) {
+                sketch.increment("other");
+            }
+            assertThat(sketch.frequency("key")).isLessThan(8);
+        }
+    }
+}
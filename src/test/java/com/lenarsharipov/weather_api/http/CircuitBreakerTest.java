@@ -0,0 +1,94 @@
+package com.lenarsharipov.weather_api.http;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DisplayName("Circuit Breaker")
+class CircuitBreakerTest {
+
+    private static final long OPEN_NANOS = Duration.ofSeconds(10).toNanos();
+
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker(3, Duration.ofSeconds(10));
+
+    @Test
+    @DisplayName("opens after consecutive failures only")
+    void shouldOpenAfterConsecutiveFailures() {
+        circuitBreaker.onFailure(0);
+        circuitBreaker.onFailure(0);
+        circuitBreaker.onSuccess();
+        circuitBreaker.onFailure(0);
+        circuitBreaker.onFailure(0);
+
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+
+        circuitBreaker.onFailure(0);
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.tryAcquire(OPEN_NANOS - 1));
+    }
+
+    @Test
+    @DisplayName("lets one probe through after the open duration")
+    void shouldLetOneProbeThrough() {
+        openCircuit();
+
+        assertTrue(circuitBreaker.tryAcquire(OPEN_NANOS));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.tryAcquire(OPEN_NANOS));
+
+        circuitBreaker.onSuccess();
+
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertTrue(circuitBreaker.tryAcquire(OPEN_NANOS));
+    }
+
+    @Test
+    @DisplayName("opens again when the probe fails")
+    void shouldOpenAgainWhenProbeFails() {
+        openCircuit();
+        circuitBreaker.tryAcquire(OPEN_NANOS);
+
+        circuitBreaker.onFailure(OPEN_NANOS);
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.tryAcquire(2 * OPEN_NANOS - 1));
+        assertTrue(circuitBreaker.tryAcquire(2 * OPEN_NANOS));
+    }
+
+    @Test
+    @DisplayName("lets another probe through once an unused one is given back")
+    void shouldLetAnotherProbeThroughAfterRelease() {
+        openCircuit();
+        circuitBreaker.tryAcquire(OPEN_NANOS);
+
+        circuitBreaker.release();
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        assertTrue(circuitBreaker.tryAcquire(OPEN_NANOS));
+        assertFalse(circuitBreaker.tryAcquire(OPEN_NANOS));
+    }
+
+    @Test
+    @DisplayName("never opens when disabled")
+    void shouldNeverOpenWhenDisabled() {
+        CircuitBreaker disabled = new CircuitBreaker(0, Duration.ofSeconds(10));
+        for (int i = 0; i < 100; i++) {
+            disabled.onFailure(0);
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, disabled.getState());
+        assertTrue(disabled.tryAcquire(0));
+    }
+
+    private void openCircuit() {
+        for (int i = 0; i < 3; i++) {
+            circuitBreaker.onFailure(0);
+        }
+    }
+}
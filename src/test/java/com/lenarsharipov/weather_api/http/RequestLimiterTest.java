@@ -0,0 +1,103 @@
+package com.lenarsharipov.weather_api.http;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DisplayName("Request Limiter")
+class RequestLimiterTest {
+
+    @Test
+    @DisplayName("queues requests over the limit and hands slots over in order")
+    void shouldHandSlotsOverInOrder() {
+        RequestLimiter limiter = new RequestLimiter(2);
+
+        CompletableFuture<Void> first = limiter.acquireAsync();
+        CompletableFuture<Void> second = limiter.acquireAsync();
+        CompletableFuture<Void> third = limiter.acquireAsync();
+        CompletableFuture<Void> fourth = limiter.acquireAsync();
+
+        assertTrue(first.isDone() && second.isDone());
+        assertFalse(third.isDone() || fourth.isDone());
+        assertEquals(2, limiter.waiting());
+
+        limiter.release();
+
+        assertTrue(third.isDone());
+        assertFalse(fourth.isDone());
+        assertEquals(2, limiter.inFlight());
+
+        limiter.release();
+        limiter.release();
+        limiter.release();
+
+        assertTrue(fourth.isDone());
+        assertEquals(0, limiter.inFlight());
+        assertEquals(0, limiter.waiting());
+    }
+
+    @Test
+    @DisplayName("blocks a synchronous caller until a slot is released")
+    void shouldBlockUntilSlotIsReleased() throws Exception {
+        RequestLimiter limiter = new RequestLimiter(1);
+        limiter.acquire();
+        CountDownLatch acquired = new CountDownLatch(1);
+
+        Thread waiter = Thread.ofVirtual().start(() -> {
+            try {
+                limiter.acquire();
+                acquired.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+        limiter.release();
+        assertTrue(acquired.await(1, TimeUnit.SECONDS));
+        waiter.join();
+        assertEquals(1, limiter.inFlight());
+    }
+
+    @Test
+    @DisplayName("does not lose a slot when a waiting caller is interrupted")
+    void shouldNotLoseSlotWhenWaiterIsInterrupted() throws Exception {
+        RequestLimiter limiter = new RequestLimiter(1);
+        limiter.acquire();
+
+        Thread waiter = Thread.ofVirtual().start(() -> {
+            try {
+                limiter.acquire();
+            } catch (InterruptedException ignored) {
+                // expected
+            }
+        });
+        while (limiter.waiting() == 0) {
+            Thread.onSpinWait();
+        }
+        waiter.interrupt();
+        waiter.join();
+        limiter.release();
+
+        assertEquals(0, limiter.inFlight());
+        assertTrue(limiter.acquireAsync().isDone());
+    }
+
+    @Test
+    @DisplayName("never waits when there is no limit")
+    void shouldNeverWaitWithoutLimit() {
+        RequestLimiter limiter = new RequestLimiter(0);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.acquireAsync().isDone());
+        }
+        assertEquals(0, limiter.inFlight());
+    }
+}
@@ -0,0 +1,60 @@
+package com.lenarsharipov.weather_api.http;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DisplayName("Token Bucket")
+class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    @DisplayName("allows a burst and then spaces requests by the rate")
+    void shouldAllowBurstThenSpaceRequests() {
+        TokenBucket bucket = new TokenBucket(60, 2, 0);
+
+        assertEquals(0, bucket.reserve(0, 10 * SECOND));
+        assertEquals(0, bucket.reserve(0, 10 * SECOND));
+        assertEquals(SECOND, bucket.reserve(0, 10 * SECOND));
+        assertEquals(2 * SECOND, bucket.reserve(0, 10 * SECOND));
+    }
+
+    @Test
+    @DisplayName("refuses a request that would wait longer than allowed without reserving it")
+    void shouldRefuseRequestBeyondMaxWait() {
+        TokenBucket bucket = new TokenBucket(60, 1, 0);
+        bucket.reserve(0, 0);
+
+        assertEquals(-1, bucket.reserve(0, SECOND / 2));
+        assertEquals(SECOND, bucket.reserve(0, SECOND));
+    }
+
+    @Test
+    @DisplayName("refills over time up to the burst size")
+    void shouldRefillUpToBurst() {
+        TokenBucket bucket = new TokenBucket(60, 2, 0);
+        bucket.reserve(0, 0);
+        bucket.reserve(0, 0);
+
+        long now = 10 * SECOND;
+
+        assertEquals(0, bucket.reserve(now, 0));
+        assertEquals(0, bucket.reserve(now, 0));
+        assertEquals(-1, bucket.reserve(now, 0));
+    }
+
+    @Test
+    @DisplayName("holds requests while paused, even without a rate limit")
+    void shouldHoldRequestsWhilePaused() {
+        TokenBucket bucket = new TokenBucket(0, 1, 0);
+        bucket.pause(0, 3 * SECOND);
+
+        assertEquals(2 * SECOND, bucket.reserve(SECOND, 10 * SECOND));
+        assertEquals(-1, bucket.reserve(SECOND, SECOND));
+        assertEquals(0, bucket.reserve(4 * SECOND, 0));
+    }
+}
@@ -4,17 +4,30 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.tomakehurst.wiremock.WireMockServer;
 import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
 import com.github.tomakehurst.wiremock.http.Fault;
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
+import com.lenarsharipov.weather_api.exception.CircuitBreakerOpenException;
 import com.lenarsharipov.weather_api.exception.HttpException;
 import com.lenarsharipov.weather_api.model.*;
+import com.lenarsharipov.weather_api.settings.Settings;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.net.http.HttpClient;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.stubbing.Scenario.STARTED;
 import static com.lenarsharipov.weather_api.util.TestObjectUtils.JSON_WEATHER_RESPONSE;
 import static com.lenarsharipov.weather_api.util.TestObjectUtils.WEATHER_RESPONSE;
 import static org.junit.jupiter.api.Assertions.*;
@@ -71,6 +84,378 @@ class WeatherHttpClientTest {
         Assertions.assertThat(actualResponse).isEqualTo(weatherResponse);
     }
 
+    @Test
+    @DisplayName("records round trip and decode latency")
+    void shouldRecordRoundTripAndDecodeLatency() throws Exception {
+        wireMockServer.stubFor(get(urlMatching("/data/2.5/weather.*"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(jsonResponse)
+                        .withStatus(200)));
+
+        weatherHttpClient.getWeather(location, apiKey);
+        weatherHttpClient.getWeatherAsync(location, apiKey).join();
+
+        assertEquals(2, weatherHttpClient.getRoundTripLatency().count());
+        assertEquals(2, weatherHttpClient.getDecodeLatency().count());
+        assertTrue(weatherHttpClient.getRoundTripLatency().max().toNanos() > 0);
+    }
+
+    @Test
+    @DisplayName("spaces requests by the rate limit")
+    void shouldSpaceRequestsByRateLimit() throws Exception {
+        WeatherHttpClient limitedClient = rateLimitedClient(600, Duration.ofSeconds(5));
+        wireMockServer.stubFor(get(urlMatching("/data/2.5/weather.*"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(jsonResponse)
+                        .withStatus(200)));
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            limitedClient.getWeather(location, apiKey);
+        }
+        limitedClient.getWeatherAsync(location, apiKey).join();
+
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() >= 290);
+        wireMockServer.verify(4, getRequestedFor(urlMatching("/data/2.5/weather.*")));
+    }
+
+    @Test
+    @DisplayName("fails without a request when the rate limit does not allow one in time")
+    void shouldFailWithoutRequestWhenRateLimitIsExhausted() throws Exception {
+        WeatherHttpClient limitedClient = rateLimitedClient(1, Duration.ZERO);
+        wireMockServer.stubFor(get(urlMatching("/data/2.5/weather.*"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(jsonResponse)
+                        .withStatus(200)));
+        limitedClient.getWeather(location, apiKey);
+
+        HttpException exception = assertThrows(HttpException.class,
+                () -> limitedClient.getWeather(location, apiKey));
+        CompletionException asyncException = assertThrows(CompletionException.class,
+                () -> limitedClient.getWeatherAsync(location, apiKey).join());
+
+        assertEquals(429, exception.getStatusCode());
+        Assertions.assertThat(asyncException.getCause()).isInstanceOf(HttpException.class);
+        wireMockServer.verify(1, getRequestedFor(urlMatching("/data/2.5/weather.*")));
+    }
+
+    @Test
+    @DisplayName("waits for Retry-After after a 429 response")
+    void shouldWaitForRetryAfter() throws Exception {
+        wireMockServer.stubFor(get(urlMatching("/data/2.5/weather.*"))
+                .inScenario("quota")
+                .whenScenarioStateIs(STARTED)
+                .willReturn(aResponse()
+                        .withHeader("Retry-After", "1")
+                        .withBody("{\"cod\":429}")
+                        .withStatus(429))
+                .willSetStateTo("recovered"));
+        wireMockServer.stubFor(get(urlMatching("/data/2.5/weather.*"))
+                .inScenario("quota")
+                .whenScenarioStateIs("recovered")
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(jsonResponse)
+                        .withStatus(200)));
+
+        HttpException exception = assertThrows(HttpException.class,
+                () -> weatherHttpClient.getWeather(location, apiKey));
+        long start = System.nanoTime();
+        WeatherResponse actualResponse = weatherHttpClient.getWeather(location, apiKey);
+
+        assertEquals(429, exception.getStatusCode());
+        assertEquals(weatherResponse, actualResponse);
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() >= 900);
+    }
+
+    @Test
+    @DisplayName("parses Retry-After given in seconds or as an HTTP date")
+    void shouldParseRetryAfter() {
+        String inTenSeconds = DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(10));
+
+        assertEquals(Optional.of(Duration.ofSeconds(120)), WeatherHttpClient.parseRetryAfter(Optional.of("120")));
+        Assertions.assertThat(WeatherHttpClient.parseRetryAfter(Optional.of(inTenSeconds)).orElseThrow())
+                .isBetween(Duration.ofSeconds(8), Duration.ofSeconds(10));
+        assertEquals(Optional.empty(), WeatherHttpClient.parseRetryAfter(Optional.of("soon")));
+        assertEquals(Optional.empty(), WeatherHttpClient.parseRetryAfter(Optional.empty()));
+    }
+
+    @Test
+    @DisplayName("retries a server error and returns the next successful response")
+    void shouldRetryServerError() throws Exception {
+        stubFailuresThenSuccess(2, aResponse().withStatus(503).withBody("unavailable"));
+
+        WeatherResponse actualResponse = retryingClient(3).getWeather(location, apiKey);
+
+        assertEquals(weatherResponse, actualResponse);
+        wireMockServer.verify(3, getRequestedFor(urlMatching("/data/2.5/weather.*")));
+    }
+
+    @Test
+    @DisplayName("retries a network error of an async request")
+    void shouldRetryNetworkErrorAsync() {
+        stubFailuresThenSuccess(1, aResponse().withFault(Fault.CONNECTION_RESET_BY_PEER));
+
+        WeatherResponse actualResponse = retryingClient(2).getWeatherAsync(location, apiKey).join();
+
+        assertEquals(weatherResponse, actualResponse);
+        wireMockServer.verify(2, getRequestedFor(urlMatching("/data/2.5/weather.*")));
+    }
+
+    @Test
+    @DisplayName("gives up after the last attempt")
+    void shouldGiveUpAfterLastAttempt() {
+        wireMockServer.stubFor(get(urlMatching("/data/2.5/weather.*"))
+                .willReturn(aResponse().withStatus(502).withBody("bad gateway")));
+
+        HttpException exception = assertThrows(HttpException.class,
+                () -> retryingClient(3).getWeather(location, apiKey));
+
+        assertEquals(502, exception.getStatusCode());
+        wireMockServer.verify(3, getRequestedFor(urlMatching("/data/2.5/weather.*")));
+    }
+
+    @Test
+    @DisplayName("does not retry a client error")
+    void shouldNotRetryClientError() {
+        wireMockServer.stubFor(get(urlMatching("/data/2.5/weather.*"))
+                .willReturn(aResponse().withStatus(404).withBody("{\"cod\":\"404\"}")));
+
+        assertThrows(HttpException.class, () -> retryingClient(3).getWeather(location, apiKey));
+
+        wireMockServer.verify(1, getRequestedFor(urlMatching("/data/2.5/weather.*")));
+    }
+
+    @Test
+    @DisplayName("fails fast while the circuit breaker is open and closes after a successful probe")
+    void shouldFailFastWhileCircuitBreakerIsOpen() throws Exception {
+        WeatherHttpClient guardedClient = clientWith(Settings.builder()
+                .circuitBreaker(Settings.CircuitBreaker.builder()
+                        .failureThreshold(2)
+                        .openDuration(Duration.ofMillis(200))
+                        .build())
+                .build());
+        stubFailuresThenSuccess(2, aResponse().withStatus(500).withBody("error"));
+        assertThrows(HttpException.class, () -> guardedClient.getWeather(location, apiKey));
+        assertThrows(HttpException.class, () -> guardedClient.getWeather(location, apiKey));
+
+        assertEquals(CircuitBreaker.State.OPEN, guardedClient.getCircuitBreakerState());
+        assertThrows(CircuitBreakerOpenException.class, () -> guardedClient.getWeather(location, apiKey));
+        CompletionException asyncException = assertThrows(CompletionException.class,
+                () -> guardedClient.getWeatherAsync(location, apiKey).join());
+        Assertions.assertThat(asyncException.getCause()).isInstanceOf(CircuitBreakerOpenException.class);
+        wireMockServer.verify(2, getRequestedFor(urlMatching("/data/2.5/weather.*")));
+
+        Thread.sleep(250);
+        WeatherResponse actualResponse = guardedClient.getWeather(location, apiKey);
+
+        assertEquals(weatherResponse, actualResponse);
+        assertEquals(CircuitBreaker.State.CLOSED, guardedClient.getCircuitBreakerState());
+    }
+
+    @Test
+    @DisplayName("gives the half-open probe back when the rate limit stops its request")
+    void shouldReleaseProbeWhenRateLimitStopsRequest() throws Exception {
+        WeatherHttpClient guardedClient = clientWith(Settings.builder()
+                .rateLimit(Settings.RateLimit.builder()
+                        .requestsPerMinute(1)
+                        .burst(1)
+                        .maxWait(Duration.ZERO)
+                        .build())
+                .circuitBreaker(Settings.CircuitBreaker.builder()
+                        .failureThreshold(1)
+                        .openDuration(Duration.ofMillis(100))
+                        .build())
+                .build());
+        stubFailuresThenSuccess(1, aResponse().withStatus(500).withBody("error"));
+        assertThrows(HttpException.class, () -> guardedClient.getWeather(location, apiKey));
+        Thread.sleep(150);
+
+        for (int i = 0; i < 2; i++) {
+            CompletionException asyncException = assertThrows(CompletionException.class,
+                    () -> guardedClient.getWeatherAsync(location, apiKey).join());
+            Assertions.assertThat(asyncException.getCause())
+                    .isInstanceOf(HttpException.class)
+                    .isNotInstanceOf(CircuitBreakerOpenException.class);
+        }
+        assertEquals(CircuitBreaker.State.HALF_OPEN, guardedClient.getCircuitBreakerState());
+        wireMockServer.verify(1, getRequestedFor(urlMatching("/data/2.5/weather.*")));
+    }
+
+    @Test
+    @DisplayName("does not use up the rate limit while the circuit breaker is open")
+    void shouldCheckCircuitBeforeRateLimit() throws Exception {
+        WeatherHttpClient guardedClient = clientWith(Settings.builder()
+                .rateLimit(Settings.RateLimit.builder()
+                        .requestsPerMinute(1)
+                        .burst(2)
+                        .maxWait(Duration.ZERO)
+                        .build())
+                .circuitBreaker(Settings.CircuitBreaker.builder()
+                        .failureThreshold(1)
+                        .openDuration(Duration.ofMillis(100))
+                        .build())
+                .build());
+        stubFailuresThenSuccess(1, aResponse().withStatus(500).withBody("error"));
+        assertThrows(HttpException.class, () -> guardedClient.getWeather(location, apiKey));
+        assertThrows(CircuitBreakerOpenException.class, () -> guardedClient.getWeather(location, apiKey));
+        Thread.sleep(150);
+
+        WeatherResponse response = guardedClient.getWeather(location, apiKey);
+
+        assertEquals(weatherResponse, response);
+        assertEquals(CircuitBreaker.State.CLOSED, guardedClient.getCircuitBreakerState());
+    }
+
+    @Test
+    @DisplayName("stops at once, without a retry or a breaker failure, when the caller is interrupted")
+    void shouldStopWithoutRetryWhenInterrupted() throws Exception {
+        wireMockServer.stubFor(get(urlMatching("/data/2.5/weather.*"))
+                .willReturn(aResponse()
+                        .withBody(jsonResponse)
+                        .withFixedDelay(2000)
+                        .withStatus(200)));
+        WeatherHttpClient guardedClient = clientWith(Settings.builder()
+                .retry(Settings.Retry.builder()
+                        .maxAttempts(3)
+                        .initialBackoff(Duration.ofMillis(10))
+                        .build())
+                .circuitBreaker(Settings.CircuitBreaker.builder()
+                        .failureThreshold(1)
+                        .build())
+                .build());
+        CompletableFuture<Boolean> interruptedAfterFailure = new CompletableFuture<>();
+        Thread caller = Thread.ofPlatform().start(() -> {
+            try {
+                guardedClient.getWeather(location, apiKey);
+                interruptedAfterFailure.complete(false);
+            } catch (HttpException e) {
+                interruptedAfterFailure.complete(Thread.currentThread().isInterrupted());
+            }
+        });
+        Thread.sleep(200);
+
+        caller.interrupt();
+
+        assertTrue(interruptedAfterFailure.get(1, TimeUnit.SECONDS));
+        assertEquals(CircuitBreaker.State.CLOSED, guardedClient.getCircuitBreakerState());
+        wireMockServer.verify(1, getRequestedFor(urlMatching("/data/2.5/weather.*")));
+    }
+
+    @Test
+    @DisplayName("fails a request that gets no response within the request timeout")
+    void shouldFailOnRequestTimeout() {
+        wireMockServer.stubFor(get(urlMatching("/data/2.5/weather.*"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(jsonResponse)
+                        .withFixedDelay(1000)
+                        .withStatus(200)));
+        WeatherHttpClient timeoutClient = clientWith(Settings.builder()
+                .http(Settings.Http.builder()
+                        .requestTimeout(Duration.ofMillis(100))
+                        .build())
+                .build());
+
+        HttpException exception = assertThrows(HttpException.class,
+                () -> timeoutClient.getWeather(location, apiKey));
+        CompletionException asyncException = assertThrows(CompletionException.class,
+                () -> timeoutClient.getWeatherAsync(location, apiKey).join());
+
+        assertEquals(0, exception.getStatusCode());
+        Assertions.assertThat(asyncException.getCause()).isInstanceOf(HttpException.class);
+    }
+
+    @Test
+    @DisplayName("sends no more than the maximum number of concurrent requests")
+    void shouldLimitConcurrentRequests() {
+        wireMockServer.stubFor(get(urlMatching("/data/2.5/weather.*"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(jsonResponse)
+                        .withFixedDelay(200)
+                        .withStatus(200)));
+        WeatherHttpClient limitedClient = clientWith(Settings.builder()
+                .http(Settings.Http.builder()
+                        .maxConcurrentRequests(1)
+                        .build())
+                .build());
+
+        long startNanos = System.nanoTime();
+        CompletableFuture<WeatherResponse> first = limitedClient.getWeatherAsync(location, apiKey);
+        CompletableFuture<WeatherResponse> second = limitedClient.getWeatherAsync(location, apiKey);
+
+        assertEquals(weatherResponse, first.join());
+        assertEquals(weatherResponse, second.join());
+        Assertions.assertThat(Duration.ofNanos(System.nanoTime() - startNanos))
+                .isGreaterThanOrEqualTo(Duration.ofMillis(400));
+    }
+
+    @Test
+    @DisplayName("gets weather response by coordinates")
+    void shouldGetWeatherByCoordinates() throws Exception {
+        wireMockServer.stubFor(get(urlPathEqualTo("/data/2.5/weather"))
+                .withQueryParam("lat", equalTo("59.8944"))
+                .withQueryParam("lon", equalTo("-0.0001"))
+                .withQueryParam("appid", equalTo(apiKey))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(jsonResponse)
+                        .withStatus(200)));
+
+        WeatherResponse actualResponse = weatherHttpClient.getWeather(59.8944, -0.0001, apiKey);
+        WeatherResponse actualAsyncResponse = weatherHttpClient.getWeatherAsync(59.8944, -0.0001, apiKey).join();
+
+        assertEquals(weatherResponse, actualResponse);
+        assertEquals(weatherResponse, actualAsyncResponse);
+    }
+
+    @Test
+    @DisplayName("gets weather response by city id")
+    void shouldGetWeatherByCityId() throws Exception {
+        wireMockServer.stubFor(get(urlPathEqualTo("/data/2.5/weather"))
+                .withQueryParam("id", equalTo("498817"))
+                .withQueryParam("appid", equalTo(apiKey))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(jsonResponse)
+                        .withStatus(200)));
+
+        WeatherResponse actualResponse = weatherHttpClient.getWeather(LocationKey.ofCityId(498817), apiKey);
+
+        assertEquals(weatherResponse, actualResponse);
+    }
+
+    @Test
+    @DisplayName("gets weather responses of several cities with one group request")
+    void shouldGetWeatherGroup() throws Exception {
+        wireMockServer.stubFor(get(urlPathEqualTo("/data/2.5/group"))
+                .withQueryParam("id", equalTo("498817,524901"))
+                .withQueryParam("appid", equalTo(apiKey))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("{\"cnt\":2,\"list\":[" + jsonResponse + "," + jsonResponse + "]}")
+                        .withStatus(200)));
+
+        List<WeatherResponse> responses = weatherHttpClient.getWeatherGroup(List.of(498817, 524901), apiKey);
+
+        assertEquals(List.of(weatherResponse, weatherResponse), responses);
+        wireMockServer.verify(1, getRequestedFor(urlPathEqualTo("/data/2.5/group")));
+    }
+
+    @Test
+    @DisplayName("rejects a group request with too many city ids")
+    void shouldRejectOversizedGroup() {
+        List<Integer> cityIds = Collections.nCopies(WeatherHttpClient.MAX_GROUP_SIZE + 1, 498817);
+
+        assertThrows(IllegalArgumentException.class, () -> weatherHttpClient.getWeatherGroup(cityIds, apiKey));
+        wireMockServer.verify(0, getRequestedFor(urlPathEqualTo("/data/2.5/group")));
+    }
+
     @Test
     @DisplayName("gets exception on network error")
     void sendRequestShouldThrowHttpExceptionOnNetworkError() {
@@ -116,4 +501,125 @@ class WeatherHttpClientTest {
         assertEquals(500, exception.getStatusCode());
     }
 
+    @Test
+    @DisplayName("gets weather asynchronously")
+    void getWeatherAsyncSuccess() {
+        wireMockServer.stubFor(get(urlMatching("/data/2.5/weather.*"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(jsonResponse)
+                        .withStatus(200)));
+
+        WeatherResponse actualResponse = weatherHttpClient.getWeatherAsync(location, apiKey).join();
+
+        Assertions.assertThat(actualResponse).isEqualTo(weatherResponse);
+    }
+
+    @Test
+    @DisplayName("gets async exception on network error")
+    void getWeatherAsyncShouldFailWithHttpExceptionOnNetworkError() {
+        wireMockServer.stubFor(get(urlMatching("/data/2.5/weather.*"))
+                .willReturn(aResponse()
+                        .withFault(Fault.CONNECTION_RESET_BY_PEER)));
+
+        CompletionException exception = assertThrows(CompletionException.class, () ->
+                weatherHttpClient.getWeatherAsync(location, apiKey).join());
+
+        HttpException cause = assertInstanceOf(HttpException.class, exception.getCause());
+        assertEquals(0, cause.getStatusCode());
+    }
+
+    @Test
+    @DisplayName("gets async exception on error response")
+    void getWeatherAsyncShouldFailWithHttpExceptionOnErrorResponse() {
+        wireMockServer.stubFor(get(urlMatching("/data/2.5/weather.*"))
+                .willReturn(aResponse()
+                        .withStatus(404)
+                        .withBody("city not found")));
+
+        CompletionException exception = assertThrows(CompletionException.class, () ->
+                weatherHttpClient.getWeatherAsync(location, apiKey).join());
+
+        HttpException cause = assertInstanceOf(HttpException.class, exception.getCause());
+        assertEquals("API error: city not found", cause.getMessage());
+        assertEquals(404, cause.getStatusCode());
+    }
+
+    @Test
+    @DisplayName("leaves a supplied HTTP client open on close")
+    void closeShouldNotShutDownSuppliedHttpClient() {
+        HttpClient httpClient = HttpClient.newHttpClient();
+        WeatherHttpClient client = new WeatherHttpClient(
+                httpClient,
+                objectMapper,
+                wireMockServer.baseUrl() + "/data/2.5/weather");
+
+        client.close();
+
+        assertFalse(httpClient.isTerminated());
+        httpClient.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("shuts down its own HTTP client on close")
+    void closeShouldShutDownOwnHttpClient() {
+        wireMockServer.stubFor(get(urlMatching("/data/2.5/weather.*"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(jsonResponse)));
+        WeatherHttpClient client = clientWith(Settings.builder()
+                .http(Settings.Http.builder()
+                        .virtualThreads(true)
+                        .build())
+                .build());
+
+        client.close();
+
+        assertThrows(HttpException.class, () -> client.getWeather(location, apiKey));
+    }
+
+    private WeatherHttpClient rateLimitedClient(int requestsPerMinute, Duration maxWait) {
+        return clientWith(Settings.builder()
+                .rateLimit(Settings.RateLimit.builder()
+                        .requestsPerMinute(requestsPerMinute)
+                        .burst(1)
+                        .maxWait(maxWait)
+                        .build())
+                .build());
+    }
+
+    private WeatherHttpClient retryingClient(int maxAttempts) {
+        return clientWith(Settings.builder()
+                .retry(Settings.Retry.builder()
+                        .maxAttempts(maxAttempts)
+                        .initialBackoff(Duration.ofMillis(10))
+                        .build())
+                .build());
+    }
+
+    private WeatherHttpClient clientWith(Settings settings) {
+        return new WeatherHttpClient(
+                objectMapper,
+                wireMockServer.baseUrl() + "/data/2.5/weather",
+                settings);
+    }
+
+    private void stubFailuresThenSuccess(int failures, ResponseDefinitionBuilder failure) {
+        String state = STARTED;
+        for (int i = 1; i <= failures; i++) {
+            wireMockServer.stubFor(get(urlMatching("/data/2.5/weather.*"))
+                    .inScenario("outage")
+                    .whenScenarioStateIs(state)
+                    .willReturn(failure)
+                    .willSetStateTo("failed " + i));
+            state = "failed " + i;
+        }
+        wireMockServer.stubFor(get(urlMatching("/data/2.5/weather.*"))
+                .inScenario("outage")
+                .whenScenarioStateIs(state)
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(jsonResponse)
+                        .withStatus(200)));
+    }
 }
@@ -0,0 +1,77 @@
+package com.lenarsharipov.weather_api.http;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lenarsharipov.weather_api.model.WeatherResponse;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static com.lenarsharipov.weather_api.util.TestObjectUtils.JSON_WEATHER_RESPONSE;
+import static com.lenarsharipov.weather_api.util.TestObjectUtils.WEATHER_RESPONSE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("Weather response decoder")
+class WeatherResponseDecoderTest {
+
+    private final WeatherResponseDecoder decoder = new WeatherResponseDecoder(new ObjectMapper());
+    private final byte[] body = JSON_WEATHER_RESPONSE.getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    @DisplayName("decodes a byte stream")
+    void shouldDecodeByteStream() throws IOException {
+        WeatherResponse response = decoder.decode(new ByteArrayInputStream(body));
+
+        assertThat(response).isEqualTo(WEATHER_RESPONSE);
+    }
+
+    @Test
+    @DisplayName("decodes a byte array")
+    void shouldDecodeByteArray() throws IOException {
+        WeatherResponse response = decoder.decode(body);
+
+        assertThat(response).isEqualTo(WEATHER_RESPONSE);
+    }
+
+    @Test
+    @DisplayName("decodes repeatedly with the same decoder")
+    void shouldDecodeRepeatedly() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            assertThat(decoder.decode(body)).isEqualTo(WEATHER_RESPONSE);
+        }
+    }
+
+    @Test
+    @DisplayName("reports invalid JSON as a processing error")
+    void shouldReportInvalidJson() {
+        byte[] invalidBody = "{invalid_json}".getBytes(StandardCharsets.UTF_8);
+
+        assertThrows(JsonProcessingException.class,
+                () -> decoder.decode(new ByteArrayInputStream(invalidBody)));
+    }
+
+    @Test
+    @DisplayName("decodes the list of a multi-city response")
+    void shouldDecodeList() throws IOException {
+        byte[] listBody = ("{\"cnt\":2,\"list\":[" + JSON_WEATHER_RESPONSE + "," + JSON_WEATHER_RESPONSE + "]}")
+                .getBytes(StandardCharsets.UTF_8);
+
+        List<WeatherResponse> responses = decoder.decodeList(new ByteArrayInputStream(listBody));
+
+        assertThat(responses).containsExactly(WEATHER_RESPONSE, WEATHER_RESPONSE);
+    }
+
+    @Test
+    @DisplayName("reports a multi-city response without a list of objects as a processing error")
+    void shouldReportInvalidList() {
+        byte[] invalidBody = "{\"cnt\":1,\"list\":[1]}".getBytes(StandardCharsets.UTF_8);
+
+        assertThrows(JsonProcessingException.class,
+                () -> decoder.decodeList(new ByteArrayInputStream(invalidBody)));
+    }
+}
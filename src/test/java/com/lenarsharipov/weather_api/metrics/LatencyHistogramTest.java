@@ -0,0 +1,85 @@
+package com.lenarsharipov.weather_api.metrics;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DisplayName("Latency Histogram")
+class LatencyHistogramTest {
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    @Test
+    @DisplayName("reports an empty snapshot before anything is recorded")
+    void shouldReportEmptySnapshot() {
+        assertEquals(LatencySnapshot.EMPTY, histogram.snapshot());
+    }
+
+    @Test
+    @DisplayName("reports percentiles within the bucket precision")
+    void shouldReportPercentiles() {
+        for (long micros = 1; micros <= 10_000; micros++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+        }
+
+        LatencySnapshot snapshot = histogram.snapshot();
+
+        assertEquals(10_000, snapshot.count());
+        assertThat(snapshot.p50().toNanos()).isCloseTo(5_000_000L, within(160_000L));
+        assertThat(snapshot.p90().toNanos()).isCloseTo(9_000_000L, within(290_000L));
+        assertThat(snapshot.p99().toNanos()).isCloseTo(9_900_000L, within(310_000L));
+        assertThat(snapshot.p999().toNanos()).isCloseTo(9_990_000L, within(310_000L));
+        assertEquals(Duration.ofMillis(10), snapshot.max());
+    }
+
+    @Test
+    @DisplayName("keeps small values exact")
+    void shouldKeepSmallValuesExact() {
+        histogram.record(7);
+        histogram.record(-5);
+
+        LatencySnapshot snapshot = histogram.snapshot();
+
+        assertEquals(Duration.ZERO, snapshot.p50());
+        assertEquals(Duration.ofNanos(7), snapshot.max());
+    }
+
+    @Test
+    @DisplayName("maps every value to a bucket whose range contains it")
+    void shouldMapValuesToContainingBucket() {
+        for (long value : new long[]{0, 31, 32, 33, 63, 64, 65, 1_000, 123_456_789, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.indexOf(value);
+
+            assertThat(LatencyHistogram.highestValueAt(index)).isGreaterThanOrEqualTo(value);
+            assertThat(index == 0 || LatencyHistogram.highestValueAt(index - 1) < value).isTrue();
+        }
+    }
+
+    @Test
+    @DisplayName("counts every value recorded concurrently")
+    void shouldCountConcurrentRecords() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int thread = 0; thread < 8; thread++) {
+            executor.execute(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(i);
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        LatencySnapshot snapshot = histogram.snapshot();
+
+        assertEquals(80_000, snapshot.count());
+        assertEquals(Duration.ofNanos(9_999), snapshot.max());
+    }
+}
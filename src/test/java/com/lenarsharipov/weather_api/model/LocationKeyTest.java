@@ -0,0 +1,106 @@
+package com.lenarsharipov.weather_api.model;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("Location Key")
+class LocationKeyTest {
+
+    @Test
+    @DisplayName("treats locations that differ in case and surrounding spaces as equal")
+    void shouldNormalizeLocation() {
+        LocationKey key = LocationKey.of(" London ");
+
+        assertEquals("LONDON", key.name());
+        assertEquals(" London ", key.location());
+        assertEquals(LocationKey.of("LONDON"), key);
+        assertEquals(LocationKey.of("london").hashCode(), key.hashCode());
+        assertNotEquals(LocationKey.of("Moscow"), key);
+    }
+
+    @Test
+    @DisplayName("normalizes independently of the default locale")
+    void shouldNormalizeIndependentlyOfDefaultLocale() {
+        Locale defaultLocale = Locale.getDefault();
+        try {
+            Locale.setDefault(Locale.forLanguageTag("tr-TR"));
+
+            assertEquals("ISTANBUL", LocationKey.normalize("istanbul"));
+            assertEquals(LocationKey.of("ISTANBUL"), LocationKey.of("istanbul"));
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    @Test
+    @DisplayName("returns the same key for a location passed again")
+    void shouldReuseRecentKey() {
+        assertSame(LocationKey.of("Saint Petersburg"), LocationKey.of("Saint Petersburg"));
+    }
+
+    @Test
+    @DisplayName("encodes the location as passed for a URL query")
+    void shouldEncodeLocation() {
+        assertEquals("S%C3%A3o+Paulo", LocationKey.of("São Paulo").encodedLocation());
+    }
+
+    @Test
+    @DisplayName("addresses a city by its id")
+    void shouldAddressCityById() {
+        LocationKey key = LocationKey.ofCityId(2643743);
+
+        assertEquals(2643743, key.cityId());
+        assertEquals("id:2643743", key.name());
+        assertSame(key, LocationKey.ofCityId(2643743));
+        assertEquals(0, LocationKey.of("London").cityId());
+        assertThrows(IllegalArgumentException.class, () -> LocationKey.ofCityId(0));
+    }
+
+    @Test
+    @DisplayName("treats a location that looks like a city id as a name")
+    void shouldNotParseCityIdFromLocation() {
+        LocationKey key = LocationKey.of("#2643743");
+
+        assertEquals(0, key.cityId());
+        assertEquals("#2643743", key.name());
+        assertNotEquals(LocationKey.ofCityId(2643743), key);
+        assertNotEquals(LocationKey.ofCityId(2643743), LocationKey.of("id:2643743"));
+        assertEquals(0, LocationKey.of("id:2643743").cityId());
+    }
+
+    @Test
+    @DisplayName("restores a key of either kind from its name")
+    void shouldRestoreKeyFromName() {
+        LocationKey cityKey = LocationKey.ofCityId(2643743);
+        LocationKey nameKey = LocationKey.of("London");
+
+        assertEquals(cityKey, LocationKey.ofName(cityKey.name()));
+        assertEquals(2643743, LocationKey.ofName(cityKey.name()).cityId());
+        assertEquals(nameKey, LocationKey.ofName(nameKey.name()));
+        assertEquals(0, LocationKey.ofName("id:12a").cityId());
+        assertEquals(0, LocationKey.ofName("id:99999999999").cityId());
+    }
+
+    @Test
+    @DisplayName("returns the cached request only to the owner that cached it")
+    void shouldReturnCachedRequestToItsOwner() {
+        LocationKey key = LocationKey.of("Paris");
+        Object owner = new Object();
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost/?q=Paris")).build();
+
+        key.cacheRequest(owner, request);
+
+        assertSame(request, key.cachedRequest(owner));
+        assertNull(key.cachedRequest(new Object()));
+    }
+}
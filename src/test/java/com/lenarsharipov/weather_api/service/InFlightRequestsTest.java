@@ -0,0 +1,158 @@
+package com.lenarsharipov.weather_api.service;
+
+import com.lenarsharipov.weather_api.exception.HttpException;
+import com.lenarsharipov.weather_api.model.WeatherResponse;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.lenarsharipov.weather_api.util.TestObjectUtils.WEATHER_RESPONSE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("In-flight requests")
+class InFlightRequestsTest {
+
+    private static final String KEY = "MOSCOW";
+    private static final String OTHER_KEY = "LONDON";
+
+    private final InFlightRequests inFlightRequests = new InFlightRequests();
+
+    @Test
+    @DisplayName("fails waiting callers and releases the key when the fetch throws an error")
+    void shouldReleaseKeyWhenFetchThrowsError() throws Exception {
+        CountDownLatch fetching = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Throwable> leader = CompletableFuture.supplyAsync(() -> {
+            try {
+                inFlightRequests.execute(KEY, () -> {
+                    fetching.countDown();
+                    awaitUninterruptibly(release);
+                    throw new AssertionError("fetch failed");
+                });
+                return null;
+            } catch (Throwable e) {
+                return e;
+            }
+        });
+        assertThat(fetching.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<Throwable> follower = CompletableFuture.supplyAsync(() -> {
+            try {
+                inFlightRequests.execute(KEY, () -> WEATHER_RESPONSE);
+                return null;
+            } catch (Throwable e) {
+                return e;
+            }
+        });
+
+        Thread.sleep(100);
+        release.countDown();
+
+        assertThat(leader.get(5, TimeUnit.SECONDS)).isInstanceOf(AssertionError.class);
+        assertThat(follower.get(5, TimeUnit.SECONDS)).isInstanceOf(AssertionError.class);
+        assertThat(inFlightRequests.size()).isZero();
+        assertThat(inFlightRequests.execute(KEY, () -> WEATHER_RESPONSE)).isEqualTo(WEATHER_RESPONSE);
+    }
+
+    @Test
+    @DisplayName("fails the future and releases the key when starting an async fetch throws")
+    void shouldReleaseKeyWhenAsyncFetchCannotStart() {
+        CompletableFuture<WeatherResponse> call = inFlightRequests.executeAsync(KEY, () -> {
+            throw new IllegalStateException("executor is shut down");
+        });
+
+        CompletionException exception = assertThrows(CompletionException.class, call::join);
+        assertThat(exception.getCause()).isInstanceOf(IllegalStateException.class);
+        assertThat(inFlightRequests.size()).isZero();
+    }
+
+    @Test
+    @DisplayName("leaves keys already in flight out of a group fetch")
+    void shouldLeaveKeysInFlightOutOfGroupFetch() throws Exception {
+        CountDownLatch fetching = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<WeatherResponse> leader = CompletableFuture.supplyAsync(() -> {
+            try {
+                return inFlightRequests.execute(KEY, () -> {
+                    fetching.countDown();
+                    awaitUninterruptibly(release);
+                    return WEATHER_RESPONSE;
+                });
+            } catch (HttpException e) {
+                throw new CompletionException(e);
+            }
+        });
+        assertThat(fetching.await(5, TimeUnit.SECONDS)).isTrue();
+        List<List<String>> fetchedKeys = new ArrayList<>();
+
+        Map<String, WeatherResponse> responses = inFlightRequests.executeAll(List.of(KEY, OTHER_KEY), keys -> {
+            fetchedKeys.add(keys);
+            return Map.of(OTHER_KEY, WEATHER_RESPONSE);
+        });
+        release.countDown();
+
+        assertThat(fetchedKeys).containsExactly(List.of(OTHER_KEY));
+        assertThat(responses).containsOnlyKeys(OTHER_KEY);
+        assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo(WEATHER_RESPONSE);
+        assertThat(inFlightRequests.size()).isZero();
+    }
+
+    @Test
+    @DisplayName("lets a caller of a key in a group fetch wait for it instead of fetching")
+    void shouldShareGroupFetchWithCallerOfOneKey() throws Exception {
+        CountDownLatch fetching = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Map<String, WeatherResponse>> group = CompletableFuture.supplyAsync(() -> {
+            try {
+                return inFlightRequests.executeAll(List.of(KEY, OTHER_KEY), keys -> {
+                    fetching.countDown();
+                    awaitUninterruptibly(release);
+                    return Map.of(KEY, WEATHER_RESPONSE);
+                });
+            } catch (HttpException e) {
+                throw new CompletionException(e);
+            }
+        });
+        assertThat(fetching.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<Throwable> missingKey = CompletableFuture.supplyAsync(() -> {
+            try {
+                inFlightRequests.execute(OTHER_KEY, () -> WEATHER_RESPONSE);
+                return null;
+            } catch (Throwable e) {
+                return e;
+            }
+        });
+        CompletableFuture<WeatherResponse> follower = CompletableFuture.supplyAsync(() -> {
+            try {
+                return inFlightRequests.execute(KEY, () -> {
+                    throw new AssertionError("the group fetch should be shared");
+                });
+            } catch (HttpException e) {
+                throw new CompletionException(e);
+            }
+        });
+
+        Thread.sleep(100);
+        release.countDown();
+
+        assertThat(group.get(5, TimeUnit.SECONDS)).containsOnlyKeys(KEY);
+        assertThat(follower.get(5, TimeUnit.SECONDS)).isEqualTo(WEATHER_RESPONSE);
+        assertThat(missingKey.get(5, TimeUnit.SECONDS)).isInstanceOf(HttpException.class);
+        assertThat(inFlightRequests.size()).isZero();
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
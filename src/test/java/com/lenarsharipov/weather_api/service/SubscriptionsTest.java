@@ -0,0 +1,158 @@
+package com.lenarsharipov.weather_api.service;
+
+import com.lenarsharipov.weather_api.model.WeatherResponse;
+import com.lenarsharipov.weather_api.util.RecordingSubscriber;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.Flow;
+
+import static com.lenarsharipov.weather_api.util.RecordingSubscriber.await;
+import static com.lenarsharipov.weather_api.util.TestObjectUtils.createWeatherResponse;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("Subscriptions")
+class SubscriptionsTest {
+
+    private static final String NAME = "MOSCOW";
+
+    private final Subscriptions subscriptions = new Subscriptions(2);
+
+    @AfterEach
+    void tearDown() {
+        subscriptions.completeAll();
+    }
+
+    @Test
+    @DisplayName("delivers an observation only if it differs from the previous one")
+    void shouldSkipUnchangedObservations() throws InterruptedException {
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+        subscriptions.subscribe(NAME, subscriber);
+        WeatherResponse first = createWeatherResponse(1740146111);
+        WeatherResponse second = createWeatherResponse(1740146711);
+
+        subscriptions.publish(NAME, first);
+        subscriptions.publish(NAME, createWeatherResponse(1740146111));
+        subscriptions.publish(NAME, second);
+
+        assertThat(await(() -> subscriber.items().size() == 2)).isTrue();
+        assertThat(subscriber.items()).containsExactly(first, second);
+    }
+
+    @Test
+    @DisplayName("keeps only the latest updates for a subscriber without demand")
+    void shouldDropOldestUpdatesWhenBufferIsFull() throws InterruptedException {
+        RecordingSubscriber subscriber = new RecordingSubscriber(0);
+        subscriptions.subscribe(NAME, subscriber);
+        assertThat(await(() -> subscriber.subscription() != null)).isTrue();
+
+        for (int i = 1; i <= 5; i++) {
+            subscriptions.publish(NAME, createWeatherResponse(i));
+        }
+        Thread.sleep(50);
+        assertThat(subscriber.items()).isEmpty();
+
+        subscriber.subscription().request(10);
+
+        assertThat(await(() -> subscriber.items().size() == 2)).isTrue();
+        assertThat(subscriber.items()).extracting(WeatherResponse::dt).containsExactly(4L, 5L);
+    }
+
+    @Test
+    @DisplayName("delivers no more than the subscriber requested")
+    void shouldRespectDemand() throws InterruptedException {
+        RecordingSubscriber subscriber = new RecordingSubscriber(1);
+        subscriptions.subscribe(NAME, subscriber);
+
+        subscriptions.publish(NAME, createWeatherResponse(1));
+        subscriptions.publish(NAME, createWeatherResponse(2));
+
+        assertThat(await(() -> subscriber.items().size() == 1)).isTrue();
+        Thread.sleep(50);
+        assertThat(subscriber.items()).extracting(WeatherResponse::dt).containsExactly(1L);
+    }
+
+    @Test
+    @DisplayName("stops delivering after the subscription is cancelled")
+    void shouldStopAfterCancel() throws InterruptedException {
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+        subscriptions.subscribe(NAME, subscriber);
+        assertThat(await(() -> subscriber.subscription() != null)).isTrue();
+
+        subscriber.subscription().cancel();
+        subscriptions.publish(NAME, createWeatherResponse(1));
+
+        Thread.sleep(50);
+        assertThat(subscriber.items()).isEmpty();
+        assertThat(subscriptions.hasSubscribers(NAME)).isFalse();
+    }
+
+    @Test
+    @DisplayName("signals an error when a non-positive number of updates is requested")
+    void shouldFailOnNonPositiveRequest() throws InterruptedException {
+        RecordingSubscriber subscriber = new RecordingSubscriber(0);
+        subscriptions.subscribe(NAME, subscriber);
+        assertThat(await(() -> subscriber.subscription() != null)).isTrue();
+
+        subscriber.subscription().request(0);
+
+        assertThat(await(() -> subscriber.error() != null)).isTrue();
+        assertThat(subscriber.error()).isInstanceOf(IllegalArgumentException.class);
+        assertThat(subscriptions.size()).isZero();
+    }
+
+    @Test
+    @DisplayName("moves a subscription to another location")
+    void shouldMoveSubscription() throws InterruptedException {
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+        Subscriptions.Subscription subscription = subscriptions.subscribe(NAME, subscriber);
+
+        subscription.moveTo("#524901");
+        subscriptions.publish("#524901", createWeatherResponse(1));
+
+        assertThat(await(() -> subscriber.items().size() == 1)).isTrue();
+        assertThat(subscriptions.hasSubscribers(NAME)).isFalse();
+    }
+
+    @Test
+    @DisplayName("delivers requested updates and then completes every subscription")
+    void shouldCompleteAll() throws InterruptedException {
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+        subscriptions.subscribe(NAME, subscriber);
+        subscriptions.publish(NAME, createWeatherResponse(1));
+
+        subscriptions.completeAll();
+
+        assertThat(await(subscriber::isCompleted)).isTrue();
+        assertThat(subscriber.items()).hasSize(1);
+    }
+
+    @Test
+    @DisplayName("cancels a subscriber that throws")
+    void shouldCancelFailingSubscriber() throws InterruptedException {
+        subscriptions.subscribe(NAME, new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(WeatherResponse item) {
+                throw new IllegalStateException("boom");
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+
+        subscriptions.publish(NAME, createWeatherResponse(1));
+
+        assertThat(await(() -> !subscriptions.hasSubscribers(NAME))).isTrue();
+    }
+}
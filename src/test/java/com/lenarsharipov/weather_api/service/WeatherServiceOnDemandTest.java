@@ -1,22 +1,55 @@
 package com.lenarsharipov.weather_api.service;
 
+import com.lenarsharipov.weather_api.datastructure.CacheStore;
+import com.lenarsharipov.weather_api.datastructure.FetchedWeather;
+import com.lenarsharipov.weather_api.datastructure.NegativeCache;
+import com.lenarsharipov.weather_api.datastructure.RespCacheStore;
+import com.lenarsharipov.weather_api.datastructure.SharedCache;
 import com.lenarsharipov.weather_api.exception.HttpException;
 import com.lenarsharipov.weather_api.exception.ServiceShutDownException;
 import com.lenarsharipov.weather_api.http.WeatherHttpClient;
+import com.lenarsharipov.weather_api.metrics.LatencySnapshot;
+import com.lenarsharipov.weather_api.metrics.LatencyStats;
+import com.lenarsharipov.weather_api.model.LocationKey;
 import com.lenarsharipov.weather_api.model.WeatherResponse;
+import com.lenarsharipov.weather_api.model.WeatherResult;
+import com.lenarsharipov.weather_api.settings.Settings;
 import com.lenarsharipov.weather_api.service.impl.WeatherServiceOnDemand;
+import com.lenarsharipov.weather_api.util.RecordingSubscriber;
+import com.lenarsharipov.weather_api.util.RespServerStub;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
+import org.mockito.MockedConstruction;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static com.lenarsharipov.weather_api.util.TestObjectUtils.*;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 
 @DisplayName("On Demand Weather Service")
 @ExtendWith(MockitoExtension.class)
@@ -44,6 +77,737 @@ class WeatherServiceOnDemandTest {
         assertThat(actualResponse).isEqualTo(WEATHER_RESPONSE);
     }
 
+    @Test
+    @DisplayName("gets weather response asynchronously")
+    void shouldReturnWeatherResponseAsync() {
+        Mockito.when(weatherHttpClient.getWeatherAsync(LOCATION, API_KEY))
+                .thenReturn(CompletableFuture.completedFuture(WEATHER_RESPONSE));
+
+        WeatherResponse actualResponse = weatherService.getWeatherAsync(LOCATION).join();
+
+        assertThat(actualResponse).isEqualTo(WEATHER_RESPONSE);
+    }
+
+    @Test
+    @DisplayName("completes async call from cache without a request")
+    void shouldCompleteAsyncCallFromCache() throws HttpException {
+        WeatherResponse freshResponse = createWeatherResponse(Instant.now().getEpochSecond());
+        Mockito.when(weatherHttpClient.getWeather(LOCATION, API_KEY))
+                .thenReturn(freshResponse);
+        weatherService.getWeather(LOCATION);
+
+        CompletableFuture<WeatherResponse> future = weatherService.getWeatherAsync(LOCATION);
+
+        assertThat(future.isDone()).isTrue();
+        assertThat(future.join()).isEqualTo(freshResponse);
+        Mockito.verify(weatherHttpClient, Mockito.never()).getWeatherAsync(LOCATION, API_KEY);
+    }
+
+    @Test
+    @DisplayName("fails async call when it is shutdown")
+    void shouldFailAsyncCallWhenItShutDown() {
+        weatherService.shutdown();
+
+        ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> weatherService.getWeatherAsync(LOCATION).get());
+        assertThat(exception.getCause()).isInstanceOf(ServiceShutDownException.class);
+    }
+
+    @Test
+    @DisplayName("coalesces concurrent cache misses into a single request")
+    void shouldCoalesceConcurrentCacheMisses() throws Exception {
+        int threadCount = 10;
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.when(weatherHttpClient.getWeather(LOCATION, API_KEY))
+                .thenAnswer(invocation -> {
+                    release.await(5, TimeUnit.SECONDS);
+                    return WEATHER_RESPONSE;
+                });
+
+        List<Future<WeatherResponse>> results = callConcurrently(threadCount, release);
+
+        for (Future<WeatherResponse> result : results) {
+            assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo(WEATHER_RESPONSE);
+        }
+        Mockito.verify(weatherHttpClient, Mockito.times(1)).getWeather(LOCATION, API_KEY);
+    }
+
+    @Test
+    @DisplayName("shares the exception of a coalesced request")
+    void shouldShareExceptionOfCoalescedRequest() throws Exception {
+        int threadCount = 10;
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.when(weatherHttpClient.getWeather(LOCATION, API_KEY))
+                .thenAnswer(invocation -> {
+                    release.await(5, TimeUnit.SECONDS);
+                    throw new HttpException("API error", 503);
+                });
+
+        List<Future<WeatherResponse>> results = callConcurrently(threadCount, release);
+
+        for (Future<WeatherResponse> result : results) {
+            ExecutionException exception = assertThrows(ExecutionException.class,
+                    () -> result.get(5, TimeUnit.SECONDS));
+            assertThat(exception.getCause()).isInstanceOf(HttpException.class);
+        }
+        Mockito.verify(weatherHttpClient, Mockito.times(1)).getWeather(LOCATION, API_KEY);
+    }
+
+    @Test
+    @DisplayName("does not send a request for a miss that another load has filled in the meantime")
+    void shouldUseDataStoredAfterCacheMiss() throws Exception {
+        Mockito.when(weatherHttpClient.getWeather(LOCATION, API_KEY)).thenReturn(WEATHER_RESPONSE);
+        weatherService.getWeather(LOCATION);
+
+        WeatherResponse syncResponse = weatherService.loadWeather(LocationKey.of(LOCATION));
+        WeatherResponse asyncResponse = weatherService.loadWeatherAsync(LocationKey.of(LOCATION)).get(5, TimeUnit.SECONDS);
+
+        assertThat(syncResponse).isEqualTo(WEATHER_RESPONSE);
+        assertThat(asyncResponse).isEqualTo(WEATHER_RESPONSE);
+        Mockito.verify(weatherHttpClient, Mockito.times(1)).getWeather(LOCATION, API_KEY);
+        Mockito.verify(weatherHttpClient, Mockito.never()).getWeatherAsync(Mockito.anyString(), Mockito.anyString());
+    }
+
+    @Test
+    @DisplayName("coalesces async cache miss with an in-flight sync request")
+    void shouldCoalesceAsyncMissWithInFlightSyncRequest() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.when(weatherHttpClient.getWeather(LOCATION, API_KEY))
+                .thenAnswer(invocation -> {
+                    started.countDown();
+                    release.await(5, TimeUnit.SECONDS);
+                    return WEATHER_RESPONSE;
+                });
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<WeatherResponse> syncResult = executor.submit(() -> weatherService.getWeather(LOCATION));
+        started.await(5, TimeUnit.SECONDS);
+        CompletableFuture<WeatherResponse> asyncResult = weatherService.getWeatherAsync(LOCATION.toLowerCase());
+        release.countDown();
+
+        assertThat(asyncResult.get(5, TimeUnit.SECONDS)).isEqualTo(WEATHER_RESPONSE);
+        assertThat(syncResult.get(5, TimeUnit.SECONDS)).isEqualTo(WEATHER_RESPONSE);
+        Mockito.verify(weatherHttpClient, Mockito.never()).getWeatherAsync(Mockito.anyString(), Mockito.anyString());
+        executor.shutdown();
+    }
+
+    @Test
+    @DisplayName("gets weather for several locations with per-location errors")
+    void shouldReturnResultsAndErrorsForSeveralLocations() throws HttpException {
+        WeatherResponse freshResponse = createWeatherResponse(Instant.now().getEpochSecond());
+        Mockito.when(weatherHttpClient.getWeather(LOCATION, API_KEY))
+                .thenReturn(freshResponse);
+        weatherService.getWeather(LOCATION);
+        Mockito.when(weatherHttpClient.getWeatherAsync("Moscow", API_KEY))
+                .thenReturn(CompletableFuture.completedFuture(WEATHER_RESPONSE));
+        Mockito.when(weatherHttpClient.getWeatherAsync("Atlantis", API_KEY))
+                .thenReturn(CompletableFuture.failedFuture(new HttpException("API error", 404)));
+
+        Map<String, WeatherResult> results = weatherService.getWeather(List.of(LOCATION, "Moscow", "Atlantis"));
+
+        assertThat(results.get(LOCATION).response()).isEqualTo(freshResponse);
+        assertThat(results.get("Moscow").response()).isEqualTo(WEATHER_RESPONSE);
+        assertThat(results.get("Atlantis").isSuccess()).isFalse();
+        assertThat(results.get("Atlantis").error()).isInstanceOf(HttpException.class);
+        Mockito.verify(weatherHttpClient, Mockito.never()).getWeatherAsync(LOCATION, API_KEY);
+    }
+
+    @Test
+    @DisplayName("limits the number of requests a bulk lookup sends at the same time")
+    void shouldLimitConcurrentRequestsOfBulkLookup() {
+        Settings settings = Settings.builder()
+                .bulk(Settings.Bulk.builder().maxConcurrency(2).build())
+                .build();
+        WeatherServiceOnDemand service = new WeatherServiceOnDemand(API_KEY, weatherHttpClient, settings);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        Mockito.when(weatherHttpClient.getWeatherAsync(Mockito.anyString(), Mockito.eq(API_KEY)))
+                .thenAnswer(invocation -> {
+                    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    return CompletableFuture.supplyAsync(() -> {
+                        inFlight.decrementAndGet();
+                        return WEATHER_RESPONSE;
+                    }, CompletableFuture.delayedExecutor(50, TimeUnit.MILLISECONDS));
+                });
+        List<String> locations = List.of("city1", "city2", "city3", "city4", "city5", "city6");
+        List<String> completionOrder = new ArrayList<>();
+
+        service.getWeather(locations, result -> completionOrder.add(result.location()));
+
+        Assertions.assertThat(completionOrder).containsExactlyInAnyOrderElementsOf(locations);
+        assertThat(maxInFlight.get()).isLessThanOrEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("serves data of a station that reports late from the cache until it expires")
+    void shouldServeLateObservationFromCache() throws Exception {
+        WeatherServiceOnDemand service = new WeatherServiceOnDemand(API_KEY, weatherHttpClient, Settings.builder()
+                .dataFreshnessPeriod(200)
+                .dataFreshnessUnit(TimeUnit.MILLISECONDS)
+                .build());
+        WeatherResponse lateResponse = createWeatherResponse(Instant.now().minusSeconds(3600).getEpochSecond());
+        Mockito.when(weatherHttpClient.getWeather(LOCATION, API_KEY)).thenReturn(lateResponse);
+
+        service.getWeather(LOCATION);
+        service.getWeather(LOCATION);
+        Mockito.verify(weatherHttpClient, Mockito.times(1)).getWeather(LOCATION, API_KEY);
+        Thread.sleep(300);
+        WeatherResponse actualResponse = service.getWeather(LOCATION);
+
+        assertThat(actualResponse).isEqualTo(lateResponse);
+        Mockito.verify(weatherHttpClient, Mockito.times(2)).getWeather(LOCATION, API_KEY);
+    }
+
+    @Test
+    @DisplayName("serves stale data at once and refreshes it in the background")
+    void shouldServeStaleDataWhileRefreshing() throws Exception {
+        WeatherServiceOnDemand service = new WeatherServiceOnDemand(API_KEY, weatherHttpClient,
+                staleWhileRevalidateSettings(50, 60_000));
+        WeatherResponse staleResponse = createWeatherResponse(Instant.now().minusSeconds(60).getEpochSecond());
+        WeatherResponse freshResponse = createWeatherResponse(Instant.now().getEpochSecond());
+        CompletableFuture<WeatherResponse> refresh = new CompletableFuture<>();
+        Mockito.when(weatherHttpClient.getWeather(LOCATION, API_KEY)).thenReturn(staleResponse);
+        Mockito.when(weatherHttpClient.getWeatherAsync(LOCATION, API_KEY)).thenReturn(refresh);
+        service.getWeather(LOCATION);
+        Thread.sleep(100);
+
+        WeatherResponse servedWhileRefreshing = service.getWeather(LOCATION);
+        service.getWeather(LOCATION);
+        refresh.complete(freshResponse);
+        WeatherResponse servedAfterRefresh = service.getWeather(LOCATION);
+
+        assertThat(servedWhileRefreshing).isEqualTo(staleResponse);
+        assertThat(servedAfterRefresh).isEqualTo(freshResponse);
+        Mockito.verify(weatherHttpClient, Mockito.times(1)).getWeather(LOCATION, API_KEY);
+        Mockito.verify(weatherHttpClient, Mockito.times(1)).getWeatherAsync(LOCATION, API_KEY);
+    }
+
+    @Test
+    @DisplayName("waits for a request when data was fetched longer ago than the max staleness")
+    void shouldWaitForRequestWhenDataIsTooStale() throws Exception {
+        WeatherServiceOnDemand service = new WeatherServiceOnDemand(API_KEY, weatherHttpClient,
+                staleWhileRevalidateSettings(20, 40));
+        WeatherResponse tooStaleResponse = createWeatherResponse(Instant.now().getEpochSecond());
+        Mockito.when(weatherHttpClient.getWeather(LOCATION, API_KEY)).thenReturn(tooStaleResponse);
+
+        service.getWeather(LOCATION);
+        Thread.sleep(100);
+        service.getWeather(LOCATION);
+
+        Mockito.verify(weatherHttpClient, Mockito.times(2)).getWeather(LOCATION, API_KEY);
+        Mockito.verify(weatherHttpClient, Mockito.never()).getWeatherAsync(LOCATION, API_KEY);
+    }
+
+    @Test
+    @DisplayName("refreshes fresh data in the background once it is due for a refresh")
+    void shouldRefreshAheadOfExpiry() throws Exception {
+        WeatherServiceOnDemand service = new WeatherServiceOnDemand(API_KEY, weatherHttpClient, Settings.builder()
+                .expiration(Settings.Expiration.builder()
+                        .refreshAfterWrite(Duration.ofMillis(50))
+                        .build())
+                .build());
+        WeatherResponse cachedResponse = createWeatherResponse(Instant.now().minusSeconds(60).getEpochSecond());
+        WeatherResponse refreshedResponse = createWeatherResponse(Instant.now().getEpochSecond());
+        CompletableFuture<WeatherResponse> refresh = new CompletableFuture<>();
+        Mockito.when(weatherHttpClient.getWeather(LOCATION, API_KEY)).thenReturn(cachedResponse);
+        Mockito.when(weatherHttpClient.getWeatherAsync(LOCATION, API_KEY)).thenReturn(refresh);
+        service.getWeather(LOCATION);
+        WeatherResponse servedBeforeRefresh = service.getWeather(LOCATION);
+        Thread.sleep(100);
+
+        WeatherResponse servedWhileRefreshing = service.getWeather(LOCATION);
+        service.getWeather(LOCATION);
+        refresh.complete(refreshedResponse);
+        WeatherResponse servedAfterRefresh = service.getWeather(LOCATION);
+
+        assertThat(servedBeforeRefresh).isEqualTo(cachedResponse);
+        assertThat(servedWhileRefreshing).isEqualTo(cachedResponse);
+        assertThat(servedAfterRefresh).isEqualTo(refreshedResponse);
+        Mockito.verify(weatherHttpClient, Mockito.times(1)).getWeather(LOCATION, API_KEY);
+        Mockito.verify(weatherHttpClient, Mockito.times(1)).getWeatherAsync(LOCATION, API_KEY);
+    }
+
+    @Test
+    @DisplayName("keeps data of a location with its own time to live fresh for that time only")
+    void shouldUseTimeToLiveOfLocation() throws Exception {
+        WeatherServiceOnDemand service = new WeatherServiceOnDemand(API_KEY, weatherHttpClient, Settings.builder()
+                .expiration(Settings.Expiration.builder()
+                        .timeToLive(LOCATION, Duration.ofMillis(50))
+                        .build())
+                .build());
+        Mockito.when(weatherHttpClient.getWeather(Mockito.anyString(), Mockito.eq(API_KEY)))
+                .thenReturn(createWeatherResponse(Instant.now().getEpochSecond()));
+
+        service.getWeather(LOCATION);
+        service.getWeather("Kazan");
+        Thread.sleep(100);
+        service.getWeather(LOCATION);
+        service.getWeather("Kazan");
+
+        Mockito.verify(weatherHttpClient, Mockito.times(2)).getWeather(LOCATION, API_KEY);
+        Mockito.verify(weatherHttpClient, Mockito.times(1)).getWeather("Kazan", API_KEY);
+    }
+
+    @Test
+    @DisplayName("applies the time to live of a location to the city it resolved to")
+    void shouldUseTimeToLiveOfLocationWithAliasing() throws Exception {
+        WeatherServiceOnDemand service = new WeatherServiceOnDemand(API_KEY, weatherHttpClient, Settings.builder()
+                .aliasing(Settings.Aliasing.builder().enabled(true).build())
+                .expiration(Settings.Expiration.builder()
+                        .timeToLive(LOCATION, Duration.ofMillis(50))
+                        .build())
+                .build());
+        WeatherResponse freshResponse = createWeatherResponse(Instant.now().getEpochSecond());
+        Mockito.when(weatherHttpClient.getWeather(LOCATION, API_KEY)).thenReturn(freshResponse);
+        Mockito.when(weatherHttpClient.getWeatherById(498817, API_KEY)).thenReturn(freshResponse);
+
+        service.getWeather(LOCATION);
+        Thread.sleep(100);
+        service.getWeather(LOCATION);
+
+        Mockito.verify(weatherHttpClient, Mockito.times(1)).getWeather(LOCATION, API_KEY);
+        Mockito.verify(weatherHttpClient, Mockito.times(1)).getWeatherById(498817, API_KEY);
+    }
+
+    @Test
+    @DisplayName("fails a repeated lookup of an unknown location without a request")
+    void shouldFailRepeatedLookupOfUnknownLocationWithoutRequest() throws HttpException {
+        Mockito.when(weatherHttpClient.getWeather("Atlantis", API_KEY))
+                .thenThrow(new HttpException("API error: city not found", 404));
+
+        HttpException first = assertThrows(HttpException.class, () -> weatherService.getWeather("Atlantis"));
+        HttpException second = assertThrows(HttpException.class, () -> weatherService.getWeather("atlantis"));
+        ExecutionException async = assertThrows(ExecutionException.class,
+                () -> weatherService.getWeatherAsync("Atlantis").get());
+
+        assertThat(first.getStatusCode()).isEqualTo(404);
+        assertThat(second.getStatusCode()).isEqualTo(404);
+        assertThat(async.getCause()).isInstanceOf(HttpException.class);
+        Mockito.verify(weatherHttpClient, Mockito.times(1)).getWeather("Atlantis", API_KEY);
+        Mockito.verifyNoMoreInteractions(weatherHttpClient);
+    }
+
+    @Test
+    @DisplayName("retries a lookup that failed with a transient error")
+    void shouldRetryLookupThatFailedWithTransientError() throws HttpException {
+        Mockito.when(weatherHttpClient.getWeather(LOCATION, API_KEY))
+                .thenThrow(new HttpException("API error", 503))
+                .thenReturn(WEATHER_RESPONSE);
+
+        assertThrows(HttpException.class, () -> weatherService.getWeather(LOCATION));
+        WeatherResponse actualResponse = weatherService.getWeather(LOCATION);
+
+        assertThat(actualResponse).isEqualTo(WEATHER_RESPONSE);
+        Mockito.verify(weatherHttpClient, Mockito.times(2)).getWeather(LOCATION, API_KEY);
+    }
+
+    @Test
+    @DisplayName("saves the cache on shutdown and restores it on start")
+    void shouldRestoreCacheSavedOnShutdown(@TempDir Path directory) throws HttpException {
+        Settings settings = Settings.builder()
+                .snapshot(Settings.Snapshot.builder()
+                        .file(directory.resolve("cache.snapshot"))
+                        .build())
+                .build();
+        WeatherResponse freshResponse = createWeatherResponse(Instant.now().getEpochSecond());
+        Mockito.when(weatherHttpClient.getWeather(LOCATION, API_KEY)).thenReturn(freshResponse);
+        WeatherServiceOnDemand service = new WeatherServiceOnDemand(API_KEY, weatherHttpClient, settings);
+        service.getWeather(LOCATION);
+        service.shutdown();
+
+        WeatherServiceOnDemand restartedService = new WeatherServiceOnDemand(API_KEY, weatherHttpClient, settings);
+        WeatherResponse actualResponse = restartedService.getWeather(LOCATION);
+
+        assertThat(actualResponse).isEqualTo(freshResponse);
+        Mockito.verify(weatherHttpClient, Mockito.times(1)).getWeather(LOCATION, API_KEY);
+    }
+
+    @Test
+    @DisplayName("keeps the snapshot saved on shutdown when periodic saves are running")
+    void shouldNotOverwriteSnapshotSavedOnShutdown(@TempDir Path directory) throws Exception {
+        Settings settings = Settings.builder()
+                .snapshot(Settings.Snapshot.builder()
+                        .file(directory.resolve("cache.snapshot"))
+                        .interval(1)
+                        .unit(TimeUnit.MILLISECONDS)
+                        .build())
+                .build();
+        WeatherResponse freshResponse = createWeatherResponse(Instant.now().getEpochSecond());
+        Mockito.when(weatherHttpClient.getWeather(LOCATION, API_KEY)).thenReturn(freshResponse);
+        WeatherServiceOnDemand service = new WeatherServiceOnDemand(API_KEY, weatherHttpClient, settings);
+        service.getWeather(LOCATION);
+        service.shutdown();
+        Thread.sleep(50);
+
+        WeatherServiceOnDemand restartedService = new WeatherServiceOnDemand(API_KEY, weatherHttpClient, settings);
+        WeatherResponse actualResponse = restartedService.getWeather(LOCATION);
+
+        assertThat(actualResponse).isEqualTo(freshResponse);
+        Mockito.verify(weatherHttpClient, Mockito.times(1)).getWeather(LOCATION, API_KEY);
+        restartedService.shutdown();
+    }
+
+    @Test
+    @DisplayName("records the latency of cache hits and misses")
+    void shouldRecordLatencyOfHitsAndMisses() throws HttpException {
+        WeatherResponse freshResponse = createWeatherResponse(Instant.now().getEpochSecond());
+        Mockito.when(weatherHttpClient.getWeather(LOCATION, API_KEY)).thenReturn(freshResponse);
+        Mockito.when(weatherHttpClient.getRoundTripLatency()).thenReturn(LatencySnapshot.EMPTY);
+        Mockito.when(weatherHttpClient.getDecodeLatency()).thenReturn(LatencySnapshot.EMPTY);
+
+        weatherService.getWeather(LOCATION);
+        weatherService.getWeather(LOCATION);
+        weatherService.getWeather(LOCATION);
+        LatencyStats stats = weatherService.getLatencyStats();
+
+        assertThat(stats.cacheMiss().count()).isEqualTo(1);
+        assertThat(stats.cacheHit().count()).isEqualTo(2);
+        assertThat(stats.httpRoundTrip()).isEqualTo(LatencySnapshot.EMPTY);
+    }
+
+    @Test
+    @DisplayName("serves a lookup by coordinates from fresh data cached for a nearby point")
+    void shouldServeNearbyPointFromProximityCache() throws HttpException {
+        WeatherResponse freshResponse = createWeatherResponse(Instant.now().getEpochSecond());
+        Mockito.when(weatherHttpClient.getWeather(59.8944, 30.2642, API_KEY)).thenReturn(freshResponse);
+        Mockito.when(weatherHttpClient.getWeather(59.95, 30.35, API_KEY)).thenReturn(freshResponse);
+
+        weatherService.getWeather(59.8944, 30.2642);
+        WeatherResponse nearbyResponse = weatherService.getWeather(59.9, 30.27);
+        weatherService.getWeather(59.95, 30.35);
+
+        assertThat(nearbyResponse).isEqualTo(freshResponse);
+        Mockito.verify(weatherHttpClient, Mockito.times(1)).getWeather(59.8944, 30.2642, API_KEY);
+        Mockito.verify(weatherHttpClient, Mockito.never()).getWeather(59.9, 30.27, API_KEY);
+        Mockito.verify(weatherHttpClient, Mockito.times(1)).getWeather(59.95, 30.35, API_KEY);
+    }
+
+    @Test
+    @DisplayName("serves a lookup by coordinates from data loaded by location")
+    void shouldServeCoordinatesFromLocationData() throws HttpException {
+        WeatherResponse freshResponse = createWeatherResponse(Instant.now().getEpochSecond());
+        Mockito.when(weatherHttpClient.getWeather(LOCATION, API_KEY)).thenReturn(freshResponse);
+
+        weatherService.getWeather(LOCATION);
+        WeatherResponse actualResponse = weatherService.getWeatherAsync(59.89, 30.26).join();
+
+        assertThat(actualResponse).isEqualTo(freshResponse);
+        Mockito.verify(weatherHttpClient, Mockito.never())
+                .getWeatherAsync(Mockito.anyDouble(), Mockito.anyDouble(), Mockito.anyString());
+    }
+
+    @Test
+    @DisplayName("does not serve data cached for a nearby point once it was fetched too long ago")
+    void shouldNotServeStaleNearbyData() throws Exception {
+        WeatherServiceOnDemand service = new WeatherServiceOnDemand(API_KEY, weatherHttpClient, Settings.builder()
+                .dataFreshnessPeriod(50)
+                .dataFreshnessUnit(TimeUnit.MILLISECONDS)
+                .build());
+        WeatherResponse lateResponse = createWeatherResponse(Instant.now().minusSeconds(3600).getEpochSecond());
+        Mockito.when(weatherHttpClient.getWeather(59.8944, 30.2642, API_KEY)).thenReturn(lateResponse);
+
+        service.getWeather(59.8944, 30.2642);
+        service.getWeather(59.8944, 30.2642);
+        Mockito.verify(weatherHttpClient, Mockito.times(1)).getWeather(59.8944, 30.2642, API_KEY);
+
+        Thread.sleep(100);
+        service.getWeather(59.8944, 30.2642);
+        service.shutdown();
+
+        Mockito.verify(weatherHttpClient, Mockito.times(2)).getWeather(59.8944, 30.2642, API_KEY);
+    }
+
+    @Test
+    @DisplayName("sends one request for concurrent lookups of nearby points")
+    void shouldCoalesceLookupsOfNearbyPoints() {
+        WeatherResponse freshResponse = createWeatherResponse(Instant.now().getEpochSecond());
+        CompletableFuture<WeatherResponse> pending = new CompletableFuture<>();
+        Mockito.when(weatherHttpClient.getWeatherAsync(Mockito.anyDouble(), Mockito.anyDouble(), Mockito.eq(API_KEY)))
+                .thenReturn(pending);
+
+        CompletableFuture<WeatherResponse> first = weatherService.getWeatherAsync(59.8944, 30.2642);
+        CompletableFuture<WeatherResponse> second = weatherService.getWeatherAsync(59.8945, 30.2643);
+        pending.complete(freshResponse);
+
+        assertThat(first.join()).isEqualTo(freshResponse);
+        assertThat(second.join()).isEqualTo(freshResponse);
+        Mockito.verify(weatherHttpClient, Mockito.times(1))
+                .getWeatherAsync(Mockito.anyDouble(), Mockito.anyDouble(), Mockito.eq(API_KEY));
+    }
+
+    @Test
+    @DisplayName("rejects coordinates out of range")
+    void shouldRejectCoordinatesOutOfRange() {
+        assertThrows(IllegalArgumentException.class, () -> weatherService.getWeather(91, 0));
+        assertThrows(IllegalArgumentException.class, () -> weatherService.getWeatherAsync(0, Double.NaN));
+    }
+
+    @Test
+    @DisplayName("shares one entry between spellings that resolve to the same city")
+    void shouldShareEntryBetweenAliases() throws HttpException {
+        WeatherServiceOnDemand service = new WeatherServiceOnDemand(API_KEY, weatherHttpClient, Settings.builder()
+                .aliasing(Settings.Aliasing.builder().enabled(true).build())
+                .build());
+        WeatherResponse freshResponse = createWeatherResponse(Instant.now().getEpochSecond());
+        Mockito.when(weatherHttpClient.getWeather(LOCATION, API_KEY)).thenReturn(freshResponse);
+        Mockito.when(weatherHttpClient.getWeather("Saint Petersburg,RU", API_KEY)).thenReturn(freshResponse);
+
+        service.getWeather(LOCATION);
+        service.getWeather("Saint Petersburg,RU");
+        service.getWeather("saint petersburg,ru");
+        WeatherResponse byIdResponse = service.getWeatherById(498817);
+
+        assertThat(byIdResponse).isEqualTo(freshResponse);
+        assertThat(service.cache.size()).isEqualTo(1);
+        Mockito.verify(weatherHttpClient, Mockito.times(1)).getWeather(LOCATION, API_KEY);
+        Mockito.verify(weatherHttpClient, Mockito.times(1)).getWeather("Saint Petersburg,RU", API_KEY);
+        Mockito.verify(weatherHttpClient, Mockito.never()).getWeatherById(498817, API_KEY);
+    }
+
+    @Test
+    @DisplayName("refreshes stale data of an alias by city id")
+    void shouldRefreshAliasByCityId() throws Exception {
+        WeatherServiceOnDemand service = new WeatherServiceOnDemand(API_KEY, weatherHttpClient, Settings.builder()
+                .dataFreshnessPeriod(50)
+                .dataFreshnessUnit(TimeUnit.MILLISECONDS)
+                .aliasing(Settings.Aliasing.builder().enabled(true).build())
+                .build());
+        WeatherResponse staleResponse = createWeatherResponse(Instant.now().minusSeconds(60).getEpochSecond());
+        WeatherResponse freshResponse = createWeatherResponse(Instant.now().getEpochSecond());
+        Mockito.when(weatherHttpClient.getWeather(LOCATION, API_KEY)).thenReturn(staleResponse);
+        Mockito.when(weatherHttpClient.getWeatherById(498817, API_KEY)).thenReturn(freshResponse);
+
+        service.getWeather(LOCATION);
+        Thread.sleep(100);
+        WeatherResponse actualResponse = service.getWeather(LOCATION);
+
+        assertThat(actualResponse).isEqualTo(freshResponse);
+        Mockito.verify(weatherHttpClient, Mockito.times(1)).getWeather(LOCATION, API_KEY);
+    }
+
+    @Test
+    @DisplayName("keeps separate entries per spelling when aliasing is disabled")
+    void shouldKeepSeparateEntriesWithoutAliasing() throws HttpException {
+        WeatherResponse freshResponse = createWeatherResponse(Instant.now().getEpochSecond());
+        Mockito.when(weatherHttpClient.getWeather(LOCATION, API_KEY)).thenReturn(freshResponse);
+        Mockito.when(weatherHttpClient.getWeatherById(498817, API_KEY)).thenReturn(freshResponse);
+
+        weatherService.getWeather(LOCATION);
+        weatherService.getWeatherById(498817);
+
+        assertThat(weatherService.cache.size()).isEqualTo(2);
+        assertThrows(IllegalArgumentException.class, () -> weatherService.getWeatherById(0));
+    }
+
+    @Test
+    @DisplayName("looks up a location that looks like a city id by name")
+    void shouldLookUpLocationLikeCityIdByName() throws HttpException {
+        WeatherResponse freshResponse = createWeatherResponse(Instant.now().getEpochSecond());
+        Mockito.when(weatherHttpClient.getWeather("#498817", API_KEY)).thenReturn(freshResponse);
+
+        weatherService.getWeather("#498817");
+
+        Mockito.verify(weatherHttpClient, Mockito.never()).getWeatherById(Mockito.anyInt(), Mockito.anyString());
+        assertThat(weatherService.cache.peek(LocationKey.ofCityId(498817))).isNull();
+    }
+
+    @Test
+    @DisplayName("serves a cache miss from fresh data another service fetched")
+    void shouldServeMissFromSharedCache() throws HttpException {
+        SharedCache sharedCache = new SharedCache(1_000_000L);
+        WeatherServiceOnDemand first = new WeatherServiceOnDemand("first-key", weatherHttpClient, DEFAULT_SETTINGS, sharedCache);
+        WeatherServiceOnDemand second = new WeatherServiceOnDemand("second-key", weatherHttpClient, DEFAULT_SETTINGS, sharedCache);
+        WeatherResponse freshResponse = createWeatherResponse(Instant.now().getEpochSecond());
+        Mockito.when(weatherHttpClient.getWeather(LOCATION, "first-key")).thenReturn(freshResponse);
+
+        first.getWeather(LOCATION);
+        WeatherResponse sharedResponse = second.getWeather(LOCATION.toUpperCase());
+        second.shutdown();
+
+        assertThat(sharedResponse).isEqualTo(freshResponse);
+        assertThat(second.cache.size()).isEqualTo(0);
+        assertThat(sharedCache.size()).isEqualTo(1);
+        Mockito.verify(weatherHttpClient, Mockito.never()).getWeather(Mockito.anyString(), Mockito.eq("second-key"));
+    }
+
+    @Test
+    @DisplayName("does not serve shared data that is stale by its own freshness period")
+    void shouldNotServeSharedDataStaleForService() throws HttpException {
+        SharedCache sharedCache = new SharedCache(1_000_000L);
+        WeatherServiceOnDemand strict = new WeatherServiceOnDemand("strict-key", weatherHttpClient,
+                Settings.builder().dataFreshnessPeriod(1).build(), sharedCache);
+        WeatherResponse olderResponse = createWeatherResponse(Instant.now().getEpochSecond() - 300);
+        WeatherResponse newerResponse = createWeatherResponse(Instant.now().getEpochSecond());
+        sharedCache.put(LocationKey.of(LOCATION), olderResponse, System.currentTimeMillis() - 300_000);
+        Mockito.when(weatherHttpClient.getWeather(LOCATION, "strict-key")).thenReturn(newerResponse);
+
+        WeatherResponse actualResponse = strict.getWeather(LOCATION);
+
+        assertThat(actualResponse).isEqualTo(newerResponse);
+        assertThat(sharedCache.get(LocationKey.of(LOCATION))).isEqualTo(newerResponse);
+    }
+
+    @Test
+    @DisplayName("serves shared data by when it was fetched, not by when it was observed")
+    void shouldJudgeSharedDataByFetchTime() throws HttpException {
+        SharedCache sharedCache = new SharedCache(1_000_000L);
+        WeatherServiceOnDemand service = new WeatherServiceOnDemand(API_KEY, weatherHttpClient,
+                Settings.builder().dataFreshnessPeriod(1).build(), sharedCache);
+        WeatherResponse lateResponse = createWeatherResponse(Instant.now().getEpochSecond() - 300);
+        sharedCache.put(LocationKey.of(LOCATION), lateResponse, System.currentTimeMillis());
+
+        WeatherResponse actualResponse = service.getWeather(LOCATION);
+
+        assertThat(actualResponse).isEqualTo(lateResponse);
+        Mockito.verify(weatherHttpClient, Mockito.never()).getWeather(LOCATION, API_KEY);
+    }
+
+    @Test
+    @DisplayName("serves a cache miss from fresh data another JVM wrote to the cache store")
+    void shouldServeMissFromCacheStore() throws Exception {
+        try (RespServerStub server = new RespServerStub();
+             RespCacheStore firstStore = new RespCacheStore("127.0.0.1", server.port());
+             RespCacheStore secondStore = new RespCacheStore("127.0.0.1", server.port())) {
+            WeatherServiceOnDemand first = new WeatherServiceOnDemand("first-key", weatherHttpClient, remoteCacheSettings(firstStore));
+            WeatherServiceOnDemand second = new WeatherServiceOnDemand("second-key", weatherHttpClient, remoteCacheSettings(secondStore));
+            WeatherResponse freshResponse = createWeatherResponse(Instant.now().getEpochSecond());
+            Mockito.when(weatherHttpClient.getWeather(LOCATION, "first-key")).thenReturn(freshResponse);
+
+            first.getWeather(LOCATION);
+            assertThat(RecordingSubscriber.await(() -> server.get("weather:" + LocationKey.of(LOCATION).name()) != null)).isTrue();
+            WeatherResponse storedResponse = second.getWeather(LOCATION);
+            WeatherResponse cachedResponse = second.getWeather(LOCATION);
+
+            assertThat(storedResponse).isEqualTo(freshResponse);
+            assertThat(cachedResponse).isEqualTo(freshResponse);
+            Mockito.verify(weatherHttpClient, Mockito.never()).getWeather(Mockito.anyString(), Mockito.eq("second-key"));
+        }
+    }
+
+    @Test
+    @DisplayName("writes fetched data to the cache store without holding up the load")
+    void shouldWriteToCacheStoreInBackground() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Map<String, FetchedWeather> written = new ConcurrentHashMap<>();
+        CacheStore slowStore = new CacheStore() {
+            @Override
+            public Map<String, FetchedWeather> getAll(Collection<String> names) {
+                return Map.of();
+            }
+
+            @Override
+            public void putAll(Map<String, FetchedWeather> entries) throws IOException {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                written.putAll(entries);
+            }
+        };
+        WeatherServiceOnDemand service = new WeatherServiceOnDemand(API_KEY, weatherHttpClient, remoteCacheSettings(slowStore));
+        Mockito.when(weatherHttpClient.getWeather(LOCATION, API_KEY)).thenReturn(WEATHER_RESPONSE);
+
+        long startNanos = System.nanoTime();
+        WeatherResponse actualResponse = service.getWeather(LOCATION);
+        long elapsedNanos = System.nanoTime() - startNanos;
+        release.countDown();
+
+        assertThat(actualResponse).isEqualTo(WEATHER_RESPONSE);
+        assertThat(elapsedNanos).isLessThan(TimeUnit.SECONDS.toNanos(2));
+        assertThat(RecordingSubscriber.await(() -> written.containsKey(LocationKey.of(LOCATION).name()))).isTrue();
+        service.shutdown();
+    }
+
+    @Test
+    @DisplayName("serves an async cache miss from fresh data in the cache store")
+    void shouldServeAsyncMissFromCacheStore() throws Exception {
+        try (RespServerStub server = new RespServerStub();
+             RespCacheStore store = new RespCacheStore("127.0.0.1", server.port())) {
+            WeatherServiceOnDemand service = new WeatherServiceOnDemand(API_KEY, weatherHttpClient, remoteCacheSettings(store));
+            WeatherResponse freshResponse = createWeatherResponse(Instant.now().getEpochSecond());
+            store.put(LocationKey.of(LOCATION).name(), new FetchedWeather(freshResponse, System.currentTimeMillis()));
+
+            WeatherResponse storedResponse = service.getWeatherAsync(LOCATION).get(5, TimeUnit.SECONDS);
+
+            assertThat(storedResponse).isEqualTo(freshResponse);
+            Mockito.verify(weatherHttpClient, Mockito.never()).getWeatherAsync(Mockito.anyString(), Mockito.anyString());
+            service.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("looks up the misses of a bulk lookup in the cache store with one batch read")
+    void shouldLookUpBulkMissesInOneBatch() throws Exception {
+        try (RespServerStub server = new RespServerStub();
+             RespCacheStore store = new RespCacheStore("127.0.0.1", server.port())) {
+            WeatherServiceOnDemand service = new WeatherServiceOnDemand(API_KEY, weatherHttpClient, remoteCacheSettings(store));
+            WeatherResponse freshResponse = createWeatherResponse(Instant.now().getEpochSecond());
+            store.put("MOSCOW", new FetchedWeather(freshResponse, System.currentTimeMillis()));
+            Mockito.when(weatherHttpClient.getWeatherAsync("Paris", API_KEY))
+                    .thenReturn(CompletableFuture.completedFuture(freshResponse));
+            List<WeatherResult> results = new ArrayList<>();
+
+            service.getWeather(List.of("Moscow", "Paris"), results::add);
+
+            assertThat(results.size()).isEqualTo(2);
+            Assertions.assertThat(server.commands())
+                    .filteredOn(command -> command.get(0).equals("MGET"))
+                    .containsExactly(List.of("MGET", "weather:MOSCOW", "weather:PARIS"));
+            Mockito.verify(weatherHttpClient, Mockito.never()).getWeatherAsync("Moscow", API_KEY);
+        }
+    }
+
+    @Test
+    @DisplayName("reports a failure for a bulk load that throws before it starts")
+    void shouldReportBulkLoadThatThrows() {
+        IllegalStateException failure = new IllegalStateException("Negative cache is broken");
+        Mockito.when(weatherHttpClient.getWeatherAsync("Moscow", API_KEY))
+                .thenReturn(CompletableFuture.completedFuture(WEATHER_RESPONSE));
+        List<WeatherResult> results = new ArrayList<>();
+        try (MockedConstruction<NegativeCache> ignored = Mockito.mockConstruction(NegativeCache.class,
+                (negativeCache, context) -> Mockito.when(negativeCache.get(LocationKey.of("Paris"))).thenThrow(failure))) {
+            WeatherServiceOnDemand service = new WeatherServiceOnDemand(API_KEY, weatherHttpClient, Settings.builder().build());
+
+            assertTimeoutPreemptively(Duration.ofSeconds(5),
+                    () -> service.getWeather(List.of("Paris", "Moscow"), results::add));
+        }
+
+        Assertions.assertThat(results).containsExactlyInAnyOrder(
+                WeatherResult.failure("Paris", failure),
+                WeatherResult.success("Moscow", WEATHER_RESPONSE));
+    }
+
+    @Test
+    @DisplayName("pushes the current weather to a new subscriber")
+    void shouldPushCurrentWeatherToSubscriber() throws InterruptedException {
+        Mockito.when(weatherHttpClient.getWeatherAsync(LOCATION, API_KEY))
+                .thenReturn(CompletableFuture.completedFuture(WEATHER_RESPONSE));
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+
+        weatherService.subscribe(LOCATION, subscriber);
+
+        Assertions.assertThat(RecordingSubscriber.await(() -> subscriber.items().size() == 1)).isTrue();
+        Assertions.assertThat(subscriber.items()).containsExactly(WEATHER_RESPONSE);
+        weatherService.shutdown();
+        Assertions.assertThat(RecordingSubscriber.await(subscriber::isCompleted)).isTrue();
+    }
+
+    @Test
+    @DisplayName("signals a failed first lookup to the subscriber")
+    void shouldSignalFailedLookupToSubscriber() throws InterruptedException {
+        Mockito.when(weatherHttpClient.getWeatherAsync(LOCATION, API_KEY))
+                .thenReturn(CompletableFuture.failedFuture(new HttpException("API error", 404)));
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+
+        weatherService.subscribe(LOCATION, subscriber);
+
+        Assertions.assertThat(RecordingSubscriber.await(() -> subscriber.error() != null)).isTrue();
+        Assertions.assertThat(subscriber.error()).isInstanceOf(HttpException.class);
+        Assertions.assertThat(subscriber.items()).isEmpty();
+    }
+
     @Test
     @DisplayName("is shutdown")
     void shouldThrowExceptionWhenItShutDownAndCalledAgain() {
@@ -51,4 +815,40 @@ class WeatherServiceOnDemandTest {
         assertThrows(ServiceShutDownException.class, () -> weatherService.getWeather(LOCATION));
     }
 
-}
\ No newline at end of file
+    private List<Future<WeatherResponse>> callConcurrently(int threadCount,
+                                                           CountDownLatch release) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        CountDownLatch ready = new CountDownLatch(threadCount);
+        List<Future<WeatherResponse>> results = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            results.add(executor.submit(() -> {
+                ready.countDown();
+                return weatherService.getWeather(LOCATION);
+            }));
+        }
+        ready.await(5, TimeUnit.SECONDS);
+        Thread.sleep(100);
+        release.countDown();
+        executor.shutdown();
+        return results;
+    }
+
+    private static Settings staleWhileRevalidateSettings(int freshnessMillis, int maxStalenessMillis) {
+        return Settings.builder()
+                .dataFreshnessPeriod(freshnessMillis)
+                .dataFreshnessUnit(TimeUnit.MILLISECONDS)
+                .staleWhileRevalidate(Settings.StaleWhileRevalidate.builder()
+                        .enabled(true)
+                        .maxStaleness(Duration.ofMillis(maxStalenessMillis))
+                        .build())
+                .build();
+    }
+
+    private static Settings remoteCacheSettings(CacheStore store) {
+        return Settings.builder()
+                .remoteCache(Settings.RemoteCache.builder()
+                        .store(store)
+                        .build())
+                .build();
+    }
+}
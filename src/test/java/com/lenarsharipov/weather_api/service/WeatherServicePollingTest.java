@@ -4,7 +4,10 @@ import com.lenarsharipov.weather_api.exception.HttpException;
 import com.lenarsharipov.weather_api.exception.ServiceShutDownException;
 import com.lenarsharipov.weather_api.http.WeatherHttpClient;
 import com.lenarsharipov.weather_api.model.WeatherResponse;
+import com.lenarsharipov.weather_api.service.impl.PollingStats;
 import com.lenarsharipov.weather_api.service.impl.WeatherServicePolling;
+import com.lenarsharipov.weather_api.settings.Settings;
+import com.lenarsharipov.weather_api.util.RecordingSubscriber;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -15,6 +18,14 @@ import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.lenarsharipov.weather_api.service.WeatherService.DEFAULT_DATA_FRESHNESS_PERIOD;
 import static com.lenarsharipov.weather_api.util.TestObjectUtils.*;
@@ -32,7 +43,7 @@ class WeatherServicePollingTest {
 
     @BeforeEach
     void setUp() {
-        this.weatherService = new WeatherServicePolling(API_KEY, weatherHttpClient, DEFAULT_SETTINGS);
+        this.weatherService = new WeatherServicePolling(API_KEY, weatherHttpClient, DEFAULT_SETTINGS).start();
     }
 
     @Test
@@ -47,6 +58,224 @@ class WeatherServicePollingTest {
         assertThat(actualResponse).isEqualTo(WEATHER_RESPONSE);
     }
 
+    @Test
+    @DisplayName("refreshes a location only shortly before its data expires")
+    void shouldRefreshOnlyLocationsWhoseDeadlineApproaches() throws Exception {
+        WeatherServicePolling service = new WeatherServicePolling(API_KEY, weatherHttpClient, Settings.builder()
+                .dataFreshnessPeriod(1000)
+                .dataFreshnessUnit(TimeUnit.MILLISECONDS)
+                .polling(Settings.Polling.builder()
+                        .initialDelay(100)
+                        .period(100)
+                        .unit(TimeUnit.MILLISECONDS)
+                        .build())
+                .build()).start();
+        WeatherResponse lateResponse = createWeatherResponse(0);
+        List<Long> fetchNanos = new CopyOnWriteArrayList<>();
+        Mockito.when(weatherHttpClient.getWeather(Mockito.anyString(), Mockito.eq(API_KEY)))
+                .thenAnswer(invocation -> {
+                    fetchNanos.add(System.nanoTime());
+                    return lateResponse;
+                });
+        service.getWeather("late");
+
+        PollingStats stats = awaitCycles(service, service.getPollingStats().completedCycles() + 3);
+        assertEquals(1, fetchNanos.size());
+        assertEquals(0, stats.lastCycleFailures());
+        assertTrue(RecordingSubscriber.await(() -> fetchNanos.size() >= 2));
+        service.shutdown();
+
+        assertTrue(fetchNanos.get(1) - fetchNanos.get(0) >= TimeUnit.MILLISECONDS.toNanos(800));
+        Mockito.verify(weatherHttpClient, Mockito.atLeastOnce()).getWeather("LATE", API_KEY);
+    }
+
+    @Test
+    @DisplayName("refreshes a station that has not reported since less and less often")
+    void shouldBackOffRefreshesOfUnchangedObservations() throws Exception {
+        WeatherServicePolling service = new WeatherServicePolling(API_KEY, weatherHttpClient, Settings.builder()
+                .dataFreshnessPeriod(100)
+                .dataFreshnessUnit(TimeUnit.MILLISECONDS)
+                .polling(Settings.Polling.builder()
+                        .initialDelay(20)
+                        .period(20)
+                        .unit(TimeUnit.MILLISECONDS)
+                        .build())
+                .build()).start();
+        WeatherResponse unchangedResponse = createWeatherResponse(Instant.now().getEpochSecond());
+        List<Long> fetchNanos = new CopyOnWriteArrayList<>();
+        Mockito.when(weatherHttpClient.getWeather(Mockito.anyString(), Mockito.eq(API_KEY)))
+                .thenAnswer(invocation -> {
+                    fetchNanos.add(System.nanoTime());
+                    return unchangedResponse;
+                });
+        service.getWeather("quiet");
+
+        assertTrue(RecordingSubscriber.await(() -> fetchNanos.size() >= 4));
+        service.shutdown();
+
+        long firstInterval = fetchNanos.get(1) - fetchNanos.get(0);
+        long thirdInterval = fetchNanos.get(3) - fetchNanos.get(2);
+        assertTrue(thirdInterval >= 2 * firstInterval);
+    }
+
+    @Test
+    @DisplayName("spreads refreshes of stale locations over the polling period")
+    void shouldSpreadRefreshesOverPollingPeriod() throws Exception {
+        WeatherServicePolling service = new WeatherServicePolling(API_KEY, weatherHttpClient, pollingSettings(300))
+                .start();
+        WeatherResponse staleResponse = createWeatherResponse(0);
+        Map<String, Long> firstRefreshNanos = new ConcurrentHashMap<>();
+        Mockito.when(weatherHttpClient.getWeather(Mockito.anyString(), Mockito.eq(API_KEY)))
+                .thenAnswer(invocation -> {
+                    String location = invocation.getArgument(0);
+                    if (location.equals(location.toUpperCase())) {
+                        firstRefreshNanos.putIfAbsent(location, System.nanoTime());
+                    }
+                    return staleResponse;
+                });
+        for (int i = 0; i < 10; i++) {
+            service.getWeather("city" + i);
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (firstRefreshNanos.size() < 10 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        service.shutdown();
+
+        assertEquals(10, firstRefreshNanos.size());
+        long spreadNanos = Collections.max(firstRefreshNanos.values()) - Collections.min(firstRefreshNanos.values());
+        assertTrue(spreadNanos >= TimeUnit.MILLISECONDS.toNanos(60));
+    }
+
+    @Test
+    @DisplayName("refreshes locations with known city ids in one group request")
+    void shouldRefreshKnownCitiesInGroups() throws Exception {
+        WeatherServicePolling service = new WeatherServicePolling(API_KEY, weatherHttpClient,
+                pollingSettings(Settings.Polling.builder().groupSize(20), 100)).start();
+        WeatherResponse staleResponse = createWeatherResponse(0);
+        Mockito.when(weatherHttpClient.getWeather(Mockito.anyString(), Mockito.eq(API_KEY))).thenReturn(staleResponse);
+        Mockito.when(weatherHttpClient.getWeatherGroup(Mockito.anyList(), Mockito.eq(API_KEY)))
+                .thenReturn(List.of(staleResponse));
+        for (int i = 0; i < 5; i++) {
+            service.getWeather("city" + i);
+        }
+
+        PollingStats stats = awaitCycles(service, service.getPollingStats().completedCycles() + 3);
+        service.shutdown();
+
+        assertEquals(0, stats.lastCycleFailures());
+        Mockito.verify(weatherHttpClient, Mockito.atLeastOnce()).getWeatherGroup(List.of(staleResponse.id()), API_KEY);
+        Mockito.verify(weatherHttpClient, Mockito.never()).getWeather("CITY0", API_KEY);
+        Mockito.verify(weatherHttpClient, Mockito.never()).getWeather("CITY4", API_KEY);
+    }
+
+    @Test
+    @DisplayName("keeps refreshing a location after a refresh fails unexpectedly")
+    void shouldRescheduleRefreshThatThrowsRuntimeException() throws Exception {
+        WeatherServicePolling service = new WeatherServicePolling(API_KEY, weatherHttpClient, pollingSettings(50))
+                .start();
+        WeatherResponse staleResponse = createWeatherResponse(0);
+        AtomicInteger refreshes = new AtomicInteger();
+        Mockito.when(weatherHttpClient.getWeather("broken", API_KEY)).thenReturn(staleResponse);
+        Mockito.when(weatherHttpClient.getWeather("BROKEN", API_KEY))
+                .thenAnswer(invocation -> {
+                    if (refreshes.incrementAndGet() == 1) {
+                        throw new IllegalStateException("cannot decode the response");
+                    }
+                    return staleResponse;
+                });
+        service.getWeather("broken");
+
+        assertTrue(RecordingSubscriber.await(() -> refreshes.get() >= 2));
+        service.shutdown();
+    }
+
+    @Test
+    @DisplayName("pushes a refreshed observation to subscribers only when it changed")
+    void shouldPushOnlyChangedObservationsToSubscribers() throws Exception {
+        WeatherServicePolling service = new WeatherServicePolling(API_KEY, weatherHttpClient, pollingSettings(50))
+                .start();
+        WeatherResponse staleResponse = createWeatherResponse(0);
+        WeatherResponse changedResponse = createWeatherResponse(60);
+        AtomicInteger refreshes = new AtomicInteger();
+        Mockito.when(weatherHttpClient.getWeatherAsync(Mockito.anyString(), Mockito.eq(API_KEY)))
+                .thenReturn(CompletableFuture.completedFuture(staleResponse));
+        Mockito.when(weatherHttpClient.getWeather(Mockito.anyString(), Mockito.eq(API_KEY)))
+                .thenAnswer(invocation -> refreshes.incrementAndGet() < 3 ? staleResponse : changedResponse);
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+
+        service.subscribe("stale", subscriber);
+
+        assertTrue(RecordingSubscriber.await(() -> subscriber.items().size() == 2));
+        awaitCycles(service, service.getPollingStats().completedCycles() + 3);
+        service.shutdown();
+
+        assertTrue(refreshes.get() >= 3);
+        assertEquals(List.of(staleResponse, changedResponse), subscriber.items());
+        assertTrue(RecordingSubscriber.await(subscriber::isCompleted));
+    }
+
+    @Test
+    @DisplayName("does not poll before it is started")
+    void shouldNotPollBeforeStart() throws Exception {
+        WeatherServicePolling service = new WeatherServicePolling(API_KEY, weatherHttpClient, pollingSettings(50));
+
+        Thread.sleep(200);
+        long cyclesBeforeStart = service.getPollingStats().completedCycles();
+        service.start();
+        service.start();
+        PollingStats stats = awaitCycles(service, 2);
+        service.shutdown();
+
+        assertEquals(0, cyclesBeforeStart);
+        assertTrue(stats.completedCycles() >= 2);
+    }
+
+    @Test
+    @DisplayName("runs every tick while earlier refreshes are still scheduled")
+    void shouldRunConsecutiveTicks() throws Exception {
+        WeatherServicePolling service = new WeatherServicePolling(API_KEY, weatherHttpClient, pollingSettings(50))
+                .start();
+        WeatherResponse staleResponse = createWeatherResponse(0);
+        AtomicInteger refreshes = new AtomicInteger();
+        Mockito.when(weatherHttpClient.getWeather(Mockito.anyString(), Mockito.eq(API_KEY)))
+                .thenAnswer(invocation -> {
+                    refreshes.incrementAndGet();
+                    return staleResponse;
+                });
+        for (int i = 0; i < 5; i++) {
+            service.getWeather("city" + i);
+        }
+
+        PollingStats stats = awaitCycles(service, 8);
+        service.shutdown();
+
+        assertEquals(0, stats.skippedCycles());
+        assertTrue(refreshes.get() >= 5 + 10);
+    }
+
+    @Test
+    @DisplayName("skips a tick while refreshes are waiting for a request slot")
+    void shouldSkipTickWhileRefreshesWaitForSlot() throws Exception {
+        WeatherServicePolling service = new WeatherServicePolling(API_KEY, weatherHttpClient,
+                pollingSettings(Settings.Polling.builder().maxConcurrency(1), 50)).start();
+        WeatherResponse staleResponse = createWeatherResponse(0);
+        Mockito.when(weatherHttpClient.getWeather(Mockito.anyString(), Mockito.eq(API_KEY)))
+                .thenAnswer(invocation -> {
+                    String location = invocation.getArgument(0);
+                    if (location.equals(location.toUpperCase())) {
+                        Thread.sleep(300);
+                    }
+                    return staleResponse;
+                });
+        service.getWeather("slow");
+        service.getWeather("slower");
+
+        assertTrue(RecordingSubscriber.await(() -> service.getPollingStats().skippedCycles() > 0));
+        service.shutdown();
+    }
+
     @Test
     @DisplayName("is shutdown")
     void shouldThrowExceptionWhenItShutDownAndCalledAgain() {
@@ -98,4 +327,33 @@ class WeatherServicePollingTest {
         assertFalse(isFresh);
     }
 
-}
\ No newline at end of file
+    private static Settings pollingSettings(int periodMillis) {
+        return pollingSettings(Settings.Polling.builder(), periodMillis);
+    }
+
+    /**
+     * Returns settings with the given polling period and data that expires within half of it,
+     * so every loaded location is refreshed in the next period.
+     */
+    private static Settings pollingSettings(Settings.Polling.Builder polling, int periodMillis) {
+        return Settings.builder()
+                .dataFreshnessPeriod(periodMillis / 2)
+                .dataFreshnessUnit(TimeUnit.MILLISECONDS)
+                .polling(polling
+                        .initialDelay(periodMillis)
+                        .period(periodMillis)
+                        .unit(TimeUnit.MILLISECONDS)
+                        .build())
+                .build();
+    }
+
+    private static PollingStats awaitCycles(WeatherServicePolling service, long cycles) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (service.getPollingStats().completedCycles() < cycles && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        PollingStats stats = service.getPollingStats();
+        assertTrue(stats.completedCycles() >= cycles);
+        return stats;
+    }
+}
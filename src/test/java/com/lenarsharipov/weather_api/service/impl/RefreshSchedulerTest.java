@@ -0,0 +1,55 @@
+package com.lenarsharipov.weather_api.service.impl;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DisplayName("Refresh Scheduler")
+class RefreshSchedulerTest {
+
+    private final RefreshScheduler scheduler = new RefreshScheduler();
+
+    @Test
+    @DisplayName("returns due deadlines earliest first and keeps later ones")
+    void shouldPollDueDeadlinesInOrder() {
+        scheduler.schedule("C", 300);
+        scheduler.schedule("A", 100);
+        scheduler.schedule("B", 200);
+
+        List<RefreshScheduler.Deadline> due = scheduler.pollDueBefore(250);
+
+        assertThat(due).extracting(RefreshScheduler.Deadline::location).containsExactly("A", "B");
+        assertEquals(1, scheduler.size());
+        assertTrue(scheduler.isScheduled("C"));
+        assertFalse(scheduler.isScheduled("A"));
+    }
+
+    @Test
+    @DisplayName("replaces the previous deadline of a location")
+    void shouldReplacePreviousDeadline() {
+        scheduler.schedule("A", 100);
+        scheduler.schedule("A", 500);
+
+        assertThat(scheduler.pollDueBefore(250)).isEmpty();
+        assertThat(scheduler.pollDueBefore(1000))
+                .extracting(RefreshScheduler.Deadline::dueMillis)
+                .containsExactly(500L);
+        assertEquals(0, scheduler.size());
+    }
+
+    @Test
+    @DisplayName("forgets all deadlines when cleared")
+    void shouldClearDeadlines() {
+        scheduler.schedule("A", 100);
+        scheduler.clear();
+
+        assertThat(scheduler.pollDueBefore(Long.MAX_VALUE)).isEmpty();
+        assertEquals(0, scheduler.size());
+    }
+}
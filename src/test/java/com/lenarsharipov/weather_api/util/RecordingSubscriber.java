@@ -0,0 +1,78 @@
+package com.lenarsharipov.weather_api.util;
+
+import com.lenarsharipov.weather_api.model.WeatherResponse;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A subscriber that records every signal it receives. It requests {@code initialDemand} updates
+ * on subscribe; more can be requested through {@link #subscription()}.
+ */
+public class RecordingSubscriber implements Flow.Subscriber<WeatherResponse> {
+
+    private final long initialDemand;
+    private final List<WeatherResponse> items = new CopyOnWriteArrayList<>();
+    private volatile Flow.Subscription subscription;
+    private volatile Throwable error;
+    private volatile boolean completed;
+
+    public RecordingSubscriber(long initialDemand) {
+        this.initialDemand = initialDemand;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        if (initialDemand > 0) {
+            subscription.request(initialDemand);
+        }
+    }
+
+    @Override
+    public void onNext(WeatherResponse item) {
+        items.add(item);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        this.error = throwable;
+    }
+
+    @Override
+    public void onComplete() {
+        this.completed = true;
+    }
+
+    public Flow.Subscription subscription() {
+        return subscription;
+    }
+
+    public List<WeatherResponse> items() {
+        return items;
+    }
+
+    public Throwable error() {
+        return error;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    /**
+     * Waits up to five seconds for the condition to hold.
+     *
+     * @return whether the condition holds
+     */
+    public static boolean await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        return condition.getAsBoolean();
+    }
+}
@@ -0,0 +1,175 @@
+package com.lenarsharipov.weather_api.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A local stand-in for a key-value store that speaks the Redis protocol. It understands
+ * {@code GET}, {@code MGET} and {@code SET}, answers any other command with an error, and
+ * records every command it receives. In read-only mode it rejects writes, like a replica.
+ */
+public class RespServerStub implements AutoCloseable {
+
+    private final ServerSocket serverSocket;
+    private final Map<String, byte[]> values = new ConcurrentHashMap<>();
+    private final List<List<String>> commands = new CopyOnWriteArrayList<>();
+    private final List<Socket> connections = new CopyOnWriteArrayList<>();
+    private volatile boolean readOnly;
+
+    public RespServerStub() throws IOException {
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread.ofVirtual().start(this::acceptConnections);
+    }
+
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    public List<List<String>> commands() {
+        return commands;
+    }
+
+    public void set(String key, byte[] value) {
+        values.put(key, value);
+    }
+
+    public byte[] get(String key) {
+        return values.get(key);
+    }
+
+    public void setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * Closes every open connection, as a restarted store would.
+     */
+    public void dropConnections() throws IOException {
+        for (Socket connection : connections) {
+            connection.close();
+        }
+        connections.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        dropConnections();
+    }
+
+    private void acceptConnections() {
+        try {
+            while (true) {
+                Socket connection = serverSocket.accept();
+                connections.add(connection);
+                Thread.ofVirtual().start(() -> serve(connection));
+            }
+        } catch (IOException ignored) {
+            // the server is closed
+        }
+    }
+
+    private void serve(Socket connection) {
+        try (connection) {
+            InputStream in = new BufferedInputStream(connection.getInputStream());
+            OutputStream out = new BufferedOutputStream(connection.getOutputStream());
+            while (true) {
+                List<byte[]> command = readCommand(in);
+                if (command == null) {
+                    return;
+                }
+                List<String> names = new ArrayList<>();
+                command.forEach(argument -> names.add(new String(argument, StandardCharsets.UTF_8)));
+                commands.add(names);
+                execute(names.get(0), command, out);
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+        } catch (IOException ignored) {
+            // the connection is closed
+        }
+    }
+
+    private void execute(String name, List<byte[]> command, OutputStream out) throws IOException {
+        switch (name.toUpperCase()) {
+            case "GET" -> writeBulk(out, values.get(key(command, 1)));
+            case "MGET" -> {
+                writeLine(out, "*" + (command.size() - 1));
+                for (int i = 1; i < command.size(); i++) {
+                    writeBulk(out, values.get(key(command, i)));
+                }
+            }
+            case "SET" -> {
+                if (readOnly) {
+                    writeLine(out, "-READONLY You can't write against a read only replica.");
+                } else {
+                    values.put(key(command, 1), command.get(2));
+                    writeLine(out, "+OK");
+                }
+            }
+            default -> writeLine(out, "-ERR unknown command '" + name + "'");
+        }
+    }
+
+    private static String key(List<byte[]> command, int index) {
+        return new String(command.get(index), StandardCharsets.UTF_8);
+    }
+
+    private static List<byte[]> readCommand(InputStream in) throws IOException {
+        String header = readLine(in);
+        if (header == null) {
+            return null;
+        }
+        int count = Integer.parseInt(header.substring(1));
+        List<byte[]> arguments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int length = Integer.parseInt(readLine(in).substring(1));
+            arguments.add(in.readNBytes(length));
+            in.readNBytes(2);
+        }
+        return arguments;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\r') {
+            if (b == -1) {
+                return null;
+            }
+            line.append((char) b);
+        }
+        in.read();
+        return line.toString();
+    }
+
+    private static void writeBulk(OutputStream out, byte[] value) throws IOException {
+        if (value == null) {
+            writeLine(out, "$-1");
+            return;
+        }
+        writeLine(out, "$" + value.length);
+        out.write(value);
+        out.write('\r');
+        out.write('\n');
+    }
+
+    private static void writeLine(OutputStream out, String line) throws IOException {
+        out.write(line.getBytes(StandardCharsets.UTF_8));
+        out.write('\r');
+        out.write('\n');
+    }
+}